@@ -66,7 +66,11 @@ import java.util.Map;
  *   ByteOrder byteOrder = {@link ByteOrder#BIG_ENDIAN};
  *   Number fillValue = 0;
  *   Compressor compressor = {@link CompressorFactory#createDefaultCompressor()};
- *   DimensionSeparator sep = {@link DimensionSeparator#DOT};
+ *   Filter[] filters = none;
+ *   DimensionSeparator sep = {@link DimensionSeparator#DOT}, {@link DimensionSeparator#SLASH} for zarr format 3;
+ *   boolean constantChunks = false;
+ *   int[] shards = none;
+ *   int zarrFormat = 2, or the format of the group the array is created in;
  * </pre>
  */
 public class ArrayParams {
@@ -77,7 +81,11 @@ public class ArrayParams {
     private ByteOrder byteOrder = ByteOrder.BIG_ENDIAN;
     private Number fillValue = 0;
     private Compressor compressor = CompressorFactory.createDefaultCompressor();
-    private DimensionSeparator separator = DimensionSeparator.DOT;
+    private Filter[] filters = new Filter[0];
+    private DimensionSeparator separator;
+    private boolean constantChunks = false;
+    private int[] shards;
+    private Integer zarrFormat;
 
     /**
      * Sets the mandatory {@code shape} and returns a reference to this Builder so that the methods can be chained together.
@@ -168,22 +176,83 @@ public class ArrayParams {
         return this;
     }
 
+    /**
+     * Sets the optional {@code filters} and returns a reference to this Builder so that the methods can be chained together.<br/>
+     * The filters are applied in the given order to the chunk bytes before they are compressed, and in reverse order
+     * after they are uncompressed. Filters are created with the {@link FilterFactory}, e.g.
+     * {@code FilterFactory.create("delta", "dtype", ">i4")}.<br/>
+     * Calling this method without arguments or with {@code null} removes all filters.
+     *
+     * @param filters the {@link Filter}s to set
+     * @return a reference to this Builder
+     */
+    public ArrayParams filters(Filter... filters) {
+        this.filters = filters != null ? filters.clone() : new Filter[0];
+        return this;
+    }
+
     /**
      * Sets the optional {@code dimension_separator} and returns a reference to this Builder so that the methods can be chained together.<br/>
-     * An argument {@code null} will be converted to {@link DimensionSeparator#DOT}.<br/>
-     * If this method is not used, the default separator {@link DimensionSeparator#DOT} remains unchanged.
+     * An argument {@code null} selects the default separator.<br/>
+     * If this method is not used, the default separator {@link DimensionSeparator#DOT} is used, or
+     * {@link DimensionSeparator#SLASH} for zarr format 3.
      *
      * @param sep the {@link DimensionSeparator} to set or {@code null}
      * @return a reference to this Builder
      */
     public ArrayParams dimensionSeparator(DimensionSeparator sep) {
-        if (sep == null) {
-            this.separator = DimensionSeparator.DOT;
-        }
         this.separator = sep;
         return this;
     }
 
+    /**
+     * Sets the optional {@code constantChunks} and returns a reference to this Builder so that the methods can be chained together.<br/>
+     * If true, chunks whose elements all have the same value, which is not the fill value, are stored as a small
+     * constant marker with the value instead of being filtered and compressed, and are read back without decoding.
+     * The setting is written to the {@code .zarray} header. Other zarr implementations can not read such chunks.<br/>
+     * Default value: <code>false</code>
+     *
+     * @param constantChunks the {@code constantChunks} to set
+     * @return a reference to this Builder
+     */
+    public ArrayParams constantChunks(boolean constantChunks) {
+        this.constantChunks = constantChunks;
+        return this;
+    }
+
+    /**
+     * Sets the optional {@code shards} and returns a reference to this Builder so that the methods can be chained together.<br/>
+     * If given, all chunks of a shard are stored together in one object of the store, followed by an index with the
+     * offset and length of each chunk, with the {@code sharding_indexed} codec of zarr format 3. This keeps the number
+     * of files low for arrays with many small chunks, while single chunks can still be read without reading the whole
+     * shard. Each dimension of the shard shape must be a multiple of the corresponding chunk dimension.
+     * Shards are only supported for arrays in {@link #zarrFormat(int) zarr format 3}.<br/>
+     * Default value: none, every chunk is stored as its own object
+     *
+     * @param shards the {@code shards} to set
+     * @return a reference to this Builder
+     */
+    public ArrayParams shards(int... shards) {
+        this.shards = shards;
+        return this;
+    }
+
+    /**
+     * Sets the optional {@code zarrFormat} and returns a reference to this Builder so that the methods can be chained together.<br/>
+     * Arrays in zarr format 2 are described by a {@code .zarray} header, arrays in zarr format 3 by a {@code zarr.json}
+     * file with the codecs {@code bytes}, optionally one of the compressors {@code blosc}, {@code gzip} or {@code zstd},
+     * and {@code sharding_indexed} if {@link #shards(int...) shards} are given. Arrays in zarr format 3 do not
+     * support filters and constant chunks.<br/>
+     * Default value: <code>2</code>, or the format of the group the array is created in
+     *
+     * @param zarrFormat the {@code zarrFormat} to set, 2 or 3
+     * @return a reference to this Builder
+     */
+    public ArrayParams zarrFormat(int zarrFormat) {
+        this.zarrFormat = zarrFormat;
+        return this;
+    }
+
     /**
      * Returns {@link Params} built from the parameters previously set.<br/>
      * This method is package local and should  be used by framework itself only.<br/>
@@ -192,6 +261,13 @@ public class ArrayParams {
      * @return {@link Params}
      */
     Params build() {
+        return build(2);
+    }
+
+    /**
+     * @param defaultZarrFormat the zarr format used if none is set, the format of the parent group
+     */
+    Params build(int defaultZarrFormat) {
         if (shape == null || shape.length == 0) {
             throw new IllegalArgumentException("Shape must be given.");
         }
@@ -230,7 +306,42 @@ public class ArrayParams {
             }
         }
 
-        return new Params(shape, chunks, dataType, byteOrder, fillValue, compressor, separator);
+        if (shards != null) {
+            if (shards.length != chunks.length) {
+                throw new IllegalArgumentException(
+                        "Shards must have the same number of dimensions as shape. " +
+                        "Expected: " + shape.length + " but was " + shards.length + " !");
+            }
+            for (int i = 0; i < shards.length; i++) {
+                if (shards[i] < 1 || shards[i] % chunks[i] != 0) {
+                    throw new IllegalArgumentException(
+                            "Shards must be multiples of the chunks. " +
+                            "Chunks: " + Arrays.toString(chunks) + " Shards: " + Arrays.toString(shards));
+                }
+            }
+        }
+
+        final int format = zarrFormat != null ? zarrFormat : defaultZarrFormat;
+        if (format != 2 && format != 3) {
+            throw new IllegalArgumentException("Zarr format 2 or 3 expected but was: " + format);
+        }
+        if (format == 2 && shards != null) {
+            throw new IllegalArgumentException("Shards are only supported for zarr format 3.");
+        }
+        if (format == 3) {
+            if (filters.length > 0) {
+                throw new IllegalArgumentException("Filters are not supported for zarr format 3.");
+            }
+            if (constantChunks) {
+                throw new IllegalArgumentException("Constant chunks are not supported for zarr format 3.");
+            }
+            if (compressor != null && !ZarrHeaderV3.isSupported(compressor)) {
+                throw new IllegalArgumentException("Compressor id:'" + compressor.getId() + "' not supported by zarr format 3.");
+            }
+        }
+        final DimensionSeparator sep = separator != null ? separator : format == 3 ? DimensionSeparator.SLASH : DimensionSeparator.DOT;
+
+        return new Params(shape, chunks, dataType, byteOrder, fillValue, compressor, filters, sep, constantChunks, shards, format);
     }
 
     /**
@@ -243,16 +354,25 @@ public class ArrayParams {
         private final ByteOrder byteOrder;
         private final Number fillValue;
         private final Compressor compressor;
+        private final Filter[] filters;
         private final DimensionSeparator separator;
+        private final boolean constantChunks;
+        private final int[] shards;
+        private final int zarrFormat;
 
-        private Params(int[] shape, int[] chunks, DataType dataType, ByteOrder byteOrder, Number fillValue, Compressor compressor, DimensionSeparator separator) {
+        private Params(int[] shape, int[] chunks, DataType dataType, ByteOrder byteOrder, Number fillValue, Compressor compressor, Filter[] filters, DimensionSeparator separator,
+                       boolean constantChunks, int[] shards, int zarrFormat) {
             this.shape = shape;
             this.chunks = chunks;
             this.dataType = dataType;
             this.byteOrder = byteOrder;
             this.fillValue = fillValue;
             this.compressor = compressor;
+            this.filters = filters;
             this.separator = separator;
+            this.constantChunks = constantChunks;
+            this.shards = shards;
+            this.zarrFormat = zarrFormat;
         }
 
         public int[] getShape() {
@@ -283,10 +403,29 @@ public class ArrayParams {
             return compressor;
         }
 
+        public Filter[] getFilters() {
+            return filters.clone();
+        }
+
         public DimensionSeparator getDimensionSeparator() {
             return separator;
         }
 
+        public boolean isConstantChunks() {
+            return constantChunks;
+        }
+
+        /**
+         * @return the shard shape or {@code null} if the array is not sharded
+         */
+        public int[] getShards() {
+            return shards;
+        }
+
+        public int getZarrFormat() {
+            return zarrFormat;
+        }
+
         public ArrayParams toBuilder() {
             ArrayParams builder = new ArrayParams();
             builder.shape = getShape();
@@ -296,7 +435,11 @@ public class ArrayParams {
             builder.byteOrder = getByteOrder();
             builder.fillValue = getFillValue();
             builder.compressor = getCompressor();
+            builder.filters = getFilters();
             builder.separator = getDimensionSeparator();
+            builder.constantChunks = isConstantChunks();
+            builder.shards = getShards();
+            builder.zarrFormat = getZarrFormat();
             return builder;
         }
     }
@@ -0,0 +1,222 @@
+/*
+ *
+ * MIT License
+ *
+ * Copyright (c) 2021. Brockmann Consult GmbH (info@brockmann-consult.de)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package com.bc.zarr;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A thread safe pool of reusable byte buffers. Compressors and chunk readers/writers borrow their
+ * temporary buffers from a pool instead of allocating new arrays for every chunk.
+ * <p>
+ * Buffers are kept in power of two size classes, so all buffers borrowed for chunks of the same
+ * byte size come from, and go back to, the same class. The total capacity of the buffers kept for reuse
+ * is bounded; buffers released beyond that bound are left to the garbage collector.
+ * <p>
+ * A pool either hands out heap buffers, which are always backed by an accessible array starting at
+ * array offset zero, or direct (off-heap) buffers.
+ */
+public class BufferPool {
+
+    private static final int MIN_CLASS = 12; // 4 KiB
+    private static final int MAX_CLASS = 30; // 1 GiB
+
+    private static final BufferPool defaultPool = new BufferPool(false, defaultMaxRetainedBytes());
+    private static final BufferPool defaultDirectPool = new BufferPool(true, defaultMaxRetainedBytes());
+
+    private final boolean direct;
+    private final long maxRetainedBytes;
+    private final Queue<ByteBuffer>[] classes;
+    private final AtomicLong retainedBytes = new AtomicLong();
+    private final AtomicLong allocationCount = new AtomicLong();
+
+    /**
+     * @param direct           {@code true} if the pool shall hand out direct (off-heap) buffers
+     * @param maxRetainedBytes the maximum total capacity of the buffers kept for reuse
+     */
+    @SuppressWarnings("unchecked")
+    public BufferPool(boolean direct, long maxRetainedBytes) {
+        if (maxRetainedBytes < 0) {
+            throw new IllegalArgumentException("maxRetainedBytes must not be negative but was: " + maxRetainedBytes);
+        }
+        this.direct = direct;
+        this.maxRetainedBytes = maxRetainedBytes;
+        this.classes = new Queue[MAX_CLASS + 1];
+        for (int i = MIN_CLASS; i <= MAX_CLASS; i++) {
+            classes[i] = new ConcurrentLinkedQueue<>();
+        }
+    }
+
+    /**
+     * @return the shared heap buffer pool
+     */
+    public static BufferPool getDefault() {
+        return defaultPool;
+    }
+
+    /**
+     * @return the shared direct (off-heap) buffer pool
+     */
+    public static BufferPool getDefaultDirect() {
+        return defaultDirectPool;
+    }
+
+    /**
+     * Gives a buffer borrowed from {@link #getDefault()} or {@link #getDefaultDirect()} back to the pool it came from.
+     *
+     * @param buffer the buffer, may be {@code null}
+     */
+    public static void releaseDefault(ByteBuffer buffer) {
+        if (buffer != null) {
+            (buffer.isDirect() ? defaultDirectPool : defaultPool).release(buffer);
+        }
+    }
+
+    /**
+     * Borrows a buffer from the pool. The buffer must be given back with {@link #release(ByteBuffer)}
+     * as soon as it is not used any more and must not be used after it has been released.
+     *
+     * @param numBytes the number of bytes needed
+     * @return a buffer with at least {@code numBytes} capacity, position zero, limit {@code numBytes}
+     * and big endian byte order
+     */
+    public ByteBuffer acquire(int numBytes) {
+        if (numBytes < 0) {
+            throw new IllegalArgumentException("numBytes must not be negative but was: " + numBytes);
+        }
+        final int sizeClass = sizeClass(numBytes);
+        ByteBuffer buffer = null;
+        if (sizeClass <= MAX_CLASS) {
+            buffer = classes[sizeClass].poll();
+            if (buffer != null) {
+                retainedBytes.addAndGet(-buffer.capacity());
+            } else {
+                buffer = allocate(1 << sizeClass);
+            }
+        } else {
+            buffer = allocate(numBytes);
+        }
+        buffer.clear();
+        buffer.limit(numBytes);
+        buffer.order(ByteOrder.BIG_ENDIAN);
+        return buffer;
+    }
+
+    /**
+     * Gives a buffer borrowed with {@link #acquire(int)} back to the pool.
+     *
+     * @param buffer the buffer, may be {@code null}
+     */
+    public void release(ByteBuffer buffer) {
+        if (buffer == null || buffer.isDirect() != direct || buffer.isReadOnly()) {
+            return;
+        }
+        final int capacity = buffer.capacity();
+        if (Integer.bitCount(capacity) != 1) {
+            return;
+        }
+        final int sizeClass = Integer.numberOfTrailingZeros(capacity);
+        if (sizeClass < MIN_CLASS || sizeClass > MAX_CLASS || !direct && buffer.arrayOffset() != 0) {
+            return;
+        }
+        long retained;
+        do {
+            retained = retainedBytes.get();
+            if (retained + capacity > maxRetainedBytes) {
+                return;
+            }
+        } while (!retainedBytes.compareAndSet(retained, retained + capacity));
+        classes[sizeClass].offer(buffer);
+    }
+
+    /**
+     * @return {@code true} if the pool hands out direct (off-heap) buffers
+     */
+    public boolean isDirect() {
+        return direct;
+    }
+
+    /**
+     * @return the maximum total capacity of the buffers kept for reuse
+     */
+    public long getMaxRetainedBytes() {
+        return maxRetainedBytes;
+    }
+
+    /**
+     * @return the total capacity of the buffers currently kept for reuse
+     */
+    public long getRetainedBytes() {
+        return retainedBytes.get();
+    }
+
+    /**
+     * @return the number of buffers allocated because no pooled buffer was available
+     */
+    public long getAllocationCount() {
+        return allocationCount.get();
+    }
+
+    /**
+     * Drops all buffers kept for reuse.
+     */
+    public void clear() {
+        for (int i = MIN_CLASS; i <= MAX_CLASS; i++) {
+            ByteBuffer buffer;
+            while ((buffer = classes[i].poll()) != null) {
+                retainedBytes.addAndGet(-buffer.capacity());
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "BufferPool{direct=" + direct
+               + ", retainedBytes=" + getRetainedBytes()
+               + ", maxRetainedBytes=" + maxRetainedBytes
+               + ", allocationCount=" + getAllocationCount() + "}";
+    }
+
+    private ByteBuffer allocate(int capacity) {
+        allocationCount.incrementAndGet();
+        return direct ? ByteBuffer.allocateDirect(capacity) : ByteBuffer.allocate(capacity);
+    }
+
+    private static int sizeClass(int numBytes) {
+        if (numBytes <= 1 << MIN_CLASS) {
+            return MIN_CLASS;
+        }
+        return 32 - Integer.numberOfLeadingZeros(numBytes - 1);
+    }
+
+    private static long defaultMaxRetainedBytes() {
+        return Math.min(Runtime.getRuntime().maxMemory() / 16, 256L * 1024 * 1024);
+    }
+}
@@ -0,0 +1,187 @@
+/*
+ *
+ * MIT License
+ *
+ * Copyright (c) 2021. Brockmann Consult GmbH (info@brockmann-consult.de)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package com.bc.zarr;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * An {@link OutputStream} collecting the written bytes in a heap buffer borrowed from a {@link BufferPool}.
+ * The written bytes are handed out as {@link ByteBuffer} without copying them. When the bytes are not
+ * needed any more, {@link #release()} gives the buffer back to the pool.
+ */
+public class ByteBufferOutputStream extends OutputStream {
+
+    private final BufferPool pool;
+    private ByteBuffer buffer;
+    private byte[] buf;
+    private int count;
+
+    /**
+     * @param pool        the pool to borrow the buffer from, must hand out heap buffers
+     * @param initialSize the expected number of bytes
+     */
+    public ByteBufferOutputStream(BufferPool pool, int initialSize) {
+        if (pool.isDirect()) {
+            throw new IllegalArgumentException("A heap buffer pool is needed.");
+        }
+        this.pool = pool;
+        this.buffer = pool.acquire(Math.max(initialSize, 32));
+        this.buf = buffer.array();
+    }
+
+    @Override
+    public void write(int b) {
+        ensureCapacity(count + 1);
+        buf[count++] = (byte) b;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) {
+        if (off < 0 || len < 0 || off + len > b.length) {
+            throw new IndexOutOfBoundsException();
+        }
+        ensureCapacity(count + len);
+        System.arraycopy(b, off, buf, count, len);
+        count += len;
+    }
+
+    /**
+     * Writes the bytes of the given buffer from its position up to its limit. The position of the buffer is
+     * advanced to its limit.
+     *
+     * @param bytes the bytes to write
+     */
+    public void write(ByteBuffer bytes) {
+        final int len = bytes.remaining();
+        ensureCapacity(count + len);
+        bytes.get(buf, count, len);
+        count += len;
+    }
+
+    /**
+     * Writes all remaining bytes of the given input stream, reading them directly into the internal buffer.
+     *
+     * @param is the stream to read up to its end
+     * @return the number of bytes read
+     */
+    public int writeAll(InputStream is) throws IOException {
+        final int start = count;
+        ensureCapacity(count + Math.max(is.available(), 1));
+        while (true) {
+            if (count == buf.length) {
+                // probe for the end of the stream before growing the buffer
+                final int b = is.read();
+                if (b < 0) {
+                    break;
+                }
+                write(b);
+            }
+            final int read = is.read(buf, count, buf.length - count);
+            if (read < 0) {
+                break;
+            }
+            count += read;
+        }
+        return count - start;
+    }
+
+    /**
+     * Writes the bytes of the given buffer from its position up to its limit to the output stream and
+     * advances the position of the buffer to its limit.
+     *
+     * @param source the bytes to write, a heap or direct buffer
+     * @param os     the output stream
+     */
+    public static void writeTo(ByteBuffer source, OutputStream os) throws IOException {
+        if (os instanceof ByteBufferOutputStream) {
+            ((ByteBufferOutputStream) os).write(source);
+            return;
+        }
+        if (source.hasArray()) {
+            os.write(source.array(), source.arrayOffset() + source.position(), source.remaining());
+            source.position(source.limit());
+            return;
+        }
+        final BufferPool pool = BufferPool.getDefault();
+        final ByteBuffer buffer = pool.acquire(Math.min(source.remaining(), 65536));
+        try {
+            final byte[] bytes = buffer.array();
+            while (source.hasRemaining()) {
+                final int n = Math.min(source.remaining(), buffer.limit());
+                source.get(bytes, 0, n);
+                os.write(bytes, 0, n);
+            }
+        } finally {
+            pool.release(buffer);
+        }
+    }
+
+    /**
+     * @return the number of bytes written
+     */
+    public int size() {
+        return count;
+    }
+
+    /**
+     * @return the internal buffer from position zero up to the number of written bytes. The buffer is
+     * only valid until the next write and until {@link #release()} is called.
+     */
+    public ByteBuffer toByteBuffer() {
+        buffer.clear();
+        buffer.limit(count);
+        return buffer;
+    }
+
+    /**
+     * Gives the internal buffer back to the pool. The stream must not be used afterwards.
+     */
+    public void release() {
+        if (buffer != null) {
+            pool.release(buffer);
+            buffer = null;
+            buf = null;
+        }
+    }
+
+    private void ensureCapacity(int minCapacity) {
+        if (minCapacity < 0) {
+            throw new OutOfMemoryError("Required buffer size exceeds the maximum array size.");
+        }
+        if (minCapacity > buf.length) {
+            final int newCapacity = (int) Math.min(Math.max((long) buf.length << 1, minCapacity), Integer.MAX_VALUE - 8);
+            final ByteBuffer grown = pool.acquire(Math.max(newCapacity, minCapacity));
+            System.arraycopy(buf, 0, grown.array(), 0, count);
+            pool.release(buffer);
+            buffer = grown;
+            buf = grown.array();
+        }
+    }
+}
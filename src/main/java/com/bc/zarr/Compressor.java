@@ -26,9 +26,13 @@
 
 package com.bc.zarr;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
+
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 
 public abstract class Compressor {
 
@@ -40,14 +44,124 @@ public abstract class Compressor {
 
     public abstract void uncompress(InputStream is, OutputStream os) throws IOException;
 
+    /**
+     * Returns the compressor used for the chunks of an array. Compressors whose numcodecs configuration does
+     * not contain the element type and the block layout, like {@code zfp}, take them from the array.
+     *
+     * @param dataType   the data type of the array
+     * @param byteOrder  the byte order of the array
+     * @param chunkShape the chunk shape of the array
+     * @param fillValue  the fill value of the array, which pads partial chunks, or {@code null}
+     * @return this compressor, unless the compressor depends on the data type or the chunk shape of the array
+     * @throws IllegalArgumentException if the compressor does not support the array
+     */
+    Compressor forArray(DataType dataType, ByteOrder byteOrder, int[] chunkShape, Number fillValue) {
+        return this;
+    }
+
+    /**
+     * @return {@code true} if the compressor works on direct buffers without copying them, so that callers
+     * should prefer buffers from {@link BufferPool#getDefaultDirect()}
+     */
+    @JsonIgnore
+    public boolean isDirectBufferPreferred() {
+        return false;
+    }
+
+    /**
+     * @param uncompressedLength the number of bytes to compress
+     * @return the maximum number of bytes {@link #compress(ByteBuffer, ByteBuffer)} writes for the given
+     * number of input bytes or {@code -1} if the compressor does not know such a bound
+     */
+    public int maxCompressedLength(int uncompressedLength) {
+        return -1;
+    }
+
+    /**
+     * Compresses the bytes of the source buffer from its position up to its limit into the target buffer,
+     * starting at the target's position. On return the source's position is its limit and the target's
+     * position is advanced by the number of written bytes. Both buffers may be heap or direct buffers.
+     * The default implementation uses the stream based {@link #compress(InputStream, OutputStream)}.
+     *
+     * @param source the uncompressed bytes
+     * @param target the buffer receiving the compressed bytes, should have at least
+     *               {@link #maxCompressedLength(int)} bytes remaining
+     * @return the number of compressed bytes written
+     * @throws IOException if the compressed bytes do not fit into the target
+     */
+    public int compress(ByteBuffer source, ByteBuffer target) throws IOException {
+        final int start = target.position();
+        compress(new ByteBufferInputStream(source), new TargetOutputStream(target, "Compressed"));
+        source.position(source.limit());
+        return target.position() - start;
+    }
+
+    /**
+     * Uncompresses the bytes of the source buffer from its position up to its limit into the target buffer,
+     * starting at the target's position. On return the source's position is its limit and the target's
+     * position is advanced by the number of written bytes. Both buffers may be heap or direct buffers.
+     * The default implementation uses the stream based {@link #uncompress(InputStream, OutputStream)}.
+     *
+     * @param source the compressed bytes
+     * @param target the buffer receiving the uncompressed bytes
+     * @return the number of uncompressed bytes written
+     * @throws IOException if the source is not valid or if the uncompressed bytes do not fit into the target
+     */
+    public int uncompress(ByteBuffer source, ByteBuffer target) throws IOException {
+        final int start = target.position();
+        uncompress(new ByteBufferInputStream(source), new TargetOutputStream(target, "Uncompressed"));
+        source.position(source.limit());
+        return target.position() - start;
+    }
+
+    static IOException overflow(String what, int available) {
+        return new IOException(what + " data exceeds the " + available + " bytes available in the target buffer.");
+    }
+
     void passThrough(InputStream is, OutputStream os) throws IOException {
-        final byte[] bytes = new byte[4096];
-        int read = is.read(bytes);
-        while (read >= 0) {
-            if (read > 0) {
-                os.write(bytes, 0, read);
+        final BufferPool pool = BufferPool.getDefault();
+        final ByteBuffer buffer = pool.acquire(8192);
+        try {
+            final byte[] bytes = buffer.array();
+            final int length = buffer.limit();
+            int read = is.read(bytes, 0, length);
+            while (read >= 0) {
+                if (read > 0) {
+                    os.write(bytes, 0, read);
+                }
+                read = is.read(bytes, 0, length);
+            }
+        } finally {
+            pool.release(buffer);
+        }
+    }
+
+    private static class TargetOutputStream extends OutputStream {
+
+        private final ByteBuffer target;
+        private final String what;
+        private final int available;
+
+        private TargetOutputStream(ByteBuffer target, String what) {
+            this.target = target;
+            this.what = what;
+            available = target.remaining();
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            if (!target.hasRemaining()) {
+                throw overflow(what, available);
+            }
+            target.put((byte) b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            if (len > target.remaining()) {
+                throw overflow(what, available);
             }
-            read = is.read(bytes);
+            target.put(b, off, len);
         }
     }
 }
@@ -26,26 +26,34 @@
 
 package com.bc.zarr;
 
-import com.sun.jna.ptr.NativeLongByReference;
-import org.blosc.BufferSizes;
-import org.blosc.IBloscDll;
+import com.bc.zarr.codec.Blosc;
+import com.bc.zarr.codec.Lz4;
+import com.bc.zarr.codec.Zfp;
+import com.bc.zarr.codec.Zstd;
+import com.bc.zarr.codec.ZlibPool;
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonInclude;
 import org.blosc.JBlosc;
 
+import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
-import java.io.DataInput;
-import java.io.DataInputStream;
+import java.io.EOFException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
 import java.util.zip.Deflater;
-import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPInputStream;
 import java.util.zip.Inflater;
-import java.util.zip.InflaterInputStream;
+import java.util.zip.ZipException;
 
 public class CompressorFactory {
 
@@ -120,6 +128,18 @@ public class CompressorFactory {
         if ("blosc".equals(id)) {
             return new BloscCompressor(properties);
         }
+        if ("zstd".equals(id)) {
+            return new ZstdCompressor(properties);
+        }
+        if ("lz4".equals(id)) {
+            return new Lz4Compressor(properties);
+        }
+        if ("gzip".equals(id)) {
+            return new GzipCompressor(properties);
+        }
+        if (ZfpCompressor.ID.equals(id)) {
+            return new ZfpCompressor(properties);
+        }
         throw new IllegalArgumentException("Compressor id:'" + id + "' not supported.");
     }
 
@@ -154,9 +174,42 @@ public class CompressorFactory {
         public void uncompress(InputStream is, OutputStream os) throws IOException {
             passThrough(is, os);
         }
+
+        @Override
+        public int maxCompressedLength(int uncompressedLength) {
+            return uncompressedLength;
+        }
+
+        @Override
+        public int compress(ByteBuffer source, ByteBuffer target) throws IOException {
+            return copy(source, target, "Compressed");
+        }
+
+        @Override
+        public int uncompress(ByteBuffer source, ByteBuffer target) throws IOException {
+            return copy(source, target, "Uncompressed");
+        }
+
+        private static int copy(ByteBuffer source, ByteBuffer target, String what) throws IOException {
+            final int n = source.remaining();
+            if (n > target.remaining()) {
+                throw overflow(what, target.remaining());
+            }
+            target.put(source);
+            return n;
+        }
     }
 
     private static class ZlibCompressor extends Compressor {
+
+        private final static int ZLIB_BUFFER_SIZE = 65536;
+
+        /**
+         * Receives the byte which tells a too small target from a stream ending exactly at its end. Its content is
+         * never read, so it is shared by all threads.
+         */
+        private final static byte[] OVERFLOW_PROBE = new byte[1];
+
         private final int level;
 
         private ZlibCompressor(Map<String, Object> map) {
@@ -193,17 +246,796 @@ public class CompressorFactory {
             return level;
         }
 
+        @Override
+        public int maxCompressedLength(int uncompressedLength) {
+            // see compressBound() of zlib
+            final long n = uncompressedLength;
+            final long bound = n + (n >> 12) + (n >> 14) + (n >> 25) + 13;
+            return bound <= Integer.MAX_VALUE ? (int) bound : -1;
+        }
+
+        @Override
+        public void compress(InputStream is, OutputStream os) throws IOException {
+            final BufferPool pool = BufferPool.getDefault();
+            final ByteBufferOutputStream input = new ByteBufferOutputStream(pool, is.available());
+            final ByteBuffer outBuffer = pool.acquire(ZLIB_BUFFER_SIZE);
+            final Deflater deflater = ZlibPool.borrowDeflater(level, false);
+            boolean completed = false;
+            try {
+                input.writeAll(is);
+                deflater.setInput(input.toByteBuffer().array(), 0, input.size());
+                deflater.finish();
+                final byte[] out = outBuffer.array();
+                while (!deflater.finished()) {
+                    final int n = deflater.deflate(out, 0, out.length);
+                    os.write(out, 0, n);
+                }
+                completed = true;
+            } finally {
+                ZlibPool.returnDeflater(deflater, false, completed);
+                input.release();
+                pool.release(outBuffer);
+            }
+        }
+
+        @Override
+        public void uncompress(InputStream is, OutputStream os) throws IOException {
+            final BufferPool pool = BufferPool.getDefault();
+            final ByteBufferOutputStream input = new ByteBufferOutputStream(pool, is.available());
+            final ByteBuffer outBuffer = pool.acquire(ZLIB_BUFFER_SIZE);
+            final Inflater inflater = ZlibPool.borrowInflater(false);
+            boolean completed = false;
+            try {
+                input.writeAll(is);
+                inflater.setInput(input.toByteBuffer().array(), 0, input.size());
+                final byte[] out = outBuffer.array();
+                while (!inflater.finished()) {
+                    final int n = inflater.inflate(out, 0, out.length);
+                    if (n == 0) {
+                        checkStalled(inflater);
+                    }
+                    os.write(out, 0, n);
+                }
+                completed = true;
+            } catch (DataFormatException e) {
+                throw invalidData(e);
+            } finally {
+                ZlibPool.returnInflater(inflater, false, completed);
+                input.release();
+                pool.release(outBuffer);
+            }
+        }
+
+        @Override
+        public int compress(ByteBuffer source, ByteBuffer target) throws IOException {
+            final BufferPool pool = BufferPool.getDefault();
+            ByteBuffer inBuffer = null;
+            ByteBuffer outBuffer = null;
+            final Deflater deflater = ZlibPool.borrowDeflater(level, false);
+            boolean completed = false;
+            try {
+                ByteBuffer in = source;
+                if (!source.hasArray()) {
+                    in = inBuffer = pool.acquire(source.remaining());
+                    inBuffer.put(source.duplicate());
+                    inBuffer.flip();
+                }
+                deflater.setInput(in.array(), in.arrayOffset() + in.position(), in.remaining());
+                deflater.finish();
+                final int available = target.remaining();
+                final ByteBuffer out = target.hasArray() ? target : (outBuffer = pool.acquire(available));
+                final int start = out.position();
+                while (!deflater.finished()) {
+                    if (!out.hasRemaining()) {
+                        throw overflow("Compressed", available);
+                    }
+                    final int n = deflater.deflate(out.array(), out.arrayOffset() + out.position(), out.remaining());
+                    out.position(out.position() + n);
+                }
+                final int written = out.position() - start;
+                if (outBuffer != null) {
+                    outBuffer.flip();
+                    target.put(outBuffer);
+                }
+                source.position(source.limit());
+                completed = true;
+                return written;
+            } finally {
+                ZlibPool.returnDeflater(deflater, false, completed);
+                pool.release(inBuffer);
+                pool.release(outBuffer);
+            }
+        }
+
+        @Override
+        public int uncompress(ByteBuffer source, ByteBuffer target) throws IOException {
+            final BufferPool pool = BufferPool.getDefault();
+            ByteBuffer inBuffer = null;
+            ByteBuffer outBuffer = null;
+            final Inflater inflater = ZlibPool.borrowInflater(false);
+            boolean completed = false;
+            try {
+                ByteBuffer in = source;
+                if (!source.hasArray()) {
+                    in = inBuffer = pool.acquire(source.remaining());
+                    inBuffer.put(source.duplicate());
+                    inBuffer.flip();
+                }
+                inflater.setInput(in.array(), in.arrayOffset() + in.position(), in.remaining());
+                final int available = target.remaining();
+                final ByteBuffer out = target.hasArray() ? target : (outBuffer = pool.acquire(available));
+                final int start = out.position();
+                while (!inflater.finished()) {
+                    if (!out.hasRemaining()) {
+                        // the stream may end exactly at the end of the target, else the target is too small
+                        if (inflater.inflate(OVERFLOW_PROBE) > 0) {
+                            throw overflow("Uncompressed", available);
+                        }
+                        if (!inflater.finished()) {
+                            checkStalled(inflater);
+                        }
+                        continue;
+                    }
+                    final int n = inflater.inflate(out.array(), out.arrayOffset() + out.position(), out.remaining());
+                    if (n == 0) {
+                        checkStalled(inflater);
+                    }
+                    out.position(out.position() + n);
+                }
+                final int written = out.position() - start;
+                if (outBuffer != null) {
+                    outBuffer.flip();
+                    target.put(outBuffer);
+                }
+                source.position(source.limit());
+                completed = true;
+                return written;
+            } catch (DataFormatException e) {
+                throw invalidData(e);
+            } finally {
+                ZlibPool.returnInflater(inflater, false, completed);
+                pool.release(inBuffer);
+                pool.release(outBuffer);
+            }
+        }
+
+        private static void checkStalled(Inflater inflater) throws IOException {
+            if (inflater.needsDictionary()) {
+                throw new ZipException("ZLIB preset dictionaries are not supported");
+            }
+            if (inflater.needsInput()) {
+                throw new EOFException("Unexpected end of ZLIB input stream");
+            }
+        }
+
+        private static ZipException invalidData(DataFormatException e) {
+            final String message = e.getMessage();
+            return new ZipException(message != null ? message : "Invalid ZLIB data format");
+        }
+    }
+
+    /**
+     * Base of the pure Java compressors, which work on byte arrays. Streams are collected and
+     * buffers without an accessible array are copied to pooled heap buffers.
+     */
+    private abstract static class ByteArrayCompressor extends Compressor {
+
+        /**
+         * @return the number of bytes written to {@code dst}
+         */
+        abstract int compressArray(byte[] src, int srcOff, int srcLen, byte[] dst, int dstOff, int dstLen) throws IOException;
+
+        /**
+         * @return the number of bytes written to {@code dst}
+         */
+        abstract int uncompressArray(byte[] src, int srcOff, int srcLen, byte[] dst, int dstOff, int dstLen) throws IOException;
+
+        /**
+         * @return the uncompressed size stored in the compressed data or -1 if the data does not contain it
+         */
+        abstract long uncompressedSize(byte[] src, int srcOff, int srcLen) throws IOException;
+
+        /**
+         * Uncompresses data whose uncompressed size is unknown.
+         */
+        byte[] uncompressArray(byte[] src, int srcOff, int srcLen) throws IOException {
+            throw new IOException(getId() + ": uncompressed size unknown");
+        }
+
         @Override
         public void compress(InputStream is, OutputStream os) throws IOException {
-            try (final DeflaterOutputStream dos = new DeflaterOutputStream(os, new Deflater(level))) {
-                passThrough(is, dos);
+            final BufferPool pool = BufferPool.getDefault();
+            final ByteBufferOutputStream input = new ByteBufferOutputStream(pool, is.available());
+            ByteBuffer out = null;
+            try {
+                input.writeAll(is);
+                out = pool.acquire(maxCompressedLength(input.size()));
+                final int n = compressArray(input.toByteBuffer().array(), 0, input.size(), out.array(), 0, out.capacity());
+                os.write(out.array(), 0, n);
+            } finally {
+                input.release();
+                pool.release(out);
             }
         }
 
         @Override
         public void uncompress(InputStream is, OutputStream os) throws IOException {
-            try (final InflaterInputStream iis = new InflaterInputStream(is, new Inflater())) {
-                passThrough(iis, os);
+            final BufferPool pool = BufferPool.getDefault();
+            final ByteBufferOutputStream input = new ByteBufferOutputStream(pool, is.available());
+            ByteBuffer out = null;
+            try {
+                input.writeAll(is);
+                final byte[] in = input.toByteBuffer().array();
+                final long size = uncompressedSize(in, 0, input.size());
+                if (size < 0 || size > Integer.MAX_VALUE - 8) {
+                    os.write(uncompressArray(in, 0, input.size()));
+                    return;
+                }
+                out = pool.acquire((int) size);
+                final int n = uncompressArray(in, 0, input.size(), out.array(), 0, (int) size);
+                os.write(out.array(), 0, n);
+            } finally {
+                input.release();
+                pool.release(out);
+            }
+        }
+
+        @Override
+        public int compress(ByteBuffer source, ByteBuffer target) throws IOException {
+            final BufferPool pool = BufferPool.getDefault();
+            ByteBuffer inBuffer = null;
+            ByteBuffer outBuffer = null;
+            try {
+                final ByteBuffer in = source.hasArray() ? source : (inBuffer = heapCopy(pool, source));
+                final int bound = maxCompressedLength(in.remaining());
+                // the data is compressed to a temporary buffer if the target might be too small
+                final ByteBuffer out = target.hasArray() && target.remaining() >= bound ? target : (outBuffer = pool.acquire(bound));
+                final int n = compressArray(in.array(), in.arrayOffset() + in.position(), in.remaining(),
+                                            out.array(), out.arrayOffset() + out.position(), out.remaining());
+                if (outBuffer != null) {
+                    if (n > target.remaining()) {
+                        throw overflow("Compressed", target.remaining());
+                    }
+                    outBuffer.limit(n);
+                    target.put(outBuffer);
+                } else {
+                    target.position(target.position() + n);
+                }
+                source.position(source.limit());
+                return n;
+            } finally {
+                pool.release(inBuffer);
+                pool.release(outBuffer);
+            }
+        }
+
+        @Override
+        public int uncompress(ByteBuffer source, ByteBuffer target) throws IOException {
+            final BufferPool pool = BufferPool.getDefault();
+            ByteBuffer inBuffer = null;
+            ByteBuffer outBuffer = null;
+            try {
+                final ByteBuffer in = source.hasArray() ? source : (inBuffer = heapCopy(pool, source));
+                final byte[] src = in.array();
+                final int srcOff = in.arrayOffset() + in.position();
+                final long size = uncompressedSize(src, srcOff, in.remaining());
+                if (size > target.remaining()) {
+                    throw overflow("Uncompressed", target.remaining());
+                }
+                final ByteBuffer out = target.hasArray() ? target : (outBuffer = pool.acquire(target.remaining()));
+                final int n = uncompressArray(src, srcOff, in.remaining(), out.array(), out.arrayOffset() + out.position(), out.remaining());
+                if (outBuffer != null) {
+                    outBuffer.limit(n);
+                    target.put(outBuffer);
+                } else {
+                    target.position(target.position() + n);
+                }
+                source.position(source.limit());
+                return n;
+            } finally {
+                pool.release(inBuffer);
+                pool.release(outBuffer);
+            }
+        }
+
+        private static ByteBuffer heapCopy(BufferPool pool, ByteBuffer source) {
+            final ByteBuffer copy = pool.acquire(source.remaining());
+            copy.put(source.duplicate());
+            copy.flip();
+            return copy;
+        }
+    }
+
+    /**
+     * The numcodecs {@code Zstd} codec, implemented in pure Java by {@link Zstd}.
+     */
+    private static class ZstdCompressor extends ByteArrayCompressor {
+        private final int level;
+        private final boolean checksum;
+
+        private ZstdCompressor(Map<String, Object> map) {
+            final Object levelObj = map.get("level");
+            if (levelObj == null) {
+                this.level = Zstd.DEFAULT_LEVEL;
+            } else if (levelObj instanceof String) {
+                this.level = Integer.parseInt((String) levelObj);
+            } else {
+                this.level = ((Number) levelObj).intValue();
+            }
+            if (level < Zstd.MIN_LEVEL || level > Zstd.MAX_LEVEL) {
+                throw new IllegalArgumentException(
+                        "zstd: level parameter must be between " + Zstd.MIN_LEVEL + " and " + Zstd.MAX_LEVEL + " but was: " + level);
+            }
+            final Object checksumObj = map.get("checksum");
+            if (checksumObj == null) {
+                this.checksum = false;
+            } else if (checksumObj instanceof String) {
+                this.checksum = Boolean.parseBoolean((String) checksumObj);
+            } else {
+                this.checksum = (Boolean) checksumObj;
+            }
+        }
+
+        @Override
+        public String toString() {
+            return "compressor=" + getId() + "/level=" + level + (checksum ? "/checksum=true" : "");
+        }
+
+        @Override
+        public String getId() {
+            return "zstd";
+        }
+
+        // this getter is needed for JSON serialisation
+        public int getLevel() {
+            return level;
+        }
+
+        // older numcodecs versions do not know the checksum parameter, so it is only written if enabled
+        @JsonInclude(JsonInclude.Include.NON_DEFAULT)
+        public boolean getChecksum() {
+            return checksum;
+        }
+
+        @Override
+        public int maxCompressedLength(int uncompressedLength) {
+            return Zstd.maxCompressedLength(uncompressedLength);
+        }
+
+        @Override
+        int compressArray(byte[] src, int srcOff, int srcLen, byte[] dst, int dstOff, int dstLen) throws IOException {
+            return Zstd.compress(src, srcOff, srcLen, dst, dstOff, dstLen, level, checksum);
+        }
+
+        @Override
+        int uncompressArray(byte[] src, int srcOff, int srcLen, byte[] dst, int dstOff, int dstLen) throws IOException {
+            return Zstd.decompress(src, srcOff, srcLen, dst, dstOff, dstLen);
+        }
+
+        @Override
+        long uncompressedSize(byte[] src, int srcOff, int srcLen) throws IOException {
+            return Zstd.getDecompressedSize(src, srcOff, srcLen);
+        }
+
+        @Override
+        byte[] uncompressArray(byte[] src, int srcOff, int srcLen) throws IOException {
+            return Zstd.decompress(src, srcOff, srcLen);
+        }
+    }
+
+    /**
+     * The numcodecs {@code LZ4} codec, implemented in pure Java by {@link Lz4}. Like numcodecs, the
+     * LZ4 block is prefixed with the uncompressed size as a 4 byte little endian integer.
+     */
+    private static class Lz4Compressor extends ByteArrayCompressor {
+
+        private static final int HEADER_SIZE = 4;
+
+        private final int acceleration;
+
+        private Lz4Compressor(Map<String, Object> map) {
+            final Object accelerationObj = map.get("acceleration");
+            if (accelerationObj == null) {
+                this.acceleration = Lz4.DEFAULT_ACCELERATION;
+            } else if (accelerationObj instanceof String) {
+                this.acceleration = Integer.parseInt((String) accelerationObj);
+            } else {
+                this.acceleration = ((Number) accelerationObj).intValue();
+            }
+            // like numcodecs, any value is accepted; values outside of 1 to 65537 are clamped by the codec
+        }
+
+        @Override
+        public String toString() {
+            return "compressor=" + getId() + "/acceleration=" + acceleration;
+        }
+
+        @Override
+        public String getId() {
+            return "lz4";
+        }
+
+        // this getter is needed for JSON serialisation
+        public int getAcceleration() {
+            return acceleration;
+        }
+
+        @Override
+        public int maxCompressedLength(int uncompressedLength) {
+            final int bound = Lz4.maxCompressedLength(uncompressedLength);
+            return bound < 0 || bound > Integer.MAX_VALUE - HEADER_SIZE ? -1 : HEADER_SIZE + bound;
+        }
+
+        @Override
+        int compressArray(byte[] src, int srcOff, int srcLen, byte[] dst, int dstOff, int dstLen) throws IOException {
+            if (dstLen < HEADER_SIZE) {
+                throw new IOException("lz4: destination buffer too small");
+            }
+            writeSize(dst, dstOff, srcLen);
+            return HEADER_SIZE + Lz4.compress(src, srcOff, srcLen, dst, dstOff + HEADER_SIZE, dstLen - HEADER_SIZE, acceleration);
+        }
+
+        @Override
+        int uncompressArray(byte[] src, int srcOff, int srcLen, byte[] dst, int dstOff, int dstLen) throws IOException {
+            final int size = (int) uncompressedSize(src, srcOff, srcLen);
+            if (size > dstLen) {
+                throw new IOException("lz4: destination buffer too small");
+            }
+            final int n = Lz4.decompress(src, srcOff + HEADER_SIZE, srcLen - HEADER_SIZE, dst, dstOff, size);
+            if (n != size) {
+                throw new IOException("lz4: corrupted data, expected " + size + " bytes but got " + n);
+            }
+            return n;
+        }
+
+        @Override
+        long uncompressedSize(byte[] src, int srcOff, int srcLen) throws IOException {
+            if (srcLen < HEADER_SIZE) {
+                throw new IOException("lz4: corrupted data, missing size header");
+            }
+            final int size = (src[srcOff] & 0xFF) | (src[srcOff + 1] & 0xFF) << 8
+                             | (src[srcOff + 2] & 0xFF) << 16 | (src[srcOff + 3] & 0xFF) << 24;
+            if (size < 0) {
+                throw new IOException("lz4: corrupted data, invalid size " + size);
+            }
+            return size;
+        }
+
+        private static void writeSize(byte[] dst, int off, int size) {
+            dst[off] = (byte) size;
+            dst[off + 1] = (byte) (size >>> 8);
+            dst[off + 2] = (byte) (size >>> 16);
+            dst[off + 3] = (byte) (size >>> 24);
+        }
+    }
+
+    /**
+     * The numcodecs {@code GZip} codec, which is also the {@code gzip} codec of Zarr v3: a single gzip member
+     * with the modification time 0, like the one written by the Python {@code gzip} module.
+     */
+    private static class GzipCompressor extends ByteArrayCompressor {
+
+        private static final int HEADER_SIZE = 10;
+        private static final int TRAILER_SIZE = 8;
+        private static final int FHCRC = 2, FEXTRA = 4, FNAME = 8, FCOMMENT = 16;
+
+        private final int level;
+
+        private GzipCompressor(Map<String, Object> map) {
+            final Object levelObj = map.get("level");
+            if (levelObj == null) {
+                this.level = 1;
+            } else if (levelObj instanceof String) {
+                this.level = Integer.parseInt((String) levelObj);
+            } else {
+                this.level = ((Number) levelObj).intValue();
+            }
+            if (level < 0 || level > 9) {
+                throw new IllegalArgumentException("gzip: level parameter must be between 0 and 9 but was: " + level);
+            }
+        }
+
+        @Override
+        public String toString() {
+            return "compressor=" + getId() + "/level=" + level;
+        }
+
+        @Override
+        public String getId() {
+            return "gzip";
+        }
+
+        // this getter is needed for JSON serialisation
+        public int getLevel() {
+            return level;
+        }
+
+        @Override
+        public int maxCompressedLength(int uncompressedLength) {
+            // see compressBound() of zlib, which includes the 6 bytes of the zlib header and trailer
+            final long n = uncompressedLength;
+            final long bound = n + (n >> 12) + (n >> 14) + (n >> 25) + 13 - 6 + HEADER_SIZE + TRAILER_SIZE;
+            return bound <= Integer.MAX_VALUE ? (int) bound : -1;
+        }
+
+        @Override
+        int compressArray(byte[] src, int srcOff, int srcLen, byte[] dst, int dstOff, int dstLen) throws IOException {
+            if (dstLen < HEADER_SIZE + TRAILER_SIZE) {
+                throw new IOException("gzip: destination buffer too small");
+            }
+            // magic, deflate, no flags, no modification time, extra flags as written by zlib, unknown OS
+            final byte xfl = (byte) (level == 9 ? 2 : level == 1 ? 4 : 0);
+            final byte[] header = {0x1f, (byte) 0x8b, 8, 0, 0, 0, 0, 0, xfl, (byte) 0xff};
+            System.arraycopy(header, 0, dst, dstOff, HEADER_SIZE);
+            final Deflater deflater = ZlibPool.borrowDeflater(level, true);
+            boolean completed = false;
+            try {
+                deflater.setInput(src, srcOff, srcLen);
+                deflater.finish();
+                int pos = dstOff + HEADER_SIZE;
+                final int end = dstOff + dstLen - TRAILER_SIZE;
+                while (!deflater.finished()) {
+                    if (pos == end) {
+                        throw new IOException("gzip: destination buffer too small");
+                    }
+                    pos += deflater.deflate(dst, pos, end - pos);
+                }
+                final CRC32 crc = new CRC32();
+                crc.update(src, srcOff, srcLen);
+                writeInt(dst, pos, (int) crc.getValue());
+                writeInt(dst, pos + 4, srcLen);
+                completed = true;
+                return pos + TRAILER_SIZE - dstOff;
+            } finally {
+                ZlibPool.returnDeflater(deflater, true, completed);
+            }
+        }
+
+        @Override
+        int uncompressArray(byte[] src, int srcOff, int srcLen, byte[] dst, int dstOff, int dstLen) throws IOException {
+            final int start = skipHeader(src, srcOff, srcLen);
+            final Inflater inflater = ZlibPool.borrowInflater(true);
+            boolean completed = false;
+            try {
+                inflater.setInput(src, start, srcOff + srcLen - start);
+                int n = 0;
+                while (!inflater.finished()) {
+                    if (n == dstLen) {
+                        throw new IOException("gzip: destination buffer too small");
+                    }
+                    final int inflated = inflater.inflate(dst, dstOff + n, dstLen - n);
+                    if (inflated == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                        throw new EOFException("gzip: unexpected end of compressed data");
+                    }
+                    n += inflated;
+                }
+                final int trailer = srcOff + srcLen - inflater.getRemaining();
+                if (trailer + TRAILER_SIZE > srcOff + srcLen) {
+                    throw new EOFException("gzip: unexpected end of compressed data");
+                }
+                final CRC32 crc = new CRC32();
+                crc.update(dst, dstOff, n);
+                if (readInt(src, trailer) != (int) crc.getValue() || readInt(src, trailer + 4) != n) {
+                    throw new ZipException("gzip: corrupted data, checksum or size mismatch");
+                }
+                completed = true;
+                return n;
+            } catch (DataFormatException e) {
+                throw new ZipException("gzip: " + e.getMessage());
+            } finally {
+                ZlibPool.returnInflater(inflater, true, completed);
+            }
+        }
+
+        @Override
+        long uncompressedSize(byte[] src, int srcOff, int srcLen) throws IOException {
+            // the size in the trailer is only stored modulo 2^32
+            return -1;
+        }
+
+        @Override
+        byte[] uncompressArray(byte[] src, int srcOff, int srcLen) throws IOException {
+            try (GZIPInputStream is = new GZIPInputStream(new ByteArrayInputStream(src, srcOff, srcLen))) {
+                final ByteArrayOutputStream os = new ByteArrayOutputStream(2 * srcLen);
+                final byte[] buffer = new byte[8192];
+                for (int n = is.read(buffer); n >= 0; n = is.read(buffer)) {
+                    os.write(buffer, 0, n);
+                }
+                return os.toByteArray();
+            }
+        }
+
+        private static int skipHeader(byte[] src, int off, int len) throws IOException {
+            final int end = off + len;
+            if (len < HEADER_SIZE + TRAILER_SIZE || src[off] != 0x1f || src[off + 1] != (byte) 0x8b || src[off + 2] != 8) {
+                throw new ZipException("gzip: not in gzip format");
+            }
+            final int flags = src[off + 3];
+            int pos = off + HEADER_SIZE;
+            if ((flags & FEXTRA) != 0) {
+                pos += 2 + ((src[pos] & 0xFF) | (src[pos + 1] & 0xFF) << 8);
+            }
+            if ((flags & FNAME) != 0) {
+                pos = skipZeroTerminated(src, pos, end);
+            }
+            if ((flags & FCOMMENT) != 0) {
+                pos = skipZeroTerminated(src, pos, end);
+            }
+            if ((flags & FHCRC) != 0) {
+                pos += 2;
+            }
+            if (pos >= end) {
+                throw new EOFException("gzip: unexpected end of compressed data");
+            }
+            return pos;
+        }
+
+        private static int skipZeroTerminated(byte[] src, int pos, int end) {
+            while (pos < end && src[pos] != 0) {
+                pos++;
+            }
+            return pos + 1;
+        }
+
+        private static int readInt(byte[] b, int p) {
+            return (b[p] & 0xFF) | (b[p + 1] & 0xFF) << 8 | (b[p + 2] & 0xFF) << 16 | (b[p + 3] & 0xFF) << 24;
+        }
+
+        private static void writeInt(byte[] b, int p, int v) {
+            b[p] = (byte) v;
+            b[p + 1] = (byte) (v >>> 8);
+            b[p + 2] = (byte) (v >>> 16);
+            b[p + 3] = (byte) (v >>> 24);
+        }
+    }
+
+    /**
+     * Lossy compression of floating point chunks, implemented in pure Java by {@link Zfp}. The values are
+     * coded in blocks of 4 values along each non unit dimension of the chunk, so the compressor needs the
+     * data type and the chunk shape of the array and is bound to them by {@link #forArray}. The data
+     * carries its own header and is not compatible with the zfp library or the numcodecs {@code zfpy} codec,
+     * so the compressor id is namespaced like the {@code jzarr.constant} chunk marker.
+     */
+    private static class ZfpCompressor extends ByteArrayCompressor {
+
+        private static final String ID = "jzarr.zfp";
+
+        private static final String[] MODES = {"rate", "precision", "accuracy"};
+
+        private final String mode;
+        private final double parameter;
+        private final int type;
+        private final ByteOrder order;
+        private final int[] chunkShape;
+
+        private ZfpCompressor(Map<String, Object> map) {
+            final Object modeObj = map.get("mode");
+            this.mode = modeObj == null ? "accuracy" : modeObj.toString();
+            if (!Arrays.asList(MODES).contains(mode)) {
+                throw new IllegalArgumentException("zfp: mode not supported: '" + mode + "'; expected one of " + Arrays.toString(MODES));
+            }
+            final String name = parameterName();
+            final Object parameterObj = map.get(name);
+            if (parameterObj == null) {
+                throw new IllegalArgumentException("zfp: " + name + " parameter must be given for mode " + mode);
+            } else if (parameterObj instanceof String) {
+                this.parameter = Double.parseDouble((String) parameterObj);
+            } else {
+                this.parameter = ((Number) parameterObj).doubleValue();
+            }
+            if ("precision".equals(mode) && parameter != Math.rint(parameter)) {
+                throw new IllegalArgumentException("zfp: precision parameter must be an integer but was: " + parameter);
+            }
+            // validates the parameter
+            Zfp.maxCompressedLength(Zfp.TYPE_DOUBLE, new int[]{1}, zfpMode(), parameter);
+            this.type = -1;
+            this.order = null;
+            this.chunkShape = null;
+        }
+
+        private ZfpCompressor(ZfpCompressor unbound, int type, ByteOrder order, int[] chunkShape) {
+            this.mode = unbound.mode;
+            this.parameter = unbound.parameter;
+            this.type = type;
+            this.order = order;
+            this.chunkShape = chunkShape.clone();
+        }
+
+        @Override
+        Compressor forArray(DataType dataType, ByteOrder byteOrder, int[] chunkShape, Number fillValue) {
+            if (fillValue != null && (Double.isNaN(fillValue.doubleValue()) || Double.isInfinite(fillValue.doubleValue()))) {
+                // partial chunks are padded with the fill value, which zfp can not code
+                throw new IllegalArgumentException("zfp: only finite fill values are supported but the fill value of the array was: " + fillValue);
+            }
+            if (dataType == DataType.f4) {
+                return new ZfpCompressor(this, Zfp.TYPE_FLOAT, byteOrder, chunkShape);
+            }
+            if (dataType == DataType.f8) {
+                return new ZfpCompressor(this, Zfp.TYPE_DOUBLE, byteOrder, chunkShape);
+            }
+            throw new IllegalArgumentException("zfp: only the data types f4 and f8 are supported but the data type of the array was: " + dataType);
+        }
+
+        @Override
+        public String toString() {
+            return "compressor=" + getId() + "/mode=" + mode + "/" + parameterName() + "=" + formatParameter();
+        }
+
+        @Override
+        public String getId() {
+            return ID;
+        }
+
+        // this getter is needed for JSON serialisation
+        public String getMode() {
+            return mode;
+        }
+
+        // only the parameter of the mode is written to JSON
+        @JsonInclude(JsonInclude.Include.NON_NULL)
+        public Double getRate() {
+            return "rate".equals(mode) ? parameter : null;
+        }
+
+        @JsonInclude(JsonInclude.Include.NON_NULL)
+        public Integer getPrecision() {
+            return "precision".equals(mode) ? (int) parameter : null;
+        }
+
+        @JsonInclude(JsonInclude.Include.NON_NULL)
+        public Double getTolerance() {
+            return "accuracy".equals(mode) ? parameter : null;
+        }
+
+        private String parameterName() {
+            return "rate".equals(mode) ? "rate" : "precision".equals(mode) ? "precision" : "tolerance";
+        }
+
+        private Object formatParameter() {
+            return "precision".equals(mode) ? (Object) (int) parameter : (Object) parameter;
+        }
+
+        private int zfpMode() {
+            return "rate".equals(mode) ? Zfp.MODE_FIXED_RATE
+                    : "precision".equals(mode) ? Zfp.MODE_FIXED_PRECISION : Zfp.MODE_FIXED_ACCURACY;
+        }
+
+        @Override
+        public int maxCompressedLength(int uncompressedLength) {
+            return chunkShape != null ? Zfp.maxCompressedLength(type, chunkShape, zfpMode(), parameter) : -1;
+        }
+
+        @Override
+        public void compress(InputStream is, OutputStream os) throws IOException {
+            checkBound();
+            super.compress(is, os);
+        }
+
+        @Override
+        public int compress(ByteBuffer source, ByteBuffer target) throws IOException {
+            checkBound();
+            return super.compress(source, target);
+        }
+
+        @Override
+        int compressArray(byte[] src, int srcOff, int srcLen, byte[] dst, int dstOff, int dstLen) throws IOException {
+            checkBound();
+            return Zfp.compress(src, srcOff, srcLen, dst, dstOff, dstLen, order, type, chunkShape, zfpMode(), parameter);
+        }
+
+        @Override
+        int uncompressArray(byte[] src, int srcOff, int srcLen, byte[] dst, int dstOff, int dstLen) throws IOException {
+            return Zfp.decompress(src, srcOff, srcLen, dst, dstOff, dstLen);
+        }
+
+        @Override
+        long uncompressedSize(byte[] src, int srcOff, int srcLen) throws IOException {
+            return Zfp.getDecompressedSize(src, srcOff, srcLen);
+        }
+
+        private void checkBound() throws IOException {
+            if (chunkShape == null) {
+                throw new IOException("zfp: the data type and the chunk shape are unknown, the compressor can only compress the chunks of an array");
             }
         }
     }
@@ -223,6 +1055,16 @@ public class CompressorFactory {
         public final static int defaultShuffle = BYTESHUFFLE;
         public final static String keyBlocksize = "blocksize";
         public final static int defaultBlocksize = 0;
+        public final static String keyNthreads = "nthreads";
+        public final static int AUTO_NTHREADS = 0;
+        public final static int MAX_NTHREADS = 256;
+        public final static String propertyNthreads = "jzarr.blosc.nthreads";
+        public final static String keyImplementation = "implementation";
+        public final static String IMPLEMENTATION_AUTO = "auto";
+        public final static String IMPLEMENTATION_NATIVE = "native";
+        public final static String IMPLEMENTATION_JAVA = "java";
+        public final static String propertyImplementation = "jzarr.blosc.implementation";
+        public final static String[] supportedImplementations = new String[]{IMPLEMENTATION_AUTO, IMPLEMENTATION_NATIVE, IMPLEMENTATION_JAVA};
         public final static int[] supportedShuffle = new int[]{/*AUTOSHUFFLE, */NOSHUFFLE, BYTESHUFFLE, BITSHUFFLE};
         public final static String[] supportedCnames = new String[]{"zstd", "blosclz", defaultCname, "lz4hc", "zlib"/*, "snappy"*/};
 
@@ -234,10 +1076,17 @@ public class CompressorFactory {
                     put(keyBlocksize, defaultBlocksize);
                 }});
 
+        final static int AUTO_BYTES_PER_THREAD = 1024 * 1024;
+        private final static AtomicInteger activeOperations = new AtomicInteger();
+
         private final int clevel;
         private final int blocksize;
         private final int shuffle;
         private final String cname;
+        private final int nthreads;
+        private final String implementation;
+        // the pure Java implementation or null if the native library is used
+        private final JavaBlosc javaBlosc;
 
         private BloscCompressor(Map<String, Object> map) {
             final Object cnameObj = map.get(keyCname);
@@ -285,6 +1134,33 @@ public class CompressorFactory {
             } else {
                 this.blocksize = ((Number) blocksizeObj).intValue();
             }
+
+            Object nthreadsObj = map.get(keyNthreads);
+            if (nthreadsObj == null) {
+                nthreadsObj = System.getProperty(propertyNthreads, "1");
+            }
+            if (nthreadsObj instanceof String) {
+                final String nthreadsString = ((String) nthreadsObj).trim();
+                this.nthreads = "auto".equalsIgnoreCase(nthreadsString) ? AUTO_NTHREADS : Integer.parseInt(nthreadsString);
+            } else {
+                this.nthreads = ((Number) nthreadsObj).intValue();
+            }
+            if (nthreads < AUTO_NTHREADS || nthreads > MAX_NTHREADS) {
+                throw new IllegalArgumentException("blosc: nthreads parameter must be between 0 (auto) and " + MAX_NTHREADS + " but was: " + nthreads);
+            }
+
+            Object implementationObj = map.get(keyImplementation);
+            if (implementationObj == null) {
+                implementationObj = System.getProperty(propertyImplementation, IMPLEMENTATION_AUTO);
+            }
+            this.implementation = implementationObj.toString().trim().toLowerCase();
+            if (Arrays.stream(supportedImplementations).noneMatch(implementation::equals)) {
+                throw new IllegalArgumentException(
+                        "blosc: implementation not supported: '" + implementationObj + "'; expected one of " + Arrays.toString(supportedImplementations));
+            }
+            final boolean useJava = IMPLEMENTATION_JAVA.equals(implementation)
+                                    || IMPLEMENTATION_AUTO.equals(implementation) && !isNativeAvailable();
+            this.javaBlosc = useJava ? new JavaBlosc(this) : null;
         }
 
         @Override
@@ -308,52 +1184,282 @@ public class CompressorFactory {
             return cname;
         }
 
+        /**
+         * The number of threads blosc uses internally to compress or uncompress a single chunk.
+         * {@link #AUTO_NTHREADS} means that the count is chosen per chunk from the chunk size and the
+         * cores not used by other blosc operations running at the same time.
+         * This is a runtime setting and therefore not written to the array header.
+         */
+        @JsonIgnore
+        public int getNthreads() {
+            return nthreads;
+        }
+
+        /**
+         * Whether chunks are compressed by the native c-blosc library, {@link #IMPLEMENTATION_NATIVE}, or by the
+         * pure Java implementation of {@link Blosc}, {@link #IMPLEMENTATION_JAVA}, which writes the same format
+         * but uses the calling thread only. {@link #IMPLEMENTATION_AUTO} selects the native library if it can
+         * be loaded and the Java implementation otherwise.
+         * This is a runtime setting and therefore not written to the array header.
+         */
+        @JsonIgnore
+        public String getImplementation() {
+            return implementation;
+        }
+
+        boolean usesJavaImplementation() {
+            return javaBlosc != null;
+        }
+
         @Override
         public String toString() {
             return "compressor=" + getId()
                    + "/cname=" + cname + "/clevel=" + clevel
-                   + "/blocksize=" + blocksize + "/shuffle=" + shuffle;
+                   + "/blocksize=" + blocksize + "/shuffle=" + shuffle
+                   + (nthreads != 1 ? "/nthreads=" + (nthreads == AUTO_NTHREADS ? "auto" : nthreads) : "")
+                   + (!IMPLEMENTATION_AUTO.equals(implementation) ? "/implementation=" + implementation : "");
+        }
+
+        /**
+         * @return {@code true} for the native library, the Java implementation works on heap buffers
+         */
+        @Override
+        public boolean isDirectBufferPreferred() {
+            return javaBlosc == null;
+        }
+
+        @Override
+        public int maxCompressedLength(int uncompressedLength) {
+            return Blosc.maxCompressedLength(uncompressedLength);
         }
 
         @Override
         public void compress(InputStream is, OutputStream os) throws IOException {
-            final ByteArrayOutputStream baos = new ByteArrayOutputStream();
-            passThrough(is, baos);
-            final byte[] inputBytes = baos.toByteArray();
-            final int inputSize = inputBytes.length;
-            final int outputSize = inputSize + JBlosc.OVERHEAD;
-            final ByteBuffer inputBuffer = ByteBuffer.wrap(inputBytes);
-            final ByteBuffer outBuffer = ByteBuffer.allocate(outputSize);
-            final int i = JBlosc.compressCtx(clevel, shuffle, 1, inputBuffer, inputSize, outBuffer, outputSize, cname, blocksize, 1);
-            final BufferSizes bs = cbufferSizes(outBuffer);
-            byte[] compressedChunk = Arrays.copyOfRange(outBuffer.array(), 0, (int) bs.getCbytes());
-            os.write(compressedChunk);
+            if (javaBlosc != null) {
+                javaBlosc.compress(is, os);
+                return;
+            }
+            final ByteBufferOutputStream input = new ByteBufferOutputStream(BufferPool.getDefault(), is.available());
+            ByteBuffer outBuffer = null;
+            try {
+                input.writeAll(is);
+                final ByteBuffer source = input.toByteBuffer();
+                outBuffer = BufferPool.getDefaultDirect().acquire(maxCompressedLength(source.remaining()));
+                compress(source, outBuffer);
+                outBuffer.flip();
+                ByteBufferOutputStream.writeTo(outBuffer, os);
+            } finally {
+                input.release();
+                BufferPool.releaseDefault(outBuffer);
+            }
         }
 
         @Override
         public void uncompress(InputStream is, OutputStream os) throws IOException {
-            final DataInput di = new DataInputStream(is);
-            byte[] header = new byte[JBlosc.OVERHEAD];
-            di.readFully(header);
-            BufferSizes bs = cbufferSizes(ByteBuffer.wrap(header));
-            int compressedSize = (int) bs.getCbytes();
-            int uncompressedSize = (int) bs.getNbytes();
-            byte[] inBytes = Arrays.copyOf(header, compressedSize);
-            di.readFully(inBytes, header.length, compressedSize - header.length);
-            ByteBuffer outBuffer = ByteBuffer.allocate(uncompressedSize);
-            JBlosc.decompressCtx(ByteBuffer.wrap(inBytes), outBuffer, outBuffer.limit(), 1);
-            os.write(outBuffer.array());
-        }
-
-        private BufferSizes cbufferSizes(ByteBuffer cbuffer) {
-            NativeLongByReference nbytes = new NativeLongByReference();
-            NativeLongByReference cbytes = new NativeLongByReference();
-            NativeLongByReference blocksize = new NativeLongByReference();
-            IBloscDll.blosc_cbuffer_sizes(cbuffer, nbytes, cbytes, blocksize);
-            BufferSizes bs = new BufferSizes(nbytes.getValue().longValue(),
-                                             cbytes.getValue().longValue(),
-                                             blocksize.getValue().longValue());
-            return bs;
+            if (javaBlosc != null) {
+                javaBlosc.uncompress(is, os);
+                return;
+            }
+            final ByteBufferOutputStream input = new ByteBufferOutputStream(BufferPool.getDefault(), is.available());
+            ByteBuffer outBuffer = null;
+            try {
+                input.writeAll(is);
+                final ByteBuffer source = input.toByteBuffer();
+                outBuffer = BufferPool.getDefaultDirect().acquire(Blosc.getUncompressedSize(header(source), 0));
+                uncompress(source, outBuffer);
+                outBuffer.flip();
+                ByteBufferOutputStream.writeTo(outBuffer, os);
+            } finally {
+                input.release();
+                BufferPool.releaseDefault(outBuffer);
+            }
+        }
+
+        /**
+         * Compresses without copying if both buffers are direct buffers. Heap buffers are copied to or from
+         * buffers of {@link BufferPool#getDefaultDirect()}. The Java implementation does the opposite.
+         */
+        @Override
+        public int compress(ByteBuffer source, ByteBuffer target) throws IOException {
+            if (javaBlosc != null) {
+                return javaBlosc.compress(source, target);
+            }
+            final BufferPool pool = BufferPool.getDefaultDirect();
+            final int inputSize = source.remaining();
+            final int outputSize = target.remaining();
+            ByteBuffer inBuffer = null;
+            ByteBuffer outBuffer = null;
+            activeOperations.incrementAndGet();
+            try {
+                final ByteBuffer src = source.isDirect() ? source.slice() : (inBuffer = copyToDirect(source, pool));
+                final ByteBuffer dst = target.isDirect() ? target.slice() : (outBuffer = pool.acquire(outputSize));
+                final int cbytes = JBlosc.compressCtx(clevel, shuffle, 1, src, inputSize, dst, outputSize, cname, blocksize, threadsFor(inputSize));
+                if (cbytes == 0) {
+                    throw overflow("Compressed", outputSize);
+                }
+                if (cbytes < 0) {
+                    throw new IOException("blosc: compression failed with return code " + cbytes);
+                }
+                if (outBuffer != null) {
+                    outBuffer.limit(cbytes);
+                    target.put(outBuffer);
+                } else {
+                    target.position(target.position() + cbytes);
+                }
+                source.position(source.limit());
+                return cbytes;
+            } finally {
+                activeOperations.decrementAndGet();
+                pool.release(inBuffer);
+                pool.release(outBuffer);
+            }
+        }
+
+        /**
+         * Uncompresses without copying if both buffers are direct buffers. Heap buffers are copied to or from
+         * buffers of {@link BufferPool#getDefaultDirect()}. The Java implementation does the opposite.
+         */
+        @Override
+        public int uncompress(ByteBuffer source, ByteBuffer target) throws IOException {
+            if (javaBlosc != null) {
+                return javaBlosc.uncompress(source, target);
+            }
+            final byte[] header = header(source);
+            final int compressedSize = Blosc.getCompressedSize(header, 0);
+            final int uncompressedSize = Blosc.getUncompressedSize(header, 0);
+            if (compressedSize > source.remaining()) {
+                throw new EOFException("blosc: " + compressedSize + " compressed bytes expected but only " + source.remaining() + " available");
+            }
+            if (uncompressedSize > target.remaining()) {
+                throw overflow("Uncompressed", target.remaining());
+            }
+            final BufferPool pool = BufferPool.getDefaultDirect();
+            ByteBuffer inBuffer = null;
+            ByteBuffer outBuffer = null;
+            activeOperations.incrementAndGet();
+            try {
+                final ByteBuffer src = source.isDirect() ? source.slice() : (inBuffer = copyToDirect(source, pool));
+                final ByteBuffer dst = target.isDirect() ? target.slice() : (outBuffer = pool.acquire(uncompressedSize));
+                final int nbytes = JBlosc.decompressCtx(src, dst, uncompressedSize, threadsFor(uncompressedSize));
+                if (nbytes < 0) {
+                    throw new IOException("blosc: decompression failed with return code " + nbytes);
+                }
+                if (outBuffer != null) {
+                    outBuffer.limit(nbytes);
+                    target.put(outBuffer);
+                } else {
+                    target.position(target.position() + nbytes);
+                }
+                source.position(source.limit());
+                return nbytes;
+            } finally {
+                activeOperations.decrementAndGet();
+                pool.release(inBuffer);
+                pool.release(outBuffer);
+            }
+        }
+
+        private static ByteBuffer copyToDirect(ByteBuffer source, BufferPool pool) {
+            final ByteBuffer copy = pool.acquire(source.remaining());
+            copy.put(source.duplicate());
+            copy.flip();
+            return copy;
+        }
+
+        private static byte[] header(ByteBuffer source) throws IOException {
+            if (source.remaining() < Blosc.OVERHEAD) {
+                throw new EOFException("blosc: header of " + Blosc.OVERHEAD + " bytes expected but only " + source.remaining() + " available");
+            }
+            final byte[] header = new byte[Blosc.OVERHEAD];
+            source.duplicate().get(header);
+            return header;
+        }
+
+        private int threadsFor(int nbytes) {
+            if (nthreads != AUTO_NTHREADS) {
+                return nthreads;
+            }
+            return autoNthreads(nbytes, Runtime.getRuntime().availableProcessors(), activeOperations.get());
+        }
+
+        /**
+         * @param nbytes           the uncompressed size of the chunk
+         * @param cores            the number of available cores
+         * @param activeOperations the number of blosc operations currently running, including the calling one
+         * @return one thread per {@link #AUTO_BYTES_PER_THREAD} bytes, but no more than the calling operation's share of the cores
+         */
+        static int autoNthreads(int nbytes, int cores, int activeOperations) {
+            final int freeCores = cores / Math.max(activeOperations, 1);
+            final int bySize = nbytes / AUTO_BYTES_PER_THREAD;
+            return Math.max(1, Math.min(MAX_NTHREADS, Math.min(freeCores, bySize)));
+        }
+
+        /**
+         * @return whether the native c-blosc library can be loaded
+         */
+        static boolean isNativeAvailable() {
+            return NativeLibrary.AVAILABLE;
+        }
+
+        private static final class NativeLibrary {
+
+            private static final boolean AVAILABLE = load();
+
+            private static boolean load() {
+                try {
+                    new JBlosc();
+                    return true;
+                } catch (LinkageError e) {
+                    return false;
+                }
+            }
+        }
+
+        /**
+         * The pure Java implementation of blosc, with the settings of the enclosing compressor.
+         */
+        private static final class JavaBlosc extends ByteArrayCompressor {
+
+            private final BloscCompressor settings;
+
+            private JavaBlosc(BloscCompressor settings) {
+                this.settings = settings;
+            }
+
+            @Override
+            public String getId() {
+                return settings.getId();
+            }
+
+            @Override
+            public String toString() {
+                return settings.toString();
+            }
+
+            @Override
+            public int maxCompressedLength(int uncompressedLength) {
+                return Blosc.maxCompressedLength(uncompressedLength);
+            }
+
+            @Override
+            int compressArray(byte[] src, int srcOff, int srcLen, byte[] dst, int dstOff, int dstLen) throws IOException {
+                // like the native path, the data is shuffled with a type size of 1
+                return Blosc.compress(src, srcOff, srcLen, dst, dstOff, dstLen,
+                                      settings.cname, settings.clevel, settings.shuffle, 1, settings.blocksize);
+            }
+
+            @Override
+            int uncompressArray(byte[] src, int srcOff, int srcLen, byte[] dst, int dstOff, int dstLen) throws IOException {
+                return Blosc.decompress(src, srcOff, srcLen, dst, dstOff, dstLen);
+            }
+
+            @Override
+            long uncompressedSize(byte[] src, int srcOff, int srcLen) throws IOException {
+                if (srcLen < Blosc.OVERHEAD) {
+                    throw new EOFException("blosc: header of " + Blosc.OVERHEAD + " bytes expected but only " + srcLen + " available");
+                }
+                return Blosc.getUncompressedSize(src, srcOff);
+            }
         }
     }
 }
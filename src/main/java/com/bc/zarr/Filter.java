@@ -0,0 +1,96 @@
+/*
+ *
+ * MIT License
+ *
+ * Copyright (c) 2021. Brockmann Consult GmbH (info@brockmann-consult.de)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package com.bc.zarr;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * A numcodecs filter, applied to the chunk bytes before they are compressed and after they are
+ * uncompressed. Filters are created by the {@link FilterFactory} and are serialized with their
+ * numcodecs configuration to the {@code filters} list of the {@code .zarray} header.
+ * <p>
+ * The byte order of the buffers given to a filter is ignored. Filters interpret the bytes with the
+ * byte order of their own {@code dtype}.
+ */
+public abstract class Filter {
+
+    public abstract String getId();
+
+    public abstract String toString();
+
+    /**
+     * Returns the filter applied to the chunks of an array of the given data type. Filters whose numcodecs
+     * configuration does not contain the element type, like {@code bitround}, take it from the array.
+     *
+     * @param dataType  the data type of the array
+     * @param byteOrder the byte order of the array
+     * @return this filter, unless the filter depends on the data type of the array
+     */
+    Filter forArray(DataType dataType, ByteOrder byteOrder) {
+        return this;
+    }
+
+    /**
+     * @param decodedLength the number of bytes to encode
+     * @return the number of bytes {@link #encode(ByteBuffer, ByteBuffer)} writes for the given number of bytes
+     */
+    public int encodedLength(int decodedLength) {
+        return decodedLength;
+    }
+
+    /**
+     * @param encodedLength the number of bytes to decode
+     * @return the number of bytes {@link #decode(ByteBuffer, ByteBuffer)} writes for the given number of bytes
+     */
+    public int decodedLength(int encodedLength) {
+        return encodedLength;
+    }
+
+    /**
+     * Encodes the bytes of the source buffer from its position up to its limit into the target buffer,
+     * starting at the target's position. On return the source's position is its limit and the target's
+     * position is advanced by {@link #encodedLength(int)} bytes.
+     *
+     * @param source the chunk bytes
+     * @param target the buffer receiving the encoded bytes
+     * @throws IOException if the source can not be encoded
+     */
+    public abstract void encode(ByteBuffer source, ByteBuffer target) throws IOException;
+
+    /**
+     * Decodes the bytes of the source buffer from its position up to its limit into the target buffer,
+     * starting at the target's position. On return the source's position is its limit and the target's
+     * position is advanced by {@link #decodedLength(int)} bytes.
+     *
+     * @param source the encoded bytes
+     * @param target the buffer receiving the chunk bytes
+     * @throws IOException if the source can not be decoded
+     */
+    public abstract void decode(ByteBuffer source, ByteBuffer target) throws IOException;
+}
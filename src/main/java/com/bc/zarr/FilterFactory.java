@@ -0,0 +1,986 @@
+/*
+ *
+ * MIT License
+ *
+ * Copyright (c) 2021. Brockmann Consult GmbH (info@brockmann-consult.de)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package com.bc.zarr;
+
+import com.bc.zarr.codec.Shuffle;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.nio.ShortBuffer;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+public class FilterFactory {
+
+    /**
+     * Creates a new {@link Filter} instance according to the given properties.
+     *
+     * @param properties a Map containing the numcodecs configuration of the filter, including its id
+     * @return a new Filter instance according to the properties
+     * @throws IllegalArgumentException If it is not able to create a Filter.
+     */
+    public static Filter create(Map<String, Object> properties) {
+        final String id = (String) properties.get("id");
+        return create(id, properties);
+    }
+
+    /**
+     * Creates a new {@link Filter} instance according to the id and the given properties.
+     *
+     * @param id           the numcodecs id of the filter
+     * @param keyValuePair an even count of key value pairs defining the filter specific properties
+     * @return a new Filter instance according to the id and the properties
+     * @throws IllegalArgumentException If it is not able to create a Filter.
+     */
+    public static Filter create(String id, Object... keyValuePair) {
+        if (keyValuePair.length % 2 != 0) {
+            throw new IllegalArgumentException("The count of keyValuePair arguments must be an even count.");
+        }
+        final Map<String, Object> map = new HashMap<>();
+        for (int i = 0; i < keyValuePair.length; i += 2) {
+            map.put((String) keyValuePair[i], keyValuePair[i + 1]);
+        }
+        return create(id, map);
+    }
+
+    /**
+     * Creates a new {@link Filter} instance according to the id and the given properties.
+     *
+     * @param id         the numcodecs id of the filter
+     * @param properties a Map containing the filter specific properties
+     * @return a new Filter instance according to the id and the properties
+     * @throws IllegalArgumentException If it is not able to create a Filter.
+     */
+    public static Filter create(String id, Map<String, Object> properties) {
+        if ("delta".equals(id)) {
+            return new DeltaFilter(properties);
+        }
+        if ("shuffle".equals(id)) {
+            return new ShuffleFilter(properties);
+        }
+        if ("fixedscaleoffset".equals(id)) {
+            return new FixedScaleOffsetFilter(properties);
+        }
+        if ("quantize".equals(id)) {
+            return new QuantizeFilter(properties);
+        }
+        if ("bitround".equals(id)) {
+            return new BitRoundFilter(properties);
+        }
+        throw new IllegalArgumentException("Filter id:'" + id + "' not supported.");
+    }
+
+    /**
+     * Creates the filters of a {@code .zarray} header.
+     *
+     * @param configurations the numcodecs configurations of the filters or {@code null}
+     * @return the filters, an empty array if there are none
+     */
+    static Filter[] create(List<Map<String, Object>> configurations) {
+        if (configurations == null) {
+            return new Filter[0];
+        }
+        final Filter[] filters = new Filter[configurations.size()];
+        for (int i = 0; i < filters.length; i++) {
+            filters[i] = create(configurations.get(i));
+        }
+        return filters;
+    }
+
+    /**
+     * @return the filters applied to the chunks of an array of the given data type
+     * @see Filter#forArray(DataType, ByteOrder)
+     */
+    static Filter[] forArray(Filter[] filters, DataType dataType, ByteOrder byteOrder) {
+        final Filter[] bound = new Filter[filters.length];
+        for (int i = 0; i < filters.length; i++) {
+            bound[i] = filters[i].forArray(dataType, byteOrder);
+        }
+        return bound;
+    }
+
+    /**
+     * Creates the {@code transpose} codec of Zarr v3, which permutes the dimensions of a chunk.
+     * It is only used for arrays in zarr format 3 and has no numcodecs equivalent.
+     *
+     * @param order       the permutation, dimension {@code i} of the encoded chunk is dimension {@code order[i]} of the chunk
+     * @param chunkShape  the shape of the chunks
+     * @param elementSize the number of bytes of an element
+     * @return the filter
+     */
+    static Filter createTranspose(int[] order, int[] chunkShape, int elementSize) {
+        return new TransposeFilter(order, chunkShape, elementSize);
+    }
+
+    private static String getString(Map<String, Object> map, String id, String key, String defaultValue) {
+        final Object value = map.get(key);
+        if (value == null) {
+            if (defaultValue == null) {
+                throw new IllegalArgumentException(id + ": " + key + " parameter must be given");
+            }
+            return defaultValue;
+        }
+        return value.toString();
+    }
+
+    private static int getInt(Map<String, Object> map, String id, String key, Integer defaultValue) {
+        final Object value = map.get(key);
+        if (value == null) {
+            if (defaultValue == null) {
+                throw new IllegalArgumentException(id + ": " + key + " parameter must be given");
+            }
+            return defaultValue;
+        } else if (value instanceof String) {
+            return Integer.parseInt((String) value);
+        }
+        return ((Number) value).intValue();
+    }
+
+    private static double getDouble(Map<String, Object> map, String id, String key) {
+        final Object value = map.get(key);
+        if (value == null) {
+            throw new IllegalArgumentException(id + ": " + key + " parameter must be given");
+        } else if (value instanceof String) {
+            return Double.parseDouble((String) value);
+        }
+        return ((Number) value).doubleValue();
+    }
+
+    /**
+     * A numpy dtype like {@code "<i4"}, giving access to the elements of a buffer.
+     */
+    static final class ElementType {
+
+        final DataType type;
+        final ByteOrder order;
+        final int size;
+
+        private ElementType(DataType type, ByteOrder order) {
+            this.type = type;
+            this.order = order;
+            this.size = Integer.parseInt(type.name().substring(1));
+        }
+
+        static ElementType parse(String id, String dtype) {
+            // like numpy, a missing byte order character means the native byte order
+            ByteOrder order = ByteOrder.nativeOrder();
+            String name = dtype;
+            if (dtype.startsWith("<") || dtype.startsWith("|")) {
+                order = ByteOrder.LITTLE_ENDIAN;
+                name = dtype.substring(1);
+            } else if (dtype.startsWith(">")) {
+                order = ByteOrder.BIG_ENDIAN;
+                name = dtype.substring(1);
+            } else if (dtype.startsWith("=")) {
+                name = dtype.substring(1);
+            }
+            try {
+                return new ElementType(DataType.valueOf(name), order);
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException(id + ": dtype '" + dtype + "' not supported");
+            }
+        }
+
+        boolean isFloat() {
+            return type == DataType.f4 || type == DataType.f8;
+        }
+
+        /**
+         * @return the value rounded to the precision of float32 arithmetic if this type is {@code f4}
+         */
+        double narrow(double value) {
+            return type == DataType.f4 ? (float) value : value;
+        }
+
+        /**
+         * @return the value wrapped to the range of this integer type
+         */
+        long wrap(long value) {
+            switch (type) {
+                case i1:
+                    return (byte) value;
+                case u1:
+                    return value & 0xFFL;
+                case i2:
+                    return (short) value;
+                case u2:
+                    return value & 0xFFFFL;
+                case i4:
+                    return (int) value;
+                case u4:
+                    return value & 0xFFFFFFFFL;
+                default:
+                    return value;
+            }
+        }
+
+        long getLong(ByteBuffer buffer, int index) {
+            switch (type) {
+                case i1:
+                    return buffer.get(index);
+                case u1:
+                    return buffer.get(index) & 0xFFL;
+                case i2:
+                    return buffer.getShort(index * 2);
+                case u2:
+                    return buffer.getShort(index * 2) & 0xFFFFL;
+                case i4:
+                    return buffer.getInt(index * 4);
+                case u4:
+                    return buffer.getInt(index * 4) & 0xFFFFFFFFL;
+                case i8:
+                    return buffer.getLong(index * 8);
+                default:
+                    return (long) getDouble(buffer, index);
+            }
+        }
+
+        double getDouble(ByteBuffer buffer, int index) {
+            switch (type) {
+                case f4:
+                    return buffer.getFloat(index * 4);
+                case f8:
+                    return buffer.getDouble(index * 8);
+                default:
+                    return getLong(buffer, index);
+            }
+        }
+
+        void putLong(ByteBuffer buffer, int index, long value) {
+            switch (type) {
+                case i1:
+                case u1:
+                    buffer.put(index, (byte) value);
+                    break;
+                case i2:
+                case u2:
+                    buffer.putShort(index * 2, (short) value);
+                    break;
+                case i4:
+                case u4:
+                    buffer.putInt(index * 4, (int) value);
+                    break;
+                case i8:
+                    buffer.putLong(index * 8, value);
+                    break;
+                default:
+                    putDouble(buffer, index, value);
+            }
+        }
+
+        void putDouble(ByteBuffer buffer, int index, double value) {
+            switch (type) {
+                case f4:
+                    buffer.putFloat(index * 4, (float) value);
+                    break;
+                case f8:
+                    buffer.putDouble(index * 8, value);
+                    break;
+                default:
+                    // like numpy, floating point values are truncated towards zero
+                    putLong(buffer, index, (long) value);
+            }
+        }
+
+        @Override
+        public String toString() {
+            if (size == 1) {
+                return "|" + type;
+            }
+            return (order == ByteOrder.BIG_ENDIAN ? ">" : "<") + type;
+        }
+    }
+
+    /**
+     * Base of the filters which convert elements of a {@code dtype} to elements of an {@code astype}.
+     */
+    private abstract static class ElementFilter extends Filter {
+
+        final ElementType dtype;
+        final ElementType astype;
+
+        private ElementFilter(String id, Map<String, Object> map) {
+            final String dtypeString = getString(map, id, "dtype", null);
+            this.dtype = ElementType.parse(id, dtypeString);
+            this.astype = ElementType.parse(id, getString(map, id, "astype", dtypeString));
+        }
+
+        // this getter is needed for JSON serialisation
+        public String getDtype() {
+            return dtype.toString();
+        }
+
+        // this getter is needed for JSON serialisation
+        public String getAstype() {
+            return astype.toString();
+        }
+
+        @Override
+        public int encodedLength(int decodedLength) {
+            return decodedLength / dtype.size * astype.size;
+        }
+
+        @Override
+        public int decodedLength(int encodedLength) {
+            return encodedLength / astype.size * dtype.size;
+        }
+
+        @Override
+        public void encode(ByteBuffer source, ByteBuffer target) throws IOException {
+            final int count = source.remaining() / dtype.size;
+            checkRemaining(target, count * astype.size);
+            encode(source.slice().order(dtype.order), target.slice().order(astype.order), count);
+            source.position(source.limit());
+            target.position(target.position() + count * astype.size);
+        }
+
+        @Override
+        public void decode(ByteBuffer source, ByteBuffer target) throws IOException {
+            final int count = source.remaining() / astype.size;
+            checkRemaining(target, count * dtype.size);
+            decode(source.slice().order(astype.order), target.slice().order(dtype.order), count);
+            source.position(source.limit());
+            target.position(target.position() + count * dtype.size);
+        }
+
+        /**
+         * @param src   the {@code dtype} elements, with the byte order of {@code dtype}
+         * @param dst   the buffer receiving the {@code astype} elements, with the byte order of {@code astype}
+         * @param count the number of elements
+         */
+        abstract void encode(ByteBuffer src, ByteBuffer dst, int count);
+
+        /**
+         * @param src   the {@code astype} elements, with the byte order of {@code astype}
+         * @param dst   the buffer receiving the {@code dtype} elements, with the byte order of {@code dtype}
+         * @param count the number of elements
+         */
+        abstract void decode(ByteBuffer src, ByteBuffer dst, int count);
+
+        private void checkRemaining(ByteBuffer target, int numBytes) throws IOException {
+            if (numBytes > target.remaining()) {
+                throw new IOException(getId() + ": " + numBytes + " bytes exceed the target buffer of " + target.remaining() + " bytes.");
+            }
+        }
+    }
+
+    /**
+     * The numcodecs {@code Delta} filter, which stores the first element and the differences between
+     * consecutive elements.
+     */
+    private static class DeltaFilter extends ElementFilter {
+
+        private DeltaFilter(Map<String, Object> map) {
+            super("delta", map);
+        }
+
+        @Override
+        public String getId() {
+            return "delta";
+        }
+
+        @Override
+        public String toString() {
+            return "filter=" + getId() + "/dtype=" + getDtype() + "/astype=" + getAstype();
+        }
+
+        @Override
+        void encode(ByteBuffer src, ByteBuffer dst, int count) {
+            if (dtype.type == astype.type) {
+                encodeSameType(src, dst, count);
+            } else if (dtype.isFloat()) {
+                double previous = 0;
+                for (int i = 0; i < count; i++) {
+                    final double value = dtype.getDouble(src, i);
+                    astype.putDouble(dst, i, dtype.narrow(value - previous));
+                    previous = value;
+                }
+            } else {
+                long previous = 0;
+                for (int i = 0; i < count; i++) {
+                    final long value = dtype.getLong(src, i);
+                    astype.putLong(dst, i, dtype.wrap(value - previous));
+                    previous = value;
+                }
+            }
+        }
+
+        @Override
+        void decode(ByteBuffer src, ByteBuffer dst, int count) {
+            if (dtype.type == astype.type) {
+                decodeSameType(src, dst, count);
+            } else if (dtype.isFloat()) {
+                double sum = 0;
+                for (int i = 0; i < count; i++) {
+                    sum = dtype.narrow(sum + astype.getDouble(src, i));
+                    dtype.putDouble(dst, i, sum);
+                }
+            } else {
+                long sum = 0;
+                for (int i = 0; i < count; i++) {
+                    sum = dtype.wrap(sum + astype.getLong(src, i));
+                    dtype.putLong(dst, i, sum);
+                }
+            }
+        }
+
+        // signed and unsigned integers of the same size share the two's complement arithmetic
+        private void encodeSameType(ByteBuffer src, ByteBuffer dst, int count) {
+            switch (dtype.size * (dtype.isFloat() ? -1 : 1)) {
+                case 1: {
+                    byte previous = 0;
+                    for (int i = 0; i < count; i++) {
+                        final byte value = src.get(i);
+                        dst.put(i, (byte) (value - previous));
+                        previous = value;
+                    }
+                    break;
+                }
+                case 2: {
+                    final ShortBuffer s = src.asShortBuffer();
+                    final ShortBuffer d = dst.asShortBuffer();
+                    short previous = 0;
+                    for (int i = 0; i < count; i++) {
+                        final short value = s.get(i);
+                        d.put(i, (short) (value - previous));
+                        previous = value;
+                    }
+                    break;
+                }
+                case 4: {
+                    final IntBuffer s = src.asIntBuffer();
+                    final IntBuffer d = dst.asIntBuffer();
+                    int previous = 0;
+                    for (int i = 0; i < count; i++) {
+                        final int value = s.get(i);
+                        d.put(i, value - previous);
+                        previous = value;
+                    }
+                    break;
+                }
+                case 8: {
+                    final LongBuffer s = src.asLongBuffer();
+                    final LongBuffer d = dst.asLongBuffer();
+                    long previous = 0;
+                    for (int i = 0; i < count; i++) {
+                        final long value = s.get(i);
+                        d.put(i, value - previous);
+                        previous = value;
+                    }
+                    break;
+                }
+                case -4: {
+                    final FloatBuffer s = src.asFloatBuffer();
+                    final FloatBuffer d = dst.asFloatBuffer();
+                    float previous = 0;
+                    for (int i = 0; i < count; i++) {
+                        final float value = s.get(i);
+                        d.put(i, value - previous);
+                        previous = value;
+                    }
+                    break;
+                }
+                default: {
+                    final DoubleBuffer s = src.asDoubleBuffer();
+                    final DoubleBuffer d = dst.asDoubleBuffer();
+                    double previous = 0;
+                    for (int i = 0; i < count; i++) {
+                        final double value = s.get(i);
+                        d.put(i, value - previous);
+                        previous = value;
+                    }
+                }
+            }
+        }
+
+        private void decodeSameType(ByteBuffer src, ByteBuffer dst, int count) {
+            switch (dtype.size * (dtype.isFloat() ? -1 : 1)) {
+                case 1: {
+                    byte sum = 0;
+                    for (int i = 0; i < count; i++) {
+                        sum += src.get(i);
+                        dst.put(i, sum);
+                    }
+                    break;
+                }
+                case 2: {
+                    final ShortBuffer s = src.asShortBuffer();
+                    final ShortBuffer d = dst.asShortBuffer();
+                    short sum = 0;
+                    for (int i = 0; i < count; i++) {
+                        sum += s.get(i);
+                        d.put(i, sum);
+                    }
+                    break;
+                }
+                case 4: {
+                    final IntBuffer s = src.asIntBuffer();
+                    final IntBuffer d = dst.asIntBuffer();
+                    int sum = 0;
+                    for (int i = 0; i < count; i++) {
+                        sum += s.get(i);
+                        d.put(i, sum);
+                    }
+                    break;
+                }
+                case 8: {
+                    final LongBuffer s = src.asLongBuffer();
+                    final LongBuffer d = dst.asLongBuffer();
+                    long sum = 0;
+                    for (int i = 0; i < count; i++) {
+                        sum += s.get(i);
+                        d.put(i, sum);
+                    }
+                    break;
+                }
+                case -4: {
+                    final FloatBuffer s = src.asFloatBuffer();
+                    final FloatBuffer d = dst.asFloatBuffer();
+                    float sum = 0;
+                    for (int i = 0; i < count; i++) {
+                        sum += s.get(i);
+                        d.put(i, sum);
+                    }
+                    break;
+                }
+                default: {
+                    final DoubleBuffer s = src.asDoubleBuffer();
+                    final DoubleBuffer d = dst.asDoubleBuffer();
+                    double sum = 0;
+                    for (int i = 0; i < count; i++) {
+                        sum += s.get(i);
+                        d.put(i, sum);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * The numcodecs {@code Shuffle} filter, the byte shuffle of blosc as a separate step.
+     */
+    private static class ShuffleFilter extends Filter {
+
+        private final int elementsize;
+
+        private ShuffleFilter(Map<String, Object> map) {
+            this.elementsize = getInt(map, "shuffle", "elementsize", 4);
+            if (elementsize < 1) {
+                throw new IllegalArgumentException("shuffle: elementsize parameter must be positive but was: " + elementsize);
+            }
+        }
+
+        @Override
+        public String getId() {
+            return "shuffle";
+        }
+
+        @Override
+        public String toString() {
+            return "filter=" + getId() + "/elementsize=" + elementsize;
+        }
+
+        // this getter is needed for JSON serialisation
+        public int getElementsize() {
+            return elementsize;
+        }
+
+        @Override
+        public void encode(ByteBuffer source, ByteBuffer target) throws IOException {
+            transform(source, target, true);
+        }
+
+        @Override
+        public void decode(ByteBuffer source, ByteBuffer target) throws IOException {
+            transform(source, target, false);
+        }
+
+        private void transform(ByteBuffer source, ByteBuffer target, boolean shuffle) throws IOException {
+            final int length = source.remaining();
+            if (length > target.remaining()) {
+                throw new IOException("shuffle: " + length + " bytes exceed the target buffer of " + target.remaining() + " bytes.");
+            }
+            if (source.hasArray() && target.hasArray()) {
+                final byte[] src = source.array();
+                final int srcOff = source.arrayOffset() + source.position();
+                final byte[] dst = target.array();
+                final int dstOff = target.arrayOffset() + target.position();
+                if (shuffle) {
+                    Shuffle.shuffle(src, srcOff, dst, dstOff, length, elementsize);
+                } else {
+                    Shuffle.unshuffle(src, srcOff, dst, dstOff, length, elementsize);
+                }
+            } else {
+                final int count = elementsize > 1 ? length / elementsize : 0;
+                final int srcPos = source.position();
+                final int dstPos = target.position();
+                for (int b = 0; b < elementsize && count > 0; b++) {
+                    for (int i = 0; i < count; i++) {
+                        final int element = i * elementsize + b;
+                        final int plane = b * count + i;
+                        if (shuffle) {
+                            target.put(dstPos + plane, source.get(srcPos + element));
+                        } else {
+                            target.put(dstPos + element, source.get(srcPos + plane));
+                        }
+                    }
+                }
+                for (int i = count * elementsize; i < length; i++) {
+                    target.put(dstPos + i, source.get(srcPos + i));
+                }
+            }
+            source.position(source.limit());
+            target.position(target.position() + length);
+        }
+    }
+
+    /**
+     * The {@code transpose} codec of Zarr v3. The elements of a chunk are reordered so that dimension {@code i}
+     * of the encoded chunk is dimension {@code order[i]} of the chunk, both in C order.
+     */
+    private static class TransposeFilter extends Filter {
+
+        private final int[] order;
+        private final int[] chunkShape;
+        private final int elementSize;
+
+        private TransposeFilter(int[] order, int[] chunkShape, int elementSize) {
+            if (order.length != chunkShape.length) {
+                throw new IllegalArgumentException("transpose: order must have " + chunkShape.length + " dimensions but was: " + Arrays.toString(order));
+            }
+            final boolean[] used = new boolean[order.length];
+            for (int dim : order) {
+                if (dim < 0 || dim >= order.length || used[dim]) {
+                    throw new IllegalArgumentException("transpose: order is not a permutation: " + Arrays.toString(order));
+                }
+                used[dim] = true;
+            }
+            this.order = order.clone();
+            this.chunkShape = chunkShape.clone();
+            this.elementSize = elementSize;
+        }
+
+        @Override
+        public String getId() {
+            return "transpose";
+        }
+
+        @Override
+        public String toString() {
+            return "filter=" + getId() + "/order=" + Arrays.toString(order);
+        }
+
+        // this getter is needed for JSON serialisation
+        public int[] getOrder() {
+            return order.clone();
+        }
+
+        @Override
+        public void encode(ByteBuffer source, ByteBuffer target) throws IOException {
+            transform(source, target, true);
+        }
+
+        @Override
+        public void decode(ByteBuffer source, ByteBuffer target) throws IOException {
+            transform(source, target, false);
+        }
+
+        private void transform(ByteBuffer source, ByteBuffer target, boolean encode) throws IOException {
+            final int rank = chunkShape.length;
+            final int length = source.remaining();
+            long count = 1;
+            for (int size : chunkShape) {
+                count *= size;
+            }
+            if (length != count * elementSize || length > target.remaining()) {
+                throw new IOException("transpose: " + length + " bytes do not match the chunk shape " + Arrays.toString(chunkShape)
+                                      + " or exceed the target buffer of " + target.remaining() + " bytes.");
+            }
+            // the strides of the chunk, visited in the order of the encoded dimensions
+            final int[] strides = new int[rank];
+            final int[] sizes = new int[rank];
+            int stride = elementSize;
+            final int[] chunkStrides = new int[rank];
+            for (int i = rank - 1; i >= 0; i--) {
+                chunkStrides[i] = stride;
+                stride *= chunkShape[i];
+            }
+            for (int i = 0; i < rank; i++) {
+                strides[i] = chunkStrides[order[i]];
+                sizes[i] = chunkShape[order[i]];
+            }
+            final int srcPos = source.position();
+            final int dstPos = target.position();
+            final int[] index = new int[rank];
+            int chunkOffset = 0;
+            for (int encodedOffset = 0; encodedOffset < length; encodedOffset += elementSize) {
+                for (int b = 0; b < elementSize; b++) {
+                    if (encode) {
+                        target.put(dstPos + encodedOffset + b, source.get(srcPos + chunkOffset + b));
+                    } else {
+                        target.put(dstPos + chunkOffset + b, source.get(srcPos + encodedOffset + b));
+                    }
+                }
+                for (int i = rank - 1; i >= 0; i--) {
+                    chunkOffset += strides[i];
+                    if (++index[i] < sizes[i]) {
+                        break;
+                    }
+                    chunkOffset -= strides[i] * sizes[i];
+                    index[i] = 0;
+                }
+            }
+            source.position(source.limit());
+            target.position(dstPos + length);
+        }
+    }
+
+    /**
+     * The numcodecs {@code FixedScaleOffset} filter, which stores {@code round((x - offset) * scale)},
+     * usually as a smaller integer type.
+     */
+    private static class FixedScaleOffsetFilter extends ElementFilter {
+
+        private final double scale;
+        private final double offset;
+
+        private FixedScaleOffsetFilter(Map<String, Object> map) {
+            super("fixedscaleoffset", map);
+            this.scale = getDouble(map, "fixedscaleoffset", "scale");
+            this.offset = getDouble(map, "fixedscaleoffset", "offset");
+        }
+
+        @Override
+        public String getId() {
+            return "fixedscaleoffset";
+        }
+
+        @Override
+        public String toString() {
+            return "filter=" + getId() + "/scale=" + scale + "/offset=" + offset + "/dtype=" + getDtype() + "/astype=" + getAstype();
+        }
+
+        // this getter is needed for JSON serialisation
+        public double getScale() {
+            return scale;
+        }
+
+        // this getter is needed for JSON serialisation
+        public double getOffset() {
+            return offset;
+        }
+
+        @Override
+        void encode(ByteBuffer src, ByteBuffer dst, int count) {
+            // like numpy, float32 data is computed in float32, all other data in float64
+            final double offset = dtype.narrow(this.offset);
+            final double scale = dtype.narrow(this.scale);
+            for (int i = 0; i < count; i++) {
+                final double value = dtype.narrow(dtype.narrow(dtype.getDouble(src, i) - offset) * scale);
+                astype.putDouble(dst, i, Math.rint(value));
+            }
+        }
+
+        @Override
+        void decode(ByteBuffer src, ByteBuffer dst, int count) {
+            final double offset = astype.narrow(this.offset);
+            final double scale = astype.narrow(this.scale);
+            for (int i = 0; i < count; i++) {
+                dtype.putDouble(dst, i, astype.narrow(astype.narrow(astype.getDouble(src, i) / scale) + offset));
+            }
+        }
+    }
+
+    /**
+     * The numcodecs {@code Quantize} filter, which rounds floating point values to a number of binary
+     * digits sufficient for the given number of decimal digits. It is lossy and only applied when encoding.
+     */
+    private static class QuantizeFilter extends ElementFilter {
+
+        private final int digits;
+        private final double scale;
+
+        private QuantizeFilter(Map<String, Object> map) {
+            super("quantize", map);
+            if (!dtype.isFloat()) {
+                throw new IllegalArgumentException("quantize: only floating point data types are supported but dtype was: " + getDtype());
+            }
+            this.digits = getInt(map, "quantize", "digits", null);
+            // the smallest power of two not below 10^digits, as computed by numcodecs
+            final double bits = Math.ceil(Math.log(Math.pow(10.0, digits)) / Math.log(2));
+            this.scale = Math.pow(2.0, bits);
+        }
+
+        @Override
+        public String getId() {
+            return "quantize";
+        }
+
+        @Override
+        public String toString() {
+            return "filter=" + getId() + "/digits=" + digits + "/dtype=" + getDtype() + "/astype=" + getAstype();
+        }
+
+        // this getter is needed for JSON serialisation
+        public int getDigits() {
+            return digits;
+        }
+
+        @Override
+        void encode(ByteBuffer src, ByteBuffer dst, int count) {
+            final double scale = dtype.narrow(this.scale);
+            for (int i = 0; i < count; i++) {
+                final double value = dtype.narrow(Math.rint(dtype.narrow(scale * dtype.getDouble(src, i))) / scale);
+                astype.putDouble(dst, i, value);
+            }
+        }
+
+        @Override
+        void decode(ByteBuffer src, ByteBuffer dst, int count) {
+            for (int i = 0; i < count; i++) {
+                dtype.putDouble(dst, i, astype.getDouble(src, i));
+            }
+        }
+    }
+
+    /**
+     * The numcodecs {@code BitRound} filter, which rounds the mantissa of floating point values to
+     * {@code keepbits} bits, half to even, so that the trailing mantissa bits are zero and compress well.
+     * It is lossy and only applied when encoding. Its configuration has no {@code dtype}, the elements
+     * are those of the array, which must be of type {@code f4} or {@code f8}.
+     */
+    private static class BitRoundFilter extends Filter {
+
+        private final int keepbits;
+        private final DataType dataType;
+        private final ByteOrder order;
+
+        private BitRoundFilter(Map<String, Object> map) {
+            this(getInt(map, "bitround", "keepbits", null), null, null);
+            if (keepbits < 0) {
+                throw new IllegalArgumentException("bitround: keepbits parameter must not be negative but was: " + keepbits);
+            }
+        }
+
+        private BitRoundFilter(int keepbits, DataType dataType, ByteOrder order) {
+            this.keepbits = keepbits;
+            this.dataType = dataType;
+            this.order = order;
+        }
+
+        @Override
+        public String getId() {
+            return "bitround";
+        }
+
+        @Override
+        public String toString() {
+            return "filter=" + getId() + "/keepbits=" + keepbits;
+        }
+
+        // this getter is needed for JSON serialisation
+        public int getKeepbits() {
+            return keepbits;
+        }
+
+        @Override
+        Filter forArray(DataType dataType, ByteOrder byteOrder) {
+            return new BitRoundFilter(keepbits, dataType, byteOrder);
+        }
+
+        @Override
+        public void encode(ByteBuffer source, ByteBuffer target) throws IOException {
+            final int length = source.remaining();
+            if (length > target.remaining()) {
+                throw new IOException("bitround: " + length + " bytes exceed the target buffer of " + target.remaining() + " bytes.");
+            }
+            final int mantissaBits;
+            if (dataType == DataType.f4) {
+                mantissaBits = 23;
+            } else if (dataType == DataType.f8) {
+                mantissaBits = 52;
+            } else {
+                throw new IOException("bitround: only the data types f4 and f8 are supported but the data type of the array was: " + dataType);
+            }
+            if (keepbits > mantissaBits) {
+                throw new IOException("bitround: keepbits parameter must not exceed " + mantissaBits + " for data type " + dataType + " but was: " + keepbits);
+            }
+            final int maskbits = mantissaBits - keepbits;
+            final ByteBuffer src = source.slice().order(order);
+            final ByteBuffer dst = target.slice().order(order);
+            int done = 0;
+            if (maskbits > 0 && dataType == DataType.f4) {
+                done = length / 4;
+                roundFloats(src.asIntBuffer(), dst.asIntBuffer(), done, maskbits);
+                done *= 4;
+            } else if (maskbits > 0) {
+                done = length / 8;
+                roundDoubles(src.asLongBuffer(), dst.asLongBuffer(), done, maskbits);
+                done *= 8;
+            }
+            src.position(done);
+            dst.position(done);
+            dst.put(src);
+            source.position(source.limit());
+            target.position(target.position() + length);
+        }
+
+        @Override
+        public void decode(ByteBuffer source, ByteBuffer target) throws IOException {
+            final int length = source.remaining();
+            if (length > target.remaining()) {
+                throw new IOException("bitround: " + length + " bytes exceed the target buffer of " + target.remaining() + " bytes.");
+            }
+            target.put(source);
+        }
+
+        private static void roundFloats(IntBuffer src, IntBuffer dst, int count, int maskbits) {
+            final int mask = -1 << maskbits;
+            final int halfQuantum = (1 << maskbits - 1) - 1;
+            for (int i = 0; i < count; i++) {
+                final int bits = src.get(i);
+                dst.put(i, (bits + ((bits >>> maskbits) & 1) + halfQuantum) & mask);
+            }
+        }
+
+        private static void roundDoubles(LongBuffer src, LongBuffer dst, int count, int maskbits) {
+            final long mask = -1L << maskbits;
+            final long halfQuantum = (1L << maskbits - 1) - 1;
+            for (int i = 0; i < count; i++) {
+                final long bits = src.get(i);
+                dst.put(i, (bits + ((bits >>> maskbits) & 1) + halfQuantum) & mask);
+            }
+        }
+    }
+}
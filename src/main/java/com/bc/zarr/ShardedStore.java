@@ -0,0 +1,507 @@
+/*
+ *
+ * MIT License
+ *
+ * Copyright (c) 2021. Brockmann Consult GmbH (info@brockmann-consult.de)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package com.bc.zarr;
+
+import com.bc.zarr.codec.Crc32c;
+import com.bc.zarr.storage.Store;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.stream.Stream;
+
+/**
+ * A store for the chunks of a sharded array. The chunks of a shard are concatenated in one value of the
+ * underlying store, followed by an index with the offset and the number of bytes of each chunk, like the
+ * {@code sharding_indexed} codec of Zarr v3 with the index at the end:
+ * <pre>
+ *   chunk data ... | (offset, nbytes) as uint64 little endian per chunk, in C order | crc32c of the index
+ * </pre>
+ * Chunks which are not stored have an offset and a number of bytes of 2^64 - 1.
+ * <p>
+ * The keys passed to this store are the keys of the chunks, the shard containing a chunk is stored under the
+ * key of its shard index. Reading a chunk reads the index and the chunk bytes by ranged reads. The decoded
+ * indexes of recently read shards are cached together with the size of the shard and the checksum of the index.
+ * Reading another chunk of the shard then only reads the checksum at the end of the cached size, and the index
+ * is only read again if the checksum differs or the shard has grown, e.g. because the shard has been rewritten
+ * by another store instance or process. Identical indexes address the same chunk bytes, so a shard rewritten
+ * with the same index is read correctly with the cached one. Written
+ * chunks are buffered per shard. A shard is written in one piece as soon as all its chunks have been written
+ * or when {@link #flush()} is called, which merges the buffered chunks with the chunks already stored in the
+ * shard. Reading a chunk and writing its shard through this store exclude each other, so that a chunk is never
+ * read with the index of another version of its shard, unless it is rewritten elsewhere between the two reads.
+ */
+final class ShardedStore implements Store {
+
+    private static final long MISSING = -1L;
+    private static final int INDEX_ENTRY_BYTES = 16;
+    private static final int CHECKSUM_BYTES = 4;
+    // marks a buffered chunk which is deleted when the shard is written
+    private static final byte[] DELETED = new byte[0];
+    private static final long MAX_CACHED_INDEX_BYTES = 32L << 20;
+
+    private final Store store;
+    private final int[] chunkGrid;
+    private final int[] chunksPerShard;
+    private final int numChunksPerShard;
+    private final int indexBytes;
+    private final String separator;
+    private final Map<String, Map<Integer, byte[]>> pending = new ConcurrentHashMap<>();
+    private final ReadWriteLock[] locks = new ReadWriteLock[64];
+    private final Map<String, CachedIndex> indexCache;
+
+    ShardedStore(Store store, int[] shape, int[] chunks, int[] shards, DimensionSeparator separator) {
+        this.store = store;
+        this.separator = separator.getSeparatorChar();
+        chunkGrid = new int[shape.length];
+        chunksPerShard = new int[shape.length];
+        long numChunks = 1;
+        for (int i = 0; i < shape.length; i++) {
+            chunkGrid[i] = (int) Math.ceil((double) shape[i] / chunks[i]);
+            chunksPerShard[i] = shards[i] / chunks[i];
+            numChunks *= chunksPerShard[i];
+        }
+        if (numChunks * INDEX_ENTRY_BYTES + CHECKSUM_BYTES > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Too many chunks per shard: " + numChunks);
+        }
+        numChunksPerShard = (int) numChunks;
+        indexBytes = numChunksPerShard * INDEX_ENTRY_BYTES + CHECKSUM_BYTES;
+        for (int i = 0; i < locks.length; i++) {
+            locks[i] = new ReentrantReadWriteLock();
+        }
+        final long maxCachedIndexes = Math.max(16, MAX_CACHED_INDEX_BYTES / indexBytes);
+        indexCache = Collections.synchronizedMap(new LinkedHashMap<String, CachedIndex>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, CachedIndex> eldest) {
+                return size() > maxCachedIndexes;
+            }
+        });
+    }
+
+    @Override
+    public InputStream getInputStream(String key) throws IOException {
+        final byte[] bytes = readChunk(locate(key));
+        return bytes != null ? new ByteArrayInputStream(bytes) : null;
+    }
+
+    @Override
+    public ByteBuffer getBytes(String key, long offset, int length) throws IOException {
+        if (offset < 0 || length < 0) {
+            throw new IllegalArgumentException("offset and length must not be negative but were " + offset + " and " + length);
+        }
+        final Location location = locate(key);
+        final Lock lock = lockFor(location.shardKey).readLock();
+        lock.lock();
+        try {
+            final byte[] buffered = getPending(location);
+            if (buffered != null) {
+                if (buffered == DELETED) {
+                    return null;
+                }
+                final int from = (int) Math.min(offset, buffered.length);
+                return ByteBuffer.wrap(buffered, from, Math.min(length, buffered.length - from)).slice();
+            }
+            final long[] entry = readIndexEntry(location);
+            if (entry == null) {
+                return null;
+            }
+            if (offset >= entry[1]) {
+                return ByteBuffer.allocate(0);
+            }
+            return store.getBytes(location.shardKey, entry[0] + offset, (int) Math.min(length, entry[1] - offset));
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public long getSize(String key) throws IOException {
+        final Location location = locate(key);
+        final Lock lock = lockFor(location.shardKey).readLock();
+        lock.lock();
+        try {
+            final byte[] buffered = getPending(location);
+            if (buffered != null) {
+                return buffered == DELETED ? -1 : buffered.length;
+            }
+            final long[] entry = readIndexEntry(location);
+            return entry != null ? entry[1] : -1;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public OutputStream getOutputStream(String key) throws IOException {
+        final Location location = locate(key);
+        return new ByteArrayOutputStream() {
+            private boolean closed;
+
+            @Override
+            public void close() throws IOException {
+                if (!closed) {
+                    closed = true;
+                    put(location, toByteArray());
+                }
+            }
+        };
+    }
+
+    @Override
+    public void delete(String key) throws IOException {
+        put(locate(key), DELETED);
+    }
+
+    /**
+     * Writes all shards with buffered chunks to the underlying store.
+     *
+     * @throws IOException if a shard can not be written, its chunks stay buffered then
+     */
+    void flush() throws IOException {
+        for (String shardKey : new ArrayList<>(pending.keySet())) {
+            final Lock lock = lockFor(shardKey).writeLock();
+            lock.lock();
+            try {
+                final Map<Integer, byte[]> chunks = pending.get(shardKey);
+                if (chunks != null) {
+                    writeShard(shardKey, chunks, false);
+                    pending.remove(shardKey);
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    @Override
+    public TreeSet<String> getArrayKeys() throws IOException {
+        return store.getArrayKeys();
+    }
+
+    @Override
+    public TreeSet<String> getGroupKeys() throws IOException {
+        return store.getGroupKeys();
+    }
+
+    @Override
+    public TreeSet<String> getKeysEndingWith(String suffix) throws IOException {
+        return store.getKeysEndingWith(suffix);
+    }
+
+    @Override
+    public Stream<String> getRelativeLeafKeys(String key) throws IOException {
+        return store.getRelativeLeafKeys(key);
+    }
+
+    private void put(Location location, byte[] bytes) throws IOException {
+        final Lock lock = lockFor(location.shardKey).writeLock();
+        lock.lock();
+        try {
+            final Map<Integer, byte[]> chunks = pending.computeIfAbsent(location.shardKey, k -> new HashMap<>());
+            chunks.put(location.inner, bytes);
+            if (chunks.size() == numChunksInShard(location.shardIndex)) {
+                writeShard(location.shardKey, chunks, true);
+                pending.remove(location.shardKey);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Must be called with the read or write lock of the shard.
+     */
+    private byte[] getPending(Location location) {
+        final Map<Integer, byte[]> chunks = pending.get(location.shardKey);
+        return chunks != null ? chunks.get(location.inner) : null;
+    }
+
+    private byte[] readChunk(Location location) throws IOException {
+        final Lock lock = lockFor(location.shardKey).readLock();
+        lock.lock();
+        try {
+            final byte[] buffered = getPending(location);
+            if (buffered != null) {
+                return buffered != DELETED ? buffered : null;
+            }
+            final long[] entry = readIndexEntry(location);
+            if (entry == null) {
+                return null;
+            }
+            final ByteBuffer bytes = store.getBytes(location.shardKey, entry[0], (int) entry[1]);
+            if (bytes == null || bytes.remaining() < entry[1]) {
+                throw new IOException("Shard '" + location.shardKey + "' ends before chunk " + location.inner);
+            }
+            return toArray(bytes);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Must be called with the read or write lock of the shard.
+     *
+     * @return the offset and the number of bytes of the chunk within its shard or {@code null} if the chunk is not stored
+     */
+    private long[] readIndexEntry(Location location) throws IOException {
+        final long[] index = readIndex(location.shardKey);
+        if (index == null || index[2 * location.inner] == MISSING) {
+            return null;
+        }
+        return new long[]{index[2 * location.inner], index[2 * location.inner + 1]};
+    }
+
+    /**
+     * Must be called with the read or write lock of the shard.
+     *
+     * @return the decoded index of the shard or {@code null} if the shard is not stored
+     */
+    private long[] readIndex(String shardKey) throws IOException {
+        final CachedIndex cached = indexCache.get(shardKey);
+        if (cached != null) {
+            // one byte more than the checksum tells whether the shard has grown
+            final ByteBuffer tail = store.getBytes(shardKey, cached.shardSize - CHECKSUM_BYTES, CHECKSUM_BYTES + 1);
+            if (tail == null) {
+                indexCache.remove(shardKey);
+                return null;
+            }
+            if (tail.remaining() == CHECKSUM_BYTES && tail.order(ByteOrder.LITTLE_ENDIAN).getInt(tail.position()) == cached.checksum) {
+                return cached.entries;
+            }
+        }
+        final long size = store.getSize(shardKey);
+        if (size < 0) {
+            indexCache.remove(shardKey);
+            return null;
+        }
+        if (size < indexBytes) {
+            throw new IOException("Shard '" + shardKey + "' is smaller than its index of " + indexBytes + " bytes");
+        }
+        final ByteBuffer bytes = store.getBytes(shardKey, size - indexBytes, indexBytes);
+        if (bytes == null) {
+            return null;
+        }
+        final byte[] raw = toArray(bytes);
+        final long[] index = decodeIndex(shardKey, raw, 0, size - indexBytes);
+        indexCache.put(shardKey, new CachedIndex(size, checksum(raw, 0), index));
+        return index;
+    }
+
+    private long[] decodeIndex(String shardKey, byte[] bytes, int offset, long dataLength) throws IOException {
+        if (bytes.length - offset < indexBytes) {
+            throw new IOException("Shard '" + shardKey + "' is smaller than its index of " + indexBytes + " bytes");
+        }
+        final ByteBuffer index = ByteBuffer.wrap(bytes, offset, indexBytes).order(ByteOrder.LITTLE_ENDIAN);
+        if (checksum(bytes, offset) != Crc32c.compute(bytes, offset, indexBytes - CHECKSUM_BYTES)) {
+            throw new IOException("Shard '" + shardKey + "' has an invalid index checksum");
+        }
+        final long[] entries = new long[2 * numChunksPerShard];
+        for (int i = 0; i < entries.length; i += 2) {
+            final long chunkOffset = index.getLong(offset + i * 8);
+            final long chunkBytes = index.getLong(offset + i * 8 + 8);
+            if (chunkOffset == MISSING && chunkBytes == MISSING) {
+                entries[i] = MISSING;
+                entries[i + 1] = MISSING;
+            } else if (chunkOffset < 0 || chunkBytes < 0 || chunkBytes > Integer.MAX_VALUE || chunkOffset + chunkBytes > dataLength) {
+                throw new IOException("Shard '" + shardKey + "' has an invalid index entry for chunk " + i / 2);
+            } else {
+                entries[i] = chunkOffset;
+                entries[i + 1] = chunkBytes;
+            }
+        }
+        return entries;
+    }
+
+    /**
+     * @return the checksum stored at the end of the index starting at the given offset
+     */
+    private int checksum(byte[] bytes, int indexOffset) {
+        return ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN).getInt(indexOffset + indexBytes - CHECKSUM_BYTES);
+    }
+
+    /**
+     * Writes the shard with the given chunks in one piece. Unless the chunks are complete, the chunks which
+     * are not buffered are taken from the shard already stored.
+     */
+    private void writeShard(String shardKey, Map<Integer, byte[]> chunks, boolean complete) throws IOException {
+        final byte[][] data = new byte[numChunksPerShard][];
+        if (!complete) {
+            final long size = store.getSize(shardKey);
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException("Shard '" + shardKey + "' can not be updated, it is larger than 2 GiB");
+            }
+            final ByteBuffer stored = size >= 0 ? store.getBytes(shardKey, 0, (int) size) : null;
+            if (stored != null) {
+                final byte[] bytes = toArray(stored);
+                final long[] index = decodeIndex(shardKey, bytes, bytes.length - indexBytes, bytes.length - indexBytes);
+                for (int i = 0; i < numChunksPerShard; i++) {
+                    if (index[2 * i] != MISSING) {
+                        data[i] = new byte[(int) index[2 * i + 1]];
+                        System.arraycopy(bytes, (int) index[2 * i], data[i], 0, data[i].length);
+                    }
+                }
+            }
+        }
+        for (Map.Entry<Integer, byte[]> chunk : chunks.entrySet()) {
+            data[chunk.getKey()] = chunk.getValue() != DELETED ? chunk.getValue() : null;
+        }
+
+        long dataLength = 0;
+        for (byte[] chunk : data) {
+            dataLength += chunk != null ? chunk.length : 0;
+        }
+        indexCache.remove(shardKey);
+        if (isEmpty(data)) {
+            store.delete(shardKey);
+            return;
+        }
+        if (dataLength + indexBytes > Integer.MAX_VALUE) {
+            throw new IOException("Shard '" + shardKey + "' can not be written, it would be larger than 2 GiB");
+        }
+        final byte[] shard = new byte[(int) dataLength + indexBytes];
+        final ByteBuffer index = ByteBuffer.wrap(shard, (int) dataLength, indexBytes).order(ByteOrder.LITTLE_ENDIAN);
+        final long[] entries = new long[2 * numChunksPerShard];
+        int pos = 0;
+        for (int i = 0; i < numChunksPerShard; i++) {
+            final byte[] chunk = data[i];
+            if (chunk == null) {
+                entries[2 * i] = MISSING;
+                entries[2 * i + 1] = MISSING;
+            } else {
+                System.arraycopy(chunk, 0, shard, pos, chunk.length);
+                entries[2 * i] = pos;
+                entries[2 * i + 1] = chunk.length;
+                pos += chunk.length;
+            }
+            index.putLong(entries[2 * i]).putLong(entries[2 * i + 1]);
+        }
+        final int checksum = Crc32c.compute(shard, pos, indexBytes - CHECKSUM_BYTES);
+        index.putInt(checksum);
+        try (OutputStream os = store.getOutputStream(shardKey)) {
+            os.write(shard);
+        }
+        indexCache.put(shardKey, new CachedIndex(shard.length, checksum, entries));
+    }
+
+    private static boolean isEmpty(byte[][] data) {
+        for (byte[] chunk : data) {
+            if (chunk != null) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private int numChunksInShard(int[] shardIndex) {
+        // shards at the upper bounds of the array may contain fewer chunks
+        int n = 1;
+        for (int i = 0; i < shardIndex.length; i++) {
+            n *= Math.min(chunksPerShard[i], chunkGrid[i] - shardIndex[i] * chunksPerShard[i]);
+        }
+        return n;
+    }
+
+    private ReadWriteLock lockFor(String shardKey) {
+        return locks[(shardKey.hashCode() & Integer.MAX_VALUE) % locks.length];
+    }
+
+    private static byte[] toArray(ByteBuffer buffer) {
+        if (buffer.hasArray() && buffer.arrayOffset() == 0 && buffer.position() == 0 && buffer.limit() == buffer.array().length) {
+            return buffer.array();
+        }
+        final byte[] bytes = new byte[buffer.remaining()];
+        buffer.duplicate().get(bytes);
+        return bytes;
+    }
+
+    private Location locate(String chunkKey) {
+        final int rank = chunksPerShard.length;
+        final int[] shardIndex = new int[rank];
+        int inner = 0;
+        final int[] chunkIndex = new int[rank];
+        int end = chunkKey.length();
+        int start = end;
+        try {
+            // the chunk indices are the end of the key, the first one follows the path of the array
+            // or the prefix of the chunk keys, like "c/" in zarr format 3
+            for (int i = rank - 1; i >= 0; i--) {
+                final int delimiter = chunkKey.lastIndexOf(separator, end - 1);
+                start = (i > 0 ? delimiter : Math.max(delimiter, chunkKey.lastIndexOf('/', end - 1))) + 1;
+                chunkIndex[i] = Integer.parseInt(chunkKey.substring(start, end));
+                end = start - 1;
+            }
+        } catch (NumberFormatException | IndexOutOfBoundsException e) {
+            throw new IllegalArgumentException("Not a chunk key: '" + chunkKey + "'");
+        }
+        for (int i = 0; i < rank; i++) {
+            shardIndex[i] = chunkIndex[i] / chunksPerShard[i];
+            inner = inner * chunksPerShard[i] + chunkIndex[i] % chunksPerShard[i];
+        }
+        final String shardKey = chunkKey.substring(0, start) + ZarrUtils.createChunkFilename(shardIndex, separator);
+        return new Location(shardKey, shardIndex, inner);
+    }
+
+    private static final class CachedIndex {
+
+        private final long shardSize;
+        private final int checksum;
+        private final long[] entries;
+
+        private CachedIndex(long shardSize, int checksum, long[] entries) {
+            this.shardSize = shardSize;
+            this.checksum = checksum;
+            this.entries = entries;
+        }
+    }
+
+    private static final class Location {
+
+        private final String shardKey;
+        private final int[] shardIndex;
+        private final int inner;
+
+        private Location(String shardKey, int[] shardIndex, int inner) {
+            this.shardKey = shardKey;
+            this.shardIndex = shardIndex;
+            this.inner = inner;
+        }
+    }
+}
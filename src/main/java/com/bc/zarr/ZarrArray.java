@@ -26,12 +26,14 @@
 
 package com.bc.zarr;
 
+import com.bc.zarr.chunk.ChunkCache;
 import com.bc.zarr.chunk.ChunkReaderWriter;
 import com.bc.zarr.storage.FileSystemStore;
 import com.bc.zarr.storage.InMemoryStore;
 import com.bc.zarr.storage.Store;
 import com.bc.zarr.ucar.NetCDF_Util;
 import com.bc.zarr.ucar.PartialDataCopier;
+import com.fasterxml.jackson.databind.JsonNode;
 import ucar.ma2.Array;
 import ucar.ma2.InvalidRangeException;
 
@@ -39,14 +41,19 @@ import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
-import java.io.OutputStream;
-import java.io.OutputStreamWriter;
+import java.io.InterruptedIOException;
 import java.nio.ByteOrder;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 import java.util.stream.Stream;
 
 import static com.bc.zarr.CompressorFactory.nullCompressor;
@@ -62,11 +69,19 @@ public class ZarrArray {
     private final DataType _dataType;
     private final Number _fillValue;
     private final Compressor _compressor;
+    private final Filter[] _filters;
     private final Store _store;
     private final ByteOrder _byteOrder;
     private final DimensionSeparator _separator;
-
-    private ZarrArray(ZarrPath relativePath, int[] shape, int[] chunkShape, DataType dataType, ByteOrder order, Number fillValue, Compressor compressor, DimensionSeparator separator, Store store) {
+    private final boolean _constantChunks;
+    private final int[] _shards;
+    private final ShardedStore _shardedStore;
+    private final int _zarrFormat;
+    private final String _chunkKeyPrefix;
+    private volatile ChunkCache _chunkCache;
+
+    private ZarrArray(ZarrPath relativePath, int[] shape, int[] chunkShape, DataType dataType, ByteOrder order, Number fillValue, Compressor compressor, Filter[] filters, DimensionSeparator separator,
+                      boolean constantChunks, int[] shards, int zarrFormat, String chunkKeyPrefix, Store store) {
         this.relativePath = relativePath;
         _shape = shape;
         _chunks = chunkShape;
@@ -77,14 +92,21 @@ public class ZarrArray {
         } else {
             _compressor = compressor;
         }
+        _filters = filters != null ? filters : new Filter[0];
         _store = store;
-        _chunkReaderWriter = ChunkReaderWriter.create(_compressor, _dataType, order, _chunks, _fillValue, _store);
-        _chunkFilenames = new HashMap<>();
-        _byteOrder = order;
         if (separator == null) {
             throw new IllegalArgumentException("separator must not be null");
         }
         _separator = separator;
+        _shards = shards;
+        _shardedStore = shards != null ? new ShardedStore(store, shape, chunkShape, shards, separator) : null;
+        _chunkReaderWriter = ChunkReaderWriter.create(_compressor.forArray(_dataType, order, _chunks, _fillValue), FilterFactory.forArray(_filters, _dataType, order), _dataType, order, _chunks, _fillValue,
+                                                           _shardedStore != null ? _shardedStore : _store, constantChunks);
+        _chunkFilenames = new HashMap<>();
+        _byteOrder = order;
+        _constantChunks = constantChunks;
+        _zarrFormat = zarrFormat;
+        _chunkKeyPrefix = chunkKeyPrefix;
     }
 
     public static ZarrArray open(String path) throws IOException {
@@ -103,6 +125,10 @@ public class ZarrArray {
         final ZarrPath zarrHeaderPath = relativePath.resolve(FILENAME_DOT_ZARRAY);
         try (final InputStream storageStream = store.getInputStream(zarrHeaderPath.storeKey)) {
             if (storageStream == null) {
+                final JsonNode metadata = ZarrHeaderV3.read(relativePath, store);
+                if (metadata != null) {
+                    return open(relativePath, store, metadata);
+                }
                 throw new IOException("'" + FILENAME_DOT_ZARRAY + "' expected but is not readable or missing in store.");
             }
             try (BufferedReader reader = new BufferedReader(new InputStreamReader(storageStream))) {
@@ -116,6 +142,7 @@ public class ZarrArray {
                 if (compressor == null) {
                     compressor = nullCompressor;
                 }
+                final Filter[] filters = header.getFilters();
                 DimensionSeparator separator = header.getDimensionSeparator();
                 if (separator == null && chunks.length > 1) {
                     final boolean nestedChunks = findNestedChunks(relativePath, store, chunks);
@@ -127,11 +154,18 @@ public class ZarrArray {
                     separator = DimensionSeparator.DOT;
                 }
 
-                return new ZarrArray(relativePath, shape, chunks, dataType, byteOrder, fillValue, compressor, separator, store);
+                return new ZarrArray(relativePath, shape, chunks, dataType, byteOrder, fillValue, compressor, filters, separator, header.isConstant_chunks(), null, 2, "", store);
             }
         }
     }
 
+    private static ZarrArray open(ZarrPath relativePath, Store store, JsonNode metadata) throws IOException {
+        final ZarrHeaderV3 header = ZarrHeaderV3.fromJson(metadata);
+        return new ZarrArray(relativePath, header.getShape(), header.getChunks(), header.getDataType(), header.getByteOrder(), header.getFillValue(),
+                             header.getCompressor(), header.getFilters(), header.getDimensionSeparator(), false, header.getShards(), 3,
+                             header.getChunkKeyPrefix(), store);
+    }
+
     public static ZarrArray create(ArrayParams arrayParams) throws IOException {
         return create(new InMemoryStore(), arrayParams);
     }
@@ -171,16 +205,22 @@ public class ZarrArray {
     }
 
     public static ZarrArray create(ZarrPath relativePath, Store store, ArrayParams arrayParams, Map<String, Object> attributes) throws IOException {
+        return create(relativePath, store, arrayParams, attributes, 2);
+    }
+
+    static ZarrArray create(ZarrPath relativePath, Store store, ArrayParams arrayParams, Map<String, Object> attributes, int defaultZarrFormat) throws IOException {
         store.delete(relativePath.storeKey);
-        final ArrayParams.Params params = arrayParams.build();
+        final ArrayParams.Params params = arrayParams.build(defaultZarrFormat);
         final int[] shape = params.getShape();
         final int[] chunks = params.getChunks();
         final DataType dataType = params.getDataType();
         final Number fillValue = params.getFillValue();
         final Compressor compressor = params.getCompressor();
+        final Filter[] filters = params.getFilters();
         final ByteOrder byteOrder = params.getByteOrder();
         final DimensionSeparator separator = params.getDimensionSeparator();
-        final ZarrArray zarrArray = new ZarrArray(relativePath, shape, chunks, dataType, byteOrder, fillValue, compressor, separator, store);
+        final ZarrArray zarrArray = new ZarrArray(relativePath, shape, chunks, dataType, byteOrder, fillValue, compressor, filters, separator, params.isConstantChunks(), params.getShards(),
+                                                  params.getZarrFormat(), params.getZarrFormat() == 3 ? "c" + separator.getSeparatorChar() : "", store);
         zarrArray.writeZArrayHeader();
         zarrArray.writeAttributes(attributes);
         return zarrArray;
@@ -190,6 +230,35 @@ public class ZarrArray {
         return _compressor;
     }
 
+    /**
+     * @return the filters applied to the chunk bytes before compression, an empty array if there are none
+     */
+    public Filter[] getFilters() {
+        return _filters.clone();
+    }
+
+    /**
+     * @return whether chunks whose elements all have the same value are stored as constant markers
+     */
+    public boolean isConstantChunks() {
+        return _constantChunks;
+    }
+
+    /**
+     * @return the zarr format of the array, 2 or 3
+     */
+    public int getZarrFormat() {
+        return _zarrFormat;
+    }
+
+    /**
+     * @return the shape of the shards which group the chunks in one object of the store
+     * or {@code null} if every chunk is stored as its own object
+     */
+    public int[] getShards() {
+        return _shards != null ? Arrays.copyOf(_shards, _shards.length) : null;
+    }
+
     public DataType getDataType() {
         return _dataType;
     }
@@ -210,6 +279,21 @@ public class ZarrArray {
         return _byteOrder;
     }
 
+    /**
+     * Sets a cache for decoded chunks. Reading a chunk which is already in the cache does neither access the store
+     * nor decompress the chunk again. Chunks written by this array are removed from the cache.
+     * Use {@code null} to disable caching, which is the default.
+     *
+     * @param chunkCache the cache or {@code null}
+     */
+    public void setChunkCache(ChunkCache chunkCache) {
+        _chunkCache = chunkCache;
+    }
+
+    public ChunkCache getChunkCache() {
+        return _chunkCache;
+    }
+
     public void write(Number value) throws IOException, InvalidRangeException {
         final int[] shape = getShape();
         final int[] offset = new int[shape.length];
@@ -226,18 +310,69 @@ public class ZarrArray {
         ucar.ma2.DataType dataType = ucar.ma2.DataType.getType(data.getClass().getComponentType(), false);
         final Array source = Array.factory(dataType, dataShape, data);
 
+        try {
+            for (int[] chunkIndex : chunkIndices) {
+                writeChunk(chunkIndex, source, dataShape, offset);
+            }
+        } finally {
+            flushShards();
+        }
+    }
+
+    /**
+     * Writes the data like {@link #write(Object, int[], int[])} but encodes and stores the touched chunks
+     * concurrently by the given executor. Partially covered chunks are still read, modified and written
+     * under a per chunk lock, so concurrent writes to the same chunk do not get lost.
+     * The method returns after all chunks have been written.
+     *
+     * @param data      the source data
+     * @param dataShape the shape of the source data
+     * @param offset    the position of the source data within the array
+     * @param executor  the executor which writes the chunks
+     * @throws IOException if writing one or more chunks failed. If more than one chunk failed, all failures
+     *                     are aggregated as suppressed exceptions of the thrown exception.
+     */
+    public void write(Object data, int[] dataShape, int[] offset, ExecutorService executor) throws IOException, InvalidRangeException {
+        final int[][] chunkIndices = ZarrUtils.computeChunkIndices(_shape, _chunks, dataShape, offset);
+        ucar.ma2.DataType dataType = ucar.ma2.DataType.getType(data.getClass().getComponentType(), false);
+        final Array source = Array.factory(dataType, dataShape, data);
+
+        final List<Callable<Void>> tasks = new ArrayList<>(chunkIndices.length);
         for (int[] chunkIndex : chunkIndices) {
-            final String chunkFilename = getChunkFilename(chunkIndex);
-            final ZarrPath chunkFilePath = relativePath.resolve(chunkFilename);
-            final int[] fromBufferPos = computeFrom(chunkIndex, offset, false);
-            synchronized (chunkFilename) {
-                if (partialCopyingIsNotNeeded(dataShape, fromBufferPos)) {
-                    _chunkReaderWriter.write(chunkFilePath.storeKey, source);
-                } else {
-                    final Array targetChunk = _chunkReaderWriter.read(chunkFilePath.storeKey);
-                    PartialDataCopier.copy(fromBufferPos, source, targetChunk);
-                    _chunkReaderWriter.write(chunkFilePath.storeKey, targetChunk);
-                }
+            tasks.add(() -> {
+                writeChunk(chunkIndex, source, dataShape, offset);
+                return null;
+            });
+        }
+        try {
+            invokeAll(executor, tasks);
+        } finally {
+            flushShards();
+        }
+    }
+
+    private void flushShards() throws IOException {
+        // shards not completely covered by the written data are merged with the stored chunks
+        if (_shardedStore != null) {
+            _shardedStore.flush();
+        }
+    }
+
+    private void writeChunk(int[] chunkIndex, Array source, int[] dataShape, int[] offset) throws IOException, InvalidRangeException {
+        final String chunkFilename = getChunkFilename(chunkIndex);
+        final ZarrPath chunkFilePath = relativePath.resolve(chunkFilename);
+        final int[] fromBufferPos = computeFrom(chunkIndex, offset, false);
+        synchronized (chunkFilename) {
+            if (partialCopyingIsNotNeeded(dataShape, fromBufferPos)) {
+                _chunkReaderWriter.write(chunkFilePath.storeKey, source);
+            } else {
+                final Array targetChunk = _chunkReaderWriter.read(chunkFilePath.storeKey);
+                PartialDataCopier.copy(fromBufferPos, source, targetChunk);
+                _chunkReaderWriter.write(chunkFilePath.storeKey, targetChunk);
+            }
+            final ChunkCache chunkCache = _chunkCache;
+            if (chunkCache != null) {
+                chunkCache.invalidate(chunkFilePath.storeKey);
             }
         }
     }
@@ -261,6 +396,69 @@ public class ZarrArray {
     }
 
     public void read(Object buffer, int[] bufferShape, int[] offset) throws IOException, InvalidRangeException {
+        ensureValidTargetBuffer(buffer, bufferShape);
+        final int[][] chunkIndices = ZarrUtils.computeChunkIndices(_shape, _chunks, bufferShape, offset);
+
+        for (int[] chunkIndex : chunkIndices) {
+            readChunk(chunkIndex, buffer, bufferShape, offset);
+        }
+    }
+
+    /**
+     * Reads the data like {@link #read(Object, int[], int[])} but fetches, decompresses and copies the touched
+     * chunks concurrently by the given executor. Each chunk is copied into its own disjoint region of the
+     * target buffer, so no further synchronisation is needed. The method returns after all chunks have been read.
+     *
+     * @param buffer      the target buffer
+     * @param bufferShape the shape of the target buffer
+     * @param offset      the position of the target buffer within the array
+     * @param executor    the executor which reads the chunks
+     * @throws IOException if reading one or more chunks failed. If more than one chunk failed, all failures
+     *                     are aggregated as suppressed exceptions of the thrown exception.
+     */
+    public void read(Object buffer, int[] bufferShape, int[] offset, ExecutorService executor) throws IOException, InvalidRangeException {
+        ensureValidTargetBuffer(buffer, bufferShape);
+        final int[][] chunkIndices = ZarrUtils.computeChunkIndices(_shape, _chunks, bufferShape, offset);
+
+        final List<Callable<Void>> tasks = new ArrayList<>(chunkIndices.length);
+        for (int[] chunkIndex : chunkIndices) {
+            tasks.add(() -> {
+                readChunk(chunkIndex, buffer, bufferShape, offset);
+                return null;
+            });
+        }
+        invokeAll(executor, tasks);
+    }
+
+    private void readChunk(int[] chunkIndex, Object buffer, int[] bufferShape, int[] offset) throws IOException, InvalidRangeException {
+        final String chunkFilename = _chunkKeyPrefix + ZarrUtils.createChunkFilename(chunkIndex, _separator.getSeparatorChar());
+        final ZarrPath chunkFilePath = relativePath.resolve(chunkFilename);
+        final int[] fromChunkPos = computeFrom(chunkIndex, offset, true);
+        final ChunkCache chunkCache = _chunkCache;
+        if (chunkCache == null) {
+            _chunkReaderWriter.read(chunkFilePath.storeKey, buffer, bufferShape, fromChunkPos);
+            return;
+        }
+        final Array sourceChunk = readChunkCached(chunkCache, chunkFilePath.storeKey);
+        if (partialCopyingIsNotNeeded(bufferShape, fromChunkPos)) {
+            System.arraycopy(sourceChunk.getStorage(), 0, buffer, 0, (int) sourceChunk.getSize());
+        } else {
+            final Array target = NetCDF_Util.createArrayWithGivenStorage(buffer, bufferShape);
+            PartialDataCopier.copy(fromChunkPos, sourceChunk, target);
+        }
+    }
+
+    private Array readChunkCached(ChunkCache chunkCache, String storeKey) throws IOException {
+        Array chunk = chunkCache.get(storeKey);
+        if (chunk == null) {
+            final long generation = chunkCache.getGeneration();
+            chunk = _chunkReaderWriter.read(storeKey);
+            chunkCache.put(storeKey, chunk, generation);
+        }
+        return chunk;
+    }
+
+    private static void ensureValidTargetBuffer(Object buffer, int[] bufferShape) throws IOException {
         if (!buffer.getClass().isArray()) {
             throw new IOException("Target buffer object is not an array.");
         }
@@ -269,20 +467,54 @@ public class ZarrArray {
         if (targetSize != expectedSize) {
             throw new IOException("Expected target buffer size is " + expectedSize + " but was " + targetSize);
         }
-        final int[][] chunkIndices = ZarrUtils.computeChunkIndices(_shape, _chunks, bufferShape, offset);
+    }
 
-        for (int[] chunkIndex : chunkIndices) {
-            final String chunkFilename = getChunkFilename(chunkIndex);
-            final ZarrPath chunkFilePath = relativePath.resolve(chunkFilename);
-            final int[] fromChunkPos = computeFrom(chunkIndex, offset, true);
-            final Array sourceChunk = _chunkReaderWriter.read(chunkFilePath.storeKey);
-            if (partialCopyingIsNotNeeded(bufferShape, fromChunkPos)) {
-                System.arraycopy(sourceChunk.getStorage(), 0, buffer, 0, (int) sourceChunk.getSize());
-            } else {
-                final Array target = NetCDF_Util.createArrayWithGivenStorage(buffer, bufferShape);
-                PartialDataCopier.copy(fromChunkPos, sourceChunk, target);
+    private static void invokeAll(ExecutorService executor, List<Callable<Void>> tasks) throws IOException, InvalidRangeException {
+        if (executor == null) {
+            throw new IllegalArgumentException("executor must not be null");
+        }
+        final List<Future<Void>> futures = new ArrayList<>(tasks.size());
+        for (Callable<Void> task : tasks) {
+            futures.add(executor.submit(task));
+        }
+        final List<Throwable> failures = new ArrayList<>();
+        for (Future<Void> future : futures) {
+            try {
+                future.get();
+            } catch (InterruptedException e) {
+                for (Future<Void> f : futures) {
+                    f.cancel(true);
+                }
+                Thread.currentThread().interrupt();
+                final InterruptedIOException ioe = new InterruptedIOException("Interrupted while waiting for chunk operations.");
+                ioe.initCause(e);
+                throw ioe;
+            } catch (ExecutionException e) {
+                failures.add(e.getCause() != null ? e.getCause() : e);
             }
         }
+        if (failures.isEmpty()) {
+            return;
+        }
+        if (failures.size() == 1) {
+            final Throwable failure = failures.get(0);
+            if (failure instanceof IOException) {
+                throw (IOException) failure;
+            } else if (failure instanceof InvalidRangeException) {
+                throw (InvalidRangeException) failure;
+            } else if (failure instanceof RuntimeException) {
+                throw (RuntimeException) failure;
+            } else if (failure instanceof Error) {
+                throw (Error) failure;
+            }
+        }
+        final IOException aggregated = new IOException(
+                failures.size() + " of " + tasks.size() + " chunk operations failed. First failure: " + failures.get(0),
+                failures.get(0));
+        for (Throwable failure : failures) {
+            aggregated.addSuppressed(failure);
+        }
+        throw aggregated;
     }
 
     private static boolean findNestedChunks(ZarrPath relativePath, Store store, int[] chunks) throws IOException {
@@ -300,7 +532,7 @@ public class ZarrArray {
 
     private synchronized String getChunkFilename(int[] chunkIndex) {
         final String separatorChar = _separator.getSeparatorChar();
-        String chunkFilename = ZarrUtils.createChunkFilename(chunkIndex, separatorChar);
+        String chunkFilename = _chunkKeyPrefix + ZarrUtils.createChunkFilename(chunkIndex, separatorChar);
         if (_chunkFilenames.containsKey(chunkFilename)) {
             return _chunkFilenames.get(chunkFilename);
         }
@@ -328,10 +560,17 @@ public class ZarrArray {
     }
 
     public void writeAttributes(Map<String, Object> attributes) throws IOException {
-        ZarrUtils.writeAttributes(attributes, relativePath, _store);
+        if (_zarrFormat == 3) {
+            ZarrHeaderV3.writeAttributes(attributes, relativePath, _store);
+        } else {
+            ZarrUtils.writeAttributes(attributes, relativePath, _store);
+        }
     }
 
     public Map<String, Object> getAttributes() throws IOException {
+        if (_zarrFormat == 3) {
+            return ZarrHeaderV3.readAttributes(relativePath, _store);
+        }
         return ZarrUtils.readAttributes(relativePath, _store);
     }
 
@@ -344,6 +583,8 @@ public class ZarrArray {
                ", dataType=" + _dataType +
                ", fillValue=" + _fillValue +
                ", " + _compressor.toString() +
+               (_filters.length > 0 ? ", filters=" + Arrays.toString(_filters) : "") +
+               (_shards != null ? ", shards=" + Arrays.toString(_shards) : "") +
                ", store=" + _store.getClass().getSimpleName() +
                ", byteOrder=" + _byteOrder +
                '}';
@@ -365,14 +606,15 @@ public class ZarrArray {
     }
 
     private void writeZArrayHeader() throws IOException {
-        final ZarrHeader zarrHeader = new ZarrHeader(_shape, _chunks, _dataType.toString(), _byteOrder, _fillValue, _compressor, _separator.getSeparatorChar());
-        final ZarrPath zArray = relativePath.resolve(FILENAME_DOT_ZARRAY);
-        try (
-                OutputStream os = _store.getOutputStream(zArray.storeKey);
-                OutputStreamWriter writer = new OutputStreamWriter(os)
-        ) {
-            ZarrUtils.toJson(zarrHeader, writer, true);
+        if (_zarrFormat == 3) {
+            final ZarrHeaderV3 header = new ZarrHeaderV3(_shape, _chunks, _shards, _dataType, _byteOrder, _fillValue, _compressor, _filters, _separator,
+                                                         _chunkKeyPrefix.isEmpty());
+            ZarrHeaderV3.write(header.toJson(), relativePath, _store);
+            return;
         }
+        final ZarrHeader zarrHeader = new ZarrHeader(_shape, _chunks, _dataType.toString(), _byteOrder, _fillValue, _compressor, _filters, _separator.getSeparatorChar(), _constantChunks);
+        final ZarrPath zArray = relativePath.resolve(FILENAME_DOT_ZARRAY);
+        ZarrUtils.writeJson(zarrHeader, zArray.storeKey, _store);
     }
 }
 
@@ -31,6 +31,8 @@ public final class ZarrConstants {
     public static final String FILENAME_DOT_ZARRAY = ".zarray";
     public static final String FILENAME_DOT_ZATTRS = ".zattrs";
     public static final String FILENAME_DOT_ZGROUP = ".zgroup";
+    // the metadata of arrays and groups in zarr format 3, including the attributes
+    public static final String FILENAME_ZARR_JSON = "zarr.json";
 
     // Zarr format key
     public static final String ZARR_FORMAT = "zarr_format";
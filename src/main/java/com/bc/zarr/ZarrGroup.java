@@ -29,6 +29,7 @@ package com.bc.zarr;
 import com.bc.zarr.storage.FileSystemStore;
 import com.bc.zarr.storage.InMemoryStore;
 import com.bc.zarr.storage.Store;
+import com.fasterxml.jackson.databind.JsonNode;
 
 import java.io.*;
 import java.nio.file.Path;
@@ -36,6 +37,7 @@ import java.nio.file.Paths;
 import java.util.Collections;
 import java.util.Map;
 import java.util.Set;
+import java.util.TreeSet;
 
 import static com.bc.zarr.ZarrConstants.*;
 
@@ -74,9 +76,25 @@ public class ZarrGroup {
     }
 
     public static ZarrGroup create(Store store, final Map<String, Object> attributes) throws IOException {
-        ZarrGroup zarrGroup = new ZarrGroup(store);
-        zarrGroup.createHeader();
-        zarrGroup.writeAttributes(attributes);
+        return create(store, attributes, 2);
+    }
+
+    /**
+     * Creates a group in the given zarr format. Sub groups and arrays created in the group use the same format,
+     * unless the format of an array is set by {@link ArrayParams#zarrFormat(int)}.
+     *
+     * @param store      the store
+     * @param attributes the attributes or {@code null}
+     * @param zarrFormat 2 or 3
+     * @return the group
+     * @throws IOException if the group can not be written
+     */
+    public static ZarrGroup create(Store store, final Map<String, Object> attributes, int zarrFormat) throws IOException {
+        if (zarrFormat != 2 && zarrFormat != 3) {
+            throw new IllegalArgumentException("Zarr format 2 or 3 expected but was: " + zarrFormat);
+        }
+        ZarrGroup zarrGroup = new ZarrGroup(store, new ZarrPath(""), zarrFormat);
+        zarrGroup.createHeader(attributes);
         return zarrGroup;
     }
 
@@ -99,16 +117,25 @@ public class ZarrGroup {
         if (store == null) {
             return create();
         }
-        validateGroupToBeOpened(store, new ZarrPath(""));
-        return new ZarrGroup(store);
+        final ZarrPath relativePath = new ZarrPath("");
+        return new ZarrGroup(store, relativePath, validateGroupToBeOpened(store, relativePath));
     }
 
-    private static void validateGroupToBeOpened(Store store, ZarrPath relativePath) throws IOException {
+    /**
+     * @return the zarr format of the group
+     */
+    private static int validateGroupToBeOpened(Store store, ZarrPath relativePath) throws IOException {
         try (InputStream is = store.getInputStream(relativePath.resolve(FILENAME_DOT_ZGROUP).storeKey)) {
             if (is == null) {
+                final JsonNode metadata = ZarrHeaderV3.read(relativePath, store);
+                if (metadata != null) {
+                    ZarrHeaderV3.ensureNode(metadata, ZarrHeaderV3.NODE_TYPE_GROUP);
+                    return 3;
+                }
                 throw new IOException("'" + FILENAME_DOT_ZGROUP + "' expected but is not readable or missing in store.");
             }
             ensureZarrFormatIs2(is);
+            return 2;
         }
     }
 
@@ -130,16 +157,14 @@ public class ZarrGroup {
 
     public ZarrGroup createSubGroup(String subGroupName, Map<String, Object> attributes) throws IOException {
         final ZarrPath relativePath = this.relativePath.resolve(subGroupName);
-        final ZarrGroup group = new ZarrGroup(store, relativePath);
-        group.createHeader();
-        group.writeAttributes(attributes);
+        final ZarrGroup group = new ZarrGroup(store, relativePath, zarrFormat);
+        group.createHeader(attributes);
         return group;
     }
 
     public ZarrGroup openSubGroup(String subGroupName) throws IOException {
         final ZarrPath relativePath = this.relativePath.resolve(subGroupName);
-        validateGroupToBeOpened(store, relativePath);
-        return new ZarrGroup(store, relativePath);
+        return new ZarrGroup(store, relativePath, validateGroupToBeOpened(store, relativePath));
     }
 
     private final static class ZarrFormat {
@@ -148,15 +173,19 @@ public class ZarrGroup {
 
     private final Store store;
     private final ZarrPath relativePath;
+    private final int zarrFormat;
 
-    private ZarrGroup(Store store) {
-        this.relativePath = new ZarrPath("");
+    private ZarrGroup(Store store, ZarrPath relativePath, int zarrFormat) {
+        this.relativePath = relativePath;
         this.store = store;
+        this.zarrFormat = zarrFormat;
     }
 
-    private ZarrGroup(Store store, ZarrPath relativePath) {
-        this.relativePath = relativePath;
-        this.store = store;
+    /**
+     * @return the zarr format of the group, 2 or 3
+     */
+    public int getZarrFormat() {
+        return zarrFormat;
     }
 
     public ZarrArray createArray(String name, ArrayParams params) throws IOException {
@@ -165,7 +194,7 @@ public class ZarrGroup {
 
     public ZarrArray createArray(String name, ArrayParams params, final Map<String, Object> attributes) throws IOException {
         final ZarrPath relativePath = this.relativePath.resolve(name);
-        return ZarrArray.create(relativePath, store, params, attributes);
+        return ZarrArray.create(relativePath, store, params, attributes, zarrFormat);
     }
 
     public ZarrArray openArray(String name) throws IOException {
@@ -174,20 +203,30 @@ public class ZarrGroup {
     }
 
     public Set<String> getArrayKeys() throws IOException {
+        if (zarrFormat == 3) {
+            return getKeysOfNodes(ZarrHeaderV3.NODE_TYPE_ARRAY);
+        }
         return store.getArrayKeys();
     }
 
     public Set<String> getGroupKeys() throws IOException {
-        final Set<String> groupKeys = store.getGroupKeys();
+        final Set<String> groupKeys = zarrFormat == 3 ? getKeysOfNodes(ZarrHeaderV3.NODE_TYPE_GROUP) : store.getGroupKeys();
         groupKeys.remove("");
         return groupKeys;
     }
 
     public void writeAttributes(Map<String, Object> attributes) throws IOException {
-        ZarrUtils.writeAttributes(attributes, relativePath, store);
+        if (zarrFormat == 3) {
+            ZarrHeaderV3.writeAttributes(attributes, relativePath, store);
+        } else {
+            ZarrUtils.writeAttributes(attributes, relativePath, store);
+        }
     }
 
     public Map<String, Object> getAttributes() throws IOException {
+        if (zarrFormat == 3) {
+            return ZarrHeaderV3.readAttributes(relativePath, store);
+        }
         return ZarrUtils.readAttributes(relativePath, store);
     }
 
@@ -197,14 +236,31 @@ public class ZarrGroup {
     }
 
 
-    private void createHeader() throws IOException {
+    private Set<String> getKeysOfNodes(String nodeType) throws IOException {
+        // in zarr format 3 arrays and groups are both described by a zarr.json file
+        final Set<String> keys = new TreeSet<>();
+        for (String key : store.getKeysEndingWith(FILENAME_ZARR_JSON)) {
+            final String normalized = key.replace("\\", "/");
+            if (normalized.equals(FILENAME_ZARR_JSON) || normalized.endsWith("/" + FILENAME_ZARR_JSON)) {
+                final String nodeKey = ZarrUtils.normalizeStoragePath(normalized.substring(0, normalized.length() - FILENAME_ZARR_JSON.length()));
+                final JsonNode metadata = ZarrHeaderV3.read(new ZarrPath(nodeKey), store);
+                if (metadata != null && nodeType.equals(metadata.path("node_type").asText())) {
+                    keys.add(nodeKey);
+                }
+            }
+        }
+        return keys;
+    }
+
+    private void createHeader(Map<String, Object> attributes) throws IOException {
+        if (zarrFormat == 3) {
+            // the attributes are part of the metadata
+            ZarrHeaderV3.write(ZarrHeaderV3.createGroup(attributes), relativePath, store);
+            return;
+        }
         final Map<String, Integer> singletonMap = Collections.singletonMap(ZARR_FORMAT, 2);
         final ZarrPath headerPath = relativePath.resolve(FILENAME_DOT_ZGROUP);
-        try (
-                final OutputStream os = store.getOutputStream(headerPath.storeKey);
-                final OutputStreamWriter writer = new OutputStreamWriter(os)
-        ) {
-            ZarrUtils.toJson(singletonMap, writer, true);
-        }
+        ZarrUtils.writeJson(singletonMap, headerPath.storeKey, store);
+        ZarrUtils.writeAttributes(attributes, relativePath, store);
     }
 }
@@ -38,6 +38,7 @@ import com.fasterxml.jackson.databind.ser.std.StdSerializer;
 import java.io.IOException;
 import java.nio.ByteOrder;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.stream.StreamSupport;
 
@@ -46,14 +47,27 @@ public class ZarrHeader {
     private final int[] chunks;
     private final Compressor compressor;
     private final String dimension_separator;
+    private final boolean constant_chunks;
     private final String dtype;
     private final Number fill_value;
-    private final String filters = null;
+    private final Filter[] filters;
     private final String order = "C";
     private final int[] shape;
     private final int zarr_format = 2;
 
     public ZarrHeader(int[] shape, int[] chunks, String dtype, ByteOrder byteOrder, Number fill_value, Compressor compressor, String dimension_separator) {
+        this(shape, chunks, dtype, byteOrder, fill_value, compressor, null, dimension_separator);
+    }
+
+    public ZarrHeader(int[] shape, int[] chunks, String dtype, ByteOrder byteOrder, Number fill_value, Compressor compressor, Filter[] filters, String dimension_separator) {
+        this(shape, chunks, dtype, byteOrder, fill_value, compressor, filters, dimension_separator, false);
+    }
+
+    /**
+     * @param constant_chunks whether uniform chunks are stored as constant markers, a JZarr extension
+     */
+    public ZarrHeader(int[] shape, int[] chunks, String dtype, ByteOrder byteOrder, Number fill_value, Compressor compressor, Filter[] filters, String dimension_separator,
+                      boolean constant_chunks) {
         this.chunks = chunks;
         if (compressor == null || CompressorFactory.nullCompressor.equals(compressor)) {
             this.compressor = null;
@@ -69,8 +83,10 @@ public class ZarrHeader {
             this.dtype = "|" + dtype;
         }
         this.fill_value = fill_value;
+        this.filters = filters != null ? filters : new Filter[0];
         this.shape = shape;
         this.dimension_separator = dimension_separator;
+        this.constant_chunks = constant_chunks;
     }
 
     public int[] getChunks() {
@@ -85,6 +101,13 @@ public class ZarrHeader {
         return dtype;
     }
 
+    /**
+     * @return the filters, an empty array if there are none
+     */
+    public Filter[] getFilters() {
+        return filters;
+    }
+
     public DataType getRawDataType() {
         return getRawDataType(dtype);
     }
@@ -133,6 +156,10 @@ public class ZarrHeader {
         return dimension_separator;
     }
 
+    public boolean isConstant_chunks() {
+        return constant_chunks;
+    }
+
     public DimensionSeparator getDimensionSeparator() {
         String separator = this.dimension_separator;
         for (DimensionSeparator sep : DimensionSeparator.values()) {
@@ -157,10 +184,15 @@ public class ZarrHeader {
             gen.writeObject(value.getCompressor());
             gen.writeStringField("dtype", value.getDtype());
             gen.writeObjectField("fill_value", value.getFill_value());
-            gen.writeObjectField("filters", value.filters);
+            // like zarr-python, an array without filters has "filters": null
+            gen.writeObjectField("filters", value.filters.length > 0 ? value.filters : null);
             gen.writeObjectField("order", value.order);
             gen.writeObjectField("shape", value.getShape());
             gen.writeStringField("dimension_separator", value.getDimension_separator());
+            // only written if enabled, other zarr implementations ignore the key but can not read constant chunks
+            if (value.isConstant_chunks()) {
+                gen.writeBooleanField("constant_chunks", true);
+            }
             gen.writeNumberField("zarr_format", value.zarr_format);
             gen.writeEndObject();
         }
@@ -196,12 +228,20 @@ public class ZarrHeader {
             } else {
                 compressor = CompressorFactory.create(compBean);
             }
+            final JsonNode filtersNode = (JsonNode) root.path("filters");
+            List<Map<String, Object>> filterBeans = null;
+            if (filtersNode.isArray()) {
+                filterBeans = codec.readValue(filtersNode.traverse(codec), List.class);
+            }
+            final Filter[] filters = FilterFactory.create(filterBeans);
             final JsonNode separatorNode = (JsonNode) root.path("dimension_separator");
             String dimension_separator = null;
             if (separatorNode != null) {
                 dimension_separator = separatorNode.asText();
             }
-            return new ZarrHeader(shape, chunks, getRawDataType(dtype).toString(), getByteOrder(dtype), fill, compressor, dimension_separator);
+            final boolean constant_chunks = ((JsonNode) root.path("constant_chunks")).asBoolean(false);
+            return new ZarrHeader(shape, chunks, getRawDataType(dtype).toString(), getByteOrder(dtype), fill, compressor, filters, dimension_separator,
+                                  constant_chunks);
         }
 
     }
@@ -0,0 +1,468 @@
+/*
+ *
+ * MIT License
+ *
+ * Copyright (c) 2021. Brockmann Consult GmbH (info@brockmann-consult.de)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package com.bc.zarr;
+
+import com.bc.zarr.storage.Store;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static com.bc.zarr.ZarrConstants.FILENAME_ZARR_JSON;
+
+/**
+ * The {@code zarr.json} metadata of arrays and groups in zarr format 3.
+ * <p>
+ * The codecs of an array are mapped to the chunk engine of zarr format 2, so both formats share the same
+ * implementation: {@code transpose} becomes a filter, {@code bytes} the byte order and one of {@code blosc},
+ * {@code gzip} or {@code zstd} the compressor. A {@code sharding_indexed} codec with the index at the end,
+ * encoded by {@code bytes} and {@code crc32c}, becomes the shards of the array and its codecs the codecs of
+ * the chunks.
+ */
+final class ZarrHeaderV3 {
+
+    static final String NODE_TYPE_ARRAY = "array";
+    static final String NODE_TYPE_GROUP = "group";
+
+    private static final String[][] DATA_TYPES = {
+            {"float64", "f8"}, {"float32", "f4"}, {"int64", "i8"}, {"int32", "i4"}, {"uint32", "u4"},
+            {"int16", "i2"}, {"uint16", "u2"}, {"int8", "i1"}, {"uint8", "u1"}
+    };
+    private static final String[] SHUFFLE_NAMES = {"noshuffle", "shuffle", "bitshuffle"};
+
+    private final int[] shape;
+    private final int[] chunks;
+    private final int[] shards;
+    private final DataType dataType;
+    private final ByteOrder byteOrder;
+    private final Number fillValue;
+    private final Compressor compressor;
+    private final Filter[] filters;
+    private final DimensionSeparator separator;
+    private final boolean v2ChunkKeys;
+
+    /**
+     * @param v2ChunkKeys whether the chunk keys are encoded like in zarr format 2, without the {@code c} prefix
+     */
+    ZarrHeaderV3(int[] shape, int[] chunks, int[] shards, DataType dataType, ByteOrder byteOrder, Number fillValue,
+                 Compressor compressor, Filter[] filters, DimensionSeparator separator, boolean v2ChunkKeys) {
+        this.shape = shape;
+        this.chunks = chunks;
+        this.shards = shards;
+        this.dataType = dataType;
+        this.byteOrder = byteOrder;
+        this.fillValue = fillValue;
+        this.compressor = compressor;
+        this.filters = filters != null ? filters : new Filter[0];
+        this.separator = separator;
+        this.v2ChunkKeys = v2ChunkKeys;
+    }
+
+    int[] getShape() {
+        return shape;
+    }
+
+    int[] getChunks() {
+        return chunks;
+    }
+
+    int[] getShards() {
+        return shards;
+    }
+
+    DataType getDataType() {
+        return dataType;
+    }
+
+    ByteOrder getByteOrder() {
+        return byteOrder;
+    }
+
+    Number getFillValue() {
+        return fillValue;
+    }
+
+    Compressor getCompressor() {
+        return compressor;
+    }
+
+    Filter[] getFilters() {
+        return filters;
+    }
+
+    DimensionSeparator getDimensionSeparator() {
+        return separator;
+    }
+
+    /**
+     * @return the prefix of the chunk keys, {@code "c/"} or {@code "c."} for the default chunk key encoding
+     */
+    String getChunkKeyPrefix() {
+        return v2ChunkKeys ? "" : "c" + separator.getSeparatorChar();
+    }
+
+    /**
+     * @return whether the given compressor can be written as a codec of zarr format 3
+     */
+    static boolean isSupported(Compressor compressor) {
+        final String id = compressor.getId();
+        return id == null || "blosc".equals(id) || "gzip".equals(id) || "zstd".equals(id);
+    }
+
+    static ZarrHeaderV3 fromJson(JsonNode root) throws IOException {
+        ensureNode(root, NODE_TYPE_ARRAY);
+        final int[] shape = toInts(root.path("shape"));
+        final DataType dataType = toDataType(root.path("data_type").asText());
+        final JsonNode grid = root.path("chunk_grid");
+        if (!"regular".equals(grid.path("name").asText())) {
+            throw new IOException("Chunk grid not supported: '" + grid.path("name").asText() + "'; expected 'regular'");
+        }
+        final int[] gridShape = toInts(grid.path("configuration").path("chunk_shape"));
+        final JsonNode keyEncoding = root.path("chunk_key_encoding");
+        final String encoding = keyEncoding.path("name").asText("default");
+        if (!"default".equals(encoding) && !"v2".equals(encoding)) {
+            throw new IOException("Chunk key encoding not supported: '" + encoding + "'; expected one of [default, v2]");
+        }
+        final boolean v2ChunkKeys = "v2".equals(encoding);
+        final String sep = keyEncoding.path("configuration").path("separator").asText(v2ChunkKeys ? "." : "/");
+        final DimensionSeparator separator = ".".equals(sep) ? DimensionSeparator.DOT : DimensionSeparator.SLASH;
+        final Number fillValue = toFillValue(root.path("fill_value"), dataType);
+
+        JsonNode codecs = root.path("codecs");
+        int[] chunks = gridShape;
+        int[] shards = null;
+        if (codecs.size() == 1 && "sharding_indexed".equals(codecs.get(0).path("name").asText())) {
+            final JsonNode sharding = codecs.get(0).path("configuration");
+            chunks = toInts(sharding.path("chunk_shape"));
+            shards = gridShape;
+            ensureShardIndex(sharding);
+            codecs = sharding.path("codecs");
+        }
+        if (chunks.length != shape.length || shards != null && shards.length != shape.length) {
+            throw new IOException("Chunk shape " + Arrays.toString(chunks) + " does not match shape " + Arrays.toString(shape));
+        }
+        final int elementSize = Integer.parseInt(dataType.name().substring(1));
+        ByteOrder byteOrder = null;
+        Compressor compressor = CompressorFactory.nullCompressor;
+        final List<Filter> filters = new ArrayList<>();
+        for (JsonNode codec : codecs) {
+            final String name = codec.path("name").asText();
+            final JsonNode configuration = codec.path("configuration");
+            if ("transpose".equals(name) && byteOrder == null) {
+                final int[] order = toTransposeOrder(configuration.path("order"), shape.length);
+                if (!isIdentity(order)) {
+                    filters.add(FilterFactory.createTranspose(order, chunks, elementSize));
+                }
+            } else if ("bytes".equals(name) && byteOrder == null) {
+                final String endian = configuration.path("endian").asText("little");
+                byteOrder = "big".equals(endian) ? ByteOrder.BIG_ENDIAN : ByteOrder.LITTLE_ENDIAN;
+            } else if (("blosc".equals(name) || "gzip".equals(name) || "zstd".equals(name))
+                       && byteOrder != null && compressor == CompressorFactory.nullCompressor) {
+                compressor = CompressorFactory.create(name, toCompressorProperties(name, configuration));
+            } else {
+                throw new IOException("Codec not supported at this position: '" + name + "'; supported are "
+                                      + "[transpose], bytes, [blosc|gzip|zstd] and sharding_indexed as the only codec");
+            }
+        }
+        if (byteOrder == null) {
+            throw new IOException("The codecs of an array must contain the 'bytes' codec");
+        }
+        return new ZarrHeaderV3(shape, chunks, shards, dataType, byteOrder, fillValue, compressor, filters.toArray(new Filter[0]), separator, v2ChunkKeys);
+    }
+
+    /**
+     * @return the array metadata with empty attributes
+     */
+    ObjectNode toJson() {
+        final ObjectMapper mapper = ZarrUtils.getObjectMapper();
+        final ObjectNode root = mapper.createObjectNode();
+        root.put("zarr_format", 3);
+        root.put("node_type", NODE_TYPE_ARRAY);
+        root.set("shape", toArray(shape));
+        root.put("data_type", toName(dataType));
+        final ObjectNode grid = root.putObject("chunk_grid");
+        grid.put("name", "regular");
+        grid.putObject("configuration").set("chunk_shape", toArray(shards != null ? shards : chunks));
+        final ObjectNode keyEncoding = root.putObject("chunk_key_encoding");
+        keyEncoding.put("name", v2ChunkKeys ? "v2" : "default");
+        keyEncoding.putObject("configuration").put("separator", separator.getSeparatorChar());
+        putFillValue(root, fillValue, dataType);
+
+        final ArrayNode codecs = mapper.createArrayNode();
+        for (Filter filter : filters) {
+            if (!"transpose".equals(filter.getId())) {
+                throw new IllegalArgumentException("Filter id:'" + filter.getId() + "' not supported by zarr format 3.");
+            }
+            final ObjectNode transpose = codecs.addObject();
+            transpose.put("name", "transpose");
+            transpose.putObject("configuration").set("order", mapper.valueToTree(filter).path("order"));
+        }
+        codecs.add(bytesCodec(byteOrder, dataType));
+        if (compressor.getId() != null) {
+            codecs.add(compressorCodec(compressor, dataType));
+        }
+        if (shards == null) {
+            root.set("codecs", codecs);
+        } else {
+            final ObjectNode sharding = root.putArray("codecs").addObject();
+            sharding.put("name", "sharding_indexed");
+            final ObjectNode configuration = sharding.putObject("configuration");
+            configuration.set("chunk_shape", toArray(chunks));
+            configuration.set("codecs", codecs);
+            final ArrayNode indexCodecs = configuration.putArray("index_codecs");
+            indexCodecs.add(bytesCodec(ByteOrder.LITTLE_ENDIAN, DataType.i8));
+            indexCodecs.addObject().put("name", "crc32c");
+            configuration.put("index_location", "end");
+        }
+        root.putObject("attributes");
+        return root;
+    }
+
+    /**
+     * @return the metadata of a group with the given attributes
+     */
+    static ObjectNode createGroup(Map<String, Object> attributes) {
+        final ObjectNode root = ZarrUtils.getObjectMapper().createObjectNode();
+        root.put("zarr_format", 3);
+        root.put("node_type", NODE_TYPE_GROUP);
+        root.set("attributes", ZarrUtils.getObjectMapper().valueToTree(attributes != null ? attributes : new HashMap<>()));
+        return root;
+    }
+
+    /**
+     * @return the {@code zarr.json} metadata at the given path or {@code null} if there is none
+     */
+    static JsonNode read(ZarrPath path, Store store) throws IOException {
+        try (InputStream is = store.getInputStream(path.resolve(FILENAME_ZARR_JSON).storeKey)) {
+            if (is == null) {
+                return null;
+            }
+            try (Reader reader = new InputStreamReader(is)) {
+                return ZarrUtils.getObjectMapper().readTree(reader);
+            }
+        }
+    }
+
+    static void write(JsonNode metadata, ZarrPath path, Store store) throws IOException {
+        ZarrUtils.writeJson(metadata, path.resolve(FILENAME_ZARR_JSON).storeKey, store);
+    }
+
+    /**
+     * Ensures that the metadata describes a node of the given type in zarr format 3.
+     */
+    static void ensureNode(JsonNode metadata, String nodeType) throws IOException {
+        if (metadata.path("zarr_format").asInt() != 3) {
+            throw new IOException("Zarr format 3 expected in '" + FILENAME_ZARR_JSON + "' but is '" + metadata.path("zarr_format") + "'");
+        }
+        if (!nodeType.equals(metadata.path("node_type").asText())) {
+            throw new IOException("'" + FILENAME_ZARR_JSON + "' with node type '" + nodeType + "' expected but node type is '" + metadata.path("node_type").asText() + "'");
+        }
+    }
+
+    static Map<String, Object> readAttributes(ZarrPath path, Store store) throws IOException {
+        final JsonNode metadata = read(path, store);
+        if (metadata == null || !metadata.path("attributes").isObject()) {
+            return new HashMap<>();
+        }
+        return ZarrUtils.getObjectMapper().convertValue(metadata.path("attributes"), Map.class);
+    }
+
+    /**
+     * Replaces the attributes in the {@code zarr.json} metadata at the given path, all other keys are kept.
+     */
+    static void writeAttributes(Map<String, Object> attributes, ZarrPath path, Store store) throws IOException {
+        if (attributes != null && !attributes.isEmpty()) {
+            final JsonNode metadata = read(path, store);
+            if (metadata == null) {
+                throw new IOException("'" + FILENAME_ZARR_JSON + "' expected but is not readable or missing in store.");
+            }
+            ((ObjectNode) metadata).set("attributes", ZarrUtils.getObjectMapper().valueToTree(attributes));
+            write(metadata, path, store);
+        }
+    }
+
+    private static void ensureShardIndex(JsonNode sharding) throws IOException {
+        final JsonNode indexCodecs = sharding.path("index_codecs");
+        final boolean endIndex = "end".equals(sharding.path("index_location").asText("end"));
+        final boolean bytesLittle = indexCodecs.size() == 2
+                                    && "bytes".equals(indexCodecs.get(0).path("name").asText())
+                                    && "little".equals(indexCodecs.get(0).path("configuration").path("endian").asText("little"))
+                                    && "crc32c".equals(indexCodecs.get(1).path("name").asText());
+        if (!endIndex || !bytesLittle) {
+            throw new IOException("sharding_indexed: only an index at the end encoded by the codecs bytes (little endian) and crc32c is supported");
+        }
+    }
+
+    private static int[] toTransposeOrder(JsonNode order, int rank) throws IOException {
+        final int[] permutation = new int[rank];
+        if (order.isArray()) {
+            return toInts(order);
+        }
+        // the early drafts of the specification used "C" and "F"
+        for (int i = 0; i < rank; i++) {
+            permutation[i] = "F".equals(order.asText()) ? rank - 1 - i : i;
+        }
+        return permutation;
+    }
+
+    private static boolean isIdentity(int[] order) {
+        for (int i = 0; i < order.length; i++) {
+            if (order[i] != i) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static Map<String, Object> toCompressorProperties(String name, JsonNode configuration) {
+        final Map<String, Object> properties = ZarrUtils.getObjectMapper().convertValue(configuration, Map.class);
+        final Map<String, Object> map = properties != null ? new HashMap<>(properties) : new HashMap<>();
+        if ("blosc".equals(name)) {
+            map.remove("typesize");
+            final Object shuffle = map.get("shuffle");
+            if (shuffle instanceof String) {
+                final int index = Arrays.asList(SHUFFLE_NAMES).indexOf(shuffle);
+                if (index < 0) {
+                    throw new IllegalArgumentException("blosc: shuffle type not supported: '" + shuffle + "'; expected one of " + Arrays.toString(SHUFFLE_NAMES));
+                }
+                map.put("shuffle", index);
+            }
+        }
+        return map;
+    }
+
+    private static ObjectNode bytesCodec(ByteOrder byteOrder, DataType dataType) {
+        final ObjectNode codec = ZarrUtils.getObjectMapper().createObjectNode();
+        codec.put("name", "bytes");
+        // the endianness of single byte data types is irrelevant and may be omitted
+        if (Integer.parseInt(dataType.name().substring(1)) > 1) {
+            codec.putObject("configuration").put("endian", byteOrder == ByteOrder.BIG_ENDIAN ? "big" : "little");
+        }
+        return codec;
+    }
+
+    private static ObjectNode compressorCodec(Compressor compressor, DataType dataType) {
+        final ObjectNode configuration = ZarrUtils.getObjectMapper().valueToTree(compressor);
+        configuration.remove("id");
+        if ("blosc".equals(compressor.getId())) {
+            configuration.put("shuffle", SHUFFLE_NAMES[configuration.path("shuffle").asInt()]);
+            configuration.put("typesize", Integer.parseInt(dataType.name().substring(1)));
+        }
+        final ObjectNode codec = ZarrUtils.getObjectMapper().createObjectNode();
+        codec.put("name", compressor.getId());
+        codec.set("configuration", configuration);
+        return codec;
+    }
+
+    private static Number toFillValue(JsonNode node, DataType dataType) throws IOException {
+        final boolean floating = dataType == DataType.f4 || dataType == DataType.f8;
+        if (node.isNumber()) {
+            return floating ? (Number) node.asDouble() : (Number) node.asLong();
+        }
+        final String text = node.asText();
+        if (floating && "NaN".equals(text)) {
+            return Double.NaN;
+        }
+        if (floating && "Infinity".equals(text)) {
+            return Double.POSITIVE_INFINITY;
+        }
+        if (floating && "-Infinity".equals(text)) {
+            return Double.NEGATIVE_INFINITY;
+        }
+        if (floating && text.startsWith("0x")) {
+            // the raw bits of the value
+            final long bits = Long.parseUnsignedLong(text.substring(2), 16);
+            return dataType == DataType.f4 ? (double) Float.intBitsToFloat((int) bits) : Double.longBitsToDouble(bits);
+        }
+        throw new IOException("Fill value not supported for data type " + toName(dataType) + ": " + node);
+    }
+
+    private static void putFillValue(ObjectNode root, Number fillValue, DataType dataType) {
+        // the fill value is mandatory in zarr format 3
+        final Number value = fillValue != null ? fillValue : 0;
+        if (dataType == DataType.f4 || dataType == DataType.f8) {
+            final double d = value.doubleValue();
+            if (Double.isNaN(d)) {
+                root.put("fill_value", "NaN");
+            } else if (Double.isInfinite(d)) {
+                root.put("fill_value", d > 0 ? "Infinity" : "-Infinity");
+            } else {
+                root.put("fill_value", d);
+            }
+        } else {
+            root.put("fill_value", value.longValue());
+        }
+    }
+
+    private static DataType toDataType(String name) {
+        for (String[] type : DATA_TYPES) {
+            if (type[0].equals(name)) {
+                return DataType.valueOf(type[1]);
+            }
+        }
+        throw new IllegalArgumentException("Data type not supported: '" + name + "'");
+    }
+
+    private static String toName(DataType dataType) {
+        for (String[] type : DATA_TYPES) {
+            if (type[1].equals(dataType.name())) {
+                return type[0];
+            }
+        }
+        throw new IllegalArgumentException("Data type not supported: '" + dataType + "'");
+    }
+
+    private static int[] toInts(JsonNode node) throws IOException {
+        if (!node.isArray()) {
+            throw new IOException("Array of integers expected but was: " + node);
+        }
+        final int[] ints = new int[node.size()];
+        for (int i = 0; i < ints.length; i++) {
+            ints[i] = node.get(i).asInt();
+        }
+        return ints;
+    }
+
+    private static ArrayNode toArray(int[] ints) {
+        final ArrayNode array = ZarrUtils.getObjectMapper().createArrayNode();
+        for (int i : ints) {
+            array.add(i);
+        }
+        return array;
+    }
+}
@@ -68,6 +68,25 @@ public final class ZarrUtils {
         getObjectWriter(prettyPrinting).writeValue(writer, o);
     }
 
+    /**
+     * Writes the object as pretty printed JSON to the store. The object is serialized completely before the
+     * value is written, so that a failing serialization does not leave a partly written value in the store.
+     *
+     * @param o     the object to write
+     * @param key   the key of the value
+     * @param store the store
+     * @throws IOException if the object can not be serialized or written
+     */
+    public static void writeJson(Object o, String key, Store store) throws IOException {
+        final String json = getObjectWriter(true).writeValueAsString(o);
+        try (
+                final OutputStream os = store.getOutputStream(key);
+                final OutputStreamWriter writer = new OutputStreamWriter(os)
+        ) {
+            writer.write(json);
+        }
+    }
+
     public static int[][] computeChunkIndices(int[] shape, int[] chunks, int[] bufferShape, int[] to) {
         final int depth = shape.length;
         int[] start = new int[depth];
@@ -162,12 +181,7 @@ public final class ZarrUtils {
     public static void writeAttributes(Map<String, Object> attributes, ZarrPath zarrPath, Store store) throws IOException {
         if (attributes != null && !attributes.isEmpty()) {
             final ZarrPath attrPath = zarrPath.resolve(FILENAME_DOT_ZATTRS);
-            try (
-                    final OutputStream os = store.getOutputStream(attrPath.storeKey);
-                    final OutputStreamWriter writer = new OutputStreamWriter(os)
-            ) {
-                toJson(attributes, writer, true);
-            }
+            writeJson(attributes, attrPath.storeKey, store);
         }
     }
 
@@ -281,8 +295,6 @@ public final class ZarrUtils {
         final LinkedHashMap<String, Object> metadata = new LinkedHashMap<>();
         metadata.put("metadata", zdata);
         metadata.put("zarr_consolidated_format", 1);
-        try (final OutputStream metaStream = store.getOutputStream(".zmetadata")) {
-            toJson(metadata, new OutputStreamWriter(metaStream), true);
-        }
+        writeJson(metadata, ".zmetadata", store);
     }
 }
@@ -0,0 +1,204 @@
+/*
+ *
+ * MIT License
+ *
+ * Copyright (c) 2021. Brockmann Consult GmbH (info@brockmann-consult.de)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package com.bc.zarr.chunk;
+
+import ucar.ma2.Array;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A cache of decoded chunks which is bounded by the number of bytes the cached chunks occupy.
+ * If a new chunk does not fit into the cache, the least recently used chunks are evicted.<br/>
+ * <br/>
+ * Cached chunks are shared between all readers and must not be modified. The cache is keyed by store keys,
+ * so one cache instance should only be shared between arrays of the same store.
+ */
+public class ChunkCache {
+
+    /**
+     * The number of invalidated keys whose generation is remembered. Beyond it, the remembered keys are
+     * dropped and chunks read before are not cached at all.
+     */
+    static final int MAX_INVALIDATED_KEYS = 4096;
+
+    private final long maxSizeInBytes;
+    private final LinkedHashMap<String, Array> chunks = new LinkedHashMap<>(16, 0.75f, true);
+    private final HashMap<String, Long> invalidated = new HashMap<>();
+    private long sizeInBytes;
+    private long generation;
+    private long oldestGeneration;
+    private long hitCount;
+    private long missCount;
+    private long evictionCount;
+
+    /**
+     * @param maxSizeInBytes the maximum number of bytes all cached chunks together may occupy
+     */
+    public ChunkCache(long maxSizeInBytes) {
+        if (maxSizeInBytes < 0) {
+            throw new IllegalArgumentException("maxSizeInBytes must not be negative but was " + maxSizeInBytes);
+        }
+        this.maxSizeInBytes = maxSizeInBytes;
+    }
+
+    /**
+     * @param storeKey the store key of the chunk
+     * @return the cached chunk or {@code null} if the chunk is not cached
+     */
+    public synchronized Array get(String storeKey) {
+        final Array chunk = chunks.get(storeKey);
+        if (chunk != null) {
+            hitCount++;
+        } else {
+            missCount++;
+        }
+        return chunk;
+    }
+
+    /**
+     * Returns a marker which changes with every invalidation. A reader fetches the marker before it reads
+     * a chunk from the store and hands it over to {@link #put(String, Array, long)} afterwards. This way a chunk
+     * which has been written and invalidated while it was read is not cached with its outdated content, while
+     * the invalidation of other chunks does not prevent caching it.
+     *
+     * @return the current invalidation marker
+     */
+    public synchronized long getGeneration() {
+        return generation;
+    }
+
+    /**
+     * Caches the given chunk unless it has been invalidated since the given generation has been fetched.
+     * Chunks which are bigger than the whole cache are not cached at all.
+     *
+     * @param storeKey   the store key of the chunk
+     * @param chunk      the decoded chunk
+     * @param generation the marker fetched by {@link #getGeneration()} before the chunk has been read
+     */
+    public synchronized void put(String storeKey, Array chunk, long generation) {
+        final Long invalidation = invalidated.get(storeKey);
+        if (generation < oldestGeneration || invalidation != null && invalidation > generation) {
+            return;
+        }
+        final long chunkSize = sizeInBytes(chunk);
+        if (chunkSize > maxSizeInBytes) {
+            return;
+        }
+        final Array replaced = chunks.put(storeKey, chunk);
+        if (replaced != null) {
+            sizeInBytes -= sizeInBytes(replaced);
+        }
+        sizeInBytes += chunkSize;
+        final Iterator<Map.Entry<String, Array>> eldestFirst = chunks.entrySet().iterator();
+        while (sizeInBytes > maxSizeInBytes && eldestFirst.hasNext()) {
+            final Map.Entry<String, Array> eldest = eldestFirst.next();
+            sizeInBytes -= sizeInBytes(eldest.getValue());
+            eldestFirst.remove();
+            evictionCount++;
+        }
+    }
+
+    /**
+     * Removes the chunk from the cache. Must be called after the chunk has been written to the store.
+     *
+     * @param storeKey the store key of the chunk
+     */
+    public synchronized void invalidate(String storeKey) {
+        generation++;
+        if (invalidated.size() >= MAX_INVALIDATED_KEYS && !invalidated.containsKey(storeKey)) {
+            invalidated.clear();
+            oldestGeneration = generation;
+        }
+        invalidated.put(storeKey, generation);
+        final Array removed = chunks.remove(storeKey);
+        if (removed != null) {
+            sizeInBytes -= sizeInBytes(removed);
+        }
+    }
+
+    public synchronized void clear() {
+        generation++;
+        invalidated.clear();
+        oldestGeneration = generation;
+        chunks.clear();
+        sizeInBytes = 0;
+    }
+
+    public long getMaxSizeInBytes() {
+        return maxSizeInBytes;
+    }
+
+    public synchronized long getSizeInBytes() {
+        return sizeInBytes;
+    }
+
+    public synchronized int getChunkCount() {
+        return chunks.size();
+    }
+
+    public synchronized long getHitCount() {
+        return hitCount;
+    }
+
+    public synchronized long getMissCount() {
+        return missCount;
+    }
+
+    public synchronized long getEvictionCount() {
+        return evictionCount;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return getClass().getSimpleName() + "{" +
+               "chunks=" + chunks.size() +
+               ", sizeInBytes=" + sizeInBytes +
+               ", maxSizeInBytes=" + maxSizeInBytes +
+               ", hits=" + hitCount +
+               ", misses=" + missCount +
+               ", evictions=" + evictionCount +
+               '}';
+    }
+
+    static long sizeInBytes(Array chunk) {
+        final Class<?> elementType = chunk.getElementType();
+        final int elementSize;
+        if (elementType == double.class || elementType == long.class) {
+            elementSize = 8;
+        } else if (elementType == float.class || elementType == int.class) {
+            elementSize = 4;
+        } else if (elementType == short.class) {
+            elementSize = 2;
+        } else {
+            elementSize = 1;
+        }
+        return chunk.getSize() * elementSize;
+    }
+}
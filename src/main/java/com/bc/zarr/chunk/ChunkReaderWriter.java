@@ -25,54 +25,99 @@
  */
 package com.bc.zarr.chunk;
 
+import com.bc.zarr.BufferPool;
+import com.bc.zarr.ByteBufferInputStream;
+import com.bc.zarr.ByteBufferOutputStream;
 import com.bc.zarr.Compressor;
 import com.bc.zarr.CompressorFactory;
 import com.bc.zarr.DataType;
+import com.bc.zarr.Filter;
 import com.bc.zarr.storage.Store;
 import com.bc.zarr.ucar.NetCDF_Util;
+import com.bc.zarr.ucar.PartialDataCopier;
 import ucar.ma2.Array;
+import ucar.ma2.InvalidRangeException;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
 import java.util.Arrays;
 
 import static com.bc.zarr.ZarrUtils.computeSizeInteger;
 
 public abstract class ChunkReaderWriter {
 
+    /**
+     * The bytes starting a constant chunk, followed by the value of the chunk's elements in the chunk's byte order.
+     */
+    static final byte[] CONSTANT_MARKER = "jzarr.constant".getBytes(StandardCharsets.US_ASCII);
+
     protected final Compressor compressor;
+    protected final Filter[] filters;
     final int[] chunkShape;
     protected final Number fill;
     protected final Store store;
     protected final ByteOrder order;
+    protected final boolean constantChunks;
     private final int size;
 
     ChunkReaderWriter(ByteOrder order, Compressor compressor, int[] chunkShape, Number fill, Store store) {
+        this(order, compressor, null, chunkShape, fill, store);
+    }
+
+    ChunkReaderWriter(ByteOrder order, Compressor compressor, Filter[] filters, int[] chunkShape, Number fill, Store store) {
+        this(order, compressor, filters, chunkShape, fill, store, false);
+    }
+
+    ChunkReaderWriter(ByteOrder order, Compressor compressor, Filter[] filters, int[] chunkShape, Number fill, Store store, boolean constantChunks) {
         if (compressor != null) {
             this.compressor = compressor;
         } else {
             this.compressor = CompressorFactory.nullCompressor;
         }
+        this.filters = filters != null ? filters.clone() : new Filter[0];
         this.chunkShape = Arrays.copyOf(chunkShape, chunkShape.length);
         this.fill = fill;
         this.size = computeSizeInteger(chunkShape);
         this.store = store;
         this.order = order;
+        // the bytes of a chunk with a single element are never larger than a constant marker
+        this.constantChunks = constantChunks && size > 1;
     }
 
     public static ChunkReaderWriter create(Compressor compressor, DataType dataType, ByteOrder order, int[] chunkShape, Number fill, Store store) {
+        return create(compressor, null, dataType, order, chunkShape, fill, store);
+    }
+
+    /**
+     * @param filters the filters applied to the chunk bytes before the compressor, in encoding order, may be {@code null}
+     */
+    public static ChunkReaderWriter create(Compressor compressor, Filter[] filters, DataType dataType, ByteOrder order, int[] chunkShape, Number fill, Store store) {
+        return create(compressor, filters, dataType, order, chunkShape, fill, store, false);
+    }
+
+    /**
+     * @param filters        the filters applied to the chunk bytes before the compressor, in encoding order, may be {@code null}
+     * @param constantChunks whether chunks whose elements all have the same value, other than the fill value, are
+     *                       stored as a constant marker with the value instead of compressed chunk bytes
+     */
+    public static ChunkReaderWriter create(Compressor compressor, Filter[] filters, DataType dataType, ByteOrder order, int[] chunkShape, Number fill, Store store,
+                                           boolean constantChunks) {
         if (dataType == DataType.f8) {
-            return new ChunkReaderWriterImpl_Double(order, compressor, chunkShape, fill, store);
+            return new ChunkReaderWriterImpl_Double(order, compressor, filters, chunkShape, fill, store, constantChunks);
         } else if (dataType == DataType.f4) {
-            return new ChunkReaderWriterImpl_Float(order, compressor, chunkShape, fill, store);
+            return new ChunkReaderWriterImpl_Float(order, compressor, filters, chunkShape, fill, store, constantChunks);
         } else if (dataType == DataType.i8) {
-            return new ChunkReaderWriterImpl_Long(order, compressor, chunkShape, fill, store);
+            return new ChunkReaderWriterImpl_Long(order, compressor, filters, chunkShape, fill, store, constantChunks);
         } else if (dataType == DataType.i4 || dataType == DataType.u4) {
-            return new ChunkReaderWriterImpl_Integer(order, compressor, chunkShape, fill, store);
+            return new ChunkReaderWriterImpl_Integer(order, compressor, filters, chunkShape, fill, store, constantChunks);
         } else if (dataType == DataType.i2 || dataType == DataType.u2) {
-            return new ChunkReaderWriterImpl_Short(order, compressor, chunkShape, fill, store);
+            return new ChunkReaderWriterImpl_Short(order, compressor, filters, chunkShape, fill, store, constantChunks);
         } else if (dataType == DataType.i1 || dataType == DataType.u1) {
-            return new ChunkReaderWriterImpl_Byte(compressor, chunkShape, fill, store);
+            return new ChunkReaderWriterImpl_Byte(compressor, filters, chunkShape, fill, store, constantChunks);
         } else {
             throw new IllegalStateException();
         }
@@ -82,6 +127,285 @@ public abstract class ChunkReaderWriter {
 
     public abstract void write(String path, Array array) throws IOException;
 
+    /**
+     * Reads the chunk and copies the region overlapping the target into the target buffer.
+     * Implementations for primitive target buffers of the chunk's data type decode the values directly
+     * into the target, without creating an intermediate chunk {@link Array}.
+     *
+     * @param storeKey    the store key of the chunk
+     * @param target      the target buffer, a 1D java primitive array in row-major order
+     * @param targetShape the shape of the target buffer
+     * @param offset      the displacement between chunk and target as described in {@link PartialDataCopier#copy(int[], Array, Array)}
+     */
+    public void read(String storeKey, Object target, int[] targetShape, int[] offset) throws IOException, InvalidRangeException {
+        final Array chunk = read(storeKey);
+        final Array targetArray = NetCDF_Util.createArrayWithGivenStorage(target, targetShape);
+        PartialDataCopier.copy(offset, chunk, targetArray);
+    }
+
+    /**
+     * Reads and uncompresses the chunk stored under the given key into a buffer borrowed from a
+     * {@link BufferPool} and decodes it with the filters, if any. The buffer must be given back with
+     * {@link #releaseBytes(ByteBuffer)}. If the compressor prefers direct buffers, the buffer is a direct buffer.
+     *
+     * @param storeKey      the store key of the chunk
+     * @param expectedBytes the number of bytes of the uncompressed and decoded chunk
+     * @return a buffer with the chunk's byte order containing the uncompressed chunk bytes from position zero
+     * up to its limit or {@code null} if no chunk is stored under the given key. For a constant chunk, the buffer
+     * contains only the bytes of the single value, see {@link #isConstant(ByteBuffer, int)}.
+     * @throws IOException if the chunk can not be read or if it does not contain the expected number of bytes
+     */
+    protected ByteBuffer readBytes(String storeKey, int expectedBytes) throws IOException {
+        final InputStream is = store.getInputStream(storeKey);
+        if (is == null) {
+            return null;
+        }
+        final ByteBufferOutputStream copy;
+        final ByteBuffer compressed;
+        try {
+            if (is instanceof ByteBufferInputStream) {
+                // e.g. a memory mapped file, decoded in place
+                copy = null;
+                compressed = ((ByteBufferInputStream) is).remainingBytes();
+            } else {
+                copy = readStored(is);
+                compressed = copy.toByteBuffer();
+            }
+        } finally {
+            is.close();
+        }
+        try {
+            final int elementSize = expectedBytes / size;
+            if (constantChunks && isConstantMarker(compressed, elementSize)) {
+                final ByteBuffer value = allocateBytes(elementSize);
+                final ByteBuffer stored = compressed.duplicate();
+                stored.position(CONSTANT_MARKER.length);
+                value.put(stored);
+                value.flip();
+                return value;
+            }
+            final int encodedBytes = encodedLength(expectedBytes, filters.length);
+            ByteBuffer bytes = allocateBytes(encodedBytes);
+            try {
+                final int n = compressor.uncompress(compressed.duplicate(), bytes);
+                if (n < encodedBytes) {
+                    throw new IOException("Chunk '" + storeKey + "' contains " + n + " bytes but " + encodedBytes + " bytes are expected.");
+                }
+                bytes.flip();
+                for (int i = filters.length - 1; i >= 0; i--) {
+                    final ByteBuffer encoded = bytes;
+                    bytes = allocateBytes(encodedLength(expectedBytes, i));
+                    try {
+                        filters[i].decode(encoded, bytes);
+                    } finally {
+                        releaseBytes(encoded);
+                    }
+                    bytes.flip();
+                }
+            } catch (IOException | RuntimeException e) {
+                releaseBytes(bytes);
+                throw e;
+            }
+            return bytes;
+        } finally {
+            if (copy != null) {
+                copy.release();
+            }
+        }
+    }
+
+    /**
+     * Like {@link #readBytes(String, int)}, but for chunks stored without compressor and filters only the bytes from
+     * the first up to the last element of the region overlapping the target are read from the store. The other
+     * bytes of the returned buffer are undefined.
+     *
+     * @param storeKey      the store key of the chunk
+     * @param expectedBytes the number of bytes of the uncompressed and decoded chunk
+     * @param targetShape   the shape of the target buffer
+     * @param offset        the displacement between chunk and target as described in {@link PartialDataCopier#copy(int[], Array, Array)}
+     * @return a buffer as described in {@link #readBytes(String, int)}
+     * @throws IOException if the chunk can not be read or if it does not contain the expected number of bytes
+     */
+    protected ByteBuffer readBytes(String storeKey, int expectedBytes, int[] targetShape, int[] offset) throws IOException {
+        if (compressor != CompressorFactory.nullCompressor || filters.length > 0 || constantChunks) {
+            return readBytes(storeKey, expectedBytes);
+        }
+        final int[] range = {size, 0};
+        PartialDataCopier.forEachRun(offset, chunkShape, targetShape, (sourcePos, targetPos, length) -> {
+            range[0] = Math.min(range[0], sourcePos);
+            range[1] = Math.max(range[1], sourcePos + length);
+        });
+        final int elementSize = expectedBytes / size;
+        final int from = Math.min(range[0], range[1]) * elementSize;
+        final int length = range[1] * elementSize - from;
+        final ByteBuffer stored = store.getBytes(storeKey, from, length);
+        if (stored == null) {
+            return null;
+        }
+        if (stored.remaining() < length) {
+            throw new IOException("Chunk '" + storeKey + "' contains " + (from + stored.remaining()) + " bytes but " + expectedBytes + " bytes are expected.");
+        }
+        final ByteBuffer bytes = allocateBytes(expectedBytes);
+        bytes.position(from);
+        bytes.put(stored);
+        bytes.position(0);
+        return bytes;
+    }
+
+    /**
+     * @param bytes       a buffer returned by {@link #readBytes(String, int)}
+     * @param elementSize the number of bytes of an element
+     * @return {@code true} if the buffer contains only the value of a constant chunk
+     */
+    protected boolean isConstant(ByteBuffer bytes, int elementSize) {
+        return constantChunks && bytes.remaining() == elementSize;
+    }
+
+    private static boolean isConstantMarker(ByteBuffer stored, int elementSize) {
+        if (stored.remaining() != CONSTANT_MARKER.length + elementSize) {
+            return false;
+        }
+        for (int i = 0; i < CONSTANT_MARKER.length; i++) {
+            if (stored.get(i) != CONSTANT_MARKER[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Stores a chunk whose elements all have the same value as the constant marker followed by the value.
+     * The value is neither filtered nor compressed, so it is kept exactly.
+     *
+     * @param storeKey the store key of the chunk
+     * @param value    the bytes of the value in the chunk's byte order
+     * @throws IOException if the chunk can not be written
+     */
+    protected void writeConstant(String storeKey, ByteBuffer value) throws IOException {
+        try (
+                final OutputStream os = store.getOutputStream(storeKey)
+        ) {
+            os.write(CONSTANT_MARKER);
+            ByteBufferOutputStream.writeTo(value, os);
+        }
+    }
+
+    /**
+     * Borrows a buffer from a {@link BufferPool}, a direct buffer if the compressor prefers direct buffers.
+     * The buffer must be given back with {@link #releaseBytes(ByteBuffer)}.
+     *
+     * @param numBytes the size of the buffer
+     * @return a buffer with the chunk's byte order and a limit of {@code numBytes}
+     */
+    protected ByteBuffer allocateBytes(int numBytes) {
+        final ByteBuffer bytes = getPool().acquire(numBytes);
+        if (order != null) {
+            bytes.order(order);
+        }
+        return bytes;
+    }
+
+    /**
+     * Gives a buffer obtained by {@link #readBytes(String, int)} or {@link #allocateBytes(int)} back to its pool.
+     *
+     * @param bytes the buffer, may be {@code null}
+     */
+    protected void releaseBytes(ByteBuffer bytes) {
+        BufferPool.releaseDefault(bytes);
+    }
+
+    /**
+     * Encodes the given buffer from its position up to its limit with the filters, if any, compresses it
+     * and stores it under the given key.
+     *
+     * @param storeKey the store key of the chunk
+     * @param bytes    the uncompressed chunk bytes
+     * @throws IOException if the chunk can not be written
+     */
+    protected void writeBytes(String storeKey, ByteBuffer bytes) throws IOException {
+        if (filters.length == 0) {
+            compressAndStore(storeKey, bytes);
+            return;
+        }
+        ByteBuffer encoded = bytes.duplicate();
+        for (int i = 0; i < filters.length; i++) {
+            final ByteBuffer decoded = encoded;
+            encoded = allocateBytes(filters[i].encodedLength(decoded.remaining()));
+            try {
+                filters[i].encode(decoded, encoded);
+            } catch (IOException | RuntimeException e) {
+                releaseBytes(encoded);
+                throw e;
+            } finally {
+                if (i > 0) {
+                    releaseBytes(decoded);
+                }
+            }
+            encoded.flip();
+        }
+        try {
+            compressAndStore(storeKey, encoded);
+        } finally {
+            releaseBytes(encoded);
+        }
+    }
+
+    /**
+     * @return the number of bytes of a chunk of the given size after it has been encoded by the first {@code count} filters
+     */
+    private int encodedLength(int numBytes, int count) {
+        for (int i = 0; i < count; i++) {
+            numBytes = filters[i].encodedLength(numBytes);
+        }
+        return numBytes;
+    }
+
+    private void compressAndStore(String storeKey, ByteBuffer bytes) throws IOException {
+        final int maxLength = compressor.maxCompressedLength(bytes.remaining());
+        if (maxLength < 0) {
+            // compressed completely before the store is written, so that a failing compressor leaves the stored chunk intact
+            final ByteBufferOutputStream compressed = new ByteBufferOutputStream(BufferPool.getDefault(), bytes.remaining());
+            try {
+                compressor.compress(new ByteBufferInputStream(bytes), compressed);
+                try (
+                        final OutputStream os = store.getOutputStream(storeKey)
+                ) {
+                    ByteBufferOutputStream.writeTo(compressed.toByteBuffer(), os);
+                }
+            } finally {
+                compressed.release();
+            }
+            return;
+        }
+        final ByteBuffer compressed = getPool().acquire(maxLength);
+        try {
+            compressor.compress(bytes.duplicate(), compressed);
+            compressed.flip();
+            try (
+                    final OutputStream os = store.getOutputStream(storeKey)
+            ) {
+                ByteBufferOutputStream.writeTo(compressed, os);
+            }
+        } finally {
+            releaseBytes(compressed);
+        }
+    }
+
+    private static ByteBufferOutputStream readStored(InputStream is) throws IOException {
+        final ByteBufferOutputStream os = new ByteBufferOutputStream(BufferPool.getDefault(), is.available());
+        try {
+            os.writeAll(is);
+        } catch (IOException | RuntimeException e) {
+            os.release();
+            throw e;
+        }
+        return os;
+    }
+
+    private BufferPool getPool() {
+        return compressor.isDirectBufferPreferred() ? BufferPool.getDefaultDirect() : BufferPool.getDefault();
+    }
+
     protected Array createFilled(final ucar.ma2.DataType dataType) {
         return NetCDF_Util.createFilledArray(dataType, chunkShape, fill);
     }
@@ -26,12 +26,17 @@
 package com.bc.zarr.chunk;
 
 import com.bc.zarr.Compressor;
+import com.bc.zarr.Filter;
 import com.bc.zarr.storage.Store;
+import com.bc.zarr.ucar.PartialDataCopier;
 import ucar.ma2.Array;
 import ucar.ma2.DataType;
 import ucar.ma2.IndexIterator;
+import ucar.ma2.InvalidRangeException;
 
-import java.io.*;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
 
 public class ChunkReaderWriterImpl_Byte extends ChunkReaderWriter {
 
@@ -39,22 +44,61 @@ public class ChunkReaderWriterImpl_Byte extends ChunkReaderWriter {
         super(null, compressor, chunkShape, fill, store);
     }
 
+    public ChunkReaderWriterImpl_Byte(Compressor compressor, Filter[] filters, int[] chunkShape, Number fill, Store store) {
+        super(null, compressor, filters, chunkShape, fill, store);
+    }
+
+    public ChunkReaderWriterImpl_Byte(Compressor compressor, Filter[] filters, int[] chunkShape, Number fill, Store store, boolean constantChunks) {
+        super(null, compressor, filters, chunkShape, fill, store, constantChunks);
+    }
+
     @Override
     public Array read(String storeKey) throws IOException {
-        try (
-                final InputStream is = store.getInputStream(storeKey)
-        ) {
-            if (is != null) {
-                try (
-                        final ByteArrayOutputStream os = new ByteArrayOutputStream()
-                ) {
-                    compressor.uncompress(is, os);
-                    final byte[] b = os.toByteArray();
-                    return Array.factory(DataType.BYTE, chunkShape, b);
-                }
+        final ByteBuffer bytes = readBytes(storeKey, getSize());
+        if (bytes == null) {
+            return createFilled(DataType.BYTE);
+        }
+        final byte[] b = new byte[getSize()];
+        try {
+            if (isConstant(bytes, 1)) {
+                Arrays.fill(b, bytes.get(0));
             } else {
-                return createFilled(DataType.BYTE);
+                bytes.get(b);
+            }
+        } finally {
+            releaseBytes(bytes);
+        }
+        return Array.factory(DataType.BYTE, chunkShape, b);
+    }
+
+    @Override
+    public void read(String storeKey, Object target, int[] targetShape, int[] offset) throws IOException, InvalidRangeException {
+        if (!(target instanceof byte[])) {
+            super.read(storeKey, target, targetShape, offset);
+            return;
+        }
+        final byte[] b = (byte[]) target;
+        PartialDataCopier.ensureOverlap(offset, chunkShape, targetShape);
+        final ByteBuffer bytes = readBytes(storeKey, getSize(), targetShape, offset);
+        if (bytes == null) {
+            final byte value = fill != null ? fill.byteValue() : 0;
+            PartialDataCopier.forEachRun(offset, chunkShape, targetShape, (sourcePos, targetPos, length) ->
+                    Arrays.fill(b, targetPos, targetPos + length, value));
+            return;
+        }
+        try {
+            if (isConstant(bytes, 1)) {
+                final byte value = bytes.get(0);
+                PartialDataCopier.forEachRun(offset, chunkShape, targetShape, (sourcePos, targetPos, length) ->
+                        Arrays.fill(b, targetPos, targetPos + length, value));
+                return;
             }
+            PartialDataCopier.forEachRun(offset, chunkShape, targetShape, (sourcePos, targetPos, length) -> {
+                bytes.position(sourcePos);
+                bytes.get(b, targetPos, length);
+            });
+        } finally {
+            releaseBytes(bytes);
         }
     }
 
@@ -71,18 +115,27 @@ public class ChunkReaderWriterImpl_Byte extends ChunkReaderWriter {
         return true;
     }
 
+    private static boolean isConstant(byte[] bytes) {
+        final byte first = bytes[0];
+        for (int i = 1; i < bytes.length; i++) {
+            if (bytes[i] != first) {
+                return false;
+            }
+        }
+        return true;
+    }
+
     @Override
     public void write(String storeKey, Array array) throws IOException {
         if (isFillOnly(array)) {
             store.delete(storeKey);
         } else {
             final byte[] bytes = (byte[]) array.get1DJavaArray(DataType.BYTE);
-            try (
-                    final ByteArrayInputStream is = new ByteArrayInputStream(bytes);
-                    final OutputStream os = store.getOutputStream(storeKey)
-            ) {
-                compressor.compress(is, os);
+            if (constantChunks && isConstant(bytes)) {
+                writeConstant(storeKey, ByteBuffer.wrap(bytes, 0, 1));
+                return;
             }
+            writeBytes(storeKey, ByteBuffer.wrap(bytes));
         }
     }
 }
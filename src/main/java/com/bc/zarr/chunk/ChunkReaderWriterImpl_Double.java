@@ -26,17 +26,19 @@
 package com.bc.zarr.chunk;
 
 import com.bc.zarr.Compressor;
+import com.bc.zarr.Filter;
 import com.bc.zarr.storage.Store;
+import com.bc.zarr.ucar.PartialDataCopier;
 import ucar.ma2.Array;
 import ucar.ma2.DataType;
 import ucar.ma2.IndexIterator;
+import ucar.ma2.InvalidRangeException;
 
-import javax.imageio.stream.ImageInputStream;
-import javax.imageio.stream.ImageOutputStream;
-import javax.imageio.stream.MemoryCacheImageInputStream;
-import javax.imageio.stream.MemoryCacheImageOutputStream;
-import java.io.*;
+import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.util.Arrays;
 
 public class ChunkReaderWriterImpl_Double extends ChunkReaderWriter {
 
@@ -44,29 +46,62 @@ public class ChunkReaderWriterImpl_Double extends ChunkReaderWriter {
         super(order, compressor, chunkShape, fill, store);
     }
 
+    public ChunkReaderWriterImpl_Double(ByteOrder order, Compressor compressor, Filter[] filters, int[] chunkShape, Number fill, Store store) {
+        super(order, compressor, filters, chunkShape, fill, store);
+    }
+
+    public ChunkReaderWriterImpl_Double(ByteOrder order, Compressor compressor, Filter[] filters, int[] chunkShape, Number fill, Store store, boolean constantChunks) {
+        super(order, compressor, filters, chunkShape, fill, store, constantChunks);
+    }
+
     @Override
     public Array read(String storeKey) throws IOException {
-        try (
-                InputStream is = store.getInputStream(storeKey)
-        ) {
-            if (is != null) {
-                try (
-                        final ByteArrayOutputStream os = new ByteArrayOutputStream()
-                ) {
-                    compressor.uncompress(is, os);
-                    final double[] doubles = new double[getSize()];
-                    try (
-                            final ByteArrayInputStream bais = new ByteArrayInputStream(os.toByteArray());
-                            final ImageInputStream iis = new MemoryCacheImageInputStream(bais)
-                    ) {
-                        iis.setByteOrder(order);
-                        iis.readFully(doubles, 0, doubles.length);
-                    }
-                    return Array.factory(DataType.DOUBLE, chunkShape, doubles);
-                }
+        final ByteBuffer bytes = readBytes(storeKey, getSize() * Double.BYTES);
+        if (bytes == null) {
+            return createFilled(DataType.DOUBLE);
+        }
+        final double[] doubles = new double[getSize()];
+        try {
+            if (isConstant(bytes, Double.BYTES)) {
+                Arrays.fill(doubles, bytes.getDouble(0));
             } else {
-                return createFilled(DataType.DOUBLE);
+                bytes.asDoubleBuffer().get(doubles);
             }
+        } finally {
+            releaseBytes(bytes);
+        }
+        return Array.factory(DataType.DOUBLE, chunkShape, doubles);
+    }
+
+    @Override
+    public void read(String storeKey, Object target, int[] targetShape, int[] offset) throws IOException, InvalidRangeException {
+        if (!(target instanceof double[])) {
+            super.read(storeKey, target, targetShape, offset);
+            return;
+        }
+        final double[] doubles = (double[]) target;
+        PartialDataCopier.ensureOverlap(offset, chunkShape, targetShape);
+        final ByteBuffer bytes = readBytes(storeKey, getSize() * Double.BYTES, targetShape, offset);
+        if (bytes == null) {
+            final double value = fill != null ? fill.doubleValue() : 0;
+            PartialDataCopier.forEachRun(offset, chunkShape, targetShape, (sourcePos, targetPos, length) ->
+                    Arrays.fill(doubles, targetPos, targetPos + length, value));
+            return;
+        }
+        try {
+            if (isConstant(bytes, Double.BYTES)) {
+                final double value = bytes.getDouble(0);
+                PartialDataCopier.forEachRun(offset, chunkShape, targetShape, (sourcePos, targetPos, length) ->
+                        Arrays.fill(doubles, targetPos, targetPos + length, value));
+                return;
+            }
+            final DoubleBuffer source = bytes.asDoubleBuffer();
+            PartialDataCopier.forEachRun(offset, chunkShape, targetShape, (sourcePos, targetPos, length) -> {
+                source.position(sourcePos);
+                source.get(doubles, targetPos, length);
+            });
+        } finally {
+            releaseBytes(bytes);
         }
     }
 
@@ -92,21 +127,32 @@ public class ChunkReaderWriterImpl_Double extends ChunkReaderWriter {
         return true;
     }
 
+    private static boolean isConstant(double[] doubles) {
+        final long first = Double.doubleToRawLongBits(doubles[0]);
+        for (int i = 1; i < doubles.length; i++) {
+            if (Double.doubleToRawLongBits(doubles[i]) != first) {
+                return false;
+            }
+        }
+        return true;
+    }
+
     @Override
     public void write(String storeKey, Array array) throws IOException {
         if (isFillOnly(array)) {
             store.delete(storeKey);
         } else {
-            try (
-                    final ImageOutputStream iis = new MemoryCacheImageOutputStream(new ByteArrayOutputStream());
-                    final InputStream is = new ZarrInputStreamAdapter(iis);
-                    final OutputStream os = store.getOutputStream(storeKey)
-            ) {
-                final double[] doubles = (double[]) array.get1DJavaArray(DataType.DOUBLE);
-                iis.setByteOrder(order);
-                iis.writeDoubles(doubles, 0, doubles.length);
-                iis.seek(0);
-                compressor.compress(is, os);
+            final double[] doubles = (double[]) array.get1DJavaArray(DataType.DOUBLE);
+            if (constantChunks && isConstant(doubles)) {
+                writeConstant(storeKey, ByteBuffer.allocate(Double.BYTES).order(order).putDouble(0, doubles[0]));
+                return;
+            }
+            final ByteBuffer bytes = allocateBytes(doubles.length * Double.BYTES);
+            try {
+                bytes.asDoubleBuffer().put(doubles);
+                writeBytes(storeKey, bytes);
+            } finally {
+                releaseBytes(bytes);
             }
         }
     }
@@ -26,17 +26,19 @@
 package com.bc.zarr.chunk;
 
 import com.bc.zarr.Compressor;
+import com.bc.zarr.Filter;
 import com.bc.zarr.storage.Store;
+import com.bc.zarr.ucar.PartialDataCopier;
 import ucar.ma2.Array;
 import ucar.ma2.DataType;
 import ucar.ma2.IndexIterator;
+import ucar.ma2.InvalidRangeException;
 
-import javax.imageio.stream.ImageInputStream;
-import javax.imageio.stream.ImageOutputStream;
-import javax.imageio.stream.MemoryCacheImageInputStream;
-import javax.imageio.stream.MemoryCacheImageOutputStream;
-import java.io.*;
+import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.util.Arrays;
 
 public class ChunkReaderWriterImpl_Float extends ChunkReaderWriter {
 
@@ -44,29 +46,62 @@ public class ChunkReaderWriterImpl_Float extends ChunkReaderWriter {
         super(order, compressor, chunkShape, fill, store);
     }
 
+    public ChunkReaderWriterImpl_Float(ByteOrder order, Compressor compressor, Filter[] filters, int[] chunkShape, Number fill, Store store) {
+        super(order, compressor, filters, chunkShape, fill, store);
+    }
+
+    public ChunkReaderWriterImpl_Float(ByteOrder order, Compressor compressor, Filter[] filters, int[] chunkShape, Number fill, Store store, boolean constantChunks) {
+        super(order, compressor, filters, chunkShape, fill, store, constantChunks);
+    }
+
     @Override
     public Array read(String storeKey) throws IOException {
-        try (
-                final InputStream is = store.getInputStream(storeKey)
-        ) {
-            if (is != null) {
-                try (
-                        final ByteArrayOutputStream os = new ByteArrayOutputStream()
-                ) {
-                    compressor.uncompress(is, os);
-                    final float[] floats = new float[getSize()];
-                    try (
-                            final ByteArrayInputStream bais = new ByteArrayInputStream(os.toByteArray());
-                            final ImageInputStream iis = new MemoryCacheImageInputStream(bais)
-                    ) {
-                        iis.setByteOrder(order);
-                        iis.readFully(floats, 0, floats.length);
-                    }
-                    return Array.factory(DataType.FLOAT, chunkShape, floats);
-                }
+        final ByteBuffer bytes = readBytes(storeKey, getSize() * Float.BYTES);
+        if (bytes == null) {
+            return createFilled(DataType.FLOAT);
+        }
+        final float[] floats = new float[getSize()];
+        try {
+            if (isConstant(bytes, Float.BYTES)) {
+                Arrays.fill(floats, bytes.getFloat(0));
             } else {
-                return createFilled(DataType.FLOAT);
+                bytes.asFloatBuffer().get(floats);
             }
+        } finally {
+            releaseBytes(bytes);
+        }
+        return Array.factory(DataType.FLOAT, chunkShape, floats);
+    }
+
+    @Override
+    public void read(String storeKey, Object target, int[] targetShape, int[] offset) throws IOException, InvalidRangeException {
+        if (!(target instanceof float[])) {
+            super.read(storeKey, target, targetShape, offset);
+            return;
+        }
+        final float[] floats = (float[]) target;
+        PartialDataCopier.ensureOverlap(offset, chunkShape, targetShape);
+        final ByteBuffer bytes = readBytes(storeKey, getSize() * Float.BYTES, targetShape, offset);
+        if (bytes == null) {
+            final float value = fill != null ? fill.floatValue() : 0;
+            PartialDataCopier.forEachRun(offset, chunkShape, targetShape, (sourcePos, targetPos, length) ->
+                    Arrays.fill(floats, targetPos, targetPos + length, value));
+            return;
+        }
+        try {
+            if (isConstant(bytes, Float.BYTES)) {
+                final float value = bytes.getFloat(0);
+                PartialDataCopier.forEachRun(offset, chunkShape, targetShape, (sourcePos, targetPos, length) ->
+                        Arrays.fill(floats, targetPos, targetPos + length, value));
+                return;
+            }
+            final FloatBuffer source = bytes.asFloatBuffer();
+            PartialDataCopier.forEachRun(offset, chunkShape, targetShape, (sourcePos, targetPos, length) -> {
+                source.position(sourcePos);
+                source.get(floats, targetPos, length);
+            });
+        } finally {
+            releaseBytes(bytes);
         }
     }
 
@@ -92,21 +127,32 @@ public class ChunkReaderWriterImpl_Float extends ChunkReaderWriter {
         return true;
     }
 
+    private static boolean isConstant(float[] floats) {
+        final int first = Float.floatToRawIntBits(floats[0]);
+        for (int i = 1; i < floats.length; i++) {
+            if (Float.floatToRawIntBits(floats[i]) != first) {
+                return false;
+            }
+        }
+        return true;
+    }
+
     @Override
     public void write(String storeKey, Array array) throws IOException {
         if (isFillOnly(array)) {
             store.delete(storeKey);
         } else {
-            try (
-                    final ImageOutputStream iis = new MemoryCacheImageOutputStream(new ByteArrayOutputStream());
-                    final InputStream is = new ZarrInputStreamAdapter(iis);
-                    final OutputStream os = store.getOutputStream(storeKey)
-            ) {
-                final float[] floats = (float[]) array.get1DJavaArray(DataType.FLOAT);
-                iis.setByteOrder(order);
-                iis.writeFloats(floats, 0, floats.length);
-                iis.seek(0);
-                compressor.compress(is, os);
+            final float[] floats = (float[]) array.get1DJavaArray(DataType.FLOAT);
+            if (constantChunks && isConstant(floats)) {
+                writeConstant(storeKey, ByteBuffer.allocate(Float.BYTES).order(order).putFloat(0, floats[0]));
+                return;
+            }
+            final ByteBuffer bytes = allocateBytes(floats.length * Float.BYTES);
+            try {
+                bytes.asFloatBuffer().put(floats);
+                writeBytes(storeKey, bytes);
+            } finally {
+                releaseBytes(bytes);
             }
         }
     }
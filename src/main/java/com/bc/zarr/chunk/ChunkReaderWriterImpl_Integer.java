@@ -26,17 +26,19 @@
 package com.bc.zarr.chunk;
 
 import com.bc.zarr.Compressor;
+import com.bc.zarr.Filter;
 import com.bc.zarr.storage.Store;
+import com.bc.zarr.ucar.PartialDataCopier;
 import ucar.ma2.Array;
 import ucar.ma2.DataType;
 import ucar.ma2.IndexIterator;
+import ucar.ma2.InvalidRangeException;
 
-import javax.imageio.stream.ImageInputStream;
-import javax.imageio.stream.ImageOutputStream;
-import javax.imageio.stream.MemoryCacheImageInputStream;
-import javax.imageio.stream.MemoryCacheImageOutputStream;
-import java.io.*;
+import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.util.Arrays;
 
 public class ChunkReaderWriterImpl_Integer extends ChunkReaderWriter {
 
@@ -44,29 +46,62 @@ public class ChunkReaderWriterImpl_Integer extends ChunkReaderWriter {
         super(order, compressor, chunkShape, fill, store);
     }
 
+    public ChunkReaderWriterImpl_Integer(ByteOrder order, Compressor compressor, Filter[] filters, int[] chunkShape, Number fill, Store store) {
+        super(order, compressor, filters, chunkShape, fill, store);
+    }
+
+    public ChunkReaderWriterImpl_Integer(ByteOrder order, Compressor compressor, Filter[] filters, int[] chunkShape, Number fill, Store store, boolean constantChunks) {
+        super(order, compressor, filters, chunkShape, fill, store, constantChunks);
+    }
+
     @Override
     public Array read(String storeKey) throws IOException {
-        try (
-                final InputStream is = store.getInputStream(storeKey)
-        ) {
-            if (is != null) {
-                try (
-                        final ByteArrayOutputStream os = new ByteArrayOutputStream()
-                ) {
-                    compressor.uncompress(is, os);
-                    final int[] ints = new int[getSize()];
-                    try (
-                            final ByteArrayInputStream bais = new ByteArrayInputStream(os.toByteArray());
-                            final ImageInputStream iis = new MemoryCacheImageInputStream(bais)
-                    ) {
-                        iis.setByteOrder(order);
-                        iis.readFully(ints, 0, ints.length);
-                    }
-                    return Array.factory(DataType.INT, chunkShape, ints);
-                }
+        final ByteBuffer bytes = readBytes(storeKey, getSize() * Integer.BYTES);
+        if (bytes == null) {
+            return createFilled(DataType.INT);
+        }
+        final int[] ints = new int[getSize()];
+        try {
+            if (isConstant(bytes, Integer.BYTES)) {
+                Arrays.fill(ints, bytes.getInt(0));
             } else {
-                return createFilled(DataType.INT);
+                bytes.asIntBuffer().get(ints);
             }
+        } finally {
+            releaseBytes(bytes);
+        }
+        return Array.factory(DataType.INT, chunkShape, ints);
+    }
+
+    @Override
+    public void read(String storeKey, Object target, int[] targetShape, int[] offset) throws IOException, InvalidRangeException {
+        if (!(target instanceof int[])) {
+            super.read(storeKey, target, targetShape, offset);
+            return;
+        }
+        final int[] ints = (int[]) target;
+        PartialDataCopier.ensureOverlap(offset, chunkShape, targetShape);
+        final ByteBuffer bytes = readBytes(storeKey, getSize() * Integer.BYTES, targetShape, offset);
+        if (bytes == null) {
+            final int value = fill != null ? fill.intValue() : 0;
+            PartialDataCopier.forEachRun(offset, chunkShape, targetShape, (sourcePos, targetPos, length) ->
+                    Arrays.fill(ints, targetPos, targetPos + length, value));
+            return;
+        }
+        try {
+            if (isConstant(bytes, Integer.BYTES)) {
+                final int value = bytes.getInt(0);
+                PartialDataCopier.forEachRun(offset, chunkShape, targetShape, (sourcePos, targetPos, length) ->
+                        Arrays.fill(ints, targetPos, targetPos + length, value));
+                return;
+            }
+            final IntBuffer source = bytes.asIntBuffer();
+            PartialDataCopier.forEachRun(offset, chunkShape, targetShape, (sourcePos, targetPos, length) -> {
+                source.position(sourcePos);
+                source.get(ints, targetPos, length);
+            });
+        } finally {
+            releaseBytes(bytes);
         }
     }
 
@@ -83,21 +118,32 @@ public class ChunkReaderWriterImpl_Integer extends ChunkReaderWriter {
         return true;
     }
 
+    private static boolean isConstant(int[] ints) {
+        final int first = ints[0];
+        for (int i = 1; i < ints.length; i++) {
+            if (ints[i] != first) {
+                return false;
+            }
+        }
+        return true;
+    }
+
     @Override
     public void write(String storeKey, Array array) throws IOException {
         if (isFillOnly(array)) {
             store.delete(storeKey);
         } else {
-            try (
-                    final ImageOutputStream iis = new MemoryCacheImageOutputStream(new ByteArrayOutputStream());
-                    final InputStream is = new ZarrInputStreamAdapter(iis);
-                    final OutputStream os = store.getOutputStream(storeKey)
-            ) {
-                final int[] ints = (int[]) array.get1DJavaArray(DataType.INT);
-                iis.setByteOrder(order);
-                iis.writeInts(ints, 0, ints.length);
-                iis.seek(0);
-                compressor.compress(is, os);
+            final int[] ints = (int[]) array.get1DJavaArray(DataType.INT);
+            if (constantChunks && isConstant(ints)) {
+                writeConstant(storeKey, ByteBuffer.allocate(Integer.BYTES).order(order).putInt(0, ints[0]));
+                return;
+            }
+            final ByteBuffer bytes = allocateBytes(ints.length * Integer.BYTES);
+            try {
+                bytes.asIntBuffer().put(ints);
+                writeBytes(storeKey, bytes);
+            } finally {
+                releaseBytes(bytes);
             }
         }
     }
@@ -26,17 +26,19 @@
 package com.bc.zarr.chunk;
 
 import com.bc.zarr.Compressor;
+import com.bc.zarr.Filter;
 import com.bc.zarr.storage.Store;
+import com.bc.zarr.ucar.PartialDataCopier;
 import ucar.ma2.Array;
 import ucar.ma2.DataType;
 import ucar.ma2.IndexIterator;
+import ucar.ma2.InvalidRangeException;
 
-import javax.imageio.stream.ImageInputStream;
-import javax.imageio.stream.ImageOutputStream;
-import javax.imageio.stream.MemoryCacheImageInputStream;
-import javax.imageio.stream.MemoryCacheImageOutputStream;
-import java.io.*;
+import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
+import java.nio.LongBuffer;
+import java.util.Arrays;
 
 public class ChunkReaderWriterImpl_Long extends ChunkReaderWriter {
 
@@ -44,29 +46,62 @@ public class ChunkReaderWriterImpl_Long extends ChunkReaderWriter {
         super(order, compressor, chunkShape, fill, store);
     }
 
+    public ChunkReaderWriterImpl_Long(ByteOrder order, Compressor compressor, Filter[] filters, int[] chunkShape, Number fill, Store store) {
+        super(order, compressor, filters, chunkShape, fill, store);
+    }
+
+    public ChunkReaderWriterImpl_Long(ByteOrder order, Compressor compressor, Filter[] filters, int[] chunkShape, Number fill, Store store, boolean constantChunks) {
+        super(order, compressor, filters, chunkShape, fill, store, constantChunks);
+    }
+
     @Override
     public Array read(String storeKey) throws IOException {
-        try (
-                final InputStream is = store.getInputStream(storeKey)
-        ) {
-            if (is != null) {
-                try (
-                        final ByteArrayOutputStream os = new ByteArrayOutputStream()
-                ) {
-                    compressor.uncompress(is, os);
-                    final long[] longs = new long[getSize()];
-                    try (
-                            final ByteArrayInputStream bais = new ByteArrayInputStream(os.toByteArray());
-                            final ImageInputStream iis = new MemoryCacheImageInputStream(bais)
-                    ) {
-                        iis.setByteOrder(order);
-                        iis.readFully(longs, 0, longs.length);
-                    }
-                    return Array.factory(DataType.LONG, chunkShape, longs);
-                }
+        final ByteBuffer bytes = readBytes(storeKey, getSize() * Long.BYTES);
+        if (bytes == null) {
+            return createFilled(DataType.LONG);
+        }
+        final long[] longs = new long[getSize()];
+        try {
+            if (isConstant(bytes, Long.BYTES)) {
+                Arrays.fill(longs, bytes.getLong(0));
             } else {
-                return createFilled(DataType.LONG);
+                bytes.asLongBuffer().get(longs);
             }
+        } finally {
+            releaseBytes(bytes);
+        }
+        return Array.factory(DataType.LONG, chunkShape, longs);
+    }
+
+    @Override
+    public void read(String storeKey, Object target, int[] targetShape, int[] offset) throws IOException, InvalidRangeException {
+        if (!(target instanceof long[])) {
+            super.read(storeKey, target, targetShape, offset);
+            return;
+        }
+        final long[] longs = (long[]) target;
+        PartialDataCopier.ensureOverlap(offset, chunkShape, targetShape);
+        final ByteBuffer bytes = readBytes(storeKey, getSize() * Long.BYTES, targetShape, offset);
+        if (bytes == null) {
+            final long value = fill != null ? fill.longValue() : 0;
+            PartialDataCopier.forEachRun(offset, chunkShape, targetShape, (sourcePos, targetPos, length) ->
+                    Arrays.fill(longs, targetPos, targetPos + length, value));
+            return;
+        }
+        try {
+            if (isConstant(bytes, Long.BYTES)) {
+                final long value = bytes.getLong(0);
+                PartialDataCopier.forEachRun(offset, chunkShape, targetShape, (sourcePos, targetPos, length) ->
+                        Arrays.fill(longs, targetPos, targetPos + length, value));
+                return;
+            }
+            final LongBuffer source = bytes.asLongBuffer();
+            PartialDataCopier.forEachRun(offset, chunkShape, targetShape, (sourcePos, targetPos, length) -> {
+                source.position(sourcePos);
+                source.get(longs, targetPos, length);
+            });
+        } finally {
+            releaseBytes(bytes);
         }
     }
 
@@ -83,21 +118,32 @@ public class ChunkReaderWriterImpl_Long extends ChunkReaderWriter {
         return true;
     }
 
+    private static boolean isConstant(long[] longs) {
+        final long first = longs[0];
+        for (int i = 1; i < longs.length; i++) {
+            if (longs[i] != first) {
+                return false;
+            }
+        }
+        return true;
+    }
+
     @Override
     public void write(String storeKey, Array array) throws IOException {
         if (isFillOnly(array)) {
             store.delete(storeKey);
         } else {
-            try (
-                    final ImageOutputStream iis = new MemoryCacheImageOutputStream(new ByteArrayOutputStream());
-                    final InputStream is = new ZarrInputStreamAdapter(iis);
-                    final OutputStream os = store.getOutputStream(storeKey)
-            ) {
-                final long[] longs = (long[]) array.get1DJavaArray(DataType.LONG);
-                iis.setByteOrder(order);
-                iis.writeLongs(longs, 0, longs.length);
-                iis.seek(0);
-                compressor.compress(is, os);
+            final long[] longs = (long[]) array.get1DJavaArray(DataType.LONG);
+            if (constantChunks && isConstant(longs)) {
+                writeConstant(storeKey, ByteBuffer.allocate(Long.BYTES).order(order).putLong(0, longs[0]));
+                return;
+            }
+            final ByteBuffer bytes = allocateBytes(longs.length * Long.BYTES);
+            try {
+                bytes.asLongBuffer().put(longs);
+                writeBytes(storeKey, bytes);
+            } finally {
+                releaseBytes(bytes);
             }
         }
     }
@@ -26,17 +26,19 @@
 package com.bc.zarr.chunk;
 
 import com.bc.zarr.Compressor;
+import com.bc.zarr.Filter;
 import com.bc.zarr.storage.Store;
+import com.bc.zarr.ucar.PartialDataCopier;
 import ucar.ma2.Array;
 import ucar.ma2.DataType;
 import ucar.ma2.IndexIterator;
+import ucar.ma2.InvalidRangeException;
 
-import javax.imageio.stream.ImageInputStream;
-import javax.imageio.stream.ImageOutputStream;
-import javax.imageio.stream.MemoryCacheImageInputStream;
-import javax.imageio.stream.MemoryCacheImageOutputStream;
-import java.io.*;
+import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
+import java.nio.ShortBuffer;
+import java.util.Arrays;
 
 public class ChunkReaderWriterImpl_Short extends ChunkReaderWriter {
 
@@ -44,29 +46,62 @@ public class ChunkReaderWriterImpl_Short extends ChunkReaderWriter {
         super(order, compressor, chunkShape, fill, store);
     }
 
+    public ChunkReaderWriterImpl_Short(ByteOrder order, Compressor compressor, Filter[] filters, int[] chunkShape, Number fill, Store store) {
+        super(order, compressor, filters, chunkShape, fill, store);
+    }
+
+    public ChunkReaderWriterImpl_Short(ByteOrder order, Compressor compressor, Filter[] filters, int[] chunkShape, Number fill, Store store, boolean constantChunks) {
+        super(order, compressor, filters, chunkShape, fill, store, constantChunks);
+    }
+
     @Override
     public Array read(String storeKey) throws IOException {
-        try (
-                InputStream is = store.getInputStream(storeKey)
-        ) {
-            if (is != null) {
-                try (
-                        final ByteArrayOutputStream os = new ByteArrayOutputStream()
-                ) {
-                    compressor.uncompress(is, os);
-                    final short[] shorts = new short[getSize()];
-                    try (
-                            final ByteArrayInputStream bais = new ByteArrayInputStream(os.toByteArray());
-                            final ImageInputStream iis = new MemoryCacheImageInputStream(bais)
-                    ) {
-                        iis.setByteOrder(order);
-                        iis.readFully(shorts, 0, shorts.length);
-                    }
-                    return Array.factory(DataType.SHORT, chunkShape, shorts);
-                }
+        final ByteBuffer bytes = readBytes(storeKey, getSize() * Short.BYTES);
+        if (bytes == null) {
+            return createFilled(DataType.SHORT);
+        }
+        final short[] shorts = new short[getSize()];
+        try {
+            if (isConstant(bytes, Short.BYTES)) {
+                Arrays.fill(shorts, bytes.getShort(0));
             } else {
-                return createFilled(DataType.SHORT);
+                bytes.asShortBuffer().get(shorts);
             }
+        } finally {
+            releaseBytes(bytes);
+        }
+        return Array.factory(DataType.SHORT, chunkShape, shorts);
+    }
+
+    @Override
+    public void read(String storeKey, Object target, int[] targetShape, int[] offset) throws IOException, InvalidRangeException {
+        if (!(target instanceof short[])) {
+            super.read(storeKey, target, targetShape, offset);
+            return;
+        }
+        final short[] shorts = (short[]) target;
+        PartialDataCopier.ensureOverlap(offset, chunkShape, targetShape);
+        final ByteBuffer bytes = readBytes(storeKey, getSize() * Short.BYTES, targetShape, offset);
+        if (bytes == null) {
+            final short value = fill != null ? fill.shortValue() : 0;
+            PartialDataCopier.forEachRun(offset, chunkShape, targetShape, (sourcePos, targetPos, length) ->
+                    Arrays.fill(shorts, targetPos, targetPos + length, value));
+            return;
+        }
+        try {
+            if (isConstant(bytes, Short.BYTES)) {
+                final short value = bytes.getShort(0);
+                PartialDataCopier.forEachRun(offset, chunkShape, targetShape, (sourcePos, targetPos, length) ->
+                        Arrays.fill(shorts, targetPos, targetPos + length, value));
+                return;
+            }
+            final ShortBuffer source = bytes.asShortBuffer();
+            PartialDataCopier.forEachRun(offset, chunkShape, targetShape, (sourcePos, targetPos, length) -> {
+                source.position(sourcePos);
+                source.get(shorts, targetPos, length);
+            });
+        } finally {
+            releaseBytes(bytes);
         }
     }
 
@@ -83,21 +118,32 @@ public class ChunkReaderWriterImpl_Short extends ChunkReaderWriter {
         return true;
     }
 
+    private static boolean isConstant(short[] shorts) {
+        final short first = shorts[0];
+        for (int i = 1; i < shorts.length; i++) {
+            if (shorts[i] != first) {
+                return false;
+            }
+        }
+        return true;
+    }
+
     @Override
     public void write(String storeKey, Array array) throws IOException {
         if (isFillOnly(array)) {
             store.delete(storeKey);
         } else {
-            try (
-                    final ImageOutputStream iis = new MemoryCacheImageOutputStream(new ByteArrayOutputStream());
-                    final InputStream is = new ZarrInputStreamAdapter(iis);
-                    final OutputStream os = store.getOutputStream(storeKey)
-            ) {
-                final short[] shorts = (short[]) array.get1DJavaArray(DataType.SHORT);
-                iis.setByteOrder(order);
-                iis.writeShorts(shorts, 0, shorts.length);
-                iis.seek(0);
-                compressor.compress(is, os);
+            final short[] shorts = (short[]) array.get1DJavaArray(DataType.SHORT);
+            if (constantChunks && isConstant(shorts)) {
+                writeConstant(storeKey, ByteBuffer.allocate(Short.BYTES).order(order).putShort(0, shorts[0]));
+                return;
+            }
+            final ByteBuffer bytes = allocateBytes(shorts.length * Short.BYTES);
+            try {
+                bytes.asShortBuffer().put(shorts);
+                writeBytes(storeKey, bytes);
+            } finally {
+                releaseBytes(bytes);
             }
         }
     }
@@ -0,0 +1,115 @@
+/*
+ *
+ * MIT License
+ *
+ * Copyright (c) 2021. Brockmann Consult GmbH (info@brockmann-consult.de)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package com.bc.zarr.codec;
+
+import java.io.IOException;
+
+/**
+ * Reads a bit stream from its end towards its start, as used by the entropy coded
+ * sections of Zstandard blocks. The highest set bit of the last byte marks the start
+ * of the stream. Reading past the start yields zero bits and sets the overflow state.
+ */
+final class BackwardBitReader {
+
+    private final byte[] src;
+    private final int start;
+    private int ptr;
+    private long container;
+    private int bitsConsumed;
+
+    BackwardBitReader(byte[] src, int start, int end) throws IOException {
+        if (end <= start) {
+            throw Zstd.corrupted("empty bit stream");
+        }
+        final int lastByte = src[end - 1] & 0xFF;
+        if (lastByte == 0) {
+            throw Zstd.corrupted("bit stream without end mark");
+        }
+        this.src = src;
+        this.start = start;
+        final int size = end - start;
+        if (size >= 8) {
+            ptr = end - 8;
+            container = Bytes.readLong(src, ptr);
+            bitsConsumed = 8 - Bytes.highBit(lastByte);
+        } else {
+            ptr = start;
+            for (int i = 0; i < size; i++) {
+                container |= (src[start + i] & 0xFFL) << (8 * i);
+            }
+            bitsConsumed = 8 - Bytes.highBit(lastByte) + (8 - size) * 8;
+        }
+    }
+
+    int peekBits(int n) {
+        if (n == 0 || bitsConsumed >= 64) {
+            return 0;
+        }
+        return (int) ((container << bitsConsumed) >>> (64 - n));
+    }
+
+    void skipBits(int n) {
+        bitsConsumed += n;
+    }
+
+    int readBits(int n) {
+        final int value = peekBits(n);
+        bitsConsumed += n;
+        return value;
+    }
+
+    /**
+     * Refills the bit container so that at least 56 bits can be read, unless the start of the stream is reached.
+     */
+    void reload() {
+        if (bitsConsumed > 64) {
+            return;
+        }
+        if (ptr >= start + 8) {
+            ptr -= bitsConsumed >>> 3;
+            bitsConsumed &= 7;
+        } else if (ptr == start) {
+            return;
+        } else {
+            int nbBytes = bitsConsumed >>> 3;
+            if (ptr - nbBytes < start) {
+                nbBytes = ptr - start;
+            }
+            ptr -= nbBytes;
+            bitsConsumed -= nbBytes << 3;
+        }
+        container = Bytes.readLong(src, ptr);
+    }
+
+    boolean isOverflow() {
+        return bitsConsumed > 64;
+    }
+
+    boolean isComplete() {
+        return ptr == start && bitsConsumed == 64;
+    }
+}
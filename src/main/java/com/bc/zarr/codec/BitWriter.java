@@ -0,0 +1,83 @@
+/*
+ *
+ * MIT License
+ *
+ * Copyright (c) 2021. Brockmann Consult GmbH (info@brockmann-consult.de)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package com.bc.zarr.codec;
+
+import java.io.IOException;
+
+/**
+ * Writes a bit stream which is read back by a {@link BackwardBitReader}. Values are packed
+ * starting at the least significant bit, {@link #close()} appends the end mark.
+ */
+final class BitWriter {
+
+    private final byte[] dst;
+    private final int end;
+    private int pos;
+    private long container;
+    private int bitCount;
+
+    BitWriter(byte[] dst, int offset, int end) {
+        this.dst = dst;
+        this.pos = offset;
+        this.end = end;
+    }
+
+    /**
+     * @param value the value, only the lowest {@code nbBits} bits are written
+     * @param nbBits the number of bits, at most 32
+     */
+    void addBits(long value, int nbBits) throws IOException {
+        container |= (value & ((1L << nbBits) - 1)) << bitCount;
+        bitCount += nbBits;
+        while (bitCount >= 8) {
+            if (pos >= end) {
+                throw Zstd.tooSmall();
+            }
+            dst[pos++] = (byte) container;
+            container >>>= 8;
+            bitCount -= 8;
+        }
+    }
+
+    /**
+     * Writes the end mark and the pending bits.
+     *
+     * @return the position after the last written byte
+     */
+    int close() throws IOException {
+        addBits(1, 1);
+        if (bitCount > 0) {
+            if (pos >= end) {
+                throw Zstd.tooSmall();
+            }
+            dst[pos++] = (byte) container;
+            container = 0;
+            bitCount = 0;
+        }
+        return pos;
+    }
+}
@@ -0,0 +1,501 @@
+/*
+ *
+ * MIT License
+ *
+ * Copyright (c) 2021. Brockmann Consult GmbH (info@brockmann-consult.de)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+package com.bc.zarr.codec;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * A pure Java implementation of the blosc 1 container format, as written by {@code blosc_compress_ctx}
+ * and read by {@code blosc_decompress_ctx} of c-blosc.
+ * <p>
+ * A container starts with a header of {@link #OVERHEAD} bytes holding the format versions, the flags,
+ * the type size and the uncompressed, block and compressed sizes. The uncompressed bytes are divided into
+ * blocks, which are shuffled and compressed independently, and the header is followed by the offsets of
+ * the blocks. A block consists of one stream per byte of the type size if the blocks are split, otherwise
+ * of a single stream, each preceded by its compressed size. Streams which do not compress are stored as
+ * they are. Containers whose data does not compress at all hold a plain copy of the uncompressed bytes.
+ * <p>
+ * The codecs blosclz, lz4, lz4hc, zlib and zstd are supported, snappy is not. Blocks are processed by
+ * the calling thread.
+ */
+public final class Blosc {
+
+    public static final int OVERHEAD = 16;
+
+    public static final int NOSHUFFLE = 0;
+    public static final int SHUFFLE = 1;
+    public static final int BITSHUFFLE = 2;
+
+    public static final int MAX_TYPESIZE = 255;
+
+    private static final int VERSION_FORMAT = 2;
+    private static final int VERSION_LZ_FORMAT = 1;
+    private static final int MAX_BUFFERSIZE = Integer.MAX_VALUE - OVERHEAD;
+
+    private static final int DOSHUFFLE = 0x1;
+    private static final int MEMCPYED = 0x2;
+    private static final int DOBITSHUFFLE = 0x4;
+    private static final int DONT_SPLIT = 0x10;
+
+    private static final int BLOSCLZ_FORMAT = 0;
+    private static final int LZ4_FORMAT = 1;
+    private static final int ZLIB_FORMAT = 3;
+    private static final int ZSTD_FORMAT = 4;
+
+    // smaller buffers are stored as plain copies
+    private static final int MIN_BUFFERSIZE = 128;
+    private static final int MAX_SPLITS = 16;
+    private static final int L1 = 32 * 1024;
+
+    private Blosc() {
+    }
+
+    /**
+     * @return the size of the largest container {@link #compress} writes for the given number of bytes
+     */
+    public static int maxCompressedLength(int uncompressedLength) {
+        final long bound = (long) uncompressedLength + OVERHEAD;
+        return bound > Integer.MAX_VALUE ? -1 : (int) bound;
+    }
+
+    /**
+     * Compresses the source into a container, with the block size and splitting chosen like c-blosc.
+     *
+     * @param cname     the codec, one of "blosclz", "lz4", "lz4hc", "zlib" and "zstd"
+     * @param clevel    the compression level from 0 (a plain copy) to 9
+     * @param shuffle   {@link #NOSHUFFLE}, {@link #SHUFFLE} or {@link #BITSHUFFLE}
+     * @param typesize  the size of the elements to shuffle, values outside 1 to {@link #MAX_TYPESIZE} select 1
+     * @param blocksize the size of the blocks or 0 to choose it from the other parameters
+     * @return the size of the container
+     * @throws IOException if {@code dstLen} is smaller than the container
+     */
+    public static int compress(byte[] src, int srcOff, int srcLen, byte[] dst, int dstOff, int dstLen,
+                               String cname, int clevel, int shuffle, int typesize, int blocksize) throws IOException {
+        final int compcode = compressorCode(cname);
+        if (clevel < 0 || clevel > 9) {
+            throw new IllegalArgumentException("blosc: clevel parameter must be between 0 and 9 but was: " + clevel);
+        }
+        if (shuffle < NOSHUFFLE || shuffle > BITSHUFFLE) {
+            throw new IllegalArgumentException("blosc: shuffle type not supported: '" + shuffle + "'");
+        }
+        if (srcLen > MAX_BUFFERSIZE) {
+            throw new IllegalArgumentException("blosc: source of " + srcLen + " bytes exceeds the maximum of " + MAX_BUFFERSIZE + " bytes");
+        }
+        if (typesize < 1 || typesize > MAX_TYPESIZE) {
+            typesize = 1;
+        }
+        if (dstLen < OVERHEAD) {
+            throw tooSmall();
+        }
+        blocksize = computeBlocksize(cname, clevel, typesize, srcLen, blocksize);
+        final boolean split = splitBlock(typesize, blocksize);
+        int flags = compcode << 5;
+        if (shuffle == SHUFFLE) {
+            flags |= DOSHUFFLE;
+        } else if (shuffle == BITSHUFFLE) {
+            flags |= DOBITSHUFFLE;
+        }
+        if (!split) {
+            flags |= DONT_SPLIT;
+        }
+        int cbytes = -1;
+        if (clevel > 0 && srcLen >= MIN_BUFFERSIZE) {
+            // a container larger than a plain copy is useless
+            final int maxBytes = (int) Math.min(dstLen, (long) srcLen + OVERHEAD);
+            cbytes = compressBlocks(src, srcOff, srcLen, dst, dstOff, maxBytes,
+                                    cname, clevel, flags, typesize, blocksize);
+        }
+        if (cbytes < 0) {
+            if (srcLen > dstLen - OVERHEAD) {
+                throw tooSmall();
+            }
+            flags |= MEMCPYED;
+            System.arraycopy(src, srcOff, dst, dstOff + OVERHEAD, srcLen);
+            cbytes = srcLen + OVERHEAD;
+        }
+        dst[dstOff] = VERSION_FORMAT;
+        dst[dstOff + 1] = VERSION_LZ_FORMAT;
+        dst[dstOff + 2] = (byte) flags;
+        dst[dstOff + 3] = (byte) typesize;
+        Bytes.writeInt(dst, dstOff + 4, srcLen);
+        Bytes.writeInt(dst, dstOff + 8, blocksize);
+        Bytes.writeInt(dst, dstOff + 12, cbytes);
+        return cbytes;
+    }
+
+    /**
+     * Decompresses a container.
+     *
+     * @return the number of bytes written to {@code dst}
+     * @throws IOException if the container is truncated, corrupted, uses an unsupported codec or does not
+     *                     fit into {@code dstLen}
+     */
+    public static int decompress(byte[] src, int srcOff, int srcLen, byte[] dst, int dstOff, int dstLen) throws IOException {
+        checkHeader(src, srcOff, srcLen);
+        final int flags = src[srcOff + 2] & 0xFF;
+        final int typesize = src[srcOff + 3] & 0xFF;
+        final int nbytes = getUncompressedSize(src, srcOff);
+        final int blocksize = getBlocksize(src, srcOff);
+        final int cbytes = getCompressedSize(src, srcOff);
+        if (cbytes > srcLen) {
+            throw new EOFException("blosc: " + cbytes + " compressed bytes expected but only " + srcLen + " available");
+        }
+        if (nbytes > dstLen) {
+            throw tooSmall();
+        }
+        if ((flags & MEMCPYED) != 0) {
+            if ((long) nbytes + OVERHEAD != cbytes) {
+                throw corrupted();
+            }
+            System.arraycopy(src, srcOff + OVERHEAD, dst, dstOff, nbytes);
+            return nbytes;
+        }
+        final int compcode = flags >>> 5;
+        if (compcode != BLOSCLZ_FORMAT && compcode != LZ4_FORMAT && compcode != ZLIB_FORMAT && compcode != ZSTD_FORMAT) {
+            throw new IOException("blosc: compressor code " + compcode + " not supported");
+        }
+        if (nbytes == 0) {
+            return 0;
+        }
+        if (typesize == 0 || blocksize <= 0 || nbytes < 0 || cbytes < 0) {
+            throw corrupted();
+        }
+        final boolean split = (flags & DONT_SPLIT) == 0;
+        // checked before allocating anything, c-blosc never writes larger blocks than the data or
+        // splits blocks into streams smaller than an element
+        if (blocksize > nbytes || split && typesize > blocksize) {
+            throw corrupted();
+        }
+        final int leftover = nbytes % blocksize;
+        final int nblocks = nbytes / blocksize + (leftover > 0 ? 1 : 0);
+        final long dataStart = OVERHEAD + 4L * nblocks;
+        if (dataStart > cbytes) {
+            throw corrupted();
+        }
+        final boolean byteShuffled = (flags & DOSHUFFLE) != 0 && typesize > 1;
+        final boolean bitShuffled = (flags & DOBITSHUFFLE) != 0;
+        final byte[] tmp = byteShuffled || bitShuffled ? new byte[blocksize] : null;
+        final byte[] scratch = bitShuffled ? new byte[blocksize] : null;
+        final int srcEnd = srcOff + cbytes;
+        for (int b = 0; b < nblocks; b++) {
+            final int start = Bytes.readInt(src, srcOff + OVERHEAD + 4 * b);
+            if (start < dataStart || start >= cbytes) {
+                throw corrupted();
+            }
+            final boolean leftoverBlock = b == nblocks - 1 && leftover > 0;
+            final int bsize = leftoverBlock ? leftover : blocksize;
+            final int nsplits = split && !leftoverBlock ? typesize : 1;
+            final int neblock = bsize / nsplits;
+            final int blockOff = dstOff + b * blocksize;
+            final byte[] out = tmp != null ? tmp : dst;
+            final int outOff = tmp != null ? 0 : blockOff;
+            int ip = srcOff + start;
+            for (int j = 0; j < nsplits; j++) {
+                if (ip + 4 > srcEnd) {
+                    throw corrupted();
+                }
+                final int streamBytes = Bytes.readInt(src, ip);
+                ip += 4;
+                if (streamBytes < 0 || streamBytes > srcEnd - ip) {
+                    throw corrupted();
+                }
+                if (streamBytes == neblock) {
+                    System.arraycopy(src, ip, out, outOff + j * neblock, neblock);
+                } else if (decompressStream(compcode, src, ip, streamBytes, out, outOff + j * neblock, neblock) != neblock) {
+                    throw corrupted();
+                }
+                ip += streamBytes;
+            }
+            if (byteShuffled) {
+                Shuffle.unshuffle(tmp, 0, dst, blockOff, bsize, typesize);
+            } else if (bitShuffled) {
+                bitunshuffle(tmp, dst, blockOff, bsize, typesize, scratch);
+            }
+        }
+        return nbytes;
+    }
+
+    /**
+     * @return the number of uncompressed bytes stored in the header of the container
+     */
+    public static int getUncompressedSize(byte[] src, int srcOff) {
+        return Bytes.readInt(src, srcOff + 4);
+    }
+
+    /**
+     * @return the block size stored in the header of the container
+     */
+    public static int getBlocksize(byte[] src, int srcOff) {
+        return Bytes.readInt(src, srcOff + 8);
+    }
+
+    /**
+     * @return the size of the whole container stored in its header
+     */
+    public static int getCompressedSize(byte[] src, int srcOff) {
+        return Bytes.readInt(src, srcOff + 12);
+    }
+
+    private static void checkHeader(byte[] src, int srcOff, int srcLen) throws IOException {
+        if (srcLen < OVERHEAD) {
+            throw new EOFException("blosc: header of " + OVERHEAD + " bytes expected but only " + srcLen + " available");
+        }
+        final int version = src[srcOff] & 0xFF;
+        if (version == 0 || version > VERSION_FORMAT) {
+            throw new IOException("blosc: format version " + version + " not supported");
+        }
+    }
+
+    private static int compressBlocks(byte[] src, int srcOff, int srcLen, byte[] dst, int dstOff, int maxBytes,
+                                      String cname, int clevel, int flags, int typesize, int blocksize) throws IOException {
+        final int leftover = srcLen % blocksize;
+        final int nblocks = srcLen / blocksize + (leftover > 0 ? 1 : 0);
+        final int dstEnd = dstOff + maxBytes;
+        final boolean split = (flags & DONT_SPLIT) == 0;
+        final int shuffle = (flags & DOSHUFFLE) != 0 ? SHUFFLE : (flags & DOBITSHUFFLE) != 0 ? BITSHUFFLE : NOSHUFFLE;
+        final byte[] tmp = shuffle != NOSHUFFLE ? new byte[blocksize] : null;
+        final byte[] scratch = shuffle == BITSHUFFLE ? new byte[blocksize] : null;
+        int op = dstOff + OVERHEAD + 4 * nblocks;
+        if (op > dstEnd) {
+            return -1;
+        }
+        for (int b = 0; b < nblocks; b++) {
+            Bytes.writeInt(dst, dstOff + OVERHEAD + 4 * b, op - dstOff);
+            final boolean leftoverBlock = b == nblocks - 1 && leftover > 0;
+            final int bsize = leftoverBlock ? leftover : blocksize;
+            final int blockOff = srcOff + b * blocksize;
+            final byte[] in;
+            final int inOff;
+            if (shuffle == SHUFFLE && typesize > 1) {
+                Shuffle.shuffle(src, blockOff, tmp, 0, bsize, typesize);
+                in = tmp;
+                inOff = 0;
+            } else if (shuffle == BITSHUFFLE) {
+                bitshuffle(src, blockOff, tmp, bsize, typesize, scratch);
+                in = tmp;
+                inOff = 0;
+            } else {
+                in = src;
+                inOff = blockOff;
+            }
+            final int nsplits = split && !leftoverBlock ? typesize : 1;
+            final int neblock = bsize / nsplits;
+            for (int j = 0; j < nsplits; j++) {
+                final int streamOff = op + 4;
+                final int maxOut = Math.min(neblock, dstEnd - streamOff);
+                if (maxOut <= 0) {
+                    return -1;
+                }
+                int streamBytes = compressStream(cname, clevel, in, inOff + j * neblock, neblock, dst, streamOff, maxOut);
+                if (streamBytes == 0 || streamBytes >= neblock) {
+                    // the stream does not compress and is stored as it is
+                    if (neblock > dstEnd - streamOff) {
+                        return -1;
+                    }
+                    System.arraycopy(in, inOff + j * neblock, dst, streamOff, neblock);
+                    streamBytes = neblock;
+                }
+                Bytes.writeInt(dst, op, streamBytes);
+                op = streamOff + streamBytes;
+            }
+        }
+        return op - dstOff;
+    }
+
+    /**
+     * @return the size of the stream or 0 if it does not fit into {@code maxOut} bytes
+     */
+    private static int compressStream(String cname, int clevel, byte[] src, int srcOff, int srcLen,
+                                      byte[] dst, int dstOff, int maxOut) throws IOException {
+        try {
+            switch (cname) {
+                case "blosclz":
+                    return BloscLz.compress(clevel, src, srcOff, srcLen, dst, dstOff, maxOut);
+                case "lz4":
+                    return Lz4.compress(src, srcOff, srcLen, dst, dstOff, maxOut, 10 - clevel);
+                case "lz4hc":
+                    return Lz4.compressHC(src, srcOff, srcLen, dst, dstOff, maxOut, clevel);
+                case "zlib":
+                    return deflate(clevel, src, srcOff, srcLen, dst, dstOff, maxOut);
+                default:
+                    return Zstd.compress(src, srcOff, srcLen, dst, dstOff, maxOut, zstdLevel(clevel), false);
+            }
+        } catch (IOException e) {
+            // the lz4 and zstd encoders only fail if the destination is too small
+            return 0;
+        }
+    }
+
+    private static int decompressStream(int compcode, byte[] src, int srcOff, int srcLen,
+                                        byte[] dst, int dstOff, int dstLen) throws IOException {
+        switch (compcode) {
+            case BLOSCLZ_FORMAT:
+                return BloscLz.decompress(src, srcOff, srcLen, dst, dstOff, dstLen);
+            case LZ4_FORMAT:
+                return Lz4.decompress(src, srcOff, srcLen, dst, dstOff, dstLen);
+            case ZLIB_FORMAT:
+                return inflate(src, srcOff, srcLen, dst, dstOff, dstLen);
+            default:
+                return Zstd.decompress(src, srcOff, srcLen, dst, dstOff, dstLen);
+        }
+    }
+
+    private static int deflate(int clevel, byte[] src, int srcOff, int srcLen, byte[] dst, int dstOff, int maxOut) {
+        final Deflater deflater = ZlibPool.borrowDeflater(clevel, false);
+        boolean completed = false;
+        try {
+            deflater.setInput(src, srcOff, srcLen);
+            deflater.finish();
+            int n = 0;
+            while (!deflater.finished() && n < maxOut) {
+                n += deflater.deflate(dst, dstOff + n, maxOut - n);
+            }
+            completed = true;
+            return deflater.finished() ? n : 0;
+        } finally {
+            ZlibPool.returnDeflater(deflater, false, completed);
+        }
+    }
+
+    private static int inflate(byte[] src, int srcOff, int srcLen, byte[] dst, int dstOff, int dstLen) throws IOException {
+        final Inflater inflater = ZlibPool.borrowInflater(false);
+        boolean completed = false;
+        try {
+            inflater.setInput(src, srcOff, srcLen);
+            int n = 0;
+            while (!inflater.finished() && n < dstLen) {
+                final int count = inflater.inflate(dst, dstOff + n, dstLen - n);
+                if (count == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    break;
+                }
+                n += count;
+            }
+            if (!inflater.finished()) {
+                throw corrupted();
+            }
+            completed = true;
+            return n;
+        } catch (DataFormatException e) {
+            throw new IOException("blosc: corrupted zlib stream", e);
+        } finally {
+            ZlibPool.returnInflater(inflater, false, completed);
+        }
+    }
+
+    /**
+     * Blosc bit shuffles blocks only if they contain a multiple of eight elements and copies other blocks.
+     * The block sized scratch array is shared by all blocks of a container.
+     */
+    private static void bitshuffle(byte[] src, int srcOff, byte[] dst, int length, int typesize, byte[] scratch) {
+        if ((length / typesize) % 8 == 0) {
+            Shuffle.bitshuffle(src, srcOff, dst, 0, length, typesize, scratch);
+        } else {
+            System.arraycopy(src, srcOff, dst, 0, length);
+        }
+    }
+
+    private static void bitunshuffle(byte[] src, byte[] dst, int dstOff, int length, int typesize, byte[] scratch) {
+        if ((length / typesize) % 8 == 0) {
+            Shuffle.bitunshuffle(src, 0, dst, dstOff, length, typesize, scratch);
+        } else {
+            System.arraycopy(src, 0, dst, dstOff, length);
+        }
+    }
+
+    private static int compressorCode(String cname) {
+        if ("blosclz".equals(cname)) {
+            return BLOSCLZ_FORMAT;
+        } else if ("lz4".equals(cname) || "lz4hc".equals(cname)) {
+            return LZ4_FORMAT;
+        } else if ("zlib".equals(cname)) {
+            return ZLIB_FORMAT;
+        } else if ("zstd".equals(cname)) {
+            return ZSTD_FORMAT;
+        }
+        throw new IllegalArgumentException("blosc: compressor not supported: '" + cname + "'");
+    }
+
+    private static int zstdLevel(int clevel) {
+        return clevel < 9 ? clevel * 2 - 1 : Zstd.MAX_LEVEL;
+    }
+
+    private static boolean splitBlock(int typesize, int blocksize) {
+        return typesize <= MAX_SPLITS && blocksize / typesize >= MIN_BUFFERSIZE;
+    }
+
+    private static int computeBlocksize(String cname, int clevel, int typesize, int nbytes, int forcedBlocksize) {
+        if (nbytes < typesize) {
+            return 1;
+        }
+        int blocksize = nbytes;
+        if (forcedBlocksize > 0) {
+            blocksize = Math.max(forcedBlocksize, MIN_BUFFERSIZE);
+        } else {
+            if (nbytes >= L1) {
+                blocksize = L1;
+                // the codecs with high compression ratios have a large overhead on small blocks
+                final boolean highRatio = "zlib".equals(cname) || "zstd".equals(cname) || "lz4hc".equals(cname);
+                if (highRatio) {
+                    blocksize *= 2;
+                }
+                if (clevel == 0) {
+                    blocksize /= 4;
+                } else if (clevel == 1) {
+                    blocksize /= 2;
+                } else if (clevel == 3) {
+                    blocksize *= 2;
+                } else if (clevel == 4 || clevel == 5) {
+                    blocksize *= 4;
+                } else if (clevel >= 6) {
+                    blocksize *= clevel == 9 && highRatio ? 16 : 8;
+                }
+            }
+            if (clevel > 0 && splitBlock(typesize, blocksize)) {
+                // split streams of 64 KiB to 256 KiB, but blocks of at most 1 MiB
+                blocksize = Math.min(blocksize, 1 << 18) * typesize;
+                blocksize = Math.max(blocksize, 1 << 16);
+                blocksize = Math.min(blocksize, 1 << 20);
+            }
+        }
+        blocksize = Math.min(blocksize, nbytes);
+        if (blocksize > typesize) {
+            blocksize = blocksize / typesize * typesize;
+        }
+        return blocksize;
+    }
+
+    private static IOException corrupted() {
+        return new IOException("blosc: corrupted data");
+    }
+
+    private static IOException tooSmall() {
+        return new IOException("blosc: destination buffer too small");
+    }
+}
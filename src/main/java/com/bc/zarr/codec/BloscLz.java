@@ -0,0 +1,228 @@
+/*
+ *
+ * MIT License
+ *
+ * Copyright (c) 2021. Brockmann Consult GmbH (info@brockmann-consult.de)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+package com.bc.zarr.codec;
+
+import java.io.IOException;
+
+/**
+ * The BloscLZ format, the default codec of blosc and a descendant of FastLZ level 2.
+ * <p>
+ * A stream is a sequence of instructions, each starting with a control byte. Control bytes below 32
+ * start a run of up to 32 literals. Other control bytes start a match: the upper three bits hold the
+ * match length minus two, where 7 means that more length bytes follow, the lower five bits hold the
+ * upper bits of the distance minus one, followed by a byte with its lower bits. Distances beyond
+ * 8191 are marked by the largest near distance and followed by a 16 bit big endian extension.
+ * Streams written by {@link #compress} always end with literals.
+ */
+final class BloscLz {
+
+    private static final int MAX_COPY = 32;
+    private static final int MAX_DISTANCE = 8191;
+    private static final int MAX_FAR_DISTANCE = 65535 + MAX_DISTANCE + 1;
+    private static final int MIN_MATCH = 4;
+    // far matches need more bytes than the shortest match saves
+    private static final int MIN_FAR_MATCH = 5;
+    // no match starts in the last bytes, so every stream ends with literals
+    private static final int LAST_LITERALS = 12;
+
+    private BloscLz() {
+    }
+
+    /**
+     * @param clevel the blosc compression level from 1 to 9, higher levels use a larger hash table
+     * @return the size of the stream or 0 if it does not fit into {@code maxOut} bytes
+     */
+    static int compress(int clevel, byte[] src, int srcOff, int srcLen, byte[] dst, int dstOff, int maxOut) {
+        if (srcLen < LAST_LITERALS + MIN_MATCH) {
+            return 0;
+        }
+        final int hashLog = clevel < 4 ? 12 : clevel < 7 ? 13 : 14;
+        // positions relative to srcOff, so empty entries point to the start of the source
+        final int[] table = new int[1 << hashLog];
+        final int srcEnd = srcOff + srcLen;
+        final int ipBound = srcEnd - LAST_LITERALS;
+        final int matchLimit = srcEnd - MIN_MATCH;
+        final int dstEnd = dstOff + maxOut;
+        int anchor = srcOff;
+        int ip = srcOff + 1;
+        int op = dstOff;
+        while (ip < ipBound) {
+            final int value = Bytes.readInt(src, ip);
+            final int h = (value * -1640531535) >>> (32 - hashLog);
+            final int ref = srcOff + table[h];
+            table[h] = ip - srcOff;
+            final int distance = ip - ref;
+            if (distance <= 0 || distance > MAX_FAR_DISTANCE || Bytes.readInt(src, ref) != value) {
+                ip++;
+                continue;
+            }
+            int length = MIN_MATCH;
+            while (ip + length < matchLimit && src[ref + length] == src[ip + length]) {
+                length++;
+            }
+            if (distance > MAX_DISTANCE && length < MIN_FAR_MATCH) {
+                ip++;
+                continue;
+            }
+            op = writeLiterals(src, anchor, ip, dst, op, dstEnd);
+            if (op < 0 || op + 5 + length / 255 > dstEnd) {
+                return 0;
+            }
+            op = writeMatch(dst, op, length, distance);
+            ip += length;
+            anchor = ip;
+        }
+        op = writeLiterals(src, anchor, srcEnd, dst, op, dstEnd);
+        return op < 0 ? 0 : op - dstOff;
+    }
+
+    /**
+     * @return the number of bytes written to {@code dst}
+     * @throws IOException if the stream is corrupted or does not fit into {@code dstLen}
+     */
+    static int decompress(byte[] src, int srcOff, int srcLen, byte[] dst, int dstOff, int dstLen) throws IOException {
+        final int srcEnd = srcOff + srcLen;
+        final int dstEnd = dstOff + dstLen;
+        int ip = srcOff;
+        int op = dstOff;
+        if (srcLen == 0) {
+            return 0;
+        }
+        // the upper bits of the first control byte are reserved for a level marker
+        int ctrl = src[ip++] & 31;
+        while (true) {
+            if (ctrl >= 32) {
+                int length = (ctrl >>> 5) - 1;
+                final int ofs = (ctrl & 31) << 8;
+                if (length == 6) {
+                    int code;
+                    do {
+                        if (ip >= srcEnd) {
+                            throw corrupted();
+                        }
+                        code = src[ip++] & 0xFF;
+                        length += code;
+                    } while (code == 255);
+                }
+                if (ip >= srcEnd) {
+                    throw corrupted();
+                }
+                final int code = src[ip++] & 0xFF;
+                length += 3;
+                int distance = ofs + code + 1;
+                if (code == 255 && ofs == 31 << 8) {
+                    if (ip + 2 > srcEnd) {
+                        throw corrupted();
+                    }
+                    distance = ((src[ip] & 0xFF) << 8 | src[ip + 1] & 0xFF) + MAX_DISTANCE + 1;
+                    ip += 2;
+                }
+                if (distance > op - dstOff) {
+                    throw corrupted();
+                }
+                if (length > dstEnd - op) {
+                    throw tooSmall();
+                }
+                int from = op - distance;
+                if (distance >= length) {
+                    System.arraycopy(dst, from, dst, op, length);
+                    op += length;
+                } else {
+                    final int end = op + length;
+                    while (op < end) {
+                        dst[op++] = dst[from++];
+                    }
+                }
+            } else {
+                final int length = ctrl + 1;
+                if (length > srcEnd - ip) {
+                    throw corrupted();
+                }
+                if (length > dstEnd - op) {
+                    throw tooSmall();
+                }
+                System.arraycopy(src, ip, dst, op, length);
+                ip += length;
+                op += length;
+            }
+            if (ip >= srcEnd) {
+                return op - dstOff;
+            }
+            ctrl = src[ip++] & 0xFF;
+        }
+    }
+
+    /**
+     * @return the new output position or -1 if the literals do not fit
+     */
+    private static int writeLiterals(byte[] src, int from, int to, byte[] dst, int op, int dstEnd) {
+        final int count = to - from;
+        if (op + count + (count + MAX_COPY - 1) / MAX_COPY > dstEnd) {
+            return -1;
+        }
+        while (from < to) {
+            final int run = Math.min(to - from, MAX_COPY);
+            dst[op++] = (byte) (run - 1);
+            System.arraycopy(src, from, dst, op, run);
+            op += run;
+            from += run;
+        }
+        return op;
+    }
+
+    private static int writeMatch(byte[] dst, int op, int length, int distance) {
+        int len = length - 2;
+        int ofs = distance - 1;
+        final boolean far = ofs >= MAX_DISTANCE;
+        if (far) {
+            ofs -= MAX_DISTANCE;
+        }
+        final int high = far ? 31 : ofs >>> 8;
+        if (len < 7) {
+            dst[op++] = (byte) ((len << 5) + high);
+        } else {
+            dst[op++] = (byte) ((7 << 5) + high);
+            for (len -= 7; len >= 255; len -= 255) {
+                dst[op++] = (byte) 255;
+            }
+            dst[op++] = (byte) len;
+        }
+        if (far) {
+            dst[op++] = (byte) 255;
+            dst[op++] = (byte) (ofs >>> 8);
+        }
+        dst[op++] = (byte) ofs;
+        return op;
+    }
+
+    private static IOException corrupted() {
+        return new IOException("blosclz: corrupted data");
+    }
+
+    private static IOException tooSmall() {
+        return new IOException("blosclz: destination buffer too small");
+    }
+}
@@ -0,0 +1,456 @@
+/*
+ *
+ * MIT License
+ *
+ * Copyright (c) 2021. Brockmann Consult GmbH (info@brockmann-consult.de)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package com.bc.zarr.codec;
+
+import java.io.IOException;
+
+/**
+ * Finite state entropy (tANS) tables and the normalized count headers describing them.
+ */
+final class Fse {
+
+    static final int MIN_TABLE_LOG = 5;
+    static final int MAX_TABLE_LOG = 12;
+
+    private Fse() {
+    }
+
+    private static int tableStep(int tableSize) {
+        return (tableSize >>> 1) + (tableSize >>> 3) + 3;
+    }
+
+    /**
+     * Spreads the symbols over the states. Symbols with the "less than one" probability {@code -1}
+     * are placed at the end of the table.
+     *
+     * @return the highest state which is not occupied by a "less than one" symbol
+     */
+    private static int spreadSymbols(short[] norm, int maxSymbol, int tableLog, int[] tableSymbol) throws IOException {
+        final int tableSize = 1 << tableLog;
+        final int mask = tableSize - 1;
+        final int step = tableStep(tableSize);
+        int highThreshold = tableSize - 1;
+        for (int s = 0; s <= maxSymbol; s++) {
+            if (norm[s] == -1) {
+                tableSymbol[highThreshold--] = s;
+            }
+        }
+        int position = 0;
+        for (int s = 0; s <= maxSymbol; s++) {
+            for (int i = 0; i < norm[s]; i++) {
+                tableSymbol[position] = s;
+                do {
+                    position = (position + step) & mask;
+                } while (position > highThreshold);
+            }
+        }
+        if (position != 0) {
+            throw Zstd.corrupted("invalid FSE distribution");
+        }
+        return highThreshold;
+    }
+
+    /**
+     * Reads a normalized count header.
+     *
+     * @param norm       receives the normalized counts, must hold {@code maxSymbol + 1} values
+     * @param maxSymbol  the largest symbol allowed
+     * @param result     receives the table log at index 0 and the largest symbol read at index 1
+     * @return the number of bytes read
+     */
+    static int readNCount(byte[] src, int start, int end, short[] norm, int maxSymbol, int[] result) throws IOException {
+        final int size = end - start;
+        if (size < 4) {
+            final byte[] padded = new byte[4];
+            System.arraycopy(src, start, padded, 0, Math.max(size, 0));
+            final int n = readNCount(padded, 0, 4, norm, maxSymbol, result);
+            if (n > size) {
+                throw Zstd.corrupted("truncated FSE table description");
+            }
+            return n;
+        }
+        java.util.Arrays.fill(norm, 0, maxSymbol + 1, (short) 0);
+        int ip = start;
+        int bitStream = Bytes.readInt(src, ip);
+        int nbBits = (bitStream & 0xF) + MIN_TABLE_LOG;
+        if (nbBits > MAX_TABLE_LOG) {
+            throw Zstd.corrupted("FSE table log too large");
+        }
+        final int tableLog = nbBits;
+        bitStream >>>= 4;
+        int bitCount = 4;
+        int remaining = (1 << nbBits) + 1;
+        int threshold = 1 << nbBits;
+        nbBits++;
+        int symbol = 0;
+        boolean previous0 = false;
+        while (remaining > 1 && symbol <= maxSymbol) {
+            if (previous0) {
+                int n0 = symbol;
+                while ((bitStream & 0xFFFF) == 0xFFFF) {
+                    n0 += 24;
+                    if (ip < end - 5) {
+                        ip += 2;
+                        bitStream = Bytes.readInt(src, ip) >>> bitCount;
+                    } else {
+                        bitStream >>>= 16;
+                        bitCount += 16;
+                    }
+                }
+                while ((bitStream & 3) == 3) {
+                    n0 += 3;
+                    bitStream >>>= 2;
+                    bitCount += 2;
+                }
+                n0 += bitStream & 3;
+                bitCount += 2;
+                if (n0 > maxSymbol) {
+                    throw Zstd.corrupted("FSE symbol out of range");
+                }
+                while (symbol < n0) {
+                    norm[symbol++] = 0;
+                }
+                if (ip <= end - 7 || ip + (bitCount >>> 3) <= end - 4) {
+                    ip += bitCount >>> 3;
+                    bitCount &= 7;
+                    bitStream = Bytes.readInt(src, ip) >>> bitCount;
+                } else {
+                    bitStream >>>= 2;
+                }
+            }
+            final int max = (2 * threshold - 1) - remaining;
+            int count;
+            if ((bitStream & (threshold - 1)) < max) {
+                count = bitStream & (threshold - 1);
+                bitCount += nbBits - 1;
+            } else {
+                count = bitStream & (2 * threshold - 1);
+                if (count >= threshold) {
+                    count -= max;
+                }
+                bitCount += nbBits;
+            }
+            count--;
+            remaining -= Math.abs(count);
+            norm[symbol++] = (short) count;
+            previous0 = count == 0;
+            while (remaining < threshold) {
+                nbBits--;
+                threshold >>= 1;
+            }
+            if (ip <= end - 7 || ip + (bitCount >>> 3) <= end - 4) {
+                ip += bitCount >>> 3;
+                bitCount &= 7;
+            } else {
+                bitCount -= 8 * (end - 4 - ip);
+                ip = end - 4;
+            }
+            bitStream = Bytes.readInt(src, ip) >>> (bitCount & 31);
+        }
+        if (remaining != 1 || bitCount > 32) {
+            throw Zstd.corrupted("invalid FSE table description");
+        }
+        result[0] = tableLog;
+        result[1] = symbol - 1;
+        ip += (bitCount + 7) >>> 3;
+        if (ip > end) {
+            throw Zstd.corrupted("truncated FSE table description");
+        }
+        return ip - start;
+    }
+
+    /**
+     * Writes the normalized count header read by {@link #readNCount}.
+     *
+     * @return the position after the header
+     */
+    static int writeNCount(short[] norm, int maxSymbol, int tableLog, byte[] dst, int pos, int end) throws IOException {
+        final int tableSize = 1 << tableLog;
+        long bitStream = tableLog - MIN_TABLE_LOG;
+        int bitCount = 4;
+        int remaining = tableSize + 1;
+        int threshold = tableSize;
+        int nbBits = tableLog + 1;
+        int symbol = 0;
+        boolean previousIs0 = false;
+        while (symbol <= maxSymbol && remaining > 1) {
+            if (previousIs0) {
+                int start = symbol;
+                while (symbol <= maxSymbol && norm[symbol] == 0) {
+                    symbol++;
+                }
+                if (symbol > maxSymbol) {
+                    break;
+                }
+                while (symbol >= start + 24) {
+                    start += 24;
+                    bitStream += 0xFFFFL << bitCount;
+                    pos = put16(dst, pos, end, bitStream);
+                    bitStream >>>= 16;
+                }
+                while (symbol >= start + 3) {
+                    start += 3;
+                    bitStream += 3L << bitCount;
+                    bitCount += 2;
+                }
+                bitStream += (long) (symbol - start) << bitCount;
+                bitCount += 2;
+                if (bitCount > 16) {
+                    pos = put16(dst, pos, end, bitStream);
+                    bitStream >>>= 16;
+                    bitCount -= 16;
+                }
+            }
+            int count = norm[symbol++];
+            final int max = (2 * threshold - 1) - remaining;
+            remaining -= Math.abs(count);
+            count++;
+            if (count >= threshold) {
+                count += max;
+            }
+            bitStream += (long) count << bitCount;
+            bitCount += nbBits;
+            if (count < max) {
+                bitCount--;
+            }
+            previousIs0 = count == 1;
+            if (remaining < 1) {
+                throw new IllegalStateException("invalid normalized distribution");
+            }
+            while (remaining < threshold) {
+                nbBits--;
+                threshold >>= 1;
+            }
+            if (bitCount > 16) {
+                pos = put16(dst, pos, end, bitStream);
+                bitStream >>>= 16;
+                bitCount -= 16;
+            }
+        }
+        if (remaining != 1) {
+            throw new IllegalStateException("invalid normalized distribution");
+        }
+        final int n = (bitCount + 7) >>> 3;
+        if (pos + n > end) {
+            throw Zstd.tooSmall();
+        }
+        for (int i = 0; i < n; i++) {
+            dst[pos++] = (byte) (bitStream >>> (8 * i));
+        }
+        return pos;
+    }
+
+    private static int put16(byte[] dst, int pos, int end, long value) throws IOException {
+        if (pos + 2 > end) {
+            throw Zstd.tooSmall();
+        }
+        dst[pos] = (byte) value;
+        dst[pos + 1] = (byte) (value >>> 8);
+        return pos + 2;
+    }
+
+    /**
+     * A table log which is large enough for the number of symbols and small enough for the number of samples.
+     */
+    static int optimalTableLog(int maxTableLog, int total, int maxSymbol) {
+        final int maxBitsSrc = Bytes.highBit(Math.max(total - 1, 1)) - 2;
+        final int minBitsSrc = Bytes.highBit(Math.max(total, 1)) + 1;
+        final int minBitsSymbols = Bytes.highBit(Math.max(maxSymbol, 1)) + 2;
+        final int minBits = Math.min(minBitsSrc, minBitsSymbols);
+        int tableLog = maxTableLog;
+        if (maxBitsSrc < tableLog) {
+            tableLog = maxBitsSrc;
+        }
+        if (minBits > tableLog) {
+            tableLog = minBits;
+        }
+        return Math.max(MIN_TABLE_LOG, Math.min(tableLog, MAX_TABLE_LOG));
+    }
+
+    /**
+     * Scales the symbol counts to a distribution over {@code 1 << tableLog} states.
+     * Every symbol that occurs gets at least one state.
+     */
+    static short[] normalize(int[] counts, int maxSymbol, int total, int tableLog) {
+        final int scale = 1 << tableLog;
+        final short[] norm = new short[maxSymbol + 1];
+        int sum = 0;
+        int largest = 0;
+        for (int s = 0; s <= maxSymbol; s++) {
+            if (counts[s] > 0) {
+                norm[s] = (short) Math.max(1, (int) (((long) counts[s] * scale + total / 2) / total));
+                sum += norm[s];
+                if (counts[s] > counts[largest]) {
+                    largest = s;
+                }
+            }
+        }
+        int diff = scale - sum;
+        if (norm[largest] + diff > 0) {
+            norm[largest] += diff;
+            return norm;
+        }
+        while (diff < 0) {
+            int s = 0;
+            for (int i = 1; i <= maxSymbol; i++) {
+                if (norm[i] > norm[s]) {
+                    s = i;
+                }
+            }
+            norm[s]--;
+            diff++;
+        }
+        return norm;
+    }
+
+    /**
+     * A decoding table.
+     */
+    static final class DecodingTable {
+
+        final int tableLog;
+        final int[] symbol;
+        final int[] nbBits;
+        final int[] newState;
+
+        private DecodingTable(int tableLog) {
+            this.tableLog = tableLog;
+            final int size = 1 << tableLog;
+            symbol = new int[size];
+            nbBits = new int[size];
+            newState = new int[size];
+        }
+
+        static DecodingTable create(short[] norm, int maxSymbol, int tableLog) throws IOException {
+            final DecodingTable table = new DecodingTable(tableLog);
+            final int tableSize = 1 << tableLog;
+            final int[] symbolNext = new int[maxSymbol + 1];
+            for (int s = 0; s <= maxSymbol; s++) {
+                symbolNext[s] = norm[s] == -1 ? 1 : norm[s];
+            }
+            spreadSymbols(norm, maxSymbol, tableLog, table.symbol);
+            for (int u = 0; u < tableSize; u++) {
+                final int s = table.symbol[u];
+                final int next = symbolNext[s]++;
+                final int bits = tableLog - Bytes.highBit(next);
+                table.nbBits[u] = bits;
+                table.newState[u] = (next << bits) - tableSize;
+            }
+            return table;
+        }
+
+        static DecodingTable rle(int symbol) {
+            final DecodingTable table = new DecodingTable(0);
+            table.symbol[0] = symbol;
+            return table;
+        }
+    }
+
+    /**
+     * An encoding table. States are kept in the range {@code [tableSize, 2 * tableSize)}.
+     */
+    static final class EncodingTable {
+
+        final int tableLog;
+        private final int[] stateTable;
+        private final int[] deltaNbBits;
+        private final int[] deltaFindState;
+
+        EncodingTable(short[] norm, int maxSymbol, int tableLog) throws IOException {
+            this.tableLog = tableLog;
+            final int tableSize = 1 << tableLog;
+            final int[] tableSymbol = new int[tableSize];
+            final int[] cumul = new int[maxSymbol + 2];
+            for (int s = 0; s <= maxSymbol; s++) {
+                cumul[s + 1] = cumul[s] + (norm[s] == -1 ? 1 : norm[s]);
+            }
+            spreadSymbols(norm, maxSymbol, tableLog, tableSymbol);
+            stateTable = new int[tableSize];
+            for (int u = 0; u < tableSize; u++) {
+                stateTable[cumul[tableSymbol[u]]++] = tableSize + u;
+            }
+            deltaNbBits = new int[maxSymbol + 1];
+            deltaFindState = new int[maxSymbol + 1];
+            int total = 0;
+            for (int s = 0; s <= maxSymbol; s++) {
+                final int n = norm[s];
+                if (n == 0) {
+                    deltaNbBits[s] = ((tableLog + 1) << 16) - tableSize;
+                } else if (n == -1 || n == 1) {
+                    deltaNbBits[s] = (tableLog << 16) - tableSize;
+                    deltaFindState[s] = total - 1;
+                    total++;
+                } else {
+                    final int maxBitsOut = tableLog - Bytes.highBit(n - 1);
+                    final int minStatePlus = n << maxBitsOut;
+                    deltaNbBits[s] = (maxBitsOut << 16) - minStatePlus;
+                    deltaFindState[s] = total - n;
+                    total += n;
+                }
+            }
+        }
+
+        /**
+         * @return the initial state for the last symbol of the sequence, which is decoded first
+         */
+        int init(int symbol) {
+            final int nbBitsOut = (deltaNbBits[symbol] + (1 << 15)) >>> 16;
+            final int value = (nbBitsOut << 16) - deltaNbBits[symbol];
+            return stateTable[(value >>> nbBitsOut) + deltaFindState[symbol]];
+        }
+
+        /**
+         * @return the state after encoding the symbol
+         */
+        int encode(BitWriter out, int state, int symbol) throws IOException {
+            final int nbBitsOut = (state + deltaNbBits[symbol]) >>> 16;
+            out.addBits(state, nbBitsOut);
+            return stateTable[(state >>> nbBitsOut) + deltaFindState[symbol]];
+        }
+
+        void flush(BitWriter out, int state) throws IOException {
+            out.addBits(state, tableLog);
+        }
+
+        /**
+         * The approximate cost in bits of encoding the given counts with this table.
+         */
+        static double cost(short[] norm, int tableLog, int[] counts, int maxSymbol) {
+            double bits = 0;
+            for (int s = 0; s <= maxSymbol; s++) {
+                if (counts[s] > 0) {
+                    final int n = s < norm.length ? norm[s] : 0;
+                    if (n == 0) {
+                        return Double.POSITIVE_INFINITY;
+                    }
+                    bits += counts[s] * (tableLog - Math.log(n == -1 ? 1 : n) / Math.log(2));
+                }
+            }
+            return bits;
+        }
+    }
+}
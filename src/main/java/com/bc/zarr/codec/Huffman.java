@@ -0,0 +1,380 @@
+/*
+ *
+ * MIT License
+ *
+ * Copyright (c) 2021. Brockmann Consult GmbH (info@brockmann-consult.de)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package com.bc.zarr.codec;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Huffman coding of Zstandard literals. Codes are described by weights, where a symbol with weight
+ * {@code w > 0} has a code length of {@code maxBits + 1 - w}.
+ */
+final class Huffman {
+
+    static final int MAX_BITS = 11;
+    static final int MAX_WEIGHT_LOG = 6;
+
+    private Huffman() {
+    }
+
+    /**
+     * A decoding table indexed by the next {@code maxBits} bits of the stream.
+     */
+    static final class DecodingTable {
+
+        final int maxBits;
+        final byte[] symbol;
+        final byte[] nbBits;
+
+        private DecodingTable(int maxBits) {
+            this.maxBits = maxBits;
+            symbol = new byte[1 << maxBits];
+            nbBits = new byte[1 << maxBits];
+        }
+
+        /**
+         * Reads a Huffman tree description.
+         *
+         * @param result receives the decoding table at index 0
+         * @return the number of bytes read
+         */
+        static int read(byte[] src, int start, int end, DecodingTable[] result) throws IOException {
+            if (start >= end) {
+                throw Zstd.corrupted("missing Huffman tree description");
+            }
+            final int header = src[start] & 0xFF;
+            final int[] weights = new int[256];
+            int count;
+            int ip = start + 1;
+            if (header >= 128) {
+                count = header - 127;
+                final int bytes = (count + 1) / 2;
+                if (ip + bytes > end) {
+                    throw Zstd.corrupted("truncated Huffman tree description");
+                }
+                for (int i = 0; i < count; i++) {
+                    final int b = src[ip + i / 2] & 0xFF;
+                    weights[i] = (i & 1) == 0 ? b >>> 4 : b & 0xF;
+                }
+                ip += bytes;
+            } else {
+                if (ip + header > end) {
+                    throw Zstd.corrupted("truncated Huffman tree description");
+                }
+                count = decodeWeights(src, ip, ip + header, weights);
+                ip += header;
+            }
+
+            int weightSum = 0;
+            for (int i = 0; i < count; i++) {
+                if (weights[i] > MAX_BITS + 1) {
+                    throw Zstd.corrupted("invalid Huffman weight");
+                }
+                if (weights[i] > 0) {
+                    weightSum += 1 << (weights[i] - 1);
+                }
+            }
+            if (weightSum == 0) {
+                throw Zstd.corrupted("invalid Huffman weights");
+            }
+            final int maxBits = Bytes.highBit(weightSum) + 1;
+            final int leftOver = (1 << maxBits) - weightSum;
+            if (maxBits > MAX_BITS + 1 || Integer.bitCount(leftOver) != 1) {
+                throw Zstd.corrupted("invalid Huffman weights");
+            }
+            weights[count++] = Bytes.highBit(leftOver) + 1;
+
+            final DecodingTable table = new DecodingTable(maxBits);
+            int pos = 0;
+            for (int w = 1; w <= maxBits; w++) {
+                final int length = 1 << (w - 1);
+                final byte bits = (byte) (maxBits + 1 - w);
+                for (int s = 0; s < count; s++) {
+                    if (weights[s] == w) {
+                        Arrays.fill(table.symbol, pos, pos + length, (byte) s);
+                        Arrays.fill(table.nbBits, pos, pos + length, bits);
+                        pos += length;
+                    }
+                }
+            }
+            result[0] = table;
+            return ip - start;
+        }
+
+        private static int decodeWeights(byte[] src, int start, int end, int[] weights) throws IOException {
+            final short[] norm = new short[256];
+            final int[] header = new int[2];
+            final int n = Fse.readNCount(src, start, end, norm, 255, header);
+            if (header[0] > MAX_WEIGHT_LOG) {
+                throw Zstd.corrupted("Huffman weight table log too large");
+            }
+            final Fse.DecodingTable table = Fse.DecodingTable.create(norm, header[1], header[0]);
+            final BackwardBitReader in = new BackwardBitReader(src, start + n, end);
+            int state1 = in.readBits(table.tableLog);
+            in.reload();
+            int state2 = in.readBits(table.tableLog);
+            in.reload();
+            int count = 0;
+            final int max = weights.length - 1;
+            while (true) {
+                if (count > max - 2) {
+                    throw Zstd.corrupted("too many Huffman weights");
+                }
+                weights[count++] = table.symbol[state1];
+                state1 = table.newState[state1] + in.readBits(table.nbBits[state1]);
+                in.reload();
+                if (in.isOverflow()) {
+                    weights[count++] = table.symbol[state2];
+                    break;
+                }
+                if (count > max - 2) {
+                    throw Zstd.corrupted("too many Huffman weights");
+                }
+                weights[count++] = table.symbol[state2];
+                state2 = table.newState[state2] + in.readBits(table.nbBits[state2]);
+                in.reload();
+                if (in.isOverflow()) {
+                    weights[count++] = table.symbol[state1];
+                    break;
+                }
+            }
+            return count;
+        }
+
+        void decodeStream(byte[] src, int start, int end, byte[] dst, int dstStart, int dstEnd) throws IOException {
+            final BackwardBitReader in = new BackwardBitReader(src, start, end);
+            for (int i = dstStart; i < dstEnd; i++) {
+                final int index = in.peekBits(maxBits);
+                dst[i] = symbol[index];
+                in.skipBits(nbBits[index]);
+                in.reload();
+            }
+            if (!in.isComplete()) {
+                throw Zstd.corrupted("invalid Huffman stream");
+            }
+        }
+    }
+
+    /**
+     * An encoding table with canonical codes matching {@link DecodingTable}.
+     */
+    static final class EncodingTable {
+
+        final int maxSymbol;
+        final int maxBits;
+        final int[] weights;
+        private final int[] codes;
+        private final int[] lengths;
+
+        private EncodingTable(int[] lengths, int maxSymbol) {
+            this.maxSymbol = maxSymbol;
+            this.lengths = lengths;
+            int max = 0;
+            for (int s = 0; s <= maxSymbol; s++) {
+                max = Math.max(max, lengths[s]);
+            }
+            maxBits = max;
+            weights = new int[maxSymbol + 1];
+            for (int s = 0; s <= maxSymbol; s++) {
+                weights[s] = lengths[s] > 0 ? maxBits + 1 - lengths[s] : 0;
+            }
+            codes = new int[maxSymbol + 1];
+            int pos = 0;
+            for (int w = 1; w <= maxBits; w++) {
+                for (int s = 0; s <= maxSymbol; s++) {
+                    if (weights[s] == w) {
+                        codes[s] = pos >>> (w - 1);
+                        pos += 1 << (w - 1);
+                    }
+                }
+            }
+        }
+
+        /**
+         * Creates a length limited Huffman code for at least two distinct symbols.
+         */
+        static EncodingTable create(int[] counts, int maxSymbol) {
+            final int[] freq = Arrays.copyOf(counts, maxSymbol + 1);
+            while (true) {
+                final int[] lengths = codeLengths(freq);
+                int max = 0;
+                for (int length : lengths) {
+                    max = Math.max(max, length);
+                }
+                if (max <= MAX_BITS) {
+                    return new EncodingTable(lengths, maxSymbol);
+                }
+                for (int s = 0; s < freq.length; s++) {
+                    if (freq[s] > 0) {
+                        freq[s] = (freq[s] >>> 1) | 1;
+                    }
+                }
+            }
+        }
+
+        private static int[] codeLengths(int[] freq) {
+            final int n = freq.length;
+            int used = 0;
+            for (int f : freq) {
+                if (f > 0) {
+                    used++;
+                }
+            }
+            // leaves sorted by frequency, internal nodes are created in order of increasing weight
+            final long[] leaves = new long[used];
+            int k = 0;
+            for (int s = 0; s < n; s++) {
+                if (freq[s] > 0) {
+                    leaves[k++] = (long) freq[s] << 32 | s;
+                }
+            }
+            Arrays.sort(leaves);
+            final long[] nodeWeight = new long[used];
+            final int[] parent = new int[2 * used];
+            int leaf = 0;
+            int node = 0;
+            int nodeCount = 0;
+            for (int i = 0; i < used - 1; i++) {
+                final int[] children = new int[2];
+                long weight = 0;
+                for (int c = 0; c < 2; c++) {
+                    if (leaf < used && (node >= nodeCount || (leaves[leaf] >>> 32) <= nodeWeight[node])) {
+                        weight += leaves[leaf] >>> 32;
+                        children[c] = leaf++;
+                    } else {
+                        weight += nodeWeight[node];
+                        children[c] = used + node++;
+                    }
+                }
+                nodeWeight[nodeCount] = weight;
+                parent[children[0]] = used + nodeCount;
+                parent[children[1]] = used + nodeCount;
+                nodeCount++;
+            }
+            final int[] depth = new int[2 * used];
+            for (int i = used + nodeCount - 2; i >= 0; i--) {
+                depth[i] = depth[parent[i]] + 1;
+            }
+            final int[] lengths = new int[n];
+            for (int i = 0; i < used; i++) {
+                lengths[(int) leaves[i]] = depth[i];
+            }
+            return lengths;
+        }
+
+        /**
+         * Writes the tree description.
+         *
+         * @return the position after the description or {@code -1} if the weights can not be described
+         */
+        int writeDescription(byte[] dst, int pos, int end) throws IOException {
+            final int count = maxSymbol;
+            if (count <= 128) {
+                final int bytes = (count + 1) / 2;
+                if (pos + 1 + bytes > end) {
+                    throw Zstd.tooSmall();
+                }
+                dst[pos++] = (byte) (127 + count);
+                for (int i = 0; i < count; i += 2) {
+                    final int low = i + 1 < count ? weights[i + 1] : 0;
+                    dst[pos++] = (byte) (weights[i] << 4 | low);
+                }
+                return pos;
+            }
+            final int[] histogram = new int[MAX_BITS + 2];
+            int maxWeight = 0;
+            for (int i = 0; i < count; i++) {
+                histogram[weights[i]]++;
+                maxWeight = Math.max(maxWeight, weights[i]);
+            }
+            for (int h : histogram) {
+                if (h == count) {
+                    return -1;
+                }
+            }
+            final int tableLog = Fse.optimalTableLog(MAX_WEIGHT_LOG, count, maxWeight);
+            final short[] norm = Fse.normalize(histogram, maxWeight, count, tableLog);
+            final Fse.EncodingTable table = new Fse.EncodingTable(norm, maxWeight, tableLog);
+            final int limit = Math.min(end, pos + 128);
+            try {
+                int p = Fse.writeNCount(norm, maxWeight, tableLog, dst, pos + 1, limit);
+                final BitWriter out = new BitWriter(dst, p, limit);
+                int i = count;
+                int state1;
+                int state2;
+                if ((count & 1) != 0) {
+                    state1 = table.init(weights[--i]);
+                    state2 = table.init(weights[--i]);
+                    state1 = table.encode(out, state1, weights[--i]);
+                } else {
+                    state2 = table.init(weights[--i]);
+                    state1 = table.init(weights[--i]);
+                }
+                while (i > 0) {
+                    state2 = table.encode(out, state2, weights[--i]);
+                    state1 = table.encode(out, state1, weights[--i]);
+                }
+                table.flush(out, state2);
+                table.flush(out, state1);
+                p = out.close();
+                final int size = p - pos - 1;
+                if (size >= 128) {
+                    return -1;
+                }
+                dst[pos] = (byte) size;
+                return p;
+            } catch (IOException e) {
+                if (limit < end) {
+                    return -1;
+                }
+                throw e;
+            }
+        }
+
+        /**
+         * Encodes the symbols in reverse order, so that the decoder yields them in order.
+         *
+         * @return the position after the stream
+         */
+        int encodeStream(byte[] src, int start, int end, byte[] dst, int pos, int dstEnd) throws IOException {
+            final BitWriter out = new BitWriter(dst, pos, dstEnd);
+            for (int i = end - 1; i >= start; i--) {
+                final int s = src[i] & 0xFF;
+                out.addBits(codes[s], lengths[s]);
+            }
+            return out.close();
+        }
+
+        int estimateSize(int[] counts) {
+            long bits = 0;
+            for (int s = 0; s <= maxSymbol; s++) {
+                bits += (long) counts[s] * lengths[s];
+            }
+            return (int) ((bits + 7) >>> 3);
+        }
+    }
+}
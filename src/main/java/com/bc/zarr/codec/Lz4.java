@@ -0,0 +1,468 @@
+/*
+ *
+ * MIT License
+ *
+ * Copyright (c) 2021. Brockmann Consult GmbH (info@brockmann-consult.de)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package com.bc.zarr.codec;
+
+import java.io.IOException;
+
+/**
+ * A pure Java implementation of the LZ4 block format, as written by {@code LZ4_compress_fast}
+ * and read by {@code LZ4_decompress_safe} of the reference library.
+ * <p>
+ * A block is a sequence of literal runs and matches into the preceding 64 KiB. It carries
+ * neither its compressed nor its uncompressed size, so both must be known to the caller.
+ */
+public final class Lz4 {
+
+    /**
+     * The default acceleration of numcodecs and the reference library.
+     */
+    public static final int DEFAULT_ACCELERATION = 1;
+    public static final int MAX_ACCELERATION = 65537;
+    /**
+     * The default level of {@link #compressHC}, as in the reference library.
+     */
+    public static final int DEFAULT_HC_LEVEL = 9;
+    public static final int MAX_HC_LEVEL = 12;
+
+    private static final int MIN_MATCH = 4;
+    // the last match must start at least 12 bytes before the end of the block ...
+    private static final int MF_LIMIT = 12;
+    // ... and the last 5 bytes are always literals
+    private static final int LAST_LITERALS = 5;
+    private static final int MAX_DISTANCE = 65535;
+    // like the reference library, inputs below 64 KiB use a larger hash table, which yields identical blocks
+    private static final int HASH_LOG = 12;
+    private static final int SMALL_HASH_LOG = 13;
+    private static final int SMALL_INPUT_LIMIT = 65536 + MF_LIMIT - 1;
+    private static final int SKIP_TRIGGER = 6;
+    private static final int RUN_MASK = 15;
+    private static final int HC_HASH_LOG = 15;
+
+    private Lz4() {
+    }
+
+    /**
+     * @return the size of the largest block {@link #compress} writes for the given number of bytes
+     */
+    public static int maxCompressedLength(int uncompressedLength) {
+        final long bound = uncompressedLength + uncompressedLength / 255L + 16;
+        return bound > Integer.MAX_VALUE ? -1 : (int) bound;
+    }
+
+    /**
+     * Compresses the source into a single block.
+     *
+     * @param acceleration values larger than 1 trade compression ratio for speed, values below 1 select 1
+     * @return the size of the block
+     * @throws IOException if {@code dstLen} is smaller than the block
+     */
+    public static int compress(byte[] src, int srcOff, int srcLen, byte[] dst, int dstOff, int dstLen,
+                               int acceleration) throws IOException {
+        acceleration = Math.max(1, Math.min(acceleration, MAX_ACCELERATION));
+        final int srcEnd = srcOff + srcLen;
+        final int dstEnd = dstOff + dstLen;
+        final int matchLimit = srcEnd - LAST_LITERALS;
+        final int mfLimitPlusOne = srcEnd - MF_LIMIT + 1;
+        int anchor = srcOff;
+        int op = dstOff;
+
+        if (srcLen >= MF_LIMIT + 1) {
+            final boolean small = srcLen < SMALL_INPUT_LIMIT;
+            // positions relative to srcOff, so empty entries point to the start of the source
+            final int[] table = new int[1 << (small ? SMALL_HASH_LOG : HASH_LOG)];
+            int ip = srcOff;
+            table[hash(src, ip, small)] = ip - srcOff;
+            ip++;
+            int forwardH = hash(src, ip, small);
+
+            outer:
+            while (true) {
+                int match;
+                int forwardIp = ip;
+                int step = 1;
+                int searchMatchNb = acceleration << SKIP_TRIGGER;
+                do {
+                    final int h = forwardH;
+                    ip = forwardIp;
+                    forwardIp += step;
+                    step = searchMatchNb++ >>> SKIP_TRIGGER;
+                    if (forwardIp > mfLimitPlusOne) {
+                        break outer;
+                    }
+                    match = srcOff + table[h];
+                    forwardH = hash(src, forwardIp, small);
+                    table[h] = ip - srcOff;
+                } while (match + MAX_DISTANCE < ip || Bytes.readInt(src, match) != Bytes.readInt(src, ip));
+
+                while (ip > anchor && match > srcOff && src[ip - 1] == src[match - 1]) {
+                    ip--;
+                    match--;
+                }
+
+                // literals
+                final int literalLength = ip - anchor;
+                if (op + 1 + literalLength + literalLength / 255 + 2 + 1 + LAST_LITERALS > dstEnd) {
+                    throw tooSmall();
+                }
+                int token = op++;
+                if (literalLength >= RUN_MASK) {
+                    dst[token] = (byte) (RUN_MASK << 4);
+                    op = writeLength(dst, op, literalLength - RUN_MASK);
+                } else {
+                    dst[token] = (byte) (literalLength << 4);
+                }
+                System.arraycopy(src, anchor, dst, op, literalLength);
+                op += literalLength;
+
+                while (true) {
+                    // match
+                    Bytes.writeShort(dst, op, ip - match);
+                    op += 2;
+                    int matchLength = 0;
+                    int p = ip + MIN_MATCH;
+                    int m = match + MIN_MATCH;
+                    while (p < matchLimit && src[p] == src[m]) {
+                        p++;
+                        m++;
+                        matchLength++;
+                    }
+                    ip = p;
+                    if (op + matchLength / 255 + 1 + LAST_LITERALS > dstEnd) {
+                        throw tooSmall();
+                    }
+                    if (matchLength >= RUN_MASK) {
+                        dst[token] |= RUN_MASK;
+                        op = writeLength(dst, op, matchLength - RUN_MASK);
+                    } else {
+                        dst[token] |= (byte) matchLength;
+                    }
+                    anchor = ip;
+                    if (ip >= mfLimitPlusOne) {
+                        break outer;
+                    }
+                    table[hash(src, ip - 2, small)] = ip - 2 - srcOff;
+
+                    // an immediate next match continues without literals
+                    final int h = hash(src, ip, small);
+                    match = srcOff + table[h];
+                    table[h] = ip - srcOff;
+                    if (match + MAX_DISTANCE >= ip && Bytes.readInt(src, match) == Bytes.readInt(src, ip)) {
+                        if (op + 1 + 2 > dstEnd) {
+                            throw tooSmall();
+                        }
+                        token = op++;
+                        dst[token] = 0;
+                        continue;
+                    }
+                    break;
+                }
+                ip++;
+                forwardH = hash(src, ip, small);
+            }
+        }
+
+        return writeLastLiterals(src, anchor, srcEnd, dst, op, dstEnd) - dstOff;
+    }
+
+    /**
+     * Compresses the source into a single block like {@code LZ4_compress_HC}. A hash chain match finder
+     * searches several earlier positions for the longest match, which compresses better than
+     * {@link #compress} but is slower. The block is read by {@link #decompress} like any other block.
+     *
+     * @param level from 1 to {@link #MAX_HC_LEVEL}, each level doubles the number of match candidates
+     *              examined per position; values outside the range are clamped
+     * @return the size of the block
+     * @throws IOException if {@code dstLen} is smaller than the block
+     */
+    public static int compressHC(byte[] src, int srcOff, int srcLen, byte[] dst, int dstOff, int dstLen,
+                                 int level) throws IOException {
+        level = Math.max(1, Math.min(level, MAX_HC_LEVEL));
+        final int srcEnd = srcOff + srcLen;
+        final int dstEnd = dstOff + dstLen;
+        // matches start at least MF_LIMIT bytes before the end
+        final int startLimit = srcEnd - MF_LIMIT;
+        int anchor = srcOff;
+        int op = dstOff;
+
+        if (srcLen >= MF_LIMIT + 1) {
+            final HashChain chain = new HashChain(src, srcOff, srcEnd - LAST_LITERALS, 1 << level);
+            int ip = srcOff;
+            while (ip <= startLimit) {
+                int matchLength = chain.find(ip);
+                if (matchLength < MIN_MATCH) {
+                    ip++;
+                    continue;
+                }
+                int match = chain.match;
+                // lazy evaluation: a longer match at the next position is preferred
+                while (ip + 1 <= startLimit) {
+                    final int nextLength = chain.find(ip + 1);
+                    if (nextLength <= matchLength) {
+                        break;
+                    }
+                    ip++;
+                    matchLength = nextLength;
+                    match = chain.match;
+                }
+                while (ip > anchor && match > srcOff && src[ip - 1] == src[match - 1]) {
+                    ip--;
+                    match--;
+                    matchLength++;
+                }
+                op = writeSequence(src, anchor, ip - anchor, ip - match, matchLength, dst, op, dstEnd);
+                ip += matchLength;
+                anchor = ip;
+            }
+        }
+        return writeLastLiterals(src, anchor, srcEnd, dst, op, dstEnd) - dstOff;
+    }
+
+    /**
+     * Decompresses a block.
+     *
+     * @return the number of bytes written to {@code dst}
+     * @throws IOException if the block is corrupted or does not fit into {@code dstLen}
+     */
+    public static int decompress(byte[] src, int srcOff, int srcLen, byte[] dst, int dstOff, int dstLen) throws IOException {
+        final int srcEnd = srcOff + srcLen;
+        final int dstEnd = dstOff + dstLen;
+        int ip = srcOff;
+        int op = dstOff;
+        while (true) {
+            if (ip >= srcEnd) {
+                throw corrupted();
+            }
+            final int token = src[ip++] & 0xFF;
+
+            int literalLength = token >>> 4;
+            if (literalLength == RUN_MASK) {
+                int b;
+                do {
+                    if (ip >= srcEnd) {
+                        throw corrupted();
+                    }
+                    b = src[ip++] & 0xFF;
+                    literalLength += b;
+                } while (b == 255 && literalLength >= 0);
+                if (literalLength < 0) {
+                    throw corrupted();
+                }
+            }
+            if (literalLength > srcEnd - ip) {
+                throw corrupted();
+            }
+            if (literalLength > dstEnd - op) {
+                throw tooSmall();
+            }
+            System.arraycopy(src, ip, dst, op, literalLength);
+            ip += literalLength;
+            op += literalLength;
+            if (ip == srcEnd) {
+                return op - dstOff;
+            }
+
+            if (ip + 2 > srcEnd) {
+                throw corrupted();
+            }
+            final int offset = Bytes.readShort(src, ip);
+            ip += 2;
+            if (offset == 0 || offset > op - dstOff) {
+                throw corrupted();
+            }
+            int matchLength = token & RUN_MASK;
+            if (matchLength == RUN_MASK) {
+                int b;
+                do {
+                    if (ip >= srcEnd) {
+                        throw corrupted();
+                    }
+                    b = src[ip++] & 0xFF;
+                    matchLength += b;
+                } while (b == 255 && matchLength >= 0);
+                if (matchLength < 0) {
+                    throw corrupted();
+                }
+            }
+            matchLength += MIN_MATCH;
+            if (matchLength > dstEnd - op) {
+                throw tooSmall();
+            }
+            int from = op - offset;
+            if (offset >= matchLength) {
+                System.arraycopy(dst, from, dst, op, matchLength);
+                op += matchLength;
+            } else {
+                final int end = op + matchLength;
+                while (op < end) {
+                    dst[op++] = dst[from++];
+                }
+            }
+        }
+    }
+
+    private static int hash(byte[] src, int pos, boolean small) {
+        if (small) {
+            return (Bytes.readInt(src, pos) * -1640531535) >>> (32 - SMALL_HASH_LOG);
+        }
+        // like the reference library on 64 bit platforms, hash five bytes of large inputs
+        // (hashed positions are at least MF_LIMIT bytes before the end)
+        return (int) (((Bytes.readLong(src, pos) << 24) * 889523592379L) >>> (64 - HASH_LOG));
+    }
+
+    private static int writeSequence(byte[] src, int anchor, int literalLength, int offset, int matchLength,
+                                     byte[] dst, int op, int dstEnd) throws IOException {
+        if (op + 1 + literalLength + literalLength / 255 + 2 + matchLength / 255 + 1 + LAST_LITERALS > dstEnd) {
+            throw tooSmall();
+        }
+        final int token = op++;
+        int tokenValue;
+        if (literalLength >= RUN_MASK) {
+            tokenValue = RUN_MASK << 4;
+            op = writeLength(dst, op, literalLength - RUN_MASK);
+        } else {
+            tokenValue = literalLength << 4;
+        }
+        System.arraycopy(src, anchor, dst, op, literalLength);
+        op += literalLength;
+        Bytes.writeShort(dst, op, offset);
+        op += 2;
+        final int length = matchLength - MIN_MATCH;
+        if (length >= RUN_MASK) {
+            tokenValue |= RUN_MASK;
+            op = writeLength(dst, op, length - RUN_MASK);
+        } else {
+            tokenValue |= length;
+        }
+        dst[token] = (byte) tokenValue;
+        return op;
+    }
+
+    private static int writeLastLiterals(byte[] src, int anchor, int srcEnd, byte[] dst, int op, int dstEnd) throws IOException {
+        final int literalLength = srcEnd - anchor;
+        if (op + 1 + literalLength + (literalLength + 255 - RUN_MASK) / 255 > dstEnd) {
+            throw tooSmall();
+        }
+        if (literalLength >= RUN_MASK) {
+            dst[op++] = (byte) (RUN_MASK << 4);
+            op = writeLength(dst, op, literalLength - RUN_MASK);
+        } else {
+            dst[op++] = (byte) (literalLength << 4);
+        }
+        System.arraycopy(src, anchor, dst, op, literalLength);
+        return op + literalLength;
+    }
+
+    private static int writeLength(byte[] dst, int op, int length) {
+        while (length >= 255) {
+            dst[op++] = (byte) 255;
+            length -= 255;
+        }
+        dst[op++] = (byte) length;
+        return op;
+    }
+
+    private static IOException corrupted() {
+        return new IOException("lz4: corrupted data");
+    }
+
+    private static IOException tooSmall() {
+        return new IOException("lz4: destination buffer too small");
+    }
+
+    /**
+     * Links every position to the previous position with the same hash of its first four bytes.
+     */
+    private static final class HashChain {
+
+        private final byte[] src;
+        private final int srcOff;
+        private final int matchLimit;
+        private final int maxAttempts;
+        // positions relative to srcOff plus one, zero marks an empty slot
+        private final int[] head = new int[1 << HC_HASH_LOG];
+        // the distances to the previous positions of the chains, zero ends a chain
+        private final char[] previous = new char[MAX_DISTANCE + 1];
+        private int next;
+        private int match;
+
+        private HashChain(byte[] src, int srcOff, int matchLimit, int maxAttempts) {
+            this.src = src;
+            this.srcOff = srcOff;
+            this.matchLimit = matchLimit;
+            this.maxAttempts = maxAttempts;
+            this.next = srcOff;
+        }
+
+        /**
+         * Finds the longest match of the bytes at the given position with an earlier position.
+         *
+         * @return the length of the match, which is stored in {@link #match}, or 0 if there is none
+         */
+        private int find(int ip) {
+            insertUpTo(ip);
+            final int first = Bytes.readInt(src, ip);
+            int bestLength = 0;
+            int candidate = head[hash(first)] - 1 + srcOff;
+            for (int attempts = maxAttempts; attempts > 0 && candidate >= srcOff && ip - candidate <= MAX_DISTANCE; attempts--) {
+                if (src[candidate + bestLength] == src[ip + bestLength] && Bytes.readInt(src, candidate) == first) {
+                    int length = MIN_MATCH;
+                    while (ip + length < matchLimit && src[candidate + length] == src[ip + length]) {
+                        length++;
+                    }
+                    if (length > bestLength) {
+                        bestLength = length;
+                        match = candidate;
+                        if (ip + length >= matchLimit) {
+                            break;
+                        }
+                    }
+                }
+                final int distance = previous[(candidate - srcOff) & MAX_DISTANCE];
+                if (distance == 0) {
+                    break;
+                }
+                candidate -= distance;
+            }
+            return bestLength >= MIN_MATCH ? bestLength : 0;
+        }
+
+        private void insertUpTo(int ip) {
+            while (next < ip) {
+                final int h = hash(Bytes.readInt(src, next));
+                final int position = next - srcOff;
+                final int distance = head[h] == 0 ? 0 : position - (head[h] - 1);
+                previous[position & MAX_DISTANCE] = (char) Math.min(distance, MAX_DISTANCE);
+                head[h] = position + 1;
+                next++;
+            }
+        }
+
+        private static int hash(int value) {
+            return (value * -1640531535) >>> (32 - HC_HASH_LOG);
+        }
+    }
+}
@@ -0,0 +1,339 @@
+/*
+ *
+ * MIT License
+ *
+ * Copyright (c) 2021. Brockmann Consult GmbH (info@brockmann-consult.de)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package com.bc.zarr.codec;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * The byte shuffle of blosc and numcodecs: the i-th bytes of all elements are stored next to each
+ * other, which groups the rarely changing high order bytes of numeric data. Bytes after the last
+ * complete element are copied unchanged.
+ * <p>
+ * The bit shuffle of blosc and the bitshuffle library does the same for the individual bits: the
+ * output consists of one row of bits per bit of an element, bit {@code k} of byte {@code j} of all
+ * elements forming row {@code 8 * j + k}. Bits are transposed in groups of eight elements, the
+ * elements after the last complete group and the bytes after the last complete element are copied
+ * unchanged.
+ * <p>
+ * For elements of 2, 4 and 8 bytes, groups of eight elements are transposed with word-wide
+ * operations on {@code long} values read and written through little endian {@link ByteBuffer}s.
+ * Their heap buffer accesses compile to single loads and stores since Java 9; on older runtimes the
+ * plain byte loops are faster and used instead. The bit shuffle is a byte shuffle followed by a bit
+ * transposition and a byte shuffle of each row of bytes.
+ */
+public final class Shuffle {
+
+    static final boolean WORD_KERNELS = !System.getProperty("java.specification.version", "1.").startsWith("1.");
+
+    private Shuffle() {
+    }
+
+    public static void shuffle(byte[] src, int srcOff, byte[] dst, int dstOff, int length, int elementSize) {
+        shuffle(src, srcOff, dst, dstOff, length, elementSize, WORD_KERNELS);
+    }
+
+    static void shuffle(byte[] src, int srcOff, byte[] dst, int dstOff, int length, int elementSize, boolean wordKernels) {
+        if (elementSize <= 1 || length < elementSize) {
+            System.arraycopy(src, srcOff, dst, dstOff, length);
+            return;
+        }
+        final int count = length / elementSize;
+        final int groups = wordKernels && (elementSize == 2 || elementSize == 4 || elementSize == 8) ? count / 8 : 0;
+        if (groups > 0) {
+            final ByteBuffer in = littleEndian(src);
+            final ByteBuffer out = littleEndian(dst);
+            if (elementSize == 8) {
+                shuffle8(in, srcOff, out, dstOff, count, groups);
+            } else if (elementSize == 4) {
+                shuffle4(in, srcOff, out, dstOff, count, groups);
+            } else {
+                shuffle2(in, srcOff, out, dstOff, count, groups);
+            }
+        }
+        for (int b = 0; b < elementSize; b++) {
+            final int d = dstOff + b * count;
+            for (int i = groups * 8, s = srcOff + i * elementSize + b; i < count; i++, s += elementSize) {
+                dst[d + i] = src[s];
+            }
+        }
+        final int tail = count * elementSize;
+        System.arraycopy(src, srcOff + tail, dst, dstOff + tail, length - tail);
+    }
+
+    public static void unshuffle(byte[] src, int srcOff, byte[] dst, int dstOff, int length, int elementSize) {
+        unshuffle(src, srcOff, dst, dstOff, length, elementSize, WORD_KERNELS);
+    }
+
+    static void unshuffle(byte[] src, int srcOff, byte[] dst, int dstOff, int length, int elementSize, boolean wordKernels) {
+        if (elementSize <= 1 || length < elementSize) {
+            System.arraycopy(src, srcOff, dst, dstOff, length);
+            return;
+        }
+        final int count = length / elementSize;
+        final int groups = wordKernels && (elementSize == 2 || elementSize == 4 || elementSize == 8) ? count / 8 : 0;
+        if (groups > 0) {
+            final ByteBuffer in = littleEndian(src);
+            final ByteBuffer out = littleEndian(dst);
+            if (elementSize == 8) {
+                unshuffle8(in, srcOff, out, dstOff, count, groups);
+            } else if (elementSize == 4) {
+                unshuffle4(in, srcOff, out, dstOff, count, groups);
+            } else {
+                unshuffle2(in, srcOff, out, dstOff, count, groups);
+            }
+        }
+        for (int b = 0; b < elementSize; b++) {
+            final int s = srcOff + b * count;
+            for (int i = groups * 8, d = dstOff + i * elementSize + b; i < count; i++, d += elementSize) {
+                dst[d] = src[s + i];
+            }
+        }
+        final int tail = count * elementSize;
+        System.arraycopy(src, srcOff + tail, dst, dstOff + tail, length - tail);
+    }
+
+    public static void bitshuffle(byte[] src, int srcOff, byte[] dst, int dstOff, int length, int elementSize) {
+        bitshuffle(src, srcOff, dst, dstOff, length, elementSize, new byte[Math.max(length, 0)]);
+    }
+
+    /**
+     * Bit shuffles like {@link #bitshuffle(byte[], int, byte[], int, int, int)} with a caller owned
+     * scratch array of at least {@code length} bytes, which lets callers shuffling many blocks reuse it.
+     */
+    public static void bitshuffle(byte[] src, int srcOff, byte[] dst, int dstOff, int length, int elementSize, byte[] scratch) {
+        final int count = elementSize < 1 ? 0 : length / elementSize & ~7;
+        if (count > 0) {
+            // after the byte shuffle, row 8 * j + k is made of bit k of the bytes of row j
+            final int bytes = count * elementSize;
+            shuffle(src, srcOff, scratch, 0, bytes, elementSize);
+            transposeBits(scratch, bytes);
+            for (int j = 0; j < elementSize; j++) {
+                shuffle(scratch, j * count, dst, dstOff + j * count, count, 8);
+            }
+        }
+        final int tail = count * elementSize;
+        System.arraycopy(src, srcOff + tail, dst, dstOff + tail, length - tail);
+    }
+
+    public static void bitunshuffle(byte[] src, int srcOff, byte[] dst, int dstOff, int length, int elementSize) {
+        bitunshuffle(src, srcOff, dst, dstOff, length, elementSize, new byte[Math.max(length, 0)]);
+    }
+
+    /**
+     * The inverse of {@link #bitshuffle(byte[], int, byte[], int, int, int, byte[])}.
+     */
+    public static void bitunshuffle(byte[] src, int srcOff, byte[] dst, int dstOff, int length, int elementSize, byte[] scratch) {
+        final int count = elementSize < 1 ? 0 : length / elementSize & ~7;
+        if (count > 0) {
+            final int bytes = count * elementSize;
+            for (int j = 0; j < elementSize; j++) {
+                unshuffle(src, srcOff + j * count, scratch, j * count, count, 8);
+            }
+            transposeBits(scratch, bytes);
+            unshuffle(scratch, 0, dst, dstOff, bytes, elementSize);
+        }
+        final int tail = count * elementSize;
+        System.arraycopy(src, srcOff + tail, dst, dstOff + tail, length - tail);
+    }
+
+    /**
+     * Transposes the 8x8 byte matrix of each group of eight elements, the elements being its rows, in three
+     * stages which swap the off-diagonal blocks of 4x4, 2x2 and 1x1 bytes.
+     */
+    private static void shuffle8(ByteBuffer in, int inOff, ByteBuffer out, int outOff, int count, int groups) {
+        for (int i = 0, s = inOff, d = outOff; i < groups; i++, s += 64, d += 8) {
+            long r0 = in.getLong(s);
+            long r1 = in.getLong(s + 8);
+            long r2 = in.getLong(s + 16);
+            long r3 = in.getLong(s + 24);
+            long r4 = in.getLong(s + 32);
+            long r5 = in.getLong(s + 40);
+            long r6 = in.getLong(s + 48);
+            long r7 = in.getLong(s + 56);
+            long t;
+            t = ((r0 >>> 32) ^ r4) & 0x00000000FFFFFFFFL; r0 ^= t << 32; r4 ^= t;
+            t = ((r1 >>> 32) ^ r5) & 0x00000000FFFFFFFFL; r1 ^= t << 32; r5 ^= t;
+            t = ((r2 >>> 32) ^ r6) & 0x00000000FFFFFFFFL; r2 ^= t << 32; r6 ^= t;
+            t = ((r3 >>> 32) ^ r7) & 0x00000000FFFFFFFFL; r3 ^= t << 32; r7 ^= t;
+            t = ((r0 >>> 16) ^ r2) & 0x0000FFFF0000FFFFL; r0 ^= t << 16; r2 ^= t;
+            t = ((r1 >>> 16) ^ r3) & 0x0000FFFF0000FFFFL; r1 ^= t << 16; r3 ^= t;
+            t = ((r4 >>> 16) ^ r6) & 0x0000FFFF0000FFFFL; r4 ^= t << 16; r6 ^= t;
+            t = ((r5 >>> 16) ^ r7) & 0x0000FFFF0000FFFFL; r5 ^= t << 16; r7 ^= t;
+            t = ((r0 >>> 8) ^ r1) & 0x00FF00FF00FF00FFL; r0 ^= t << 8; r1 ^= t;
+            t = ((r2 >>> 8) ^ r3) & 0x00FF00FF00FF00FFL; r2 ^= t << 8; r3 ^= t;
+            t = ((r4 >>> 8) ^ r5) & 0x00FF00FF00FF00FFL; r4 ^= t << 8; r5 ^= t;
+            t = ((r6 >>> 8) ^ r7) & 0x00FF00FF00FF00FFL; r6 ^= t << 8; r7 ^= t;
+            out.putLong(d, r0);
+            out.putLong(d + count, r1);
+            out.putLong(d + 2 * count, r2);
+            out.putLong(d + 3 * count, r3);
+            out.putLong(d + 4 * count, r4);
+            out.putLong(d + 5 * count, r5);
+            out.putLong(d + 6 * count, r6);
+            out.putLong(d + 7 * count, r7);
+        }
+    }
+
+    /**
+     * The inverse of {@link #shuffle8}, the transposition being its own inverse.
+     */
+    private static void unshuffle8(ByteBuffer in, int inOff, ByteBuffer out, int outOff, int count, int groups) {
+        for (int i = 0, s = inOff, d = outOff; i < groups; i++, s += 8, d += 64) {
+            long r0 = in.getLong(s);
+            long r1 = in.getLong(s + count);
+            long r2 = in.getLong(s + 2 * count);
+            long r3 = in.getLong(s + 3 * count);
+            long r4 = in.getLong(s + 4 * count);
+            long r5 = in.getLong(s + 5 * count);
+            long r6 = in.getLong(s + 6 * count);
+            long r7 = in.getLong(s + 7 * count);
+            long t;
+            t = ((r0 >>> 32) ^ r4) & 0x00000000FFFFFFFFL; r0 ^= t << 32; r4 ^= t;
+            t = ((r1 >>> 32) ^ r5) & 0x00000000FFFFFFFFL; r1 ^= t << 32; r5 ^= t;
+            t = ((r2 >>> 32) ^ r6) & 0x00000000FFFFFFFFL; r2 ^= t << 32; r6 ^= t;
+            t = ((r3 >>> 32) ^ r7) & 0x00000000FFFFFFFFL; r3 ^= t << 32; r7 ^= t;
+            t = ((r0 >>> 16) ^ r2) & 0x0000FFFF0000FFFFL; r0 ^= t << 16; r2 ^= t;
+            t = ((r1 >>> 16) ^ r3) & 0x0000FFFF0000FFFFL; r1 ^= t << 16; r3 ^= t;
+            t = ((r4 >>> 16) ^ r6) & 0x0000FFFF0000FFFFL; r4 ^= t << 16; r6 ^= t;
+            t = ((r5 >>> 16) ^ r7) & 0x0000FFFF0000FFFFL; r5 ^= t << 16; r7 ^= t;
+            t = ((r0 >>> 8) ^ r1) & 0x00FF00FF00FF00FFL; r0 ^= t << 8; r1 ^= t;
+            t = ((r2 >>> 8) ^ r3) & 0x00FF00FF00FF00FFL; r2 ^= t << 8; r3 ^= t;
+            t = ((r4 >>> 8) ^ r5) & 0x00FF00FF00FF00FFL; r4 ^= t << 8; r5 ^= t;
+            t = ((r6 >>> 8) ^ r7) & 0x00FF00FF00FF00FFL; r6 ^= t << 8; r7 ^= t;
+            out.putLong(d, r0);
+            out.putLong(d + 8, r1);
+            out.putLong(d + 16, r2);
+            out.putLong(d + 24, r3);
+            out.putLong(d + 32, r4);
+            out.putLong(d + 40, r5);
+            out.putLong(d + 48, r6);
+            out.putLong(d + 56, r7);
+        }
+    }
+
+    /**
+     * The 8x8 transposition of {@link #shuffle8} with the elements zero-extended to 8 bytes: the first
+     * stage only pairs elements {@code m} and {@code m + 4}, and the four rows of zeros are not written.
+     */
+    private static void shuffle4(ByteBuffer in, int inOff, ByteBuffer out, int outOff, int count, int groups) {
+        for (int i = 0, s = inOff, d = outOff; i < groups; i++, s += 32, d += 8) {
+            long r0 = in.getInt(s) & 0xFFFFFFFFL | (long) in.getInt(s + 16) << 32;
+            long r1 = in.getInt(s + 4) & 0xFFFFFFFFL | (long) in.getInt(s + 20) << 32;
+            long r2 = in.getInt(s + 8) & 0xFFFFFFFFL | (long) in.getInt(s + 24) << 32;
+            long r3 = in.getInt(s + 12) & 0xFFFFFFFFL | (long) in.getInt(s + 28) << 32;
+            long t;
+            t = ((r0 >>> 16) ^ r2) & 0x0000FFFF0000FFFFL; r0 ^= t << 16; r2 ^= t;
+            t = ((r1 >>> 16) ^ r3) & 0x0000FFFF0000FFFFL; r1 ^= t << 16; r3 ^= t;
+            t = ((r0 >>> 8) ^ r1) & 0x00FF00FF00FF00FFL; r0 ^= t << 8; r1 ^= t;
+            t = ((r2 >>> 8) ^ r3) & 0x00FF00FF00FF00FFL; r2 ^= t << 8; r3 ^= t;
+            out.putLong(d, r0);
+            out.putLong(d + count, r1);
+            out.putLong(d + 2 * count, r2);
+            out.putLong(d + 3 * count, r3);
+        }
+    }
+
+    private static void unshuffle4(ByteBuffer in, int inOff, ByteBuffer out, int outOff, int count, int groups) {
+        for (int i = 0, s = inOff, d = outOff; i < groups; i++, s += 8, d += 32) {
+            long r0 = in.getLong(s);
+            long r1 = in.getLong(s + count);
+            long r2 = in.getLong(s + 2 * count);
+            long r3 = in.getLong(s + 3 * count);
+            long t;
+            t = ((r0 >>> 16) ^ r2) & 0x0000FFFF0000FFFFL; r0 ^= t << 16; r2 ^= t;
+            t = ((r1 >>> 16) ^ r3) & 0x0000FFFF0000FFFFL; r1 ^= t << 16; r3 ^= t;
+            t = ((r0 >>> 8) ^ r1) & 0x00FF00FF00FF00FFL; r0 ^= t << 8; r1 ^= t;
+            t = ((r2 >>> 8) ^ r3) & 0x00FF00FF00FF00FFL; r2 ^= t << 8; r3 ^= t;
+            out.putInt(d, (int) r0);
+            out.putInt(d + 4, (int) r1);
+            out.putInt(d + 8, (int) r2);
+            out.putInt(d + 12, (int) r3);
+            out.putInt(d + 16, (int) (r0 >>> 32));
+            out.putInt(d + 20, (int) (r1 >>> 32));
+            out.putInt(d + 24, (int) (r2 >>> 32));
+            out.putInt(d + 28, (int) (r3 >>> 32));
+        }
+    }
+
+    /**
+     * Separates the even and the odd elements of a group into two words, then swaps the high bytes of
+     * the even elements with the low bytes of the odd elements.
+     */
+    private static void shuffle2(ByteBuffer in, int inOff, ByteBuffer out, int outOff, int count, int groups) {
+        for (int i = 0, s = inOff, d = outOff; i < groups; i++, s += 16, d += 8) {
+            final long a = in.getLong(s);
+            final long c = in.getLong(s + 8);
+            long r0 = a & 0xFFFFL | (a >>> 16) & 0xFFFF0000L | (c & 0xFFFFL) << 32 | (c << 16) & 0xFFFF000000000000L;
+            long r1 = (a >>> 16) & 0xFFFFL | (a >>> 32) & 0xFFFF0000L | (c & 0xFFFF0000L) << 16 | c & 0xFFFF000000000000L;
+            final long t = ((r0 >>> 8) ^ r1) & 0x00FF00FF00FF00FFL;
+            r0 ^= t << 8;
+            r1 ^= t;
+            out.putLong(d, r0);
+            out.putLong(d + count, r1);
+        }
+    }
+
+    private static void unshuffle2(ByteBuffer in, int inOff, ByteBuffer out, int outOff, int count, int groups) {
+        for (int i = 0, s = inOff, d = outOff; i < groups; i++, s += 8, d += 16) {
+            long r0 = in.getLong(s);
+            long r1 = in.getLong(s + count);
+            final long t = ((r0 >>> 8) ^ r1) & 0x00FF00FF00FF00FFL;
+            r0 ^= t << 8;
+            r1 ^= t;
+            out.putLong(d, r0 & 0xFFFFL | (r1 & 0xFFFFL) << 16 | (r0 & 0xFFFF0000L) << 16 | (r1 & 0xFFFF0000L) << 32);
+            out.putLong(d + 8, (r0 >>> 32) & 0xFFFFL | (r1 >>> 16) & 0xFFFF0000L | (r0 >>> 16) & 0xFFFF00000000L | r1 & 0xFFFF000000000000L);
+        }
+    }
+
+    /**
+     * Transposes the 8x8 bit matrix of every 8 bytes of the first {@code length} bytes of the given array,
+     * {@code length} being a multiple of 8.
+     */
+    private static void transposeBits(byte[] bytes, int length) {
+        final ByteBuffer buffer = littleEndian(bytes);
+        for (int i = 0; i < length; i += 8) {
+            buffer.putLong(i, transposeBits(buffer.getLong(i)));
+        }
+    }
+
+    /**
+     * Transposes the 8x8 bit matrix whose rows are the bytes of {@code x}, lowest byte first.
+     */
+    static long transposeBits(long x) {
+        long t = (x ^ (x >>> 7)) & 0x00AA00AA00AA00AAL;
+        x = x ^ t ^ (t << 7);
+        t = (x ^ (x >>> 14)) & 0x0000CCCC0000CCCCL;
+        x = x ^ t ^ (t << 14);
+        t = (x ^ (x >>> 28)) & 0x00000000F0F0F0F0L;
+        return x ^ t ^ (t << 28);
+    }
+
+    private static ByteBuffer littleEndian(byte[] bytes) {
+        return ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN);
+    }
+}
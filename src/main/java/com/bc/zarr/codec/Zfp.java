@@ -0,0 +1,830 @@
+/*
+ *
+ * MIT License
+ *
+ * Copyright (c) 2021. Brockmann Consult GmbH (info@brockmann-consult.de)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package com.bc.zarr.codec;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A pure Java implementation of the ZFP compression algorithm for arrays of {@code float} or {@code double}
+ * values. The array is divided into blocks of 4<sup>d</sup> values, d being the number of array dimensions
+ * larger than one, at most four. Each block is converted to integers relative to its largest exponent,
+ * decorrelated by a lifting transform along each dimension and coded bit plane by bit plane, most significant
+ * plane first, until the bit budget, the precision or the accuracy of the mode is reached:
+ * <ul>
+ * <li>{@link #MODE_FIXED_RATE}: each block takes {@code rate} bits per value</li>
+ * <li>{@link #MODE_FIXED_PRECISION}: {@code precision} bit planes are coded</li>
+ * <li>{@link #MODE_FIXED_ACCURACY}: bit planes are coded until the absolute error is at most {@code tolerance}</li>
+ * </ul>
+ * The block coding follows the zfp library, but the data has its own header, which stores the shape, the
+ * data type, the byte order and the coding parameters. It can not be read by the zfp library.
+ */
+public final class Zfp {
+
+    public static final int TYPE_FLOAT = 3;
+    public static final int TYPE_DOUBLE = 4;
+
+    public static final int MODE_FIXED_RATE = 2;
+    public static final int MODE_FIXED_PRECISION = 3;
+    public static final int MODE_FIXED_ACCURACY = 4;
+
+    public static final int MAX_DIMS = 4;
+    public static final int MAX_PRECISION = 64;
+
+    private static final int MAGIC = 'j' | 'z' << 8 | 'f' << 16 | 'p' << 24;
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 24;
+    private static final int MIN_EXP = -1074;
+    private static final long NBMASK = 0xAAAAAAAAAAAAAAAAL;
+
+    // the indices of the values of a partial block of n values padding it to 4 values, for n = 1 to 4
+    private static final int[][] PAD = {{0, 0, 0, 0}, {0, 1, 1, 0}, {0, 1, 2, 0}, {0, 1, 2, 3}};
+    private static final int[][] PERM = {perm(1), perm(2), perm(3), perm(4)};
+
+    private Zfp() {
+    }
+
+    /**
+     * @param type      {@link #TYPE_FLOAT} or {@link #TYPE_DOUBLE}
+     * @param shape     the shape of the array, last dimension varying fastest
+     * @param mode      the coding mode
+     * @param parameter the rate, precision or tolerance of the mode
+     * @return the maximum number of bytes {@link #compress} writes or -1 if it exceeds the int range
+     */
+    public static int maxCompressedLength(int type, int[] shape, int mode, double parameter) {
+        final Coder coder = new Coder(type, blockDims(shape), mode, parameter);
+        final long bytes = HEADER_SIZE + 4L * coder.sizes.length + (coder.blockCount() * coder.maxbits + 7) / 8 + 8;
+        return bytes > Integer.MAX_VALUE ? -1 : (int) bytes;
+    }
+
+    /**
+     * @param src       the values, stored with the given byte order
+     * @param srcLen    the number of bytes of the values, which must match the shape
+     * @param order     the byte order of the values, which is also used by {@link #decompress}
+     * @param type      {@link #TYPE_FLOAT} or {@link #TYPE_DOUBLE}
+     * @param shape     the shape of the array, last dimension varying fastest
+     * @param mode      the coding mode
+     * @param parameter the rate in bits per value, the precision in bit planes or the absolute error tolerance
+     * @return the number of bytes written to {@code dst}
+     * @throws IOException if the number of bytes does not match the shape, if the values are not finite or if the
+     *                     destination buffer is too small
+     */
+    public static int compress(byte[] src, int srcOff, int srcLen, byte[] dst, int dstOff, int dstLen,
+                               ByteOrder order, int type, int[] shape, int mode, double parameter) throws IOException {
+        final Coder coder = new Coder(type, blockDims(shape), mode, parameter);
+        final int[] sizes = coder.sizes;
+        final long expected = coder.valueCount() * (type == TYPE_FLOAT ? 4 : 8);
+        if (srcLen != expected) {
+            throw new IOException("zfp: " + expected + " bytes expected for shape " + Arrays.toString(shape) + " but got " + srcLen);
+        }
+        final int headerSize = HEADER_SIZE + 4 * sizes.length;
+        if (dstLen < headerSize) {
+            throw tooSmall();
+        }
+        Bytes.writeInt(dst, dstOff, MAGIC);
+        dst[dstOff + 4] = VERSION;
+        dst[dstOff + 5] = (byte) type;
+        dst[dstOff + 6] = (byte) sizes.length;
+        dst[dstOff + 7] = (byte) (order == ByteOrder.BIG_ENDIAN ? 1 : 0);
+        Bytes.writeInt(dst, dstOff + 8, coder.minbits);
+        Bytes.writeInt(dst, dstOff + 12, coder.maxbits);
+        Bytes.writeInt(dst, dstOff + 16, coder.maxprec);
+        Bytes.writeInt(dst, dstOff + 20, coder.minexp);
+        for (int i = 0; i < sizes.length; i++) {
+            Bytes.writeInt(dst, dstOff + HEADER_SIZE + 4 * i, sizes[i]);
+        }
+        final BitOutput out = new BitOutput(dst, dstOff + headerSize, dstOff + dstLen);
+        coder.encode(ByteBuffer.wrap(src, srcOff, srcLen).slice().order(order), out);
+        return out.flush() - dstOff;
+    }
+
+    /**
+     * @return the number of bytes written to {@code dst}
+     * @throws IOException if the data is corrupted or the destination buffer is too small
+     */
+    public static int decompress(byte[] src, int srcOff, int srcLen, byte[] dst, int dstOff, int dstLen) throws IOException {
+        final long size = getDecompressedSize(src, srcOff, srcLen);
+        if (size > dstLen) {
+            throw tooSmall();
+        }
+        final int dims = src[srcOff + 6];
+        final int[] sizes = new int[dims];
+        for (int i = 0; i < dims; i++) {
+            sizes[i] = Bytes.readInt(src, srcOff + HEADER_SIZE + 4 * i);
+        }
+        final Coder coder = new Coder(src[srcOff + 5], sizes, Bytes.readInt(src, srcOff + 8), Bytes.readInt(src, srcOff + 12),
+                                      Bytes.readInt(src, srcOff + 16), Bytes.readInt(src, srcOff + 20));
+        if (coder.minbits < 0 || coder.minbits > coder.maxbits || coder.maxprec < 1 || coder.maxprec > MAX_PRECISION) {
+            throw corrupted();
+        }
+        final ByteOrder order = src[srcOff + 7] == 0 ? ByteOrder.LITTLE_ENDIAN : ByteOrder.BIG_ENDIAN;
+        final int headerSize = HEADER_SIZE + 4 * dims;
+        coder.decode(new BitInput(src, srcOff + headerSize, srcOff + srcLen), ByteBuffer.wrap(dst, dstOff, (int) size).slice().order(order));
+        return (int) size;
+    }
+
+    /**
+     * @return the number of bytes of the uncompressed values
+     * @throws IOException if the data does not start with a valid header
+     */
+    public static long getDecompressedSize(byte[] src, int srcOff, int srcLen) throws IOException {
+        if (srcLen < HEADER_SIZE) {
+            throw new EOFException("zfp: header of " + HEADER_SIZE + " bytes expected but only " + srcLen + " available");
+        }
+        if (Bytes.readInt(src, srcOff) != MAGIC) {
+            throw new IOException("zfp: unknown data format");
+        }
+        if (src[srcOff + 4] != VERSION) {
+            throw new IOException("zfp: format version " + src[srcOff + 4] + " not supported");
+        }
+        final int type = src[srcOff + 5];
+        final int dims = src[srcOff + 6];
+        if (type != TYPE_FLOAT && type != TYPE_DOUBLE || dims < 1 || dims > MAX_DIMS) {
+            throw corrupted();
+        }
+        if (srcLen < HEADER_SIZE + 4 * dims) {
+            throw new EOFException("zfp: header of " + (HEADER_SIZE + 4 * dims) + " bytes expected but only " + srcLen + " available");
+        }
+        long count = 1;
+        for (int i = 0; i < dims; i++) {
+            final int n = Bytes.readInt(src, srcOff + HEADER_SIZE + 4 * i);
+            if (n < 1) {
+                throw corrupted();
+            }
+            count *= n;
+            if (count > Integer.MAX_VALUE) {
+                throw corrupted();
+            }
+        }
+        return count * (type == TYPE_FLOAT ? 4 : 8);
+    }
+
+    /**
+     * The block dimensions of an array: the sizes of its dimensions larger than one, fastest varying first.
+     * Leading dimensions exceeding four dimensions are merged into one.
+     */
+    static int[] blockDims(int[] shape) {
+        final List<Integer> dims = new ArrayList<>();
+        for (int n : shape) {
+            if (n < 1) {
+                throw new IllegalArgumentException("zfp: invalid shape " + Arrays.toString(shape));
+            }
+            if (n > 1) {
+                dims.add(n);
+            }
+        }
+        while (dims.size() > MAX_DIMS) {
+            dims.set(1, dims.get(0) * dims.get(1));
+            dims.remove(0);
+        }
+        final int[] sizes = new int[Math.max(dims.size(), 1)];
+        Arrays.fill(sizes, 1);
+        for (int i = 0; i < dims.size(); i++) {
+            sizes[i] = dims.get(dims.size() - 1 - i);
+        }
+        return sizes;
+    }
+
+    /**
+     * The order in which the transform coefficients of a block are coded, by increasing sum of their
+     * indices, which is their sequency, then by increasing sum of the squared indices.
+     */
+    private static int[] perm(int dims) {
+        final Integer[] order = new Integer[1 << 2 * dims];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> {
+            int sa = 0, sb = 0, qa = 0, qb = 0;
+            for (int d = 0; d < dims; d++) {
+                final int ia = a >>> 2 * d & 3;
+                final int ib = b >>> 2 * d & 3;
+                sa += ia;
+                sb += ib;
+                qa += ia * ia;
+                qb += ib * ib;
+            }
+            return sa != sb ? sa - sb : qa != qb ? qa - qb : a - b;
+        });
+        final int[] perm = new int[order.length];
+        for (int i = 0; i < perm.length; i++) {
+            perm[i] = order[i];
+        }
+        return perm;
+    }
+
+    private static IOException tooSmall() {
+        return new IOException("zfp: destination buffer too small");
+    }
+
+    private static IOException corrupted() {
+        return new IOException("zfp: corrupted data");
+    }
+
+    /**
+     * Encodes and decodes the blocks of an array with fixed coding parameters.
+     */
+    private static final class Coder {
+
+        final int type;
+        final int[] sizes;
+        final int dims;
+        final int blockSize;
+        final int intprec;
+        final int ebits;
+        final int ebias;
+        final int minbits;
+        final int maxbits;
+        final int maxprec;
+        final int minexp;
+        private final int[] perm;
+        private final double[] fblock;
+        private final long[] iblock;
+        private final long[] ublock;
+        private final long[] plane;
+
+        Coder(int type, int[] sizes, int mode, double parameter) {
+            this(type, sizes, 0, 0, 0, 0, mode, parameter);
+        }
+
+        Coder(int type, int[] sizes, int minbits, int maxbits, int maxprec, int minexp) {
+            this(type, sizes, minbits, maxbits, maxprec, minexp, 0, 0);
+        }
+
+        private Coder(int type, int[] sizes, int minbits, int maxbits, int maxprec, int minexp, int mode, double parameter) {
+            if (type != TYPE_FLOAT && type != TYPE_DOUBLE) {
+                throw new IllegalArgumentException("zfp: type not supported: " + type);
+            }
+            this.type = type;
+            this.sizes = sizes;
+            this.dims = sizes.length;
+            this.blockSize = 1 << 2 * dims;
+            this.intprec = type == TYPE_FLOAT ? 32 : 64;
+            this.ebits = type == TYPE_FLOAT ? 8 : 11;
+            this.ebias = (1 << ebits - 1) - 1;
+            // bits of a block with all bit planes coded: exponent, bit planes and group tests
+            final int blockBits = 1 + ebits + blockSize - 1 + blockSize * intprec;
+            if (mode == 0) {
+                this.minbits = minbits;
+                this.maxbits = maxbits;
+                this.maxprec = maxprec;
+                this.minexp = minexp;
+            } else if (mode == MODE_FIXED_RATE) {
+                if (!(parameter > 0)) {
+                    throw new IllegalArgumentException("zfp: rate must be positive but was: " + parameter);
+                }
+                final double bits = Math.floor(blockSize * parameter + 0.5);
+                this.maxbits = (int) Math.max(1 + ebits, Math.min(bits, blockBits));
+                this.minbits = this.maxbits;
+                this.maxprec = MAX_PRECISION;
+                this.minexp = MIN_EXP;
+            } else if (mode == MODE_FIXED_PRECISION) {
+                if (!(parameter >= 1 && parameter <= MAX_PRECISION)) {
+                    throw new IllegalArgumentException("zfp: precision must be between 1 and " + MAX_PRECISION + " but was: " + parameter);
+                }
+                this.minbits = 1;
+                this.maxbits = blockBits;
+                this.maxprec = (int) parameter;
+                this.minexp = MIN_EXP;
+            } else if (mode == MODE_FIXED_ACCURACY) {
+                if (!(parameter >= 0)) {
+                    throw new IllegalArgumentException("zfp: tolerance must not be negative but was: " + parameter);
+                }
+                this.minbits = 1;
+                this.maxbits = blockBits;
+                this.maxprec = MAX_PRECISION;
+                // the largest power of two not above the tolerance
+                this.minexp = parameter > 0 ? Math.max(MIN_EXP, Math.getExponent(parameter)) : MIN_EXP;
+            } else {
+                throw new IllegalArgumentException("zfp: mode not supported: " + mode);
+            }
+            this.perm = PERM[dims - 1];
+            this.fblock = new double[blockSize];
+            this.iblock = new long[blockSize];
+            this.ublock = new long[blockSize];
+            this.plane = new long[(blockSize + 63) / 64];
+        }
+
+        long valueCount() {
+            long count = 1;
+            for (int n : sizes) {
+                count *= n;
+            }
+            return count;
+        }
+
+        long blockCount() {
+            long count = 1;
+            for (int n : sizes) {
+                count *= (n + 3) / 4;
+            }
+            return count;
+        }
+
+        void encode(ByteBuffer src, BitOutput out) throws IOException {
+            final int nx = sizes[0];
+            final int ny = dims > 1 ? sizes[1] : 1;
+            final int nz = dims > 2 ? sizes[2] : 1;
+            final int nw = dims > 3 ? sizes[3] : 1;
+            final int ex = 4;
+            final int ey = dims > 1 ? 4 : 1;
+            final int ez = dims > 2 ? 4 : 1;
+            final int ew = dims > 3 ? 4 : 1;
+            final int typeSize = type == TYPE_FLOAT ? 4 : 8;
+            for (int w0 = 0; w0 < nw; w0 += ew) {
+                final int[] mw = PAD[Math.min(nw - w0, 4) - 1];
+                for (int z0 = 0; z0 < nz; z0 += ez) {
+                    final int[] mz = PAD[Math.min(nz - z0, 4) - 1];
+                    for (int y0 = 0; y0 < ny; y0 += ey) {
+                        final int[] my = PAD[Math.min(ny - y0, 4) - 1];
+                        for (int x0 = 0; x0 < nx; x0 += ex) {
+                            final int[] mx = PAD[Math.min(nx - x0, 4) - 1];
+                            // gather the block, padding partial blocks like the zfp library
+                            int i = 0;
+                            for (int l = 0; l < ew; l++) {
+                                final int ow = (w0 + mw[l]) * nz;
+                                for (int k = 0; k < ez; k++) {
+                                    final int oz = (ow + z0 + mz[k]) * ny;
+                                    for (int j = 0; j < ey; j++) {
+                                        final int oy = (oz + y0 + my[j]) * nx + x0;
+                                        for (int m = 0; m < ex; m++) {
+                                            final int index = (oy + mx[m]) * typeSize;
+                                            final double value = typeSize == 4 ? src.getFloat(index) : src.getDouble(index);
+                                            if (Double.isNaN(value) || Double.isInfinite(value)) {
+                                                throw new IOException("zfp: only finite values can be compressed but found: " + value);
+                                            }
+                                            fblock[i++] = value;
+                                        }
+                                    }
+                                }
+                            }
+                            encodeBlock(out);
+                        }
+                    }
+                }
+            }
+        }
+
+        void decode(BitInput in, ByteBuffer dst) throws IOException {
+            final int nx = sizes[0];
+            final int ny = dims > 1 ? sizes[1] : 1;
+            final int nz = dims > 2 ? sizes[2] : 1;
+            final int nw = dims > 3 ? sizes[3] : 1;
+            final int typeSize = type == TYPE_FLOAT ? 4 : 8;
+            for (int w0 = 0; w0 < nw; w0 += 4) {
+                final int lw = Math.min(nw - w0, 4);
+                for (int z0 = 0; z0 < nz; z0 += 4) {
+                    final int lz = Math.min(nz - z0, 4);
+                    for (int y0 = 0; y0 < ny; y0 += 4) {
+                        final int ly = Math.min(ny - y0, 4);
+                        for (int x0 = 0; x0 < nx; x0 += 4) {
+                            final int lx = Math.min(nx - x0, 4);
+                            decodeBlock(in);
+                            // scatter the values of the block which are inside of the array
+                            for (int l = 0; l < lw; l++) {
+                                for (int k = 0; k < lz; k++) {
+                                    for (int j = 0; j < ly; j++) {
+                                        final int o = (((w0 + l) * nz + z0 + k) * ny + y0 + j) * nx + x0;
+                                        final int b = 64 * l + 16 * k + 4 * j;
+                                        for (int m = 0; m < lx; m++) {
+                                            if (typeSize == 4) {
+                                                dst.putFloat((o + m) * 4, (float) fblock[b + m]);
+                                            } else {
+                                                dst.putDouble((o + m) * 8, fblock[b + m]);
+                                            }
+                                        }
+                                    }
+                                }
+                            }
+                        }
+                    }
+                }
+            }
+        }
+
+        private void encodeBlock(BitOutput out) throws IOException {
+            int bits = 1;
+            double max = 0;
+            for (int i = 0; i < blockSize; i++) {
+                max = Math.max(max, Math.abs(fblock[i]));
+            }
+            // the exponent of frexp, subnormal values sharing the exponent of the smallest normal value
+            final int emax = max > 0 ? Math.max(Math.getExponent(max) + 1, 1 - ebias) : -ebias;
+            final int maxprec = precision(emax);
+            final int e = maxprec > 0 ? emax + ebias : 0;
+            if (e > 0) {
+                // the common exponent, the lowest bit indicating a nonzero block
+                bits += ebits;
+                out.write(2L * e + 1, bits);
+                // block floating point: integers of intprec - 2 bits relative to the common exponent
+                for (int i = 0; i < blockSize; i++) {
+                    iblock[i] = (long) Math.scalb(fblock[i], intprec - 2 - emax);
+                }
+                fwdXform(iblock);
+                for (int i = 0; i < blockSize; i++) {
+                    ublock[i] = toNegabinary(iblock[perm[i]]);
+                }
+                final int minRemaining = minbits - Math.min(bits, minbits);
+                int n = encodeInts(out, maxbits - bits, maxprec);
+                if (n < minRemaining) {
+                    out.pad(minRemaining - n);
+                    n = minRemaining;
+                }
+                bits += n;
+            } else {
+                out.writeBit(0);
+                if (minbits > bits) {
+                    out.pad(minbits - bits);
+                }
+            }
+        }
+
+        private void decodeBlock(BitInput in) throws IOException {
+            int bits = 1;
+            if (in.readBit() != 0) {
+                bits += ebits;
+                final int emax = (int) in.read(ebits) - ebias;
+                final int maxprec = precision(emax);
+                final int minRemaining = minbits - Math.min(bits, minbits);
+                final int n = decodeInts(in, maxbits - bits, maxprec);
+                if (n < minRemaining) {
+                    in.skip(minRemaining - n);
+                }
+                for (int i = 0; i < blockSize; i++) {
+                    iblock[perm[i]] = fromNegabinary(ublock[i]);
+                }
+                invXform(iblock);
+                for (int i = 0; i < blockSize; i++) {
+                    fblock[i] = Math.scalb((double) iblock[i], emax - (intprec - 2));
+                }
+            } else {
+                Arrays.fill(fblock, 0);
+                if (minbits > bits) {
+                    in.skip(minbits - bits);
+                }
+            }
+        }
+
+        /**
+         * @return the number of bit planes to code for a block with the given common exponent
+         */
+        private int precision(int emax) {
+            return Math.min(maxprec, Math.max(0, emax - minexp + 2 * dims + 2));
+        }
+
+        /**
+         * Codes the bit planes of the coefficients, most significant plane first. The bits of the coefficients
+         * which were one in a previous plane are written verbatim, the others by group tests: a one if any of
+         * the remaining coefficients has a one bit, followed by the bits up to the next one bit.
+         *
+         * @return the number of written bits, at most {@code maxbits}
+         */
+        private int encodeInts(BitOutput out, int maxbits, int maxprec) throws IOException {
+            final int kmin = intprec > maxprec ? intprec - maxprec : 0;
+            final int size = blockSize;
+            int bits = maxbits;
+            for (int k = intprec, n = 0; bits > 0 && k-- > kmin; ) {
+                Arrays.fill(plane, 0);
+                for (int i = 0; i < size; i++) {
+                    plane[i >>> 6] |= (ublock[i] >>> k & 1L) << i;
+                }
+                int m = Math.min(n, bits);
+                bits -= m;
+                for (int w = 0; m > 0; w++, m -= 64) {
+                    out.write(plane[w], Math.min(m, 64));
+                }
+                for (; bits > 0 && n < size; n++) {
+                    bits--;
+                    final int next = nextBit(n);
+                    if (next < 0) {
+                        out.writeBit(0);
+                        break;
+                    }
+                    out.writeBit(1);
+                    // the zeros up to the next one bit, which is implied for the last coefficient
+                    final int zeros = Math.min(next - n, bits);
+                    out.pad(zeros);
+                    bits -= zeros;
+                    n += zeros;
+                    if (bits > 0 && next < size - 1) {
+                        out.writeBit(1);
+                        bits--;
+                    }
+                }
+            }
+            return maxbits - bits;
+        }
+
+        private int decodeInts(BitInput in, int maxbits, int maxprec) throws IOException {
+            final int kmin = intprec > maxprec ? intprec - maxprec : 0;
+            final int size = blockSize;
+            int bits = maxbits;
+            Arrays.fill(ublock, 0);
+            for (int k = intprec, n = 0; bits > 0 && k-- > kmin; ) {
+                Arrays.fill(plane, 0);
+                int m = Math.min(n, bits);
+                bits -= m;
+                for (int w = 0; m > 0; w++, m -= 64) {
+                    plane[w] = in.read(Math.min(m, 64));
+                }
+                for (; bits > 0 && n < size; n++) {
+                    bits--;
+                    if (in.readBit() == 0) {
+                        break;
+                    }
+                    final int max = Math.min(bits, size - 1 - n);
+                    final int zeros = in.readZeros(max);
+                    bits -= zeros < max ? zeros + 1 : zeros;
+                    n += zeros;
+                    plane[n >>> 6] |= 1L << n;
+                }
+                for (int w = 0; w < plane.length; w++) {
+                    for (long x = plane[w]; x != 0; x &= x - 1) {
+                        ublock[64 * w + Long.numberOfTrailingZeros(x)] += 1L << k;
+                    }
+                }
+            }
+            return maxbits - bits;
+        }
+
+        /**
+         * @return the index of the first one bit of the plane at or after {@code n} or -1 if there is none
+         */
+        private int nextBit(int n) {
+            int w = n >>> 6;
+            long word = plane[w] & -1L << n;
+            while (word == 0) {
+                if (++w == plane.length) {
+                    return -1;
+                }
+                word = plane[w];
+            }
+            return 64 * w + Long.numberOfTrailingZeros(word);
+        }
+
+        private long toNegabinary(long x) {
+            return intprec == 64 ? (x + NBMASK) ^ NBMASK : ((x + NBMASK) ^ NBMASK) & 0xFFFFFFFFL;
+        }
+
+        private long fromNegabinary(long x) {
+            return intprec == 64 ? (x ^ NBMASK) - NBMASK : (int) ((x ^ NBMASK) - NBMASK);
+        }
+
+        private void fwdXform(long[] p) {
+            for (int d = 0; d < dims; d++) {
+                final int stride = 1 << 2 * d;
+                for (int i = 0; i < blockSize; i++) {
+                    if ((i >>> 2 * d & 3) == 0) {
+                        fwdLift(p, i, stride);
+                    }
+                }
+            }
+        }
+
+        private void invXform(long[] p) {
+            for (int d = dims - 1; d >= 0; d--) {
+                final int stride = 1 << 2 * d;
+                for (int i = 0; i < blockSize; i++) {
+                    if ((i >>> 2 * d & 3) == 0) {
+                        invLift(p, i, stride);
+                    }
+                }
+            }
+            if (intprec == 32) {
+                for (int i = 0; i < blockSize; i++) {
+                    p[i] = (int) p[i];
+                }
+            }
+        }
+
+        /**
+         * The forward decorrelating transform of 4 values, in integer lifting steps.
+         */
+        private static void fwdLift(long[] p, int off, int s) {
+            long x = p[off];
+            long y = p[off + s];
+            long z = p[off + 2 * s];
+            long w = p[off + 3 * s];
+            x += w; x >>= 1; w -= x;
+            z += y; z >>= 1; y -= z;
+            x += z; x >>= 1; z -= x;
+            w += y; w >>= 1; y -= w;
+            w += y >> 1; y -= w >> 1;
+            p[off] = x;
+            p[off + s] = y;
+            p[off + 2 * s] = z;
+            p[off + 3 * s] = w;
+        }
+
+        private static void invLift(long[] p, int off, int s) {
+            long x = p[off];
+            long y = p[off + s];
+            long z = p[off + 2 * s];
+            long w = p[off + 3 * s];
+            y += w >> 1; w -= y >> 1;
+            y += w; w <<= 1; w -= y;
+            z += x; x <<= 1; x -= z;
+            y += z; z <<= 1; z -= y;
+            w += x; x <<= 1; x -= w;
+            p[off] = x;
+            p[off + s] = y;
+            p[off + 2 * s] = z;
+            p[off + 3 * s] = w;
+        }
+    }
+
+    /**
+     * Writes bits starting at the least significant bit of each byte.
+     */
+    private static final class BitOutput {
+
+        private final byte[] dst;
+        private final int end;
+        private int pos;
+        private long buffer;
+        private int bits;
+
+        BitOutput(byte[] dst, int pos, int end) {
+            this.dst = dst;
+            this.pos = pos;
+            this.end = end;
+        }
+
+        /**
+         * @param n the number of bits, at most 64
+         */
+        void write(long value, int n) throws IOException {
+            if (n < 64) {
+                value &= (1L << n) - 1;
+            }
+            buffer |= value << bits;
+            if (bits + n >= 64) {
+                writeWord(buffer);
+                buffer = bits == 0 ? 0 : value >>> 64 - bits;
+                bits -= 64;
+            }
+            bits += n;
+        }
+
+        void writeBit(int bit) throws IOException {
+            buffer |= (long) bit << bits;
+            if (++bits == 64) {
+                writeWord(buffer);
+                buffer = 0;
+                bits = 0;
+            }
+        }
+
+        void pad(int n) throws IOException {
+            for (; n > 0; n -= 64) {
+                write(0, Math.min(n, 64));
+            }
+        }
+
+        /**
+         * @return the position after the last written byte
+         */
+        int flush() throws IOException {
+            for (; bits > 0; bits -= 8, buffer >>>= 8) {
+                if (pos >= end) {
+                    throw tooSmall();
+                }
+                dst[pos++] = (byte) buffer;
+            }
+            bits = 0;
+            return pos;
+        }
+
+        private void writeWord(long word) throws IOException {
+            if (pos + 8 > end) {
+                throw tooSmall();
+            }
+            Bytes.writeLong(dst, pos, word);
+            pos += 8;
+        }
+    }
+
+    private static final class BitInput {
+
+        private final byte[] src;
+        private final int end;
+        private int pos;
+        private long buffer;
+        private int bits;
+
+        BitInput(byte[] src, int pos, int end) {
+            this.src = src;
+            this.pos = pos;
+            this.end = end;
+        }
+
+        /**
+         * @param n the number of bits, at most 64
+         */
+        long read(int n) throws IOException {
+            if (n == 0) {
+                return 0;
+            }
+            long value = buffer;
+            if (bits >= n) {
+                buffer = n == 64 ? 0 : buffer >>> n;
+                bits -= n;
+            } else {
+                final long word = readWord();
+                value |= word << bits;
+                final int rest = n - bits;
+                buffer = rest == 64 ? 0 : word >>> rest;
+                bits = 64 - rest;
+            }
+            return n == 64 ? value : value & (1L << n) - 1;
+        }
+
+        int readBit() throws IOException {
+            if (bits == 0) {
+                buffer = readWord();
+                bits = 64;
+            }
+            final int bit = (int) buffer & 1;
+            buffer >>>= 1;
+            bits--;
+            return bit;
+        }
+
+        void skip(int n) throws IOException {
+            for (; n > 0; n -= 64) {
+                read(Math.min(n, 64));
+            }
+        }
+
+        /**
+         * Reads zero bits up to and including the next one bit, but at most {@code max} bits.
+         *
+         * @return the number of zero bits, which is less than {@code max} if a one bit was read
+         */
+        int readZeros(int max) throws IOException {
+            int zeros = 0;
+            while (zeros < max) {
+                if (bits == 0) {
+                    buffer = readWord();
+                    bits = 64;
+                }
+                // the bits of the buffer above the available ones are zero
+                final int t = Long.numberOfTrailingZeros(buffer);
+                if (t < bits && zeros + t < max) {
+                    buffer = buffer >>> t >>> 1;
+                    bits -= t + 1;
+                    return zeros + t;
+                }
+                final int n = Math.min(bits, max - zeros);
+                buffer = n == 64 ? 0 : buffer >>> n;
+                bits -= n;
+                zeros += n;
+            }
+            return zeros;
+        }
+
+        /**
+         * Reads the next 8 bytes, the bytes after the end of the data being zero.
+         */
+        private long readWord() throws IOException {
+            if (pos >= end) {
+                throw new EOFException("zfp: unexpected end of data");
+            }
+            long word = 0;
+            for (int i = 0; i < 8 && pos + i < end; i++) {
+                word |= (src[pos + i] & 0xFFL) << 8 * i;
+            }
+            pos += 8;
+            return word;
+        }
+    }
+}
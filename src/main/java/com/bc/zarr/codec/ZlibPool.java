@@ -0,0 +1,109 @@
+/*
+ *
+ * MIT License
+ *
+ * Copyright (c) 2021. Brockmann Consult GmbH (info@brockmann-consult.de)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package com.bc.zarr.codec;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Pools of {@link Deflater} and {@link Inflater} instances, so that compressing and uncompressing a chunk does
+ * not set up the native zlib state again. The pools are kept separately for the zlib format and for raw deflate
+ * streams ({@code nowrap}), because the format of an instance is fixed when it is created. The level of a
+ * deflater is set when it is borrowed.
+ * <p>
+ * The instances hold native zlib memory, so only a bounded number of them is kept for reuse and all others
+ * are ended explicitly.
+ */
+public final class ZlibPool {
+
+    private static final int POOL_SIZE = 2 * Runtime.getRuntime().availableProcessors();
+
+    private static final BlockingQueue<Deflater> deflaters = new ArrayBlockingQueue<>(POOL_SIZE);
+    private static final BlockingQueue<Deflater> nowrapDeflaters = new ArrayBlockingQueue<>(POOL_SIZE);
+    private static final BlockingQueue<Inflater> inflaters = new ArrayBlockingQueue<>(POOL_SIZE);
+    private static final BlockingQueue<Inflater> nowrapInflaters = new ArrayBlockingQueue<>(POOL_SIZE);
+
+    private ZlibPool() {
+    }
+
+    /**
+     * Borrows a deflater, which must be given back with {@link #returnDeflater(Deflater, boolean, boolean)}.
+     *
+     * @param level  the compression level
+     * @param nowrap {@code true} for raw deflate streams without zlib header and checksum, as in gzip
+     */
+    public static Deflater borrowDeflater(int level, boolean nowrap) {
+        final Deflater deflater = (nowrap ? nowrapDeflaters : deflaters).poll();
+        if (deflater == null) {
+            return new Deflater(level, nowrap);
+        }
+        deflater.setLevel(level);
+        return deflater;
+    }
+
+    /**
+     * @param deflater a deflater obtained by {@link #borrowDeflater(int, boolean)}
+     * @param nowrap   the format the deflater was borrowed for
+     * @param reusable {@code false} if the deflater failed, it is ended then
+     */
+    public static void returnDeflater(Deflater deflater, boolean nowrap, boolean reusable) {
+        if (reusable) {
+            deflater.reset();
+            if ((nowrap ? nowrapDeflaters : deflaters).offer(deflater)) {
+                return;
+            }
+        }
+        deflater.end();
+    }
+
+    /**
+     * Borrows an inflater, which must be given back with {@link #returnInflater(Inflater, boolean, boolean)}.
+     *
+     * @param nowrap {@code true} for raw deflate streams without zlib header and checksum, as in gzip
+     */
+    public static Inflater borrowInflater(boolean nowrap) {
+        final Inflater inflater = (nowrap ? nowrapInflaters : inflaters).poll();
+        return inflater != null ? inflater : new Inflater(nowrap);
+    }
+
+    /**
+     * @param inflater an inflater obtained by {@link #borrowInflater(boolean)}
+     * @param nowrap   the format the inflater was borrowed for
+     * @param reusable {@code false} if the inflater failed, it is ended then
+     */
+    public static void returnInflater(Inflater inflater, boolean nowrap, boolean reusable) {
+        if (reusable) {
+            inflater.reset();
+            if ((nowrap ? nowrapInflaters : inflaters).offer(inflater)) {
+                return;
+            }
+        }
+        inflater.end();
+    }
+}
@@ -0,0 +1,219 @@
+/*
+ *
+ * MIT License
+ *
+ * Copyright (c) 2021. Brockmann Consult GmbH (info@brockmann-consult.de)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package com.bc.zarr.codec;
+
+import java.io.IOException;
+
+/**
+ * A pure Java implementation of the Zstandard compression format (RFC 8878).
+ * <p>
+ * Frames written by {@link #compress} declare their content size, so they can be read by every
+ * Zstandard decoder, e.g. the numcodecs {@code Zstd} codec. {@link #decompress} reads frames of
+ * any conforming encoder, except frames which require a dictionary.
+ */
+public final class Zstd {
+
+    /**
+     * The default compression level of numcodecs.
+     */
+    public static final int DEFAULT_LEVEL = 1;
+    public static final int MIN_LEVEL = -(1 << 17);
+    public static final int MAX_LEVEL = 22;
+
+    static final int MAGIC = 0xFD2FB528;
+    static final int SKIPPABLE_MAGIC = 0x184D2A50;
+    static final int MAX_BLOCK_SIZE = 128 * 1024;
+
+    static final int LITERAL_LENGTH = 0;
+    static final int OFFSET = 1;
+    static final int MATCH_LENGTH = 2;
+
+    static final int MAX_LL_CODE = 35;
+    static final int MAX_ML_CODE = 52;
+    static final int MAX_OF_CODE = 31;
+
+    static final int[] LL_BASE = {
+            0, 1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 14, 15,
+            16, 18, 20, 22, 24, 28, 32, 40, 48, 64, 128, 256, 512, 1024, 2048, 4096,
+            8192, 16384, 32768, 65536};
+    static final int[] LL_BITS = {
+            0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0,
+            1, 1, 1, 1, 2, 2, 3, 3, 4, 6, 7, 8, 9, 10, 11, 12,
+            13, 14, 15, 16};
+    static final int[] ML_BASE = {
+            3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 14, 15, 16, 17, 18,
+            19, 20, 21, 22, 23, 24, 25, 26, 27, 28, 29, 30, 31, 32, 33, 34,
+            35, 37, 39, 41, 43, 47, 51, 59, 67, 83, 99, 131, 259, 515, 1027, 2051,
+            4099, 8195, 16387, 32771, 65539};
+    static final int[] ML_BITS = {
+            0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0,
+            0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0,
+            1, 1, 1, 1, 2, 2, 3, 3, 4, 4, 5, 7, 8, 9, 10, 11,
+            12, 13, 14, 15, 16};
+
+    static final short[] LL_DEFAULT_NORM = {
+            4, 3, 2, 2, 2, 2, 2, 2, 2, 2, 2, 2, 2, 1, 1, 1,
+            2, 2, 2, 2, 2, 2, 2, 2, 2, 3, 2, 1, 1, 1, 1, 1,
+            -1, -1, -1, -1};
+    static final short[] ML_DEFAULT_NORM = {
+            1, 4, 3, 2, 2, 2, 2, 2, 2, 1, 1, 1, 1, 1, 1, 1,
+            1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1,
+            1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, -1, -1,
+            -1, -1, -1, -1, -1};
+    static final short[] OF_DEFAULT_NORM = {
+            1, 1, 1, 1, 1, 1, 2, 2, 2, 1, 1, 1, 1, 1, 1, 1,
+            1, 1, 1, 1, 1, 1, 1, 1, -1, -1, -1, -1, -1};
+    static final int LL_DEFAULT_LOG = 6;
+    static final int ML_DEFAULT_LOG = 6;
+    static final int OF_DEFAULT_LOG = 5;
+
+    private static final Fse.DecodingTable[] PREDEFINED_TABLES;
+
+    static {
+        try {
+            PREDEFINED_TABLES = new Fse.DecodingTable[]{
+                    Fse.DecodingTable.create(LL_DEFAULT_NORM, LL_DEFAULT_NORM.length - 1, LL_DEFAULT_LOG),
+                    Fse.DecodingTable.create(OF_DEFAULT_NORM, OF_DEFAULT_NORM.length - 1, OF_DEFAULT_LOG),
+                    Fse.DecodingTable.create(ML_DEFAULT_NORM, ML_DEFAULT_NORM.length - 1, ML_DEFAULT_LOG)
+            };
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private Zstd() {
+    }
+
+    /**
+     * @return the size of the largest frame {@link #compress} writes for the given number of bytes
+     */
+    public static int maxCompressedLength(int uncompressedLength) {
+        final long n = uncompressedLength;
+        final long bound = n + (n >>> 8) + (n < MAX_BLOCK_SIZE ? (MAX_BLOCK_SIZE - n) >>> 11 : 0);
+        return bound > Integer.MAX_VALUE ? -1 : (int) bound;
+    }
+
+    /**
+     * Compresses the source into a single frame.
+     *
+     * @param level    the compression level, from {@link #MIN_LEVEL} (fastest) to {@link #MAX_LEVEL} (strongest),
+     *                 where 0 selects the Zstandard default level 3
+     * @param checksum whether the frame carries a content checksum
+     * @return the size of the frame
+     * @throws IOException if {@code dstLen} is smaller than the frame
+     */
+    public static int compress(byte[] src, int srcOff, int srcLen, byte[] dst, int dstOff, int dstLen,
+                               int level, boolean checksum) throws IOException {
+        return new ZstdEncoder(level).compress(src, srcOff, srcLen, dst, dstOff, dstLen, checksum);
+    }
+
+    /**
+     * Decompresses all frames of the source.
+     *
+     * @return the number of bytes written to {@code dst}
+     * @throws IOException if the data is corrupted or exceeds {@code dstLen}
+     */
+    public static int decompress(byte[] src, int srcOff, int srcLen, byte[] dst, int dstOff, int dstLen) throws IOException {
+        return ZstdDecoder.decompress(src, srcOff, srcLen, dst, dstOff, dstLen);
+    }
+
+    /**
+     * Decompresses all frames of the source into a new array.
+     */
+    public static byte[] decompress(byte[] src, int srcOff, int srcLen) throws IOException {
+        final long size = getDecompressedSize(src, srcOff, srcLen);
+        if (size > ZstdDecoder.maxExpansion(srcLen)) {
+            throw corrupted("frame content size too large");
+        }
+        final int capacity = size >= 0 ? (int) size : Math.max(1024, (int) Math.min(Integer.MAX_VALUE - 8, 4L * srcLen));
+        return ZstdDecoder.decompress(src, srcOff, srcLen, capacity);
+    }
+
+    /**
+     * @return the uncompressed size declared by the frames of the source or -1 if a frame does not declare it
+     * @throws IOException if the source is not a sequence of Zstandard frames
+     */
+    public static long getDecompressedSize(byte[] src, int srcOff, int srcLen) throws IOException {
+        return ZstdDecoder.getContentSize(src, srcOff, srcLen);
+    }
+
+    static IOException corrupted(String reason) {
+        return new IOException("zstd: corrupted data, " + reason);
+    }
+
+    static IOException tooSmall() {
+        return new IOException("zstd: destination buffer too small");
+    }
+
+    static Fse.DecodingTable predefinedTable(int kind) {
+        return PREDEFINED_TABLES[kind];
+    }
+
+    static int maxCode(int kind) {
+        switch (kind) {
+            case LITERAL_LENGTH:
+                return MAX_LL_CODE;
+            case OFFSET:
+                return MAX_OF_CODE;
+            default:
+                return MAX_ML_CODE;
+        }
+    }
+
+    static int maxTableLog(int kind) {
+        return kind == OFFSET ? 8 : 9;
+    }
+
+    static int literalLengthCode(int literalLength) {
+        if (literalLength < 16) {
+            return literalLength;
+        }
+        if (literalLength >= 64) {
+            return Bytes.highBit(literalLength) + 19;
+        }
+        int code = 24;
+        while (LL_BASE[code] > literalLength) {
+            code--;
+        }
+        return code;
+    }
+
+    static int matchLengthCode(int matchLength) {
+        final int base = matchLength - 3;
+        if (base < 32) {
+            return base;
+        }
+        if (base >= 128) {
+            return Bytes.highBit(base) + 36;
+        }
+        int code = 42;
+        while (ML_BASE[code] > matchLength) {
+            code--;
+        }
+        return code;
+    }
+}
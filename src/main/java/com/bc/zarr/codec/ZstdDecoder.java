@@ -0,0 +1,597 @@
+/*
+ *
+ * MIT License
+ *
+ * Copyright (c) 2021. Brockmann Consult GmbH (info@brockmann-consult.de)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package com.bc.zarr.codec;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Decodes Zstandard frames as specified by RFC 8878. Dictionaries are not supported.
+ */
+final class ZstdDecoder {
+
+    private final byte[] src;
+    private final int srcEnd;
+    private int ip;
+
+    private byte[] dst;
+    private int op;
+    private int dstEnd;
+    private final boolean growable;
+
+    private int frameStart;
+    private final int[] rep = new int[3];
+    private Huffman.DecodingTable huffmanTable;
+    private Fse.DecodingTable literalLengthTable;
+    private Fse.DecodingTable offsetTable;
+    private Fse.DecodingTable matchLengthTable;
+
+    private byte[] literalBuffer = new byte[0];
+    private byte[] literals;
+    private int literalsPos;
+    private int literalsEnd;
+
+    private final short[] norm = new short[Zstd.MAX_ML_CODE + 1];
+    private final int[] nCountResult = new int[2];
+
+    private ZstdDecoder(byte[] src, int srcOff, int srcLen, byte[] dst, int dstOff, int dstLen, boolean growable) {
+        this.src = src;
+        this.ip = srcOff;
+        this.srcEnd = srcOff + srcLen;
+        this.dst = dst;
+        this.op = dstOff;
+        this.dstEnd = dstOff + dstLen;
+        this.growable = growable;
+    }
+
+    /**
+     * @return the number of bytes written to {@code dst}
+     */
+    static int decompress(byte[] src, int srcOff, int srcLen, byte[] dst, int dstOff, int dstLen) throws IOException {
+        final ZstdDecoder decoder = new ZstdDecoder(src, srcOff, srcLen, dst, dstOff, dstLen, false);
+        decoder.decodeFrames();
+        return decoder.op - dstOff;
+    }
+
+    /**
+     * Decodes into a new array, starting with the given capacity.
+     */
+    static byte[] decompress(byte[] src, int srcOff, int srcLen, int initialCapacity) throws IOException {
+        final ZstdDecoder decoder = new ZstdDecoder(src, srcOff, srcLen, new byte[initialCapacity], 0, initialCapacity, true);
+        decoder.decodeFrames();
+        return decoder.dst.length == decoder.op ? decoder.dst : Arrays.copyOf(decoder.dst, decoder.op);
+    }
+
+    /**
+     * @return the sum of the content sizes of all frames or {@code -1} if a frame does not declare its content size
+     */
+    static long getContentSize(byte[] src, int srcOff, int srcLen) throws IOException {
+        final int end = srcOff + srcLen;
+        int p = srcOff;
+        long total = 0;
+        while (p < end) {
+            check(p + 4 <= end);
+            final int magic = Bytes.readInt(src, p);
+            p += 4;
+            if ((magic & 0xFFFFFFF0) == Zstd.SKIPPABLE_MAGIC) {
+                check(p + 4 <= end);
+                p += 4 + Bytes.readInt(src, p);
+                check(p >= 0 && p <= end);
+                continue;
+            }
+            if (magic != Zstd.MAGIC) {
+                throw Zstd.corrupted("unknown frame magic number");
+            }
+            check(p < end);
+            final int fhd = src[p++] & 0xFF;
+            final boolean singleSegment = (fhd & 0x20) != 0;
+            p += singleSegment ? 0 : 1;
+            p += dictionaryIdSize(fhd);
+            final int fcsSize = contentSizeFieldSize(fhd);
+            if (fcsSize == 0) {
+                return -1;
+            }
+            check(p + fcsSize <= end);
+            final long contentSize = readContentSize(src, p, fcsSize);
+            if (contentSize < 0) {
+                throw Zstd.corrupted("invalid frame content size");
+            }
+            total += contentSize;
+            p += fcsSize;
+            p = skipBlocks(src, p, end);
+            if ((fhd & 0x04) != 0) {
+                p += 4;
+            }
+        }
+        check(p == end);
+        return total;
+    }
+
+    private static int skipBlocks(byte[] src, int p, int end) throws IOException {
+        while (true) {
+            check(p + 3 <= end);
+            final int header = Bytes.read24(src, p);
+            p += 3;
+            final int type = (header >>> 1) & 3;
+            p += type == 1 ? 1 : header >>> 3;
+            check(p <= end);
+            if ((header & 1) != 0) {
+                return p;
+            }
+        }
+    }
+
+    private static int dictionaryIdSize(int fhd) {
+        final int flag = fhd & 3;
+        return flag == 3 ? 4 : flag;
+    }
+
+    private static int contentSizeFieldSize(int fhd) {
+        switch (fhd >>> 6) {
+            case 0:
+                return (fhd & 0x20) != 0 ? 1 : 0;
+            case 1:
+                return 2;
+            case 2:
+                return 4;
+            default:
+                return 8;
+        }
+    }
+
+    private static long readContentSize(byte[] src, int p, int size) {
+        switch (size) {
+            case 1:
+                return src[p] & 0xFF;
+            case 2:
+                return Bytes.readShort(src, p) + 256;
+            case 4:
+                return Bytes.readInt(src, p) & 0xFFFFFFFFL;
+            default:
+                return Bytes.readLong(src, p);
+        }
+    }
+
+    /**
+     * The largest number of bytes the given number of compressed bytes can expand to, which is one
+     * RLE block of the maximum block size per four bytes. Limits allocations for corrupted content sizes.
+     */
+    static long maxExpansion(int compressedLength) {
+        return Math.min(Integer.MAX_VALUE - 8, (compressedLength / 4 + 1L) * Zstd.MAX_BLOCK_SIZE);
+    }
+
+    private static void check(boolean condition) throws IOException {
+        if (!condition) {
+            throw Zstd.corrupted("truncated input");
+        }
+    }
+
+    private void need(int n) throws IOException {
+        check(n >= 0 && ip + n <= srcEnd);
+    }
+
+    private void ensureCapacity(int n) throws IOException {
+        if (op + n <= dstEnd) {
+            return;
+        }
+        if (!growable) {
+            throw Zstd.tooSmall();
+        }
+        final long required = (long) op + n;
+        if (required > Integer.MAX_VALUE - 8) {
+            throw new IOException("zstd: uncompressed data too large");
+        }
+        final int capacity = (int) Math.min(Integer.MAX_VALUE - 8, Math.max(required, 2L * dst.length));
+        dst = Arrays.copyOf(dst, capacity);
+        dstEnd = capacity;
+    }
+
+    private void decodeFrames() throws IOException {
+        while (ip < srcEnd) {
+            need(4);
+            final int magic = Bytes.readInt(src, ip);
+            ip += 4;
+            if ((magic & 0xFFFFFFF0) == Zstd.SKIPPABLE_MAGIC) {
+                need(4);
+                final int size = Bytes.readInt(src, ip);
+                ip += 4;
+                need(size);
+                ip += size;
+            } else if (magic == Zstd.MAGIC) {
+                decodeFrame();
+            } else {
+                throw Zstd.corrupted("unknown frame magic number");
+            }
+        }
+    }
+
+    private void decodeFrame() throws IOException {
+        need(1);
+        final int fhd = src[ip++] & 0xFF;
+        if ((fhd & 0x08) != 0) {
+            throw Zstd.corrupted("reserved frame header bit is set");
+        }
+        final boolean checksum = (fhd & 0x04) != 0;
+        if ((fhd & 0x20) == 0) {
+            need(1);
+            ip++;
+        }
+        final int dictionaryIdSize = dictionaryIdSize(fhd);
+        need(dictionaryIdSize);
+        long dictionaryId = 0;
+        for (int i = 0; i < dictionaryIdSize; i++) {
+            dictionaryId |= (src[ip + i] & 0xFFL) << (8 * i);
+        }
+        ip += dictionaryIdSize;
+        if (dictionaryId != 0) {
+            throw new IOException("zstd: dictionaries are not supported");
+        }
+        final int fcsSize = contentSizeFieldSize(fhd);
+        need(fcsSize);
+        final long contentSize = fcsSize == 0 ? -1 : readContentSize(src, ip, fcsSize);
+        ip += fcsSize;
+        if (fcsSize > 0 && contentSize < 0) {
+            throw Zstd.corrupted("invalid frame content size");
+        }
+        if (contentSize > 0) {
+            ensureCapacity((int) Math.min(contentSize, maxExpansion(srcEnd - ip)));
+        }
+
+        frameStart = op;
+        rep[0] = 1;
+        rep[1] = 4;
+        rep[2] = 8;
+        huffmanTable = null;
+        literalLengthTable = null;
+        offsetTable = null;
+        matchLengthTable = null;
+
+        boolean last;
+        do {
+            need(3);
+            final int header = Bytes.read24(src, ip);
+            ip += 3;
+            last = (header & 1) != 0;
+            final int type = (header >>> 1) & 3;
+            final int size = header >>> 3;
+            switch (type) {
+                case 0:
+                    need(size);
+                    ensureCapacity(size);
+                    System.arraycopy(src, ip, dst, op, size);
+                    ip += size;
+                    op += size;
+                    break;
+                case 1:
+                    need(1);
+                    ensureCapacity(size);
+                    Arrays.fill(dst, op, op + size, src[ip]);
+                    ip++;
+                    op += size;
+                    break;
+                case 2:
+                    if (size > Zstd.MAX_BLOCK_SIZE) {
+                        throw Zstd.corrupted("block too large");
+                    }
+                    need(size);
+                    decodeCompressedBlock(ip, ip + size);
+                    ip += size;
+                    break;
+                default:
+                    throw Zstd.corrupted("reserved block type");
+            }
+        } while (!last);
+
+        if (contentSize >= 0 && op - frameStart != contentSize) {
+            throw Zstd.corrupted("frame content size mismatch");
+        }
+        if (checksum) {
+            need(4);
+            final int expected = Bytes.readInt(src, ip);
+            ip += 4;
+            if ((int) XxHash64.hash(dst, frameStart, op - frameStart, 0) != expected) {
+                throw Zstd.corrupted("content checksum mismatch");
+            }
+        }
+    }
+
+    private void decodeCompressedBlock(int start, int end) throws IOException {
+        int p = decodeLiterals(start, end);
+        check(p < end);
+        int nbSeq = src[p++] & 0xFF;
+        if (nbSeq == 0) {
+            copyLiterals(literalsEnd - literalsPos);
+            return;
+        }
+        if (nbSeq == 255) {
+            check(p + 2 <= end);
+            nbSeq = Bytes.readShort(src, p) + 0x7F00;
+            p += 2;
+        } else if (nbSeq >= 128) {
+            check(p < end);
+            nbSeq = ((nbSeq - 128) << 8) + (src[p++] & 0xFF);
+        }
+        check(p < end);
+        final int modes = src[p++] & 0xFF;
+        if ((modes & 3) != 0) {
+            throw Zstd.corrupted("reserved sequence mode bits are set");
+        }
+        p = readTable(Zstd.LITERAL_LENGTH, modes >>> 6, p, end);
+        p = readTable(Zstd.OFFSET, (modes >>> 4) & 3, p, end);
+        p = readTable(Zstd.MATCH_LENGTH, (modes >>> 2) & 3, p, end);
+        decodeSequences(nbSeq, p, end);
+    }
+
+    private int decodeLiterals(int start, int end) throws IOException {
+        check(start < end);
+        int p = start;
+        final int b0 = src[p] & 0xFF;
+        final int type = b0 & 3;
+        final int sizeFormat = (b0 >>> 2) & 3;
+        if (type < 2) {
+            final int size;
+            switch (sizeFormat) {
+                case 1:
+                    check(p + 2 <= end);
+                    size = Bytes.readShort(src, p) >>> 4;
+                    p += 2;
+                    break;
+                case 3:
+                    check(p + 3 <= end);
+                    size = Bytes.read24(src, p) >>> 4;
+                    p += 3;
+                    break;
+                default:
+                    size = b0 >>> 3;
+                    p += 1;
+            }
+            if (type == 0) {
+                check(p + size <= end);
+                literals = src;
+                literalsPos = p;
+                literalsEnd = p + size;
+                return p + size;
+            }
+            check(p < end);
+            final byte[] buffer = literalBuffer(size);
+            Arrays.fill(buffer, 0, size, src[p]);
+            literals = buffer;
+            literalsPos = 0;
+            literalsEnd = size;
+            return p + 1;
+        }
+
+        final int regenerated;
+        final int compressed;
+        final boolean singleStream = sizeFormat == 0;
+        if (sizeFormat < 2) {
+            check(p + 3 <= end);
+            final int h = Bytes.read24(src, p);
+            regenerated = (h >>> 4) & 0x3FF;
+            compressed = (h >>> 14) & 0x3FF;
+            p += 3;
+        } else if (sizeFormat == 2) {
+            check(p + 4 <= end);
+            final int h = Bytes.readInt(src, p);
+            regenerated = (h >>> 4) & 0x3FFF;
+            compressed = (h >>> 18) & 0x3FFF;
+            p += 4;
+        } else {
+            check(p + 5 <= end);
+            final long h = (Bytes.readInt(src, p) & 0xFFFFFFFFL) | (src[p + 4] & 0xFFL) << 32;
+            regenerated = (int) ((h >>> 4) & 0x3FFFF);
+            compressed = (int) ((h >>> 22) & 0x3FFFF);
+            p += 5;
+        }
+        final int literalsStreamEnd = p + compressed;
+        check(literalsStreamEnd <= end);
+        if (regenerated > Zstd.MAX_BLOCK_SIZE) {
+            throw Zstd.corrupted("literals too large");
+        }
+        if (type == 2) {
+            final Huffman.DecodingTable[] result = new Huffman.DecodingTable[1];
+            p += Huffman.DecodingTable.read(src, p, literalsStreamEnd, result);
+            huffmanTable = result[0];
+        } else if (huffmanTable == null) {
+            throw Zstd.corrupted("missing Huffman table");
+        }
+        final byte[] buffer = literalBuffer(regenerated);
+        if (singleStream) {
+            huffmanTable.decodeStream(src, p, literalsStreamEnd, buffer, 0, regenerated);
+        } else {
+            check(p + 6 <= literalsStreamEnd);
+            final int size1 = Bytes.readShort(src, p);
+            final int size2 = Bytes.readShort(src, p + 2);
+            final int size3 = Bytes.readShort(src, p + 4);
+            final int s1 = p + 6;
+            final int s2 = s1 + size1;
+            final int s3 = s2 + size2;
+            final int s4 = s3 + size3;
+            check(s4 < literalsStreamEnd);
+            final int segment = (regenerated + 3) / 4;
+            if (3 * segment > regenerated) {
+                throw Zstd.corrupted("invalid literals size");
+            }
+            huffmanTable.decodeStream(src, s1, s2, buffer, 0, segment);
+            huffmanTable.decodeStream(src, s2, s3, buffer, segment, 2 * segment);
+            huffmanTable.decodeStream(src, s3, s4, buffer, 2 * segment, 3 * segment);
+            huffmanTable.decodeStream(src, s4, literalsStreamEnd, buffer, 3 * segment, regenerated);
+        }
+        literals = buffer;
+        literalsPos = 0;
+        literalsEnd = regenerated;
+        return literalsStreamEnd;
+    }
+
+    private byte[] literalBuffer(int size) {
+        if (literalBuffer.length < size) {
+            literalBuffer = new byte[Math.max(size, Math.min(2 * literalBuffer.length, Zstd.MAX_BLOCK_SIZE))];
+        }
+        return literalBuffer;
+    }
+
+    private int readTable(int kind, int mode, int p, int end) throws IOException {
+        final Fse.DecodingTable table;
+        switch (mode) {
+            case 0:
+                table = Zstd.predefinedTable(kind);
+                break;
+            case 1:
+                check(p < end);
+                final int symbol = src[p++] & 0xFF;
+                if (symbol > Zstd.maxCode(kind)) {
+                    throw Zstd.corrupted("invalid RLE symbol");
+                }
+                table = Fse.DecodingTable.rle(symbol);
+                break;
+            case 2:
+                p += Fse.readNCount(src, p, end, norm, Zstd.maxCode(kind), nCountResult);
+                if (nCountResult[0] > Zstd.maxTableLog(kind)) {
+                    throw Zstd.corrupted("FSE table log too large");
+                }
+                table = Fse.DecodingTable.create(norm, nCountResult[1], nCountResult[0]);
+                break;
+            default:
+                table = currentTable(kind);
+                if (table == null) {
+                    throw Zstd.corrupted("missing FSE table to repeat");
+                }
+        }
+        switch (kind) {
+            case Zstd.LITERAL_LENGTH:
+                literalLengthTable = table;
+                break;
+            case Zstd.OFFSET:
+                offsetTable = table;
+                break;
+            default:
+                matchLengthTable = table;
+        }
+        return p;
+    }
+
+    private Fse.DecodingTable currentTable(int kind) {
+        switch (kind) {
+            case Zstd.LITERAL_LENGTH:
+                return literalLengthTable;
+            case Zstd.OFFSET:
+                return offsetTable;
+            default:
+                return matchLengthTable;
+        }
+    }
+
+    private void decodeSequences(int nbSeq, int start, int end) throws IOException {
+        final Fse.DecodingTable llTable = literalLengthTable;
+        final Fse.DecodingTable ofTable = offsetTable;
+        final Fse.DecodingTable mlTable = matchLengthTable;
+        final BackwardBitReader in = new BackwardBitReader(src, start, end);
+        int llState = in.readBits(llTable.tableLog);
+        in.reload();
+        int ofState = in.readBits(ofTable.tableLog);
+        in.reload();
+        int mlState = in.readBits(mlTable.tableLog);
+        in.reload();
+
+        for (int i = 0; i < nbSeq; i++) {
+            final int ofCode = ofTable.symbol[ofState];
+            final int llCode = llTable.symbol[llState];
+            final int mlCode = mlTable.symbol[mlState];
+            if (ofCode > 30) {
+                throw Zstd.corrupted("offset too large");
+            }
+            int offset = (1 << ofCode) + in.readBits(ofCode);
+            in.reload();
+            final int matchLength = Zstd.ML_BASE[mlCode] + in.readBits(Zstd.ML_BITS[mlCode]);
+            in.reload();
+            final int literalLength = Zstd.LL_BASE[llCode] + in.readBits(Zstd.LL_BITS[llCode]);
+            in.reload();
+
+            if (offset > 3) {
+                offset -= 3;
+                rep[2] = rep[1];
+                rep[1] = rep[0];
+                rep[0] = offset;
+            } else {
+                final int repCode = literalLength == 0 ? offset + 1 : offset;
+                if (repCode == 1) {
+                    offset = rep[0];
+                } else {
+                    offset = repCode == 4 ? rep[0] - 1 : rep[repCode - 1];
+                    if (repCode != 2) {
+                        rep[2] = rep[1];
+                    }
+                    rep[1] = rep[0];
+                    rep[0] = offset;
+                }
+            }
+
+            if (i < nbSeq - 1) {
+                llState = llTable.newState[llState] + in.readBits(llTable.nbBits[llState]);
+                mlState = mlTable.newState[mlState] + in.readBits(mlTable.nbBits[mlState]);
+                in.reload();
+                ofState = ofTable.newState[ofState] + in.readBits(ofTable.nbBits[ofState]);
+                in.reload();
+            }
+
+            copyLiterals(literalLength);
+            copyMatch(offset, matchLength);
+        }
+        if (!in.isComplete()) {
+            throw Zstd.corrupted("invalid sequences bit stream");
+        }
+        copyLiterals(literalsEnd - literalsPos);
+    }
+
+    private void copyLiterals(int length) throws IOException {
+        if (length > literalsEnd - literalsPos) {
+            throw Zstd.corrupted("literal length exceeds the literals section");
+        }
+        ensureCapacity(length);
+        System.arraycopy(literals, literalsPos, dst, op, length);
+        literalsPos += length;
+        op += length;
+    }
+
+    private void copyMatch(int offset, int length) throws IOException {
+        if (offset <= 0 || offset > op - frameStart) {
+            throw Zstd.corrupted("invalid match offset");
+        }
+        ensureCapacity(length);
+        final byte[] out = dst;
+        int from = op - offset;
+        if (offset >= length) {
+            System.arraycopy(out, from, out, op, length);
+            op += length;
+        } else {
+            final int end = op + length;
+            while (op < end) {
+                out[op++] = out[from++];
+            }
+        }
+    }
+}
@@ -0,0 +1,587 @@
+/*
+ *
+ * MIT License
+ *
+ * Copyright (c) 2021. Brockmann Consult GmbH (info@brockmann-consult.de)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package com.bc.zarr.codec;
+
+import java.io.IOException;
+
+/**
+ * Writes Zstandard frames. Matches are found with a hash table, higher levels additionally
+ * search hash chains and defer matches lazily. Literals are Huffman coded, except for the
+ * negative (fastest) levels. Sequences use the predefined or block specific FSE tables,
+ * whichever is smaller.
+ */
+final class ZstdEncoder {
+
+    private static final int MIN_MATCH = 4;
+    private static final int WINDOW_LOG = 27;
+    private static final int HASH_PRIME = 0x9E3779B1;
+
+    private static final Fse.EncodingTable[] PREDEFINED_TABLES;
+
+    static {
+        try {
+            PREDEFINED_TABLES = new Fse.EncodingTable[]{
+                    new Fse.EncodingTable(Zstd.LL_DEFAULT_NORM, Zstd.LL_DEFAULT_NORM.length - 1, Zstd.LL_DEFAULT_LOG),
+                    new Fse.EncodingTable(Zstd.OF_DEFAULT_NORM, Zstd.OF_DEFAULT_NORM.length - 1, Zstd.OF_DEFAULT_LOG),
+                    new Fse.EncodingTable(Zstd.ML_DEFAULT_NORM, Zstd.ML_DEFAULT_NORM.length - 1, Zstd.ML_DEFAULT_LOG)
+            };
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static final short[][] DEFAULT_NORMS = {Zstd.LL_DEFAULT_NORM, Zstd.OF_DEFAULT_NORM, Zstd.ML_DEFAULT_NORM};
+    private static final int[] DEFAULT_LOGS = {Zstd.LL_DEFAULT_LOG, Zstd.OF_DEFAULT_LOG, Zstd.ML_DEFAULT_LOG};
+
+    private final int hashLog;
+    private final int chainLog;
+    private final int searchDepth;
+    private final int lazyDepth;
+    private final int targetLength;
+    private final int acceleration;
+
+    private byte[] src;
+    private int srcStart;
+    private int maxOffset;
+    private int[] hashTable;
+    private int[] chainTable;
+    private int chainMask;
+    private int insertPos;
+    private final int[] rep = new int[3];
+
+    private int nbSeq;
+    private int[] literalLengths;
+    private int[] matchLengths;
+    private int[] offsetBases;
+    private byte[] literals;
+    private int literalCount;
+
+    ZstdEncoder(int level) {
+        if (level == 0) {
+            level = 3;
+        }
+        acceleration = level < 1 ? 1 - level : 0;
+        if (level <= 2) {
+            hashLog = level <= 1 ? 15 : 16;
+            chainLog = 0;
+            searchDepth = 1;
+            lazyDepth = 0;
+            targetLength = 0;
+        } else if (level <= 4) {
+            hashLog = level + 13;
+            chainLog = level + 13;
+            searchDepth = level == 3 ? 4 : 8;
+            lazyDepth = 0;
+            targetLength = level == 3 ? 16 : 32;
+        } else if (level <= 8) {
+            hashLog = 17;
+            chainLog = 18;
+            searchDepth = 4 << (level - 4);
+            lazyDepth = 1;
+            targetLength = 16 * (level - 3);
+        } else if (level <= 16) {
+            hashLog = level <= 12 ? 18 : 19;
+            chainLog = level <= 12 ? 19 : 20;
+            searchDepth = level <= 12 ? 96 : 192;
+            lazyDepth = 2;
+            targetLength = level <= 12 ? 128 : 256;
+        } else {
+            hashLog = 20;
+            chainLog = 21;
+            searchDepth = 512;
+            lazyDepth = 2;
+            targetLength = 1024;
+        }
+    }
+
+    int compress(byte[] src, int srcOff, int srcLen, byte[] dst, int dstOff, int dstLen, boolean checksum) throws IOException {
+        final int dstEnd = dstOff + dstLen;
+        int p = dstOff;
+        if (dstLen < 4 + 1 + 1 + 4) {
+            throw Zstd.tooSmall();
+        }
+        Bytes.writeInt(dst, p, Zstd.MAGIC);
+        p += 4;
+        final boolean singleSegment = srcLen <= 1 << WINDOW_LOG;
+        final int fcsFlag = singleSegment && srcLen < 256 ? 0 : srcLen < 65536 + 256 ? 1 : 2;
+        dst[p++] = (byte) (fcsFlag << 6 | (singleSegment ? 0x20 : 0) | (checksum ? 0x04 : 0));
+        if (!singleSegment) {
+            dst[p++] = (byte) ((WINDOW_LOG - 10) << 3);
+        }
+        if (fcsFlag == 0) {
+            dst[p++] = (byte) srcLen;
+        } else if (fcsFlag == 1) {
+            Bytes.writeShort(dst, p, srcLen - 256);
+            p += 2;
+        } else {
+            Bytes.writeInt(dst, p, srcLen);
+            p += 4;
+        }
+
+        init(src, srcOff, srcLen, singleSegment ? srcLen : 1 << WINDOW_LOG);
+        final int srcEnd = srcOff + srcLen;
+        int blockStart = srcOff;
+        do {
+            final int blockEnd = blockStart + Math.min(Zstd.MAX_BLOCK_SIZE, srcEnd - blockStart);
+            p = writeBlock(blockStart, blockEnd, blockEnd == srcEnd, dst, p, dstEnd);
+            blockStart = blockEnd;
+        } while (blockStart < srcEnd);
+
+        if (checksum) {
+            if (p + 4 > dstEnd) {
+                throw Zstd.tooSmall();
+            }
+            Bytes.writeInt(dst, p, (int) XxHash64.hash(src, srcOff, srcLen, 0));
+            p += 4;
+        }
+        return p - dstOff;
+    }
+
+    private void init(byte[] src, int srcOff, int srcLen, int windowSize) {
+        this.src = src;
+        this.srcStart = srcOff;
+        this.maxOffset = windowSize;
+        this.insertPos = srcOff;
+        final int sizeLog = Bytes.highBit(Math.max(srcLen, 1 << 8) - 1) + 1;
+        hashTable = new int[1 << Math.min(hashLog, sizeLog + 1)];
+        if (chainLog > 0) {
+            final int log = Math.min(chainLog, sizeLog);
+            chainTable = new int[1 << log];
+            chainMask = (1 << log) - 1;
+        }
+        rep[0] = 1;
+        rep[1] = 4;
+        rep[2] = 8;
+        final int blockSize = Math.min(srcLen, Zstd.MAX_BLOCK_SIZE);
+        final int maxSequences = blockSize / MIN_MATCH + 1;
+        literalLengths = new int[maxSequences];
+        matchLengths = new int[maxSequences];
+        offsetBases = new int[maxSequences];
+        literals = new byte[blockSize];
+    }
+
+    private int writeBlock(int start, int end, boolean last, byte[] dst, int p, int dstEnd) throws IOException {
+        final int size = end - start;
+        final int lastFlag = last ? 1 : 0;
+        if (size > 0 && isSingleByte(start, end)) {
+            if (p + 4 > dstEnd) {
+                throw Zstd.tooSmall();
+            }
+            Bytes.write24(dst, p, size << 3 | 1 << 1 | lastFlag);
+            dst[p + 3] = src[start];
+            return p + 4;
+        }
+        if (size > 2 * MIN_MATCH) {
+            final int rep0 = rep[0];
+            final int rep1 = rep[1];
+            final int rep2 = rep[2];
+            findSequences(start, end);
+            final int limit = Math.min(dstEnd, p + 3 + size - 1);
+            try {
+                final int q = encodeBlock(dst, p + 3, limit);
+                Bytes.write24(dst, p, (q - p - 3) << 3 | 2 << 1 | lastFlag);
+                return q;
+            } catch (IOException e) {
+                if (limit == dstEnd) {
+                    throw e;
+                }
+                rep[0] = rep0;
+                rep[1] = rep1;
+                rep[2] = rep2;
+            }
+        }
+        if (p + 3 + size > dstEnd) {
+            throw Zstd.tooSmall();
+        }
+        Bytes.write24(dst, p, size << 3 | lastFlag);
+        System.arraycopy(src, start, dst, p + 3, size);
+        return p + 3 + size;
+    }
+
+    private boolean isSingleByte(int start, int end) {
+        final byte b = src[start];
+        for (int i = start + 1; i < end; i++) {
+            if (src[i] != b) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // --------------------------------------------------------------------------------------------------------------
+    // match finding
+
+    private int hash(int pos) {
+        return (Bytes.readInt(src, pos) * HASH_PRIME) >>> (32 - Integer.numberOfTrailingZeros(hashTable.length));
+    }
+
+    private void insert(int pos) {
+        final int h = hash(pos);
+        if (chainTable != null) {
+            chainTable[pos & chainMask] = hashTable[h];
+        }
+        hashTable[h] = pos + 1;
+    }
+
+    private int matchLength(int a, int b, int end) {
+        final int start = a;
+        while (a < end && src[a] == src[b]) {
+            a++;
+            b++;
+        }
+        return a - start;
+    }
+
+    /**
+     * @return the longest match at {@code pos} as {@code length << 32 | offset} or 0 if there is none
+     */
+    private long search(int pos, int end, int hashLimit) {
+        if (chainTable == null) {
+            insertPos = pos;
+        }
+        while (insertPos < pos) {
+            insert(insertPos++);
+        }
+        final int h = hash(pos);
+        int candidate = hashTable[h] - 1;
+        if (chainTable == null) {
+            hashTable[h] = pos + 1;
+            insertPos = pos + 1;
+        }
+        int bestLength = 0;
+        int bestOffset = 0;
+        final int minCandidate = Math.max(srcStart, pos - maxOffset);
+        final int minChained = pos - chainMask;
+        int depth = searchDepth;
+        final int first = Bytes.readInt(src, pos);
+        while (candidate >= minCandidate && depth-- > 0) {
+            if ((pos + bestLength >= end || src[candidate + bestLength] == src[pos + bestLength])
+                && Bytes.readInt(src, candidate) == first) {
+                final int length = MIN_MATCH + matchLength(pos + MIN_MATCH, candidate + MIN_MATCH, end);
+                if (length > bestLength) {
+                    bestLength = length;
+                    bestOffset = pos - candidate;
+                    if (length >= targetLength && targetLength > 0 || pos + length >= end) {
+                        break;
+                    }
+                }
+            }
+            if (chainTable == null) {
+                break;
+            }
+            final int next = chainTable[candidate & chainMask] - 1;
+            if (next >= candidate || next < minChained) {
+                break;
+            }
+            candidate = next;
+        }
+        return bestLength < MIN_MATCH ? 0 : (long) bestLength << 32 | bestOffset;
+    }
+
+    private void findSequences(int start, int end) {
+        nbSeq = 0;
+        literalCount = 0;
+        final int hashLimit = end - 8;
+        int anchor = start;
+        int pos = start;
+        while (pos < hashLimit) {
+            int length = 0;
+            int offset = 0;
+            if (pos > anchor && pos - rep[0] >= srcStart
+                && Bytes.readInt(src, pos - rep[0]) == Bytes.readInt(src, pos)) {
+                length = MIN_MATCH + matchLength(pos + MIN_MATCH, pos - rep[0] + MIN_MATCH, end);
+                offset = rep[0];
+            }
+            if (length < targetLength || targetLength == 0) {
+                final long match = search(pos, end, hashLimit);
+                if ((int) (match >>> 32) > length + 1) {
+                    length = (int) (match >>> 32);
+                    offset = (int) match;
+                }
+            }
+            if (length == 0) {
+                pos += 1 + ((pos - anchor) >> 8) + acceleration;
+                continue;
+            }
+            for (int i = 0; i < lazyDepth && pos + 1 < hashLimit; i++) {
+                final long next = search(pos + 1, end, hashLimit);
+                if ((int) (next >>> 32) <= length + 1) {
+                    break;
+                }
+                pos++;
+                length = (int) (next >>> 32);
+                offset = (int) next;
+            }
+            int matchPos = pos - offset;
+            while (pos > anchor && matchPos > srcStart && src[pos - 1] == src[matchPos - 1]) {
+                pos--;
+                matchPos--;
+                length++;
+            }
+            addSequence(anchor, pos, offset, length);
+            final int matchEnd = pos + length;
+            if (chainTable == null && matchEnd - 2 < hashLimit) {
+                insert(pos + 2);
+                insert(matchEnd - 2);
+                insertPos = matchEnd;
+            }
+            pos = matchEnd;
+            anchor = pos;
+        }
+        System.arraycopy(src, anchor, literals, literalCount, end - anchor);
+        literalCount += end - anchor;
+    }
+
+    private void addSequence(int anchor, int pos, int offset, int length) {
+        final int literalLength = pos - anchor;
+        System.arraycopy(src, anchor, literals, literalCount, literalLength);
+        literalCount += literalLength;
+        literalLengths[nbSeq] = literalLength;
+        matchLengths[nbSeq] = length;
+        if (offset == rep[0] && literalLength > 0) {
+            offsetBases[nbSeq] = 1;
+        } else {
+            offsetBases[nbSeq] = offset + 3;
+            rep[2] = rep[1];
+            rep[1] = rep[0];
+            rep[0] = offset;
+        }
+        nbSeq++;
+    }
+
+    // --------------------------------------------------------------------------------------------------------------
+    // entropy coding
+
+    private int encodeBlock(byte[] dst, int p, int end) throws IOException {
+        p = encodeLiterals(dst, p, end);
+        return encodeSequences(dst, p, end);
+    }
+
+    private int encodeLiterals(byte[] dst, int p, int end) throws IOException {
+        final int count = literalCount;
+        if (count > 63 && acceleration == 0) {
+            final int[] counts = new int[256];
+            int maxSymbol = 0;
+            for (int i = 0; i < count; i++) {
+                counts[literals[i] & 0xFF]++;
+            }
+            int distinct = 0;
+            for (int s = 0; s < 256; s++) {
+                if (counts[s] > 0) {
+                    maxSymbol = s;
+                    distinct++;
+                }
+            }
+            if (distinct == 1) {
+                final int q = writeLiteralsHeader(1, count, dst, p, end);
+                if (q >= end) {
+                    throw Zstd.tooSmall();
+                }
+                dst[q] = literals[0];
+                return q + 1;
+            }
+            final Huffman.EncodingTable table = Huffman.EncodingTable.create(counts, maxSymbol);
+            if (table.estimateSize(counts) + maxSymbol / 2 + 8 < count - (count >>> 5)) {
+                final int q = encodeHuffmanLiterals(table, dst, p, end);
+                if (q > 0) {
+                    return q;
+                }
+            }
+        }
+        final int q = writeLiteralsHeader(0, count, dst, p, end);
+        if (q + count > end) {
+            throw Zstd.tooSmall();
+        }
+        System.arraycopy(literals, 0, dst, q, count);
+        return q + count;
+    }
+
+    private static int writeLiteralsHeader(int type, int size, byte[] dst, int p, int end) throws IOException {
+        if (p + 3 > end) {
+            throw Zstd.tooSmall();
+        }
+        if (size < 32) {
+            dst[p] = (byte) (size << 3 | type);
+            return p + 1;
+        } else if (size < 4096) {
+            Bytes.writeShort(dst, p, size << 4 | 1 << 2 | type);
+            return p + 2;
+        }
+        Bytes.write24(dst, p, size << 4 | 3 << 2 | type);
+        return p + 3;
+    }
+
+    private int encodeHuffmanLiterals(Huffman.EncodingTable table, byte[] dst, int p, int end) throws IOException {
+        final int count = literalCount;
+        final int headerSize = count <= 1023 ? 3 : count <= 16383 ? 4 : 5;
+        final boolean singleStream = count < 256;
+        final int start = p + headerSize;
+        int q = table.writeDescription(dst, start, end);
+        if (q < 0) {
+            return -1;
+        }
+        if (singleStream) {
+            q = table.encodeStream(literals, 0, count, dst, q, end);
+        } else {
+            final int jumpTable = q;
+            if (q + 6 > end) {
+                throw Zstd.tooSmall();
+            }
+            q += 6;
+            final int segment = (count + 3) / 4;
+            for (int i = 0; i < 4; i++) {
+                final int streamStart = q;
+                q = table.encodeStream(literals, i * segment, Math.min(count, (i + 1) * segment), dst, q, end);
+                if (i < 3) {
+                    Bytes.writeShort(dst, jumpTable + 2 * i, q - streamStart);
+                }
+            }
+        }
+        final int compressed = q - start;
+        if (compressed >= count) {
+            return -1;
+        }
+        if (headerSize == 3) {
+            Bytes.write24(dst, p, compressed << 14 | count << 4 | (singleStream ? 0 : 1) << 2 | 2);
+        } else if (headerSize == 4) {
+            Bytes.writeInt(dst, p, compressed << 18 | count << 4 | 2 << 2 | 2);
+        } else {
+            final long h = (long) compressed << 22 | (long) count << 4 | 3 << 2 | 2;
+            Bytes.writeInt(dst, p, (int) h);
+            dst[p + 4] = (byte) (h >>> 32);
+        }
+        return q;
+    }
+
+    private int encodeSequences(byte[] dst, int p, int end) throws IOException {
+        if (p + 4 > end) {
+            throw Zstd.tooSmall();
+        }
+        final int n = nbSeq;
+        if (n < 128) {
+            dst[p++] = (byte) n;
+        } else if (n < 0x7F00) {
+            dst[p++] = (byte) ((n >>> 8) + 0x80);
+            dst[p++] = (byte) n;
+        } else {
+            dst[p++] = (byte) 0xFF;
+            Bytes.writeShort(dst, p, n - 0x7F00);
+            p += 2;
+        }
+        if (n == 0) {
+            return p;
+        }
+
+        final int[][] codes = new int[3][n];
+        for (int i = 0; i < n; i++) {
+            codes[Zstd.LITERAL_LENGTH][i] = Zstd.literalLengthCode(literalLengths[i]);
+            codes[Zstd.OFFSET][i] = Bytes.highBit(offsetBases[i]);
+            codes[Zstd.MATCH_LENGTH][i] = Zstd.matchLengthCode(matchLengths[i]);
+        }
+        final int modesPos = p++;
+        int modes = 0;
+        final Fse.EncodingTable[] tables = new Fse.EncodingTable[3];
+        final int[] shifts = {6, 4, 2};
+        for (int kind = 0; kind < 3; kind++) {
+            final int[] counts = new int[Zstd.MAX_ML_CODE + 1];
+            int maxCode = 0;
+            int distinct = 0;
+            for (int i = 0; i < n; i++) {
+                final int c = codes[kind][i];
+                if (counts[c]++ == 0) {
+                    distinct++;
+                }
+                maxCode = Math.max(maxCode, c);
+            }
+            final int mode;
+            if (distinct == 1) {
+                mode = 1;
+                if (p >= end) {
+                    throw Zstd.tooSmall();
+                }
+                dst[p++] = (byte) maxCode;
+            } else {
+                final double predefinedCost = Fse.EncodingTable.cost(DEFAULT_NORMS[kind], DEFAULT_LOGS[kind], counts, maxCode);
+                final int tableLog = Fse.optimalTableLog(Zstd.maxTableLog(kind), n, maxCode);
+                final short[] norm = Fse.normalize(counts, maxCode, n, tableLog);
+                final int headerEnd = Fse.writeNCount(norm, maxCode, tableLog, dst, p, end);
+                final double cost = Fse.EncodingTable.cost(norm, tableLog, counts, maxCode) + 8 * (headerEnd - p);
+                if (predefinedCost <= cost) {
+                    mode = 0;
+                    tables[kind] = PREDEFINED_TABLES[kind];
+                } else {
+                    mode = 2;
+                    tables[kind] = new Fse.EncodingTable(norm, maxCode, tableLog);
+                    p = headerEnd;
+                }
+            }
+            modes |= mode << shifts[kind];
+        }
+        dst[modesPos] = (byte) modes;
+
+        final int[] llCodes = codes[Zstd.LITERAL_LENGTH];
+        final int[] ofCodes = codes[Zstd.OFFSET];
+        final int[] mlCodes = codes[Zstd.MATCH_LENGTH];
+        final Fse.EncodingTable llTable = tables[Zstd.LITERAL_LENGTH];
+        final Fse.EncodingTable ofTable = tables[Zstd.OFFSET];
+        final Fse.EncodingTable mlTable = tables[Zstd.MATCH_LENGTH];
+        final BitWriter out = new BitWriter(dst, p, end);
+        int last = n - 1;
+        int mlState = mlTable != null ? mlTable.init(mlCodes[last]) : 0;
+        int ofState = ofTable != null ? ofTable.init(ofCodes[last]) : 0;
+        int llState = llTable != null ? llTable.init(llCodes[last]) : 0;
+        addExtraBits(out, last, llCodes[last], mlCodes[last], ofCodes[last]);
+        for (int i = n - 2; i >= 0; i--) {
+            if (ofTable != null) {
+                ofState = ofTable.encode(out, ofState, ofCodes[i]);
+            }
+            if (mlTable != null) {
+                mlState = mlTable.encode(out, mlState, mlCodes[i]);
+            }
+            if (llTable != null) {
+                llState = llTable.encode(out, llState, llCodes[i]);
+            }
+            addExtraBits(out, i, llCodes[i], mlCodes[i], ofCodes[i]);
+        }
+        if (mlTable != null) {
+            mlTable.flush(out, mlState);
+        }
+        if (ofTable != null) {
+            ofTable.flush(out, ofState);
+        }
+        if (llTable != null) {
+            llTable.flush(out, llState);
+        }
+        return out.close();
+    }
+
+    private void addExtraBits(BitWriter out, int i, int llCode, int mlCode, int ofCode) throws IOException {
+        out.addBits(literalLengths[i], Zstd.LL_BITS[llCode]);
+        out.addBits(matchLengths[i] - 3, Zstd.ML_BITS[mlCode]);
+        out.addBits(offsetBases[i], ofCode);
+    }
+}
@@ -26,25 +26,66 @@
 
 package com.bc.zarr.storage;
 
+import com.bc.zarr.ByteBufferInputStream;
 import com.bc.zarr.ZarrConstants;
 import com.bc.zarr.ZarrUtils;
 
+import java.io.BufferedOutputStream;
 import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.FileAlreadyExistsException;
 import java.nio.file.FileSystem;
+import java.nio.file.FileSystems;
 import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
 import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
 public class FileSystemStore implements Store {
 
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    /**
+     * Files smaller than this are read with positional reads in memory mapped mode, mapping them costs more than
+     * copying them.
+     */
+    static final int MIN_MAPPED_SIZE = 1 << 16;
+
+    /**
+     * The number of mapped files kept for reuse. Each mapping counts against the mapping limit of the process
+     * until the garbage collector releases it, so they are not kept for every file read.
+     */
+    static final int MAX_MAPPED_FILES = 1024;
+
     private final Path internalRoot;
+    private final boolean memoryMapped;
+    private final Map<Path, Mapping> mappings = Collections.synchronizedMap(new LinkedHashMap<Path, Mapping>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Path, Mapping> eldest) {
+            return size() > MAX_MAPPED_FILES;
+        }
+    });
+    // directories known to exist, so that writing a chunk does not need to check its directory
+    private final Set<Path> createdDirectories = ConcurrentHashMap.newKeySet();
 
     public FileSystemStore(String path, FileSystem fileSystem) {
         if (fileSystem == null) {
@@ -52,51 +93,240 @@ public class FileSystemStore implements Store {
         } else {
             internalRoot = fileSystem.getPath(path);
         }
+        memoryMapped = false;
     }
 
     public FileSystemStore(Path rootPath) {
+        this(rootPath, false);
+    }
+
+    /**
+     * @param rootPath     the root directory of the store
+     * @param memoryMapped if {@code true}, values are read from memory mapped files instead of being copied into
+     *                     the heap, so that repeated reads of the same chunks are served from the page cache of the
+     *                     operating system. Only files of the default file system with at least
+     *                     {@link #MIN_MAPPED_SIZE} bytes are mapped, and the mappings of the most recently read
+     *                     files are reused as long as the files are not replaced. On Windows, a file can not be
+     *                     replaced or deleted as long as a buffer mapping it is reachable.
+     */
+    public FileSystemStore(Path rootPath, boolean memoryMapped) {
         internalRoot = rootPath;
+        this.memoryMapped = memoryMapped && rootPath.getFileSystem() == FileSystems.getDefault();
+    }
+
+    /**
+     * @return {@code true} if values are read from memory mapped files
+     */
+    public boolean isMemoryMapped() {
+        return memoryMapped;
     }
 
+    /**
+     * @return the number of mapped files kept for reuse
+     */
+    int getMappedFileCount() {
+        return mappings.size();
+    }
+
+    /**
+     * In memory mapped mode the returned stream of a mapped file is a {@link ByteBufferInputStream} over the
+     * mapping.
+     */
     @Override
     public InputStream getInputStream(String key) throws IOException {
         final Path path = internalRoot.resolve(key);
         if (Files.isReadable(path)) {
+            if (memoryMapped) {
+                final ByteBuffer mapped = getMapping(path);
+                if (mapped != null) {
+                    return new ByteBufferInputStream(mapped);
+                }
+            }
             byte[] bytes = Files.readAllBytes(path);
             return new ByteArrayInputStream(bytes);
         }
         return null;
     }
 
+    /**
+     * Reads the range with positional reads of a {@link FileChannel}, without reading the bytes before it.
+     * In memory mapped mode the returned buffer of a mapped file is a read only view of the mapped range.
+     */
     @Override
-    public OutputStream getOutputStream(String key) {
-        return new ByteArrayOutputStream() {
-            private boolean closed = false;
+    public ByteBuffer getBytes(String key, long offset, int length) throws IOException {
+        if (offset < 0 || length < 0) {
+            throw new IllegalArgumentException("offset and length must not be negative but were " + offset + " and " + length);
+        }
+        final Path path = internalRoot.resolve(key);
+        if (!Files.isReadable(path)) {
+            return null;
+        }
+        if (memoryMapped) {
+            final ByteBuffer mapped = getMapping(path);
+            if (mapped != null) {
+                final int from = (int) Math.min(offset, mapped.limit());
+                mapped.position(from);
+                mapped.limit(from + Math.min(length, mapped.limit() - from));
+                return mapped.slice();
+            }
+        }
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            final long available = Math.max(0, channel.size() - offset);
+            final ByteBuffer buffer = ByteBuffer.allocate((int) Math.min(length, available));
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer, offset + buffer.position()) < 0) {
+                    break;
+                }
+            }
+            buffer.flip();
+            return buffer;
+        }
+    }
+
+    /**
+     * @return a read only buffer over the whole mapped file, or {@code null} if the file is not mapped because it
+     * is smaller than {@link #MIN_MAPPED_SIZE} or can not be mapped at once
+     */
+    private ByteBuffer getMapping(Path path) throws IOException {
+        final BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+        final long size = attributes.size();
+        if (size < MIN_MAPPED_SIZE || size > Integer.MAX_VALUE || !attributes.isRegularFile()) {
+            return null;
+        }
+        Mapping mapping = mappings.get(path);
+        if (mapping == null || !mapping.isMappingOf(attributes)) {
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+                // the mapping stays valid after the channel is closed
+                mapping = new Mapping(attributes, channel.map(FileChannel.MapMode.READ_ONLY, 0, size));
+            }
+            mappings.put(path, mapping);
+        }
+        return mapping.buffer.duplicate();
+    }
+
+    @Override
+    public long getSize(String key) throws IOException {
+        final Path path = internalRoot.resolve(key);
+        if (!Files.isReadable(path) || Files.isDirectory(path)) {
+            return -1;
+        }
+        return Files.size(path);
+    }
 
-            @Override
-            public void close() throws IOException {
+    /**
+     * The bytes are streamed into a temporary file in the directory of the target file, which replaces the
+     * target file with an atomic rename when the stream is closed. So readers see either the previous or
+     * the complete new value, but never a missing or partly written file. If writing to the stream failed,
+     * closing it deletes the temporary file and leaves the target file unchanged. Any close publishes the
+     * written bytes otherwise, so callers produce the complete value before they write it.
+     */
+    @Override
+    public OutputStream getOutputStream(String key) throws IOException {
+        final Path filePath = internalRoot.resolve(key);
+        mappings.remove(filePath);
+        final Path parent = filePath.getParent();
+        if (parent != null && !createdDirectories.contains(parent)) {
+            Files.createDirectories(parent);
+            createdDirectories.add(parent);
+        }
+        while (true) {
+            final String tempName = "." + filePath.getFileName() + "." + Long.toHexString(ThreadLocalRandom.current().nextLong()) + TEMP_SUFFIX;
+            final Path tempPath = filePath.resolveSibling(tempName);
+            try {
+                final OutputStream out = Files.newOutputStream(tempPath, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+                return new AtomicFileOutputStream(out, tempPath, filePath);
+            } catch (FileAlreadyExistsException e) {
+                // name clash with a concurrent writer, try the next name
+            } catch (NoSuchFileException e) {
+                // the directory has been deleted since it has been created
+                if (parent == null || !createdDirectories.remove(parent)) {
+                    throw e;
+                }
+                Files.createDirectories(parent);
+                createdDirectories.add(parent);
+            }
+        }
+    }
+
+    private static class AtomicFileOutputStream extends OutputStream {
+
+        private final OutputStream out;
+        private final Path tempPath;
+        private final Path filePath;
+        private boolean closed = false;
+        // set if writing failed, the target file is not replaced by a partly written value then
+        private boolean failed = false;
+
+        private AtomicFileOutputStream(OutputStream out, Path tempPath, Path filePath) {
+            this.out = new BufferedOutputStream(out, 65536);
+            this.tempPath = tempPath;
+            this.filePath = filePath;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            try {
+                out.write(b);
+            } catch (IOException | RuntimeException e) {
+                failed = true;
+                throw e;
+            }
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            try {
+                out.write(b, off, len);
+            } catch (IOException | RuntimeException e) {
+                failed = true;
+                throw e;
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            try {
+                out.flush();
+            } catch (IOException | RuntimeException e) {
+                failed = true;
+                throw e;
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            boolean published = false;
+            try {
+                out.close();
+                if (failed) {
+                    return;
+                }
                 try {
-                    if (!closed) {
-                        final byte[] bytes = this.toByteArray();
-                        final Path filePath = internalRoot.resolve(key);
-                        if (Files.exists(filePath)) {
-                            Files.delete(filePath);
-                        } else {
-                            Files.createDirectories(filePath.getParent());
-                        }
-                        Files.write(filePath, bytes);
-                    }
-                } finally {
-                    closed = true;
+                    Files.move(tempPath, filePath, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+                } catch (AtomicMoveNotSupportedException e) {
+                    Files.move(tempPath, filePath, StandardCopyOption.REPLACE_EXISTING);
+                }
+                published = true;
+            } finally {
+                if (!published) {
+                    Files.deleteIfExists(tempPath);
                 }
             }
-        };
+        }
     }
 
     @Override
     public void delete(String key) throws IOException {
         final Path toBeDeleted = internalRoot.resolve(key);
+        synchronized (mappings) {
+            mappings.keySet().removeIf(path -> path.startsWith(toBeDeleted));
+        }
         if (Files.isDirectory(toBeDeleted)) {
+            createdDirectories.removeIf(path -> path.startsWith(toBeDeleted));
             ZarrUtils.deleteDirectoryTreeRecursively(toBeDeleted);
         }
         if (Files.exists(toBeDeleted)) {
@@ -126,7 +356,7 @@ public class FileSystemStore implements Store {
     @Override
     public TreeSet<String> getKeysEndingWith(String suffix) throws IOException {
         return Files.walk(internalRoot)
-                .filter(path -> path.toString().endsWith(suffix))
+                .filter(path -> path.toString().endsWith(suffix) && !isTempFile(path))
                 .map(path -> internalRoot.relativize(path).toString())
                 .collect(Collectors.toCollection(TreeSet::new));
     }
@@ -135,9 +365,42 @@ public class FileSystemStore implements Store {
     public Stream<String> getRelativeLeafKeys(String key) throws IOException {
         final Path walkingRoot = internalRoot.resolve(key);
         return Files.walk(walkingRoot)
-                .filter(path -> !Files.isDirectory(path))
+                .filter(path -> !Files.isDirectory(path) && !isTempFile(path))
                 .map(path -> walkingRoot.relativize(path).toString())
                 .map(ZarrUtils::normalizeStoragePath)
                 .filter(s -> s.trim().length() > 0);
     }
+
+    /**
+     * A mapped file together with the attributes it had when it was mapped. A file replaced by a write gets a new
+     * file key, on file systems without file keys at least a new modification time.
+     */
+    private static final class Mapping {
+
+        private final Object fileKey;
+        private final long size;
+        private final FileTime lastModified;
+        private final ByteBuffer buffer;
+
+        private Mapping(BasicFileAttributes attributes, ByteBuffer buffer) {
+            fileKey = attributes.fileKey();
+            size = attributes.size();
+            lastModified = attributes.lastModifiedTime();
+            this.buffer = buffer;
+        }
+
+        private boolean isMappingOf(BasicFileAttributes attributes) {
+            return Objects.equals(fileKey, attributes.fileKey())
+                   && size == attributes.size()
+                   && lastModified.equals(attributes.lastModifiedTime());
+        }
+    }
+
+    /**
+     * @return {@code true} for the temporary files of writes in progress or of writers which did not finish
+     */
+    private static boolean isTempFile(Path path) {
+        final String name = path.getFileName().toString();
+        return name.startsWith(".") && name.endsWith(TEMP_SUFFIX);
+    }
 }
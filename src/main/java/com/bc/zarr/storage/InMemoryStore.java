@@ -30,6 +30,7 @@ import com.bc.zarr.ZarrConstants;
 import com.bc.zarr.ZarrUtils;
 
 import java.io.*;
+import java.nio.ByteBuffer;
 import java.util.*;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
@@ -47,6 +48,25 @@ public class InMemoryStore implements Store {
         }
     }
 
+    @Override
+    public ByteBuffer getBytes(String key, long offset, int length) {
+        if (offset < 0 || length < 0) {
+            throw new IllegalArgumentException("offset and length must not be negative but were " + offset + " and " + length);
+        }
+        final byte[] bytes = map.get(key);
+        if (bytes == null) {
+            return null;
+        }
+        final int from = (int) Math.min(offset, bytes.length);
+        return ByteBuffer.wrap(Arrays.copyOfRange(bytes, from, from + Math.min(length, bytes.length - from)));
+    }
+
+    @Override
+    public long getSize(String key) {
+        final byte[] bytes = map.get(key);
+        return bytes != null ? bytes.length : -1;
+    }
+
     @Override
     public OutputStream getOutputStream(String key) {
         return new ByteArrayOutputStream() {
@@ -30,6 +30,7 @@ import java.io.Closeable;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
 import java.util.TreeSet;
 import java.util.stream.Stream;
 
@@ -44,6 +45,66 @@ public interface Store extends Closeable {
 
     InputStream getInputStream(String key) throws IOException;
 
+    /**
+     * Reads a range of the value stored under the given key. The default implementation skips the
+     * bytes before the range in the stream returned by {@link #getInputStream(String)}. Stores which can
+     * address a range directly should override it, so that the costs are proportional to the length.
+     *
+     * @param key    the key
+     * @param offset the position of the first byte to read, must not be negative
+     * @param length the maximum number of bytes to read, must not be negative
+     * @return a heap buffer, or a read only buffer for stores reading memory mapped files, containing the bytes
+     * from position zero up to its limit, which is less than {@code length} if the value ends before, or
+     * {@code null} if no value is stored under the key
+     * @throws IOException if the value can not be read
+     */
+    default ByteBuffer getBytes(String key, long offset, int length) throws IOException {
+        if (offset < 0 || length < 0) {
+            throw new IllegalArgumentException("offset and length must not be negative but were " + offset + " and " + length);
+        }
+        try (InputStream is = getInputStream(key)) {
+            if (is == null) {
+                return null;
+            }
+            for (long remaining = offset; remaining > 0; ) {
+                final long skipped = is.skip(remaining);
+                if (skipped > 0) {
+                    remaining -= skipped;
+                } else if (is.read() >= 0) {
+                    remaining--;
+                } else {
+                    return ByteBuffer.allocate(0);
+                }
+            }
+            final byte[] bytes = new byte[length];
+            int n = 0;
+            for (int read = 0; n < length && read >= 0; n += Math.max(read, 0)) {
+                read = is.read(bytes, n, length - n);
+            }
+            return ByteBuffer.wrap(bytes, 0, n);
+        }
+    }
+
+    /**
+     * @param key the key
+     * @return the number of bytes of the value stored under the key or -1 if no value is stored under the key.
+     * The default implementation reads the value.
+     * @throws IOException if the value can not be read
+     */
+    default long getSize(String key) throws IOException {
+        try (InputStream is = getInputStream(key)) {
+            if (is == null) {
+                return -1;
+            }
+            long size = 0;
+            final byte[] buffer = new byte[8192];
+            for (int n = is.read(buffer); n >= 0; n = is.read(buffer)) {
+                size += n;
+            }
+            return size;
+        }
+    }
+
     OutputStream getOutputStream(String key) throws IOException;
 
     void delete(String key) throws IOException;
@@ -71,6 +71,19 @@ public class ZipStore implements Store {
         return null;
     }
 
+    /**
+     * Zip entries can not be read from a position, so ranged reads use the default implementation,
+     * but the size is known without reading the entry.
+     */
+    @Override
+    public long getSize(String key) throws IOException {
+        final Path path = internalRoot.resolve(key);
+        if (!Files.isReadable(path) || Files.isDirectory(path)) {
+            return -1;
+        }
+        return Files.size(path);
+    }
+
     @Override
     public OutputStream getOutputStream(String key) {
         return new ByteArrayOutputStream() {
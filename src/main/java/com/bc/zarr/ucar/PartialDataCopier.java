@@ -56,13 +56,33 @@ public class PartialDataCopier {
      *     source           { 1, 2, 3, 4, 5, 6, 7, 8, 9 }
      *     target   { -1, -1, 1 }
      * </pre>
+     * Arrays of the same primitive element type whose storage is in canonical order are copied run by run with
+     * {@link System#arraycopy}. Arrays of different element types, of object elements or with storage not in
+     * canonical order, e.g. sections or transposed views, are copied element by element.
      *
      * @param offset - the displacement between source and target
      * @param source - the source array
      * @param target - the target array
      */
     public static void copy(int[] offset, Array source, Array target) throws InvalidRangeException {
+        final int[] sourceShape = source.getShape();
+        final int[] targetShape = target.getShape();
+        if (canCopyRuns(source, target)) {
+            ensureOverlap(offset, sourceShape, targetShape);
+            final Object sourceStorage = source.getStorage();
+            final Object targetStorage = target.getStorage();
+            forEachRun(offset, sourceShape, targetShape, (sourcePos, targetPos, length) ->
+                    System.arraycopy(sourceStorage, sourcePos, targetStorage, targetPos, length));
+            return;
+        }
+        copyElementwise(offset, source, target);
+    }
 
+    /**
+     * The element by element copy using range iterators. It is used for arrays which can not be copied run by run,
+     * e.g. arrays of different element types or arrays which are not backed by their storage in canonical order.
+     */
+    static void copyElementwise(int[] offset, Array source, Array target) throws InvalidRangeException {
         final int[] sourceShape = source.getShape();
         final int[] targetShape = target.getShape();
         final ArrayList<Range> sourceRanges = new ArrayList<>();
@@ -96,6 +116,121 @@ public class PartialDataCopier {
         }
     }
 
+    private static boolean canCopyRuns(Array source, Array target) {
+        final Class<?> elementType = source.getElementType();
+        return elementType.isPrimitive()
+               && elementType == target.getElementType()
+               && isCanonical(source)
+               && isCanonical(target);
+    }
+
+    private static boolean isCanonical(Array array) {
+        final Object storage = array.getStorage();
+        return storage != null
+               && storage.getClass().isArray()
+               && java.lang.reflect.Array.getLength(storage) == array.getSize()
+               && array.getIndex().isFastIterator();
+    }
+
+    /**
+     * Checks that source and target displaced by the given offset overlap in every dimension, as required by
+     * {@link #copy(int[], Array, Array)}. Callers of {@link #forEachRun(int[], int[], int[], RunConsumer)}, which
+     * yields no runs in this case, use it to fail like {@code copy} does.
+     *
+     * @param offset      the displacement between source and target
+     * @param sourceShape the shape of the source array
+     * @param targetShape the shape of the target array
+     * @throws InvalidRangeException if source and target do not overlap
+     */
+    public static void ensureOverlap(int[] offset, int[] sourceShape, int[] targetShape) throws InvalidRangeException {
+        for (int dimension = 0; dimension < offset.length; dimension++) {
+            final int dimOffset = offset[dimension];
+            if (dimOffset >= sourceShape[dimension] || -dimOffset >= targetShape[dimension]) {
+                throw new InvalidRangeException("Source and target do not overlap in dimension " + dimension
+                                                + " with offset " + dimOffset + ".");
+            }
+        }
+    }
+
+    /**
+     * Computes the contiguous runs of elements which are copied from source to target if the arrays are displaced
+     * by the given offset (see {@link #copy(int[], Array, Array)}) and hands them over to the consumer.<br/>
+     * Both arrays are expected in row-major (C) order. Innermost dimensions which are completely covered by
+     * source and target are merged into one run, so a source and target of the same shape and an offset of zero
+     * result in one single run.
+     *
+     * @param offset      the displacement between source and target
+     * @param sourceShape the shape of the source array
+     * @param targetShape the shape of the target array
+     * @param consumer    receives the 1D source position, the 1D target position and the length of each run
+     */
+    public static void forEachRun(int[] offset, int[] sourceShape, int[] targetShape, RunConsumer consumer) {
+        final int rank = offset.length;
+        final int[] sourceFirst = new int[rank];
+        final int[] targetFirst = new int[rank];
+        final int[] count = new int[rank];
+        for (int dimension = 0; dimension < rank; dimension++) {
+            final int dimOffset = offset[dimension];
+            if (dimOffset >= 0) {
+                sourceFirst[dimension] = dimOffset;
+            } else {
+                targetFirst[dimension] = -dimOffset;
+            }
+            final int maxSSteps = sourceShape[dimension] - sourceFirst[dimension];
+            final int maxTSteps = targetShape[dimension] - targetFirst[dimension];
+            count[dimension] = Math.min(maxSSteps, maxTSteps);
+            if (count[dimension] <= 0) {
+                return;
+            }
+        }
+
+        final int[] sourceStride = new int[rank];
+        final int[] targetStride = new int[rank];
+        int sStride = 1;
+        int tStride = 1;
+        for (int dimension = rank - 1; dimension >= 0; dimension--) {
+            sourceStride[dimension] = sStride;
+            targetStride[dimension] = tStride;
+            sStride *= sourceShape[dimension];
+            tStride *= targetShape[dimension];
+        }
+
+        // merge the innermost dimensions which are completely covered by source and target
+        int runDim = rank - 1;
+        int runLength = count[runDim];
+        while (runDim > 0 && count[runDim] == sourceShape[runDim] && count[runDim] == targetShape[runDim]) {
+            runDim--;
+            runLength *= count[runDim];
+        }
+
+        int sourcePos = 0;
+        int targetPos = 0;
+        for (int dimension = 0; dimension <= runDim; dimension++) {
+            sourcePos += sourceFirst[dimension] * sourceStride[dimension];
+            targetPos += targetFirst[dimension] * targetStride[dimension];
+        }
+        final int[] index = new int[runDim];
+        while (true) {
+            consumer.accept(sourcePos, targetPos, runLength);
+            int dimension = runDim - 1;
+            while (dimension >= 0) {
+                index[dimension]++;
+                sourcePos += sourceStride[dimension];
+                targetPos += targetStride[dimension];
+                if (index[dimension] < count[dimension]) {
+                    break;
+                }
+                sourcePos -= count[dimension] * sourceStride[dimension];
+                targetPos -= count[dimension] * targetStride[dimension];
+                index[dimension] = 0;
+                dimension--;
+            }
+            if (dimension < 0) {
+                return;
+            }
+        }
+    }
+
     private static ValueSetter createValueSetter(Class elementType) {
         if (elementType == double.class) {
             return (sourceIterator, targetIterator) -> targetIterator.setDoubleNext(sourceIterator.getDoubleNext());
@@ -113,6 +248,14 @@ public class PartialDataCopier {
         return (sourceIterator, targetIterator) -> targetIterator.setObjectNext(sourceIterator.getObjectNext());
     }
 
+    /**
+     * Receives a contiguous run of elements computed by {@link #forEachRun(int[], int[], int[], RunConsumer)}.
+     */
+    public interface RunConsumer {
+
+        void accept(int sourcePos, int targetPos, int length);
+    }
+
     private interface ValueSetter {
 
         void set(IndexIterator sourceIterator, IndexIterator targetIterator);
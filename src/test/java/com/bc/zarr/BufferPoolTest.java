@@ -0,0 +1,211 @@
+/*
+ *
+ * MIT License
+ *
+ * Copyright (c) 2021. Brockmann Consult GmbH (info@brockmann-consult.de)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package com.bc.zarr;
+
+import com.bc.zarr.chunk.ChunkReaderWriter;
+import com.bc.zarr.storage.InMemoryStore;
+import org.junit.Before;
+import org.junit.Test;
+import ucar.ma2.Array;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.hamcrest.MatcherAssert.*;
+import static org.hamcrest.Matchers.*;
+
+public class BufferPoolTest {
+
+    private BufferPool pool;
+
+    @Before
+    public void setUp() {
+        pool = new BufferPool(false, 1024 * 1024);
+    }
+
+    @Test
+    public void acquire_returnsPowerOfTwoCapacityLimitedToRequestedSize() {
+        final ByteBuffer buffer = pool.acquire(10000);
+
+        assertThat(buffer.capacity(), is(16384));
+        assertThat(buffer.position(), is(0));
+        assertThat(buffer.limit(), is(10000));
+        assertThat(buffer.order(), is(ByteOrder.BIG_ENDIAN));
+        assertThat(buffer.isDirect(), is(false));
+        assertThat(buffer.arrayOffset(), is(0));
+    }
+
+    @Test
+    public void acquire_reusesReleasedBuffersOfTheSameSizeClass() {
+        final ByteBuffer buffer = pool.acquire(10000);
+        buffer.position(5);
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+        pool.release(buffer);
+        assertThat(pool.getRetainedBytes(), is(16384L));
+
+        final ByteBuffer reused = pool.acquire(9000);
+
+        assertThat(reused, is(sameInstance(buffer)));
+        assertThat(reused.position(), is(0));
+        assertThat(reused.limit(), is(9000));
+        assertThat(reused.order(), is(ByteOrder.BIG_ENDIAN));
+        assertThat(pool.getRetainedBytes(), is(0L));
+        assertThat(pool.getAllocationCount(), is(1L));
+    }
+
+    @Test
+    public void acquire_doesNotReuseBuffersOfAnotherSizeClass() {
+        final ByteBuffer buffer = pool.acquire(10000);
+        pool.release(buffer);
+
+        final ByteBuffer other = pool.acquire(20000);
+
+        assertThat(other, is(not(sameInstance(buffer))));
+        assertThat(other.capacity(), is(32768));
+        assertThat(pool.getAllocationCount(), is(2L));
+    }
+
+    @Test
+    public void release_keepsNoMoreThanMaxRetainedBytes() {
+        final ByteBuffer first = pool.acquire(1024 * 1024);
+        final ByteBuffer second = pool.acquire(1024 * 1024);
+
+        pool.release(first);
+        pool.release(second);
+
+        assertThat(pool.getRetainedBytes(), is(1024L * 1024));
+        pool.clear();
+        assertThat(pool.getRetainedBytes(), is(0L));
+    }
+
+    @Test
+    public void release_ignoresForeignBuffers() {
+        pool.release(null);
+        pool.release(ByteBuffer.allocate(5000));
+        pool.release(ByteBuffer.allocateDirect(8192));
+        pool.release(ByteBuffer.allocate(8192).asReadOnlyBuffer());
+
+        assertThat(pool.getRetainedBytes(), is(0L));
+    }
+
+    @Test
+    public void directPool_handsOutDirectBuffers() {
+        final BufferPool directPool = new BufferPool(true, 1024 * 1024);
+
+        final ByteBuffer buffer = directPool.acquire(100);
+        directPool.release(buffer);
+
+        assertThat(buffer.isDirect(), is(true));
+        assertThat(directPool.acquire(100), is(sameInstance(buffer)));
+    }
+
+    @Test
+    public void acquireAndRelease_fromManyThreads() throws Exception {
+        final ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            final List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < 8; t++) {
+                final byte value = (byte) t;
+                futures.add(executor.submit(() -> {
+                    for (int i = 0; i < 1000; i++) {
+                        final ByteBuffer buffer = pool.acquire(5000);
+                        while (buffer.hasRemaining()) {
+                            buffer.put(value);
+                        }
+                        for (int j = 0; j < 5000; j++) {
+                            if (buffer.get(j) != value) {
+                                throw new IllegalStateException("Buffer used by two threads at once.");
+                            }
+                        }
+                        pool.release(buffer);
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        assertThat(pool.getAllocationCount(), is(lessThan(9L)));
+        assertThat(pool.getRetainedBytes(), is(pool.getAllocationCount() * 8192));
+    }
+
+    @Test
+    public void byteBufferOutputStream_growsWithPooledBuffers() throws Exception {
+        final ByteBufferOutputStream os = new ByteBufferOutputStream(pool, 10);
+        final byte[] bytes = new byte[10000];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = (byte) i;
+        }
+
+        os.write(bytes, 0, 3000);
+        os.write(bytes, 3000, 7000);
+        os.write(42);
+
+        final ByteBuffer written = os.toByteBuffer();
+        assertThat(os.size(), is(10001));
+        assertThat(written.remaining(), is(10001));
+        assertThat(written.get(9999), is(bytes[9999]));
+        assertThat(written.get(10000), is((byte) 42));
+        assertThat(pool.getRetainedBytes(), is(4096L));
+
+        os.release();
+        assertThat(pool.getRetainedBytes(), is(4096L + 16384L));
+    }
+
+    @Test
+    public void chunkReaderWriter_reusesPooledBuffersInSteadyState() throws Exception {
+        final Compressor compressor = CompressorFactory.create("zlib", "level", 1);
+        final int[] chunkShape = {64, 64};
+        final ChunkReaderWriter readerWriter = ChunkReaderWriter.create(
+                compressor, DataType.f4, ByteOrder.BIG_ENDIAN, chunkShape, 0, new InMemoryStore());
+        final Array chunk = Array.factory(ucar.ma2.DataType.FLOAT, chunkShape);
+        for (int i = 0; i < chunk.getSize(); i++) {
+            chunk.setFloat(i, i);
+        }
+        readerWriter.write("0.0", chunk);
+        readerWriter.read("0.0");
+
+        final BufferPool defaultPool = BufferPool.getDefault();
+        final long allocations = defaultPool.getAllocationCount();
+        for (int i = 0; i < 10; i++) {
+            readerWriter.write("0.0", chunk);
+            final Array read = readerWriter.read("0.0");
+            assertThat(read.getFloat(4095), is(4095f));
+        }
+
+        assertThat(defaultPool.getAllocationCount(), is(allocations));
+    }
+}
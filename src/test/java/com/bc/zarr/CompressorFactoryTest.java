@@ -28,7 +28,13 @@ package com.bc.zarr;
 
 import org.junit.Test;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
 import java.util.Map;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
@@ -107,6 +113,132 @@ public class CompressorFactoryTest {
         }
     }
 
+    @Test
+    public void create_zstd() {
+        final Compressor compressor = CompressorFactory.create("zstd");
+        assertEquals("zstd", compressor.getId());
+        assertEquals("compressor=zstd/level=1", compressor.toString());
+
+        assertEquals("compressor=zstd/level=-3/checksum=true",
+                     CompressorFactory.create("zstd", "level", -3, "checksum", true).toString());
+        assertEquals("compressor=zstd/level=22/checksum=true",
+                     CompressorFactory.create("zstd", "level", "22", "checksum", "true").toString());
+    }
+
+    @Test
+    public void create_zstd_level_invalid() {
+        try {
+            CompressorFactory.create("zstd", "level", 23);
+            fail("IllegalArgumentException expected");
+        } catch (IllegalArgumentException expected) {
+            assertEquals("zstd: level parameter must be between -131072 and 22 but was: 23", expected.getMessage());
+        }
+    }
+
+    @Test
+    public void zstd_checksumIsOnlyWrittenToJsonIfEnabled() throws Exception {
+        final String json = ZarrUtils.toJson(CompressorFactory.create("zstd", "level", 3));
+        assertThat(json, containsString("\"id\":\"zstd\""));
+        assertThat(json, containsString("\"level\":3"));
+        assertThat(json, not(containsString("checksum")));
+
+        final String withChecksum = ZarrUtils.toJson(CompressorFactory.create("zstd", "level", 3, "checksum", true));
+        assertThat(withChecksum, containsString("\"checksum\":true"));
+    }
+
+    @Test
+    public void create_lz4() throws Exception {
+        final Compressor compressor = CompressorFactory.create("lz4");
+        assertEquals("lz4", compressor.getId());
+        assertEquals("compressor=lz4/acceleration=1", compressor.toString());
+        assertEquals("compressor=lz4/acceleration=8", CompressorFactory.create("lz4", "acceleration", "8").toString());
+
+        final String json = ZarrUtils.toJson(CompressorFactory.create("lz4", "acceleration", 4));
+        assertThat(json, containsString("\"id\":\"lz4\""));
+        assertThat(json, containsString("\"acceleration\":4"));
+    }
+
+    @Test
+    public void create_gzip() throws Exception {
+        final Compressor compressor = CompressorFactory.create("gzip", "level", 6);
+        assertEquals("gzip", compressor.getId());
+        assertEquals("compressor=gzip/level=6", compressor.toString());
+        assertEquals("compressor=gzip/level=1", CompressorFactory.create("gzip").toString());
+        assertThat(ZarrUtils.toJson(compressor), containsString("\"level\":6"));
+
+        // the data is a gzip member as written and read by java.util.zip
+        final byte[] data = "gzip gzip gzip gzip gzip".getBytes("US-ASCII");
+        final ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        compressor.compress(new ByteArrayInputStream(data), compressed);
+        try (GZIPInputStream is = new GZIPInputStream(new ByteArrayInputStream(compressed.toByteArray()))) {
+            final byte[] read = new byte[data.length + 1];
+            int n = 0;
+            for (int r = 0; r >= 0; r = is.read(read, n, read.length - n)) {
+                n += r;
+            }
+            assertThat(Arrays.copyOf(read, n), is(data));
+        }
+        final ByteArrayOutputStream gzipped = new ByteArrayOutputStream();
+        try (GZIPOutputStream os = new GZIPOutputStream(gzipped)) {
+            os.write(data);
+        }
+        final ByteBuffer target = ByteBuffer.allocate(data.length);
+        compressor.uncompress(ByteBuffer.wrap(gzipped.toByteArray()), target);
+        assertThat(target.array(), is(data));
+
+        try {
+            CompressorFactory.create("gzip", "level", 10);
+            fail("IllegalArgumentException expected");
+        } catch (IllegalArgumentException expected) {
+            assertEquals("gzip: level parameter must be between 0 and 9 but was: 10", expected.getMessage());
+        }
+    }
+
+    @Test
+    public void create_zfp() throws Exception {
+        final Compressor compressor = CompressorFactory.create("jzarr.zfp", "tolerance", 0.01);
+        assertEquals("jzarr.zfp", compressor.getId());
+        assertEquals("compressor=jzarr.zfp/mode=accuracy/tolerance=0.01", compressor.toString());
+        assertEquals("compressor=jzarr.zfp/mode=rate/rate=8.0", CompressorFactory.create("jzarr.zfp", "mode", "rate", "rate", 8).toString());
+        assertEquals("compressor=jzarr.zfp/mode=precision/precision=20", CompressorFactory.create("jzarr.zfp", "mode", "precision", "precision", "20").toString());
+
+        final String json = ZarrUtils.toJson(compressor);
+        assertThat(json, containsString("\"id\":\"jzarr.zfp\""));
+        assertThat(json, containsString("\"mode\":\"accuracy\""));
+        assertThat(json, containsString("\"tolerance\":0.01"));
+        assertThat(json, not(containsString("rate")));
+        assertThat(json, not(containsString("precision")));
+    }
+
+    @Test
+    public void create_zfp_invalid() {
+        try {
+            CompressorFactory.create("jzarr.zfp", "mode", "reversible");
+            fail("IllegalArgumentException expected");
+        } catch (IllegalArgumentException expected) {
+            assertEquals("zfp: mode not supported: 'reversible'; expected one of [rate, precision, accuracy]", expected.getMessage());
+        }
+        try {
+            CompressorFactory.create("jzarr.zfp", "mode", "rate");
+            fail("IllegalArgumentException expected");
+        } catch (IllegalArgumentException expected) {
+            assertEquals("zfp: rate parameter must be given for mode rate", expected.getMessage());
+        }
+        try {
+            CompressorFactory.create("jzarr.zfp", "mode", "precision", "precision", 0);
+            fail("IllegalArgumentException expected");
+        } catch (IllegalArgumentException expected) {
+            assertEquals("zfp: precision must be between 1 and 64 but was: 0.0", expected.getMessage());
+        }
+        try {
+            // the id of a real zfp codec is not taken by the jzarr specific format
+            CompressorFactory.create("zfp", "tolerance", 0.01);
+            fail("IllegalArgumentException expected");
+        } catch (IllegalArgumentException expected) {
+            assertEquals("Compressor id:'zfp' not supported.", expected.getMessage());
+        }
+    }
+
     @Test
     public void create_compressor_not_supported() {
         final String id = "kkkkkkk";
@@ -117,4 +249,71 @@ public class CompressorFactoryTest {
             assertEquals("Compressor id:'kkkkkkk' not supported.", expected.getMessage());
         }
     }
-}
\ No newline at end of file
+
+    @Test
+    public void create_blosc_nthreads() {
+        final CompressorFactory.BloscCompressor compressor = (CompressorFactory.BloscCompressor) CompressorFactory.create("blosc", "nthreads", 4);
+        assertThat(compressor.getNthreads(), is(4));
+        assertEquals("compressor=blosc/cname=lz4/clevel=5/blocksize=0/shuffle=1/nthreads=4", compressor.toString());
+
+        final CompressorFactory.BloscCompressor auto = (CompressorFactory.BloscCompressor) CompressorFactory.create("blosc", "nthreads", "auto");
+        assertThat(auto.getNthreads(), is(CompressorFactory.BloscCompressor.AUTO_NTHREADS));
+        assertEquals("compressor=blosc/cname=lz4/clevel=5/blocksize=0/shuffle=1/nthreads=auto", auto.toString());
+
+        final CompressorFactory.BloscCompressor single = (CompressorFactory.BloscCompressor) CompressorFactory.create("blosc");
+        assertThat(single.getNthreads(), is(1));
+    }
+
+    @Test
+    public void create_blosc_nthreads_invalid() {
+        try {
+            CompressorFactory.create("blosc", "nthreads", -1);
+            fail("IllegalArgumentException expected");
+        } catch (IllegalArgumentException expected) {
+            assertEquals("blosc: nthreads parameter must be between 0 (auto) and 256 but was: -1", expected.getMessage());
+        }
+    }
+
+    @Test
+    public void blosc_nthreads_isNotWrittenToJson() throws Exception {
+        final Compressor compressor = CompressorFactory.create("blosc", "nthreads", 8);
+
+        final String json = ZarrUtils.toJson(compressor);
+
+        assertThat(json, not(containsString("nthreads")));
+        assertThat(json, not(containsString("directBufferPreferred")));
+        assertThat(json, containsString("\"cname\":\"lz4\""));
+    }
+
+    @Test
+    public void create_blosc_implementation() throws Exception {
+        final CompressorFactory.BloscCompressor java = (CompressorFactory.BloscCompressor) CompressorFactory.create("blosc", "implementation", "java");
+        assertThat(java.getImplementation(), is("java"));
+        assertThat(java.usesJavaImplementation(), is(true));
+        assertThat(java.isDirectBufferPreferred(), is(false));
+        assertEquals("compressor=blosc/cname=lz4/clevel=5/blocksize=0/shuffle=1/implementation=java", java.toString());
+        assertThat(ZarrUtils.toJson(java), not(containsString("implementation")));
+
+        final CompressorFactory.BloscCompressor auto = (CompressorFactory.BloscCompressor) CompressorFactory.create("blosc");
+        assertThat(auto.getImplementation(), is("auto"));
+        assertThat(auto.usesJavaImplementation(), is(!CompressorFactory.BloscCompressor.isNativeAvailable()));
+
+        try {
+            CompressorFactory.create("blosc", "implementation", "jni");
+            fail("IllegalArgumentException expected");
+        } catch (IllegalArgumentException expected) {
+            assertEquals("blosc: implementation not supported: 'jni'; expected one of [auto, native, java]", expected.getMessage());
+        }
+    }
+
+    @Test
+    public void blosc_autoNthreads() {
+        // one thread per MiB of chunk data ...
+        assertThat(CompressorFactory.BloscCompressor.autoNthreads(100, 8, 1), is(1));
+        assertThat(CompressorFactory.BloscCompressor.autoNthreads(3 * 1024 * 1024, 8, 1), is(3));
+        assertThat(CompressorFactory.BloscCompressor.autoNthreads(64 * 1024 * 1024, 8, 1), is(8));
+        // ... but limited to the share of cores not used by other blosc operations
+        assertThat(CompressorFactory.BloscCompressor.autoNthreads(64 * 1024 * 1024, 8, 4), is(2));
+        assertThat(CompressorFactory.BloscCompressor.autoNthreads(64 * 1024 * 1024, 8, 16), is(1));
+    }
+}
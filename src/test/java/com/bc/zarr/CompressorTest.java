@@ -33,13 +33,29 @@ import javax.imageio.stream.MemoryCacheImageInputStream;
 import javax.imageio.stream.MemoryCacheImageOutputStream;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+import java.util.zip.ZipException;
 
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.equalTo;
 import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThan;
+import static org.junit.Assert.fail;
 
 public class CompressorTest {
     @Test
@@ -113,4 +129,255 @@ public class CompressorTest {
         assertThat(input, is(equalTo(uncompressed)));
     }
 
-}
\ No newline at end of file
+    @Test
+    public void writeRead_ZstdCompressor() throws IOException {
+        final Compressor compressor = CompressorFactory.create("zstd");
+        final int[] input = {
+                100, 22, 100, 22, 22, 22, 100, 100, 100, 22, 100,
+                100, 22, 100, 22, 22, 22, 100, 100, 100, 22, 100,
+                100, 22, 100, 22, 22, 22, 100, 100, 100, 22, 100,
+                100, 22, 100, 22, 22, 22, 100, 100, 100, 22, 100,
+                100, 22, 100, 22, 22, 22, 100, 100, 100, 22, 100
+        };
+        final ByteBuffer bytes = ByteBuffer.allocate(input.length * 4);
+        bytes.asIntBuffer().put(input);
+
+        // written by the zstd reference library (as used by numcodecs) with level 1
+        final byte[] reference = {40, -75, 47, -3, 32, -36, 13, 1, 0, 88, 0, 0, 0, 100, 0, 0, 0, 22, 22, 100, 22, 9, 0,
+                -102, -89, 40, 0, 59, 16, 1, 2, 64, 0, 8, 112, 51, 31, -56, 108, 70, -119, 3};
+        ByteArrayOutputStream os = new ByteArrayOutputStream();
+        compressor.uncompress(new ByteArrayInputStream(reference), os);
+        assertThat(os.toByteArray(), is(equalTo(bytes.array())));
+
+        os = new ByteArrayOutputStream();
+        compressor.compress(new ByteArrayInputStream(bytes.array()), os);
+        final byte[] compressed = os.toByteArray();
+        assertThat(compressed.length, is(lessThan(bytes.capacity())));
+        os = new ByteArrayOutputStream();
+        compressor.uncompress(new ByteArrayInputStream(compressed), os);
+        assertThat(os.toByteArray(), is(equalTo(bytes.array())));
+    }
+
+    @Test
+    public void writeRead_Lz4Compressor() throws IOException {
+        final Compressor compressor = CompressorFactory.create("lz4");
+        final int[] input = {
+                100, 22, 100, 22, 22, 22, 100, 100, 100, 22, 100,
+                100, 22, 100, 22, 22, 22, 100, 100, 100, 22, 100,
+                100, 22, 100, 22, 22, 22, 100, 100, 100, 22, 100,
+                100, 22, 100, 22, 22, 22, 100, 100, 100, 22, 100,
+                100, 22, 100, 22, 22, 22, 100, 100, 100, 22, 100
+        };
+        final ByteBuffer bytes = ByteBuffer.allocate(input.length * 4);
+        bytes.asIntBuffer().put(input);
+
+        // written by numcodecs: the uncompressed size (little endian) followed by the block of the lz4 reference library
+        final byte[] reference = {-36, 0, 0, 0, -121, 0, 0, 0, 100, 0, 0, 0, 22, 8, 0, 0, 12, 0, 0, 4, 0, 0, 24, 0, 4, 4,
+                0, 8, 16, 0, 4, 12, 0, 0, 8, 0, 4, 4, 0, 4, 40, 0, 0, 8, 0, 0, 20, 0, 0, 8, 0, 0, 4, 0, 4, 12, 0, 0, 8, 0, 4,
+                4, 0, 0, 24, 0, 4, 4, 0, 0, 20, 0, 12, 12, 0, 0, 20, 0, 4, 4, 0, 4, 28, 0, 0, 8, 0, 0, 20, 0, 0, 8, 0, 0, 4,
+                0, 4, 12, 0, 0, 8, 0, 4, 4, 0, 0, 24, 0, 4, 4, 0, 80, 22, 0, 0, 0, 100};
+        ByteArrayOutputStream os = new ByteArrayOutputStream();
+        compressor.uncompress(new ByteArrayInputStream(reference), os);
+        assertThat(os.toByteArray(), is(equalTo(bytes.array())));
+
+        os = new ByteArrayOutputStream();
+        compressor.compress(new ByteArrayInputStream(bytes.array()), os);
+        assertThat(os.toByteArray(), is(equalTo(reference)));
+    }
+
+    @Test
+    public void writeRead_BloscCompressor_javaImplementation() throws IOException {
+        final Compressor compressor = CompressorFactory.create("blosc", "implementation", "java");
+        final int[] input = {
+                100, 22, 100, 22, 22, 22, 100, 100, 100, 22, 100,
+                100, 22, 100, 22, 22, 22, 100, 100, 100, 22, 100,
+                100, 22, 100, 22, 22, 22, 100, 100, 100, 22, 100,
+                100, 22, 100, 22, 22, 22, 100, 100, 100, 22, 100,
+                100, 22, 100, 22, 22, 22, 100, 100, 100, 22, 100
+        };
+        final ByteBuffer bytes = ByteBuffer.allocate(input.length * 4);
+        bytes.asIntBuffer().put(input);
+
+        // written by the native c-blosc library with the default settings
+        final byte[] reference = {2, 1, 33, 1, -36, 0, 0, 0, -36, 0, 0, 0, 73, 0, 0, 0, 20, 0, 0, 0, 49, 0, 0, 0, -5, 17,
+                0, 0, 0, 100, 0, 0, 0, 22, 0, 0, 0, 100, 0, 0, 0, 22, 0, 0, 0, 22, 0, 0, 0, 22, 0, 0, 0, 100, 0, 0, 0, 100,
+                32, 0, 0, 20, 0, 15, 44, 0, -111, 80, 22, 0, 0, 0, 100};
+        ByteArrayOutputStream os = new ByteArrayOutputStream();
+        compressor.uncompress(new ByteArrayInputStream(reference), os);
+        assertThat(os.toByteArray(), is(equalTo(bytes.array())));
+
+        os = new ByteArrayOutputStream();
+        compressor.compress(new ByteArrayInputStream(bytes.array()), os);
+        assertThat(os.toByteArray(), is(equalTo(reference)));
+    }
+
+    @Test
+    public void writeRead_ByteBuffers_heapAndDirect() throws IOException {
+        final Compressor[] compressors = {
+                CompressorFactory.nullCompressor,
+                CompressorFactory.create("zlib", "level", 5),
+                CompressorFactory.create("zstd", "level", 3),
+                CompressorFactory.create("lz4"),
+                CompressorFactory.create("blosc", "implementation", "java"),
+                CompressorFactory.create("blosc", "implementation", "java", "cname", "zstd", "shuffle", 2),
+                new StreamOnlyCompressor()
+        };
+        final byte[] input = createCompressibleBytes(100000);
+        for (Compressor compressor : compressors) {
+            for (boolean direct : new boolean[]{false, true}) {
+                final ByteBuffer source = allocate(input.length + 10, direct);
+                source.position(10);
+                source.put(input);
+                source.position(10);
+                final ByteBuffer compressed = allocate(input.length + 1000, !direct);
+                compressed.position(3);
+
+                final int compressedLength = compressor.compress(source, compressed);
+                assertThat(source.position(), is(source.limit()));
+                assertThat(compressed.position(), is(3 + compressedLength));
+                if (compressor.maxCompressedLength(input.length) >= 0) {
+                    assertThat(compressedLength <= compressor.maxCompressedLength(input.length), is(true));
+                }
+
+                compressed.flip();
+                compressed.position(3);
+                final ByteBuffer uncompressed = allocate(input.length, direct);
+                final int uncompressedLength = compressor.uncompress(compressed, uncompressed);
+                assertThat(uncompressedLength, is(input.length));
+                assertThat(compressed.hasRemaining(), is(false));
+                uncompressed.flip();
+                assertThat(uncompressed.equals(ByteBuffer.wrap(input)), is(true));
+
+                compressed.position(3);
+                final ByteBuffer tooSmall = allocate(input.length + 6, direct);
+                tooSmall.position(7);
+                try {
+                    compressor.uncompress(compressed, tooSmall);
+                    fail("IOException expected");
+                } catch (IOException expected) {
+                    assertThat(expected.getMessage(), is("Uncompressed data exceeds the 99999 bytes available in the target buffer."));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void zipCompressor_isCompatibleWithDeflaterStreams() throws IOException {
+        final byte[] input = createCompressibleBytes(300000);
+        for (int level = 0; level <= 9; level++) {
+            final Compressor compressor = CompressorFactory.create("zlib", "level", level);
+            // written by the compressor, read by an InflaterInputStream
+            final ByteArrayOutputStream os = new ByteArrayOutputStream();
+            compressor.compress(new ByteArrayInputStream(input), os);
+            final ByteArrayOutputStream inflated = new ByteArrayOutputStream();
+            try (InflaterInputStream iis = new InflaterInputStream(new ByteArrayInputStream(os.toByteArray()))) {
+                final byte[] buffer = new byte[4096];
+                int read;
+                while ((read = iis.read(buffer)) >= 0) {
+                    inflated.write(buffer, 0, read);
+                }
+            }
+            assertThat(Arrays.equals(inflated.toByteArray(), input), is(true));
+
+            // written by a DeflaterOutputStream, read by the compressor
+            final ByteArrayOutputStream deflated = new ByteArrayOutputStream();
+            try (DeflaterOutputStream dos = new DeflaterOutputStream(deflated, new Deflater(level))) {
+                dos.write(input);
+            }
+            final ByteArrayOutputStream uncompressed = new ByteArrayOutputStream();
+            compressor.uncompress(new ByteArrayInputStream(deflated.toByteArray()), uncompressed);
+            assertThat(Arrays.equals(uncompressed.toByteArray(), input), is(true));
+        }
+    }
+
+    @Test
+    public void zipCompressor_inParallel_withDifferentLevels() throws Exception {
+        final byte[] input = createCompressibleBytes(100000);
+        final ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            final List<Future<byte[]>> futures = new ArrayList<>();
+            // zlib and gzip share the pools of zlib instances, but not the instances of one format
+            for (int i = 0; i < 64; i++) {
+                final Compressor compressor = CompressorFactory.create(i % 3 == 0 ? "gzip" : "zlib", "level", i % 10);
+                futures.add(executor.submit(() -> {
+                    final ByteBuffer compressed = ByteBuffer.allocate(compressor.maxCompressedLength(input.length));
+                    compressor.compress(ByteBuffer.wrap(input), compressed);
+                    compressed.flip();
+                    final byte[] bytes = new byte[input.length];
+                    compressor.uncompress(compressed, ByteBuffer.wrap(bytes));
+                    return bytes;
+                }));
+            }
+            for (Future<byte[]> future : futures) {
+                assertThat(Arrays.equals(future.get(), input), is(true));
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void zipCompressor_truncatedOrCorruptInput() throws IOException {
+        final Compressor compressor = CompressorFactory.create("zlib");
+        final ByteArrayOutputStream os = new ByteArrayOutputStream();
+        compressor.compress(new ByteArrayInputStream(createCompressibleBytes(10000)), os);
+        final byte[] compressed = os.toByteArray();
+
+        try {
+            compressor.uncompress(new ByteArrayInputStream(Arrays.copyOf(compressed, compressed.length / 2)), new ByteArrayOutputStream());
+            fail("EOFException expected");
+        } catch (EOFException expected) {
+            assertThat(expected.getMessage(), is("Unexpected end of ZLIB input stream"));
+        }
+
+        final byte[] corrupt = Arrays.copyOf(compressed, compressed.length);
+        corrupt[0] = 0;
+        try {
+            compressor.uncompress(new ByteArrayInputStream(corrupt), new ByteArrayOutputStream());
+            fail("ZipException expected");
+        } catch (ZipException expected) {
+            // expected
+        }
+    }
+
+    private static ByteBuffer allocate(int capacity, boolean direct) {
+        return direct ? ByteBuffer.allocateDirect(capacity) : ByteBuffer.allocate(capacity);
+    }
+
+    /**
+     * Implements only the stream API to test the default implementations of the buffer API.
+     */
+    private static class StreamOnlyCompressor extends Compressor {
+
+        private final Compressor delegate = CompressorFactory.create("zlib", "level", 1);
+
+        @Override
+        public String getId() {
+            return "streamOnly";
+        }
+
+        @Override
+        public String toString() {
+            return getId();
+        }
+
+        @Override
+        public void compress(InputStream is, OutputStream os) throws IOException {
+            delegate.compress(is, os);
+        }
+
+        @Override
+        public void uncompress(InputStream is, OutputStream os) throws IOException {
+            delegate.uncompress(is, os);
+        }
+    }
+
+    private static byte[] createCompressibleBytes(int length) {
+        final byte[] bytes = new byte[length];
+        final Random random = new Random(42);
+        for (int i = 0; i < length; i++) {
+            bytes[i] = (byte) (i % 100 < 50 ? i % 13 : random.nextInt(4));
+        }
+        return bytes;
+    }
+}
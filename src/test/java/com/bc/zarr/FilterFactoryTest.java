@@ -0,0 +1,300 @@
+/*
+ *
+ * MIT License
+ *
+ * Copyright (c) 2021. Brockmann Consult GmbH (info@brockmann-consult.de)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package com.bc.zarr;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import static org.hamcrest.MatcherAssert.*;
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+public class FilterFactoryTest {
+
+    @Test
+    public void create_with_id_and_key_value_arguments() {
+        assertEquals("filter=delta/dtype=<i2/astype=|i1", FilterFactory.create("delta", "dtype", "<i2", "astype", "i1").toString());
+        assertEquals("filter=delta/dtype=>f8/astype=>f8", FilterFactory.create("delta", "dtype", ">f8").toString());
+        assertEquals("filter=shuffle/elementsize=4", FilterFactory.create("shuffle").toString());
+        assertEquals("filter=fixedscaleoffset/scale=10.0/offset=1000.0/dtype=<f8/astype=|u1",
+                     FilterFactory.create("fixedscaleoffset", "scale", 10, "offset", "1000", "dtype", "<f8", "astype", "|u1").toString());
+        assertEquals("filter=quantize/digits=2/dtype=<f4/astype=<f4", FilterFactory.create("quantize", "digits", 2, "dtype", "<f4").toString());
+        assertEquals("filter=bitround/keepbits=7", FilterFactory.create("bitround", "keepbits", 7).toString());
+    }
+
+    @Test
+    public void create_with_map() {
+        final Filter filter = FilterFactory.create(TestUtils.createMap("id", "shuffle", "elementsize", 8));
+        assertEquals("shuffle", filter.getId());
+        assertEquals("filter=shuffle/elementsize=8", filter.toString());
+    }
+
+    @Test
+    public void create_invalid() {
+        try {
+            FilterFactory.create("kkkkkkk");
+            fail("IllegalArgumentException expected");
+        } catch (IllegalArgumentException expected) {
+            assertEquals("Filter id:'kkkkkkk' not supported.", expected.getMessage());
+        }
+        try {
+            FilterFactory.create("delta");
+            fail("IllegalArgumentException expected");
+        } catch (IllegalArgumentException expected) {
+            assertEquals("delta: dtype parameter must be given", expected.getMessage());
+        }
+        try {
+            FilterFactory.create("delta", "dtype", "<u8");
+            fail("IllegalArgumentException expected");
+        } catch (IllegalArgumentException expected) {
+            assertEquals("delta: dtype '<u8' not supported", expected.getMessage());
+        }
+        try {
+            FilterFactory.create("quantize", "digits", 2, "dtype", "<i4");
+            fail("IllegalArgumentException expected");
+        } catch (IllegalArgumentException expected) {
+            assertEquals("quantize: only floating point data types are supported but dtype was: <i4", expected.getMessage());
+        }
+        try {
+            FilterFactory.create("bitround", "keepbits", -1);
+            fail("IllegalArgumentException expected");
+        } catch (IllegalArgumentException expected) {
+            assertEquals("bitround: keepbits parameter must not be negative but was: -1", expected.getMessage());
+        }
+    }
+
+    @Test
+    public void toJson_numcodecsConfiguration() throws Exception {
+        final String json = ZarrUtils.toJson(FilterFactory.create("fixedscaleoffset", "scale", 10, "offset", 1000, "dtype", "<f8", "astype", "u1"));
+        assertThat(json, containsString("\"id\":\"fixedscaleoffset\""));
+        assertThat(json, containsString("\"scale\":10.0"));
+        assertThat(json, containsString("\"offset\":1000.0"));
+        assertThat(json, containsString("\"dtype\":\"<f8\""));
+        assertThat(json, containsString("\"astype\":\"|u1\""));
+
+        assertThat(ZarrUtils.toJson(FilterFactory.create("shuffle", "elementsize", 2)), containsString("\"elementsize\":2"));
+        assertThat(ZarrUtils.toJson(FilterFactory.create("quantize", "digits", 3, "dtype", "<f4")), containsString("\"digits\":3"));
+        assertThat(ZarrUtils.toJson(FilterFactory.create("bitround", "keepbits", 10)), containsString("\"keepbits\":10"));
+    }
+
+    @Test
+    public void delta() throws IOException {
+        // the example of the numcodecs documentation
+        final Filter filter = FilterFactory.create("delta", "dtype", "<i2", "astype", "<i1");
+        final ByteBuffer input = allocate(20, false, ByteOrder.LITTLE_ENDIAN);
+        for (int i = 0; i < 10; i++) {
+            input.putShort((short) (100 + 2 * i));
+        }
+        input.flip();
+
+        final ByteBuffer encoded = encode(filter, input, false);
+        assertThat(encoded.remaining(), is(10));
+        assertThat(encoded.get(0), is((byte) 100));
+        for (int i = 1; i < 10; i++) {
+            assertThat(encoded.get(i), is((byte) 2));
+        }
+
+        final ByteBuffer decoded = decode(filter, encoded, true);
+        assertThat(decoded.equals(input), is(true));
+    }
+
+    @Test
+    public void delta_sameTypes_wrapAround() throws IOException {
+        final Filter filter = FilterFactory.create("delta", "dtype", ">i4");
+        final int[] values = {Integer.MIN_VALUE, Integer.MAX_VALUE, -1, 0, 17, 17, Integer.MIN_VALUE};
+        final ByteBuffer input = allocate(values.length * 4, true, ByteOrder.BIG_ENDIAN);
+        input.asIntBuffer().put(values);
+
+        final ByteBuffer encoded = encode(filter, input, false);
+        assertThat(encoded.order(ByteOrder.BIG_ENDIAN).getInt(4), is(-1));
+        assertThat(encoded.getInt(20), is(0));
+        assertThat(decode(filter, encoded, true).equals(input), is(true));
+
+        for (String dtype : new String[]{"|u1", "<i2", "<i8", "<f4", ">f8"}) {
+            final Filter other = FilterFactory.create("delta", "dtype", dtype);
+            final ByteBuffer bytes = allocate(64, false, ByteOrder.LITTLE_ENDIAN);
+            for (int i = 0; i < 64; i++) {
+                bytes.put((byte) (i * i + (dtype.contains("f") ? 0 : 7)));
+            }
+            bytes.flip();
+            final ByteBuffer roundTrip = decode(other, encode(other, bytes, true), false);
+            if (dtype.contains("f")) {
+                assertThat(roundTrip.remaining(), is(64));
+            } else {
+                assertThat(dtype, roundTrip.equals(bytes), is(true));
+            }
+        }
+    }
+
+    @Test
+    public void shuffle() throws IOException {
+        final Filter filter = FilterFactory.create("shuffle", "elementsize", 4);
+        for (boolean direct : new boolean[]{false, true}) {
+            final ByteBuffer input = allocate(14, direct, ByteOrder.BIG_ENDIAN);
+            input.put(new byte[]{1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 14});
+            input.flip();
+
+            final ByteBuffer encoded = encode(filter, input, !direct);
+            final byte[] bytes = new byte[encoded.remaining()];
+            encoded.duplicate().get(bytes);
+            // the trailing bytes of an incomplete element are not shuffled
+            assertThat(bytes, is(new byte[]{1, 5, 9, 2, 6, 10, 3, 7, 11, 4, 8, 12, 13, 14}));
+
+            assertThat(decode(filter, encoded, direct).equals(input), is(true));
+        }
+    }
+
+    @Test
+    public void fixedScaleOffset() throws IOException {
+        // the example of the numcodecs documentation
+        final Filter filter = FilterFactory.create("fixedscaleoffset", "offset", 1000, "scale", 10, "dtype", "<f8", "astype", "u1");
+        final ByteBuffer input = allocate(80, false, ByteOrder.LITTLE_ENDIAN);
+        for (int i = 0; i < 10; i++) {
+            input.putDouble(1000 + i / 9.0);
+        }
+        input.flip();
+
+        final ByteBuffer encoded = encode(filter, input, false);
+        final byte[] bytes = new byte[encoded.remaining()];
+        encoded.duplicate().get(bytes);
+        assertThat(bytes, is(new byte[]{0, 1, 2, 3, 4, 6, 7, 8, 9, 10}));
+
+        final ByteBuffer decoded = decode(filter, encoded, false).order(ByteOrder.LITTLE_ENDIAN);
+        assertThat(decoded.remaining(), is(80));
+        final double[] expected = {1000, 1000.1, 1000.2, 1000.3, 1000.4, 1000.6, 1000.7, 1000.8, 1000.9, 1001};
+        for (int i = 0; i < 10; i++) {
+            assertThat(decoded.getDouble(i * 8), is(closeTo(expected[i], 1e-9)));
+        }
+    }
+
+    @Test
+    public void quantize() throws IOException {
+        // the examples of the numcodecs documentation
+        final ByteBuffer input = allocate(80, false, ByteOrder.LITTLE_ENDIAN);
+        for (int i = 0; i < 10; i++) {
+            input.putDouble(i / 9.0);
+        }
+        input.flip();
+        final double[][] expected = {
+                {0, 0.125, 0.25, 0.3125, 0.4375, 0.5625, 0.6875, 0.75, 0.875, 1},
+                {0, 0.109375, 0.21875, 0.3359375, 0.4453125, 0.5546875, 0.6640625, 0.78125, 0.890625, 1},
+                {0, 0.111328125, 0.22265625, 0.3330078125, 0.4443359375, 0.5556640625, 0.6669921875, 0.77734375, 0.888671875, 1}
+        };
+        for (int digits = 1; digits <= 3; digits++) {
+            final Filter filter = FilterFactory.create("quantize", "digits", digits, "dtype", "<f8");
+            final ByteBuffer encoded = encode(filter, input, false).order(ByteOrder.LITTLE_ENDIAN);
+            for (int i = 0; i < 10; i++) {
+                assertThat(encoded.getDouble(i * 8), is(expected[digits - 1][i]));
+            }
+            assertThat(decode(filter, encoded, false).equals(encoded), is(true));
+        }
+
+        final Filter toFloat = FilterFactory.create("quantize", "digits", 1, "dtype", "<f8", "astype", ">f4");
+        final ByteBuffer encoded = encode(toFloat, input, true).order(ByteOrder.BIG_ENDIAN);
+        assertThat(encoded.remaining(), is(40));
+        assertThat(encoded.getFloat(4), is(0.125f));
+        final ByteBuffer decoded = decode(toFloat, encoded, false).order(ByteOrder.LITTLE_ENDIAN);
+        assertThat(decoded.getDouble(8), is(0.125));
+    }
+
+    @Test
+    public void bitround_float() throws IOException {
+        final ByteBuffer input = allocate(20, false, ByteOrder.BIG_ENDIAN);
+        input.putFloat(1.0f / 3).putFloat(1.0625f).putFloat(1.1875f).putFloat(-1.0625f).putFloat(1e-40f);
+        input.flip();
+        final Filter filter = FilterFactory.create("bitround", "keepbits", 3).forArray(DataType.f4, ByteOrder.BIG_ENDIAN);
+
+        final ByteBuffer encoded = encode(filter, input, true);
+        assertThat(encoded.getFloat(0), is(0.34375f));  // 1.0101010... * 2^-2 rounded up to 1.011 * 2^-2
+        assertThat(encoded.getFloat(4), is(1.0f));      // ties to even
+        assertThat(encoded.getFloat(8), is(1.25f));
+        assertThat(encoded.getFloat(12), is(-1.0f));
+        assertThat(Float.floatToIntBits(encoded.getFloat(16)) & 0xFFFFF, is(0));
+        assertThat(decode(filter, encoded, false).equals(encoded), is(true));
+
+        final Filter keepAll = FilterFactory.create("bitround", "keepbits", 23).forArray(DataType.f4, ByteOrder.BIG_ENDIAN);
+        assertThat(encode(keepAll, input, false).equals(input), is(true));
+    }
+
+    @Test
+    public void bitround_double() throws IOException {
+        final ByteBuffer input = allocate(24, false, ByteOrder.LITTLE_ENDIAN);
+        input.putDouble(1 + 0x1p-8).putDouble(1 + 0x3p-8).putDouble(Math.PI);
+        input.flip();
+        final Filter filter = FilterFactory.create("bitround", "keepbits", 7).forArray(DataType.f8, ByteOrder.LITTLE_ENDIAN);
+
+        final ByteBuffer encoded = encode(filter, input, false).order(ByteOrder.LITTLE_ENDIAN);
+        assertThat(encoded.getDouble(0), is(1.0));
+        assertThat(encoded.getDouble(8), is(1 + 0x4p-8));
+        assertThat(encoded.getDouble(16), is(3.140625));  // 1.1001001 * 2^1
+    }
+
+    @Test
+    public void bitround_invalidArrays() {
+        final ByteBuffer input = allocate(16, false, ByteOrder.BIG_ENDIAN);
+        try {
+            encode(FilterFactory.create("bitround", "keepbits", 24).forArray(DataType.f4, ByteOrder.BIG_ENDIAN), input, false);
+            fail("IOException expected");
+        } catch (IOException expected) {
+            assertEquals("bitround: keepbits parameter must not exceed 23 for data type f4 but was: 24", expected.getMessage());
+        }
+        try {
+            encode(FilterFactory.create("bitround", "keepbits", 8).forArray(DataType.i4, ByteOrder.BIG_ENDIAN), input, false);
+            fail("IOException expected");
+        } catch (IOException expected) {
+            assertEquals("bitround: only the data types f4 and f8 are supported but the data type of the array was: i4", expected.getMessage());
+        }
+    }
+
+    private static ByteBuffer encode(Filter filter, ByteBuffer input, boolean direct) throws IOException {
+        final ByteBuffer source = input.duplicate();
+        final ByteBuffer encoded = allocate(filter.encodedLength(source.remaining()), direct, ByteOrder.BIG_ENDIAN);
+        filter.encode(source, encoded);
+        assertThat(source.hasRemaining(), is(false));
+        assertThat(encoded.hasRemaining(), is(false));
+        encoded.flip();
+        return encoded;
+    }
+
+    private static ByteBuffer decode(Filter filter, ByteBuffer input, boolean direct) throws IOException {
+        final ByteBuffer source = input.duplicate();
+        final ByteBuffer decoded = allocate(filter.decodedLength(source.remaining()), direct, ByteOrder.BIG_ENDIAN);
+        filter.decode(source, decoded);
+        assertThat(source.hasRemaining(), is(false));
+        assertThat(decoded.hasRemaining(), is(false));
+        decoded.flip();
+        return decoded;
+    }
+
+    private static ByteBuffer allocate(int capacity, boolean direct, ByteOrder order) {
+        return (direct ? ByteBuffer.allocateDirect(capacity) : ByteBuffer.allocate(capacity)).order(order);
+    }
+}
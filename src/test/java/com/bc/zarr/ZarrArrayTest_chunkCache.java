@@ -0,0 +1,83 @@
+/*
+ *
+ * MIT License
+ *
+ * Copyright (c) 2021. Brockmann Consult GmbH (info@brockmann-consult.de)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package com.bc.zarr;
+
+import com.bc.zarr.chunk.ChunkCache;
+import com.bc.zarr.storage.InMemoryStore;
+import org.junit.Before;
+import org.junit.Test;
+import ucar.ma2.InvalidRangeException;
+
+import java.io.IOException;
+
+import static org.hamcrest.MatcherAssert.*;
+import static org.hamcrest.Matchers.*;
+
+public class ZarrArrayTest_chunkCache {
+
+    private ZarrArray array;
+    private ChunkCache cache;
+
+    @Before
+    public void setUp() throws IOException, InvalidRangeException {
+        array = ZarrArray.create(new InMemoryStore(), new ArrayParams()
+                .shape(4, 6).chunks(2, 3)
+                .dataType(DataType.i4).compressor(CompressorFactory.create("zlib")));
+        array.write(new int[]{
+                1, 2, 3, 4, 5, 6,
+                7, 8, 9, 10, 11, 12,
+                13, 14, 15, 16, 17, 18,
+                19, 20, 21, 22, 23, 24
+        }, new int[]{4, 6}, new int[]{0, 0});
+        cache = new ChunkCache(1024);
+        array.setChunkCache(cache);
+    }
+
+    @Test
+    public void repeatedReadsAreServedFromCache() throws IOException, InvalidRangeException {
+        final int[] first = (int[]) array.read(new int[]{2, 2}, new int[]{1, 2});
+        final int[] second = (int[]) array.read(new int[]{2, 2}, new int[]{1, 2});
+
+        assertThat(first, is(equalTo(new int[]{9, 10, 15, 16})));
+        assertThat(second, is(equalTo(first)));
+        assertThat(cache.getMissCount(), is(4L));
+        assertThat(cache.getHitCount(), is(4L));
+        assertThat(cache.getChunkCount(), is(4));
+    }
+
+    @Test
+    public void writeInvalidatesCachedChunk() throws IOException, InvalidRangeException {
+        array.read(new int[]{2, 3}, new int[]{0, 0});
+        assertThat(cache.getChunkCount(), is(1));
+
+        array.write(new int[]{-1}, new int[]{1, 1}, new int[]{1, 1});
+
+        assertThat(cache.getChunkCount(), is(0));
+        final int[] data = (int[]) array.read(new int[]{2, 3}, new int[]{0, 0});
+        assertThat(data, is(equalTo(new int[]{1, 2, 3, 7, -1, 9})));
+    }
+}
@@ -0,0 +1,156 @@
+/*
+ *
+ * MIT License
+ *
+ * Copyright (c) 2021. Brockmann Consult GmbH (info@brockmann-consult.de)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package com.bc.zarr;
+
+import com.bc.zarr.storage.InMemoryStore;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import static org.hamcrest.MatcherAssert.*;
+import static org.hamcrest.Matchers.*;
+
+public class ZarrArrayTest_constantChunks {
+
+    private InMemoryStore store;
+
+    @Before
+    public void setUp() {
+        store = new InMemoryStore();
+    }
+
+    @Test
+    public void constantChunksAreStoredAsMarker() throws Exception {
+        final ZarrArray array = ZarrArray.create(store, new ArrayParams()
+                .shape(20, 30)
+                .chunks(10, 10)
+                .dataType(DataType.f4)
+                .byteOrder(ByteOrder.LITTLE_ENDIAN)
+                .fillValue(-1)
+                .compressor(CompressorFactory.create("zlib", "level", 1))
+                .constantChunks(true));
+        final float[] data = new float[20 * 30];
+        Arrays.fill(data, 1.5f);
+        // chunk 1.2 is not constant, chunk 0.0 has the fill value
+        data[15 * 30 + 25] = 2;
+        for (int y = 0; y < 10; y++) {
+            Arrays.fill(data, y * 30, y * 30 + 10, -1);
+        }
+        array.write(data, new int[]{20, 30}, new int[]{0, 0});
+
+        assertThat(store.getInputStream("0.0"), is(nullValue()));
+        final ByteBuffer marker = ByteBuffer.wrap(read("0.1")).order(ByteOrder.LITTLE_ENDIAN);
+        assertThat(new String(read("0.1"), 0, 14, StandardCharsets.US_ASCII), is("jzarr.constant"));
+        assertThat(marker.limit(), is(14 + 4));
+        assertThat(marker.getFloat(14), is(1.5f));
+        assertThat(read("1.2").length, is(not(18)));
+        assertThat(new String(read(".zarray"), StandardCharsets.UTF_8), containsString("\"constant_chunks\" : true"));
+
+        final ZarrArray reopened = ZarrArray.open(store);
+        assertThat(reopened.isConstantChunks(), is(true));
+        assertThat((float[]) reopened.read(), is(data));
+        // a region overlapping constant and stored chunks
+        final float[] region = (float[]) reopened.read(new int[]{6, 7}, new int[]{8, 22});
+        for (int y = 0; y < 6; y++) {
+            for (int x = 0; x < 7; x++) {
+                assertThat(region[y * 7 + x], is(data[(8 + y) * 30 + 22 + x]));
+            }
+        }
+    }
+
+    @Test
+    public void partialWriteOfConstantChunk() throws Exception {
+        final ZarrArray array = ZarrArray.create(store, new ArrayParams()
+                .shape(8)
+                .chunks(4)
+                .dataType(DataType.i2)
+                .constantChunks(true));
+        array.write(new short[]{7, 7, 7, 7, 7, 7, 7, 7}, new int[]{8}, new int[]{0});
+        assertThat(read("1").length, is(14 + 2));
+
+        array.write(new short[]{3}, new int[]{1}, new int[]{5});
+        assertThat((short[]) array.read(), is(new short[]{7, 7, 7, 7, 7, 3, 7, 7}));
+        assertThat(read("1").length, is(not(14 + 2)));
+        assertThat(read("0").length, is(14 + 2));
+    }
+
+    @Test
+    public void allDataTypes() throws Exception {
+        final Object[][] cases = {
+                {DataType.i1, new byte[]{5, 5, 5, 5}, 1},
+                {DataType.u2, new short[]{-2, -2, -2, -2}, 2},
+                {DataType.i4, new int[]{9, 9, 9, 9}, 4},
+                {DataType.i8, new long[]{Long.MIN_VALUE, Long.MIN_VALUE, Long.MIN_VALUE, Long.MIN_VALUE}, 8},
+                {DataType.f8, new double[]{Double.NaN, Double.NaN, Double.NaN, Double.NaN}, 8},
+        };
+        for (Object[] c : cases) {
+            store = new InMemoryStore();
+            final ZarrArray array = ZarrArray.create(store, new ArrayParams()
+                    .shape(4)
+                    .chunks(4)
+                    .dataType((DataType) c[0])
+                    .constantChunks(true));
+            array.write(c[1], new int[]{4}, new int[]{0});
+            assertThat(c[0].toString(), read("0").length, is(14 + (int) c[2]));
+            assertThat(c[0].toString(), ZarrArray.open(store).read(), is(c[1]));
+        }
+    }
+
+    @Test
+    public void withoutConstantChunks_chunksAreCompressed() throws Exception {
+        final ZarrArray array = ZarrArray.create(store, new ArrayParams()
+                .shape(100)
+                .chunks(100)
+                .dataType(DataType.i4)
+                .compressor(null));
+        final int[] data = new int[100];
+        Arrays.fill(data, 1);
+        array.write(data, new int[]{100}, new int[]{0});
+
+        assertThat(array.isConstantChunks(), is(false));
+        assertThat(read("0").length, is(400));
+        assertThat(new String(read(".zarray"), StandardCharsets.UTF_8), not(containsString("constant_chunks")));
+    }
+
+    private byte[] read(String key) throws IOException {
+        try (InputStream is = store.getInputStream(key)) {
+            final ByteArrayOutputStream os = new ByteArrayOutputStream();
+            final byte[] buffer = new byte[4096];
+            for (int n = is.read(buffer); n >= 0; n = is.read(buffer)) {
+                os.write(buffer, 0, n);
+            }
+            return os.toByteArray();
+        }
+    }
+}
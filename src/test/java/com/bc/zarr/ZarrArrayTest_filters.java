@@ -0,0 +1,208 @@
+/*
+ *
+ * MIT License
+ *
+ * Copyright (c) 2021. Brockmann Consult GmbH (info@brockmann-consult.de)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package com.bc.zarr;
+
+import com.bc.zarr.storage.InMemoryStore;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+
+import static org.hamcrest.MatcherAssert.*;
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.fail;
+
+public class ZarrArrayTest_filters {
+
+    private InMemoryStore store;
+
+    @Before
+    public void setUp() {
+        store = new InMemoryStore();
+    }
+
+    @Test
+    public void writeAndRead_withDeltaAndShuffle() throws Exception {
+        final ZarrArray array = ZarrArray.create(store, new ArrayParams()
+                .shape(40, 30)
+                .chunks(16, 16)
+                .dataType(DataType.i4)
+                .compressor(CompressorFactory.create("zlib", "level", 1))
+                .filters(FilterFactory.create("delta", "dtype", ">i4"), FilterFactory.create("shuffle", "elementsize", 4)));
+        final int[] data = new int[40 * 30];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = 100000 + 3 * i + (i % 7);
+        }
+        array.write(data, new int[]{40, 30}, new int[]{0, 0});
+
+        final String header = read(".zarray");
+        assertThat(header, containsString("\"id\" : \"delta\""));
+        assertThat(header, containsString("\"dtype\" : \">i4\""));
+        assertThat(header, containsString("\"id\" : \"shuffle\""));
+
+        final ZarrArray reopened = ZarrArray.open(store);
+        final Filter[] filters = reopened.getFilters();
+        assertThat(filters.length, is(2));
+        assertThat(filters[0].toString(), is("filter=delta/dtype=>i4/astype=>i4"));
+        assertThat(filters[1].toString(), is("filter=shuffle/elementsize=4"));
+        assertThat((int[]) reopened.read(), is(data));
+    }
+
+    @Test
+    public void writeAndRead_withFixedScaleOffset_changesTheChunkSize() throws Exception {
+        final ZarrArray array = ZarrArray.create(store, new ArrayParams()
+                .shape(20)
+                .chunks(10)
+                .dataType(DataType.f8)
+                .byteOrder(ByteOrder.LITTLE_ENDIAN)
+                .compressor(null)
+                .filters(FilterFactory.create("fixedscaleoffset", "offset", 1000, "scale", 10, "dtype", "<f8", "astype", "u1")));
+        final double[] data = new double[20];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = 1000 + i * 0.5;
+        }
+        array.write(data, new int[]{20}, new int[]{0});
+
+        // one byte per element
+        assertThat(read("1").getBytes(StandardCharsets.ISO_8859_1).length, is(10));
+        assertThat((double[]) ZarrArray.open(store).read(), is(data));
+    }
+
+    @Test
+    public void writeAndRead_withBitRound() throws Exception {
+        final float[] data = new float[64 * 64];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (float) (280 + 20 * Math.sin(i * 0.01) + i * 1e-4);
+        }
+        final ZarrArray array = ZarrArray.create(store, new ArrayParams()
+                .shape(64, 64)
+                .chunks(64, 64)
+                .dataType(DataType.f4)
+                .compressor(CompressorFactory.create("zstd", "level", 3))
+                .filters(FilterFactory.create("bitround", "keepbits", 7)));
+        array.write(data, new int[]{64, 64}, new int[]{0, 0});
+        final int roundedSize = read("0.0").length();
+
+        final String header = read(".zarray");
+        assertThat(header, containsString("\"id\" : \"bitround\""));
+        assertThat(header, containsString("\"keepbits\" : 7"));
+
+        final ZarrArray reopened = ZarrArray.open(store);
+        assertThat(reopened.getFilters()[0].toString(), is("filter=bitround/keepbits=7"));
+        final float[] rounded = (float[]) reopened.read();
+        for (int i = 0; i < data.length; i++) {
+            assertThat((double) rounded[i], is(closeTo(data[i], Math.abs(data[i]) / 256)));
+            assertThat(Float.floatToIntBits(rounded[i]) & 0xFFFF, is(0));
+        }
+
+        final InMemoryStore fullPrecision = new InMemoryStore();
+        ZarrArray.create(fullPrecision, new ArrayParams()
+                .shape(64, 64)
+                .chunks(64, 64)
+                .dataType(DataType.f4)
+                .compressor(CompressorFactory.create("zstd", "level", 3)))
+                .write(data, new int[]{64, 64}, new int[]{0, 0});
+        assertThat(roundedSize * 2, is(lessThan(fullPrecision.getInputStream("0.0").available())));
+    }
+
+    @Test
+    public void write_withBitRound_integerArray() throws Exception {
+        final ZarrArray array = ZarrArray.create(store, new ArrayParams()
+                .shape(4)
+                .dataType(DataType.i4)
+                .filters(FilterFactory.create("bitround", "keepbits", 7)));
+        try {
+            array.write(new int[]{1, 2, 3, 4}, new int[]{4}, new int[]{0});
+            fail("IOException expected");
+        } catch (IOException expected) {
+            assertThat(expected.getMessage(), is("bitround: only the data types f4 and f8 are supported but the data type of the array was: i4"));
+        }
+    }
+
+    @Test
+    public void read_arrayWrittenByZarrPython() throws Exception {
+        write(".zarray", "{\n" +
+                         "    \"chunks\": [6],\n" +
+                         "    \"compressor\": null,\n" +
+                         "    \"dtype\": \"<i4\",\n" +
+                         "    \"fill_value\": 0,\n" +
+                         "    \"filters\": [{\"astype\": \"<i1\", \"dtype\": \"<i4\", \"id\": \"delta\"}],\n" +
+                         "    \"order\": \"C\",\n" +
+                         "    \"shape\": [6],\n" +
+                         "    \"zarr_format\": 2\n" +
+                         "}");
+        // Delta(dtype='<i4', astype='<i1').encode([10, 12, 15, 15, 11, 20])
+        try (OutputStream os = store.getOutputStream("0")) {
+            os.write(new byte[]{10, 2, 3, 0, -4, 9});
+        }
+
+        final ZarrArray array = ZarrArray.open(store);
+
+        assertThat((int[]) array.read(), is(new int[]{10, 12, 15, 15, 11, 20}));
+    }
+
+    @Test
+    public void open_unsupportedFilter() throws Exception {
+        write(".zarray", "{\"chunks\": [6], \"compressor\": null, \"dtype\": \"<i4\", \"fill_value\": 0, " +
+                         "\"filters\": [{\"id\": \"categorize\"}], \"order\": \"C\", \"shape\": [6], \"zarr_format\": 2}");
+        try {
+            ZarrArray.open(store);
+            fail("Exception expected");
+        } catch (IOException | IllegalArgumentException expected) {
+            assertThat(expected.getMessage(), containsString("Filter id:'categorize' not supported."));
+        }
+    }
+
+    @Test
+    public void open_headerWithoutFilters() throws Exception {
+        write(".zarray", "{\"chunks\": [6], \"compressor\": null, \"dtype\": \"<i4\", \"fill_value\": 0, " +
+                         "\"order\": \"C\", \"shape\": [6], \"zarr_format\": 2}");
+
+        assertThat(ZarrArray.open(store).getFilters().length, is(0));
+    }
+
+    private void write(String key, String text) throws IOException {
+        try (OutputStream os = store.getOutputStream(key)) {
+            os.write(text.getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    private String read(String key) throws IOException {
+        try (InputStream is = store.getInputStream(key)) {
+            final byte[] bytes = new byte[is.available()];
+            int n = 0;
+            while (n < bytes.length) {
+                n += is.read(bytes, n, bytes.length - n);
+            }
+            return new String(bytes, StandardCharsets.ISO_8859_1);
+        }
+    }
+}
@@ -0,0 +1,158 @@
+/*
+ *
+ * MIT License
+ *
+ * Copyright (c) 2021. Brockmann Consult GmbH (info@brockmann-consult.de)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package com.bc.zarr;
+
+import com.bc.zarr.storage.InMemoryStore;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import ucar.ma2.InvalidRangeException;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.hamcrest.MatcherAssert.*;
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.fail;
+
+public class ZarrArrayTest_parallelReadWrite {
+
+    private ExecutorService executor;
+
+    @Before
+    public void setUp() {
+        executor = Executors.newFixedThreadPool(4);
+    }
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void parallelRead_equalsSerialRead() throws IOException, InvalidRangeException {
+        final ZarrArray array = createFilledArray(CompressorFactory.create("zlib"));
+        final int[] shape = {17, 23};
+        final int[] offset = {3, 5};
+
+        final int[] expected = (int[]) array.read(shape, offset);
+        final int[] actual = new int[17 * 23];
+        array.read(actual, shape, offset, executor);
+
+        assertThat(actual, is(equalTo(expected)));
+        assertThat(actual[0], is(3 * 40 + 5));
+        assertThat(actual[actual.length - 1], is(19 * 40 + 27));
+    }
+
+    @Test
+    public void parallelRead_wholeArray() throws IOException, InvalidRangeException {
+        final ZarrArray array = createFilledArray(CompressorFactory.nullCompressor);
+
+        final int[] actual = new int[30 * 40];
+        array.read(actual, array.getShape(), new int[2], executor);
+
+        for (int i = 0; i < actual.length; i++) {
+            assertThat(actual[i], is(i));
+        }
+    }
+
+    @Test
+    public void parallelRead_wrongBufferSize() throws IOException, InvalidRangeException {
+        final ZarrArray array = createFilledArray(CompressorFactory.nullCompressor);
+        try {
+            array.read(new int[10], new int[]{3, 4}, new int[2], executor);
+            fail("IOException expected");
+        } catch (IOException expected) {
+            assertThat(expected.getMessage(), is("Expected target buffer size is 12 but was 10"));
+        }
+    }
+
+    @Test
+    public void parallelWrite_equalsSerialWrite() throws IOException, InvalidRangeException {
+        final ZarrArray serial = createFilledArray(CompressorFactory.create("zlib"));
+        final ZarrArray parallel = createFilledArray(CompressorFactory.create("zlib"));
+        final int[] shape = {17, 23};
+        final int[] offset = {3, 5};
+        final int[] data = new int[17 * 23];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = -i;
+        }
+
+        serial.write(data, shape, offset);
+        parallel.write(data, shape, offset, executor);
+
+        assertThat(parallel.read(), is(equalTo(serial.read())));
+        final int[] written = (int[]) parallel.read(shape, offset);
+        assertThat(written, is(equalTo(data)));
+    }
+
+    @Test
+    public void parallelWrite_failuresAreAggregated() throws IOException, InvalidRangeException {
+        final InMemoryStore failingStore = new InMemoryStore() {
+            @Override
+            public OutputStream getOutputStream(String key) {
+                if (key.startsWith(".")) {
+                    return super.getOutputStream(key);
+                }
+                return new OutputStream() {
+                    @Override
+                    public void write(int b) throws IOException {
+                        throw new IOException("Unable to write chunk " + key);
+                    }
+                };
+            }
+        };
+        final ZarrArray array = ZarrArray.create(failingStore, new ArrayParams()
+                .shape(30, 40).chunks(7, 9)
+                .dataType(DataType.i4).compressor(null));
+
+        try {
+            final int[] data = new int[30 * 40];
+            Arrays.fill(data, 1);
+            array.write(data, new int[]{30, 40}, new int[]{0, 0}, executor);
+            fail("IOException expected");
+        } catch (IOException expected) {
+            assertThat(expected.getMessage(), startsWith("25 of 25 chunk operations failed."));
+            assertThat(expected.getSuppressed().length, is(25));
+        }
+    }
+
+    private ZarrArray createFilledArray(Compressor compressor) throws IOException, InvalidRangeException {
+        final ZarrArray array = ZarrArray.create(new InMemoryStore(), new ArrayParams()
+                .shape(30, 40).chunks(7, 9)
+                .dataType(DataType.i4).compressor(compressor));
+        final int[] data = new int[30 * 40];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = i;
+        }
+        array.write(data, new int[]{30, 40}, new int[]{0, 0});
+        return array;
+    }
+}
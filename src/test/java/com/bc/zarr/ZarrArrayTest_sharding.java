@@ -0,0 +1,334 @@
+/*
+ *
+ * MIT License
+ *
+ * Copyright (c) 2021. Brockmann Consult GmbH (info@brockmann-consult.de)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package com.bc.zarr;
+
+import com.bc.zarr.codec.Crc32c;
+import com.bc.zarr.storage.InMemoryStore;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.hamcrest.MatcherAssert.*;
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.fail;
+
+public class ZarrArrayTest_sharding {
+
+    private InMemoryStore store;
+
+    @Before
+    public void setUp() {
+        store = new InMemoryStore();
+    }
+
+    @Test
+    public void chunksOfAShardAreStoredInOneObject() throws Exception {
+        final ZarrArray array = ZarrArray.create(store, new ArrayParams()
+                .shape(20, 30)
+                .chunks(5, 5)
+                .shards(10, 15)
+                .zarrFormat(3)
+                .dataType(DataType.i4)
+                .byteOrder(ByteOrder.LITTLE_ENDIAN)
+                .compressor(null));
+        final int[] data = createData(20 * 30);
+        array.write(data, new int[]{20, 30}, new int[]{0, 0});
+
+        assertThat(store.getInputStream("c/0/0"), is(notNullValue()));
+        assertThat(store.getInputStream("c/1/1"), is(notNullValue()));
+        assertThat(store.getInputStream("c/0/2"), is(nullValue()));
+        assertThat(store.getInputStream("c/3/5"), is(nullValue()));
+        assertThat(new String(read("zarr.json"), StandardCharsets.UTF_8), containsString("\"sharding_indexed\""));
+
+        // six chunks of 100 bytes, followed by the index and its checksum
+        final byte[] shard = read("c/1/1");
+        assertThat(shard.length, is(6 * 100 + 6 * 16 + 4));
+        final ByteBuffer index = ByteBuffer.wrap(shard).order(ByteOrder.LITTLE_ENDIAN);
+        for (int i = 0; i < 6; i++) {
+            assertThat(index.getLong(600 + i * 16), is(i * 100L));
+            assertThat(index.getLong(600 + i * 16 + 8), is(100L));
+        }
+        assertThat(index.getInt(600 + 96), is(Crc32c.compute(shard, 600, 96)));
+        // the chunks are in C order, chunk 3.4 is the fifth chunk of shard 1.1, its first element is at 15, 20
+        assertThat(index.getInt(400), is(data[15 * 30 + 20]));
+
+        final ZarrArray reopened = ZarrArray.open(store);
+        assertThat(reopened.getShards(), is(new int[]{10, 15}));
+        assertThat((int[]) reopened.read(), is(data));
+        final int[] region = (int[]) reopened.read(new int[]{7, 9}, new int[]{8, 12});
+        for (int y = 0; y < 7; y++) {
+            for (int x = 0; x < 9; x++) {
+                assertThat(region[y * 9 + x], is(data[(8 + y) * 30 + 12 + x]));
+            }
+        }
+    }
+
+    @Test
+    public void partialWritesAreMergedWithTheStoredShard() throws Exception {
+        final ZarrArray array = ZarrArray.create(store, new ArrayParams()
+                .shape(9, 9)
+                .chunks(2, 2)
+                .shards(4, 4)
+                .zarrFormat(3)
+                .dataType(DataType.i4)
+                .fillValue(0)
+                .compressor(CompressorFactory.create("gzip", "level", 1)));
+        final int[] expected = new int[9 * 9];
+        // the shards at the upper bounds contain fewer chunks
+        write(array, expected, 9, 1, 1, 0, 0);
+        write(array, expected, 9, 1, 1, 8, 8);
+        write(array, expected, 9, 5, 6, 1, 2);
+        write(array, expected, 9, 9, 2, 0, 7);
+
+        assertThat((int[]) array.read(), is(expected));
+        assertThat((int[]) ZarrArray.open(store).read(), is(expected));
+        assertThat(store.getInputStream("c/2/2"), is(notNullValue()));
+        assertThat(store.getInputStream("c/3/0"), is(nullValue()));
+
+        // chunks with the fill value are removed from the shard, and the shard if it is empty
+        array.write(0, new int[]{9, 9}, new int[]{0, 0});
+        assertThat((int[]) array.read(), is(new int[9 * 9]));
+        assertThat(store.getInputStream("c/0/0"), is(nullValue()));
+        assertThat(store.getInputStream("c/2/2"), is(nullValue()));
+    }
+
+    @Test
+    public void parallelWrite() throws Exception {
+        final ZarrArray array = ZarrArray.create(store, new ArrayParams()
+                .shape(40, 40)
+                .chunks(4, 4)
+                .shards(20, 12)
+                .zarrFormat(3)
+                .dataType(DataType.i4)
+                .compressor(CompressorFactory.create("zstd")));
+        final int[] data = createData(40 * 40);
+        final ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            array.write(data, new int[]{40, 40}, new int[]{0, 0}, executor);
+            array.write(new int[30], new int[]{5, 6}, new int[]{3, 9}, executor);
+        } finally {
+            executor.shutdown();
+        }
+        for (int y = 3; y < 8; y++) {
+            for (int x = 9; x < 15; x++) {
+                data[y * 40 + x] = 0;
+            }
+        }
+        assertThat((int[]) ZarrArray.open(store).read(), is(data));
+    }
+
+    @Test
+    public void readWhileOtherChunksOfTheShardAreWritten() throws Exception {
+        final ZarrArray array = ZarrArray.create(store, new ArrayParams()
+                .shape(10, 10)
+                .chunks(5, 5)
+                .shards(10, 10)
+                .zarrFormat(3)
+                .dataType(DataType.i4)
+                .compressor(CompressorFactory.create("gzip", "level", 1)));
+        final int[] data = createData(10 * 10);
+        array.write(data, new int[]{10, 10}, new int[]{0, 0});
+        final int[] expected = (int[]) array.read(new int[]{5, 5}, new int[]{5, 5});
+
+        final ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            // rewrites the shard with a differently compressible first chunk, which moves the other chunks
+            final Future<?> writer = executor.submit(() -> {
+                for (int i = 1; i <= 300; i++) {
+                    final int[] values = new int[25];
+                    for (int k = 0; k < values.length; k++) {
+                        values[k] = k % (i % 25 + 1) * i;
+                    }
+                    array.write(values, new int[]{5, 5}, new int[]{0, 0});
+                }
+                return null;
+            });
+            while (!writer.isDone()) {
+                assertThat((int[]) array.read(new int[]{5, 5}, new int[]{5, 5}), is(expected));
+            }
+            writer.get();
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void theIndexOfAShardIsReadOnce() throws Exception {
+        // ranged reads by their length: 68 bytes for an index of 4 chunks, 100 bytes for a chunk, 5 bytes for a checksum check
+        final Map<Integer, Integer> rangedReads = new TreeMap<>();
+        final int[] sizeQueries = {0};
+        final InMemoryStore countingStore = new InMemoryStore() {
+            @Override
+            public ByteBuffer getBytes(String key, long offset, int length) {
+                rangedReads.merge(length, 1, Integer::sum);
+                return super.getBytes(key, offset, length);
+            }
+
+            @Override
+            public long getSize(String key) {
+                sizeQueries[0]++;
+                return super.getSize(key);
+            }
+        };
+        ZarrArray.create(countingStore, new ArrayParams()
+                .shape(20, 30)
+                .chunks(5, 5)
+                .shards(10, 10)
+                .zarrFormat(3)
+                .dataType(DataType.i4)
+                .compressor(null))
+                .write(createData(20 * 30), new int[]{20, 30}, new int[]{0, 0});
+        final ZarrArray array = ZarrArray.open(countingStore);
+        rangedReads.clear();
+        sizeQueries[0] = 0;
+
+        assertThat((int[]) array.read(), is(createData(20 * 30)));
+        // the index of each of the 6 shards, the checksums for the other 18 chunks and the 24 chunks
+        assertThat(rangedReads.toString(), is("{5=18, 68=6, 100=24}"));
+        assertThat(sizeQueries[0], is(6));
+
+        rangedReads.clear();
+        sizeQueries[0] = 0;
+        assertThat((int[]) array.read(), is(createData(20 * 30)));
+        // only the checksums of the cached indexes are checked
+        assertThat(rangedReads.toString(), is("{5=24, 100=24}"));
+        assertThat(sizeQueries[0], is(0));
+    }
+
+    @Test
+    public void shardRewrittenWithTheSameSizeByAnotherInstance() throws Exception {
+        final ZarrArray reader = ZarrArray.create(store, new ArrayParams()
+                .shape(10, 10)
+                .chunks(5, 5)
+                .shards(10, 10)
+                .zarrFormat(3)
+                .fillValue(0)
+                .dataType(DataType.i4)
+                .compressor(null));
+        // chunk 1.1 contains only the fill value and is not stored
+        final int[] first = createData(10 * 10);
+        for (int y = 5; y < 10; y++) {
+            Arrays.fill(first, y * 10 + 5, y * 10 + 10, 0);
+        }
+        reader.write(first, new int[]{10, 10}, new int[]{0, 0});
+        assertThat((int[]) reader.read(), is(first));
+        final long size = store.getSize("c/0/0");
+
+        // chunk 0.0 is not stored now, so the shard has the same size but the chunks are at other offsets
+        final int[] second = new int[10 * 10];
+        for (int i = 0; i < second.length; i++) {
+            second[i] = i / 10 < 5 && i % 10 < 5 ? 0 : 1000 + i;
+        }
+        ZarrArray.open(store).write(second, new int[]{10, 10}, new int[]{0, 0});
+        assertThat(store.getSize("c/0/0"), is(size));
+
+        assertThat((int[]) reader.read(), is(second));
+    }
+
+    @Test
+    public void shardsMustBeMultiplesOfChunks() throws Exception {
+        try {
+            ZarrArray.create(store, new ArrayParams().shape(10, 10).chunks(4, 4).shards(8, 6).zarrFormat(3));
+            fail("IllegalArgumentException expected");
+        } catch (IllegalArgumentException expected) {
+            assertThat(expected.getMessage(), is("Shards must be multiples of the chunks. Chunks: [4, 4] Shards: [8, 6]"));
+        }
+        try {
+            ZarrArray.create(store, new ArrayParams().shape(10, 10).chunks(4, 4).shards(8).zarrFormat(3));
+            fail("IllegalArgumentException expected");
+        } catch (IllegalArgumentException expected) {
+            assertThat(expected.getMessage(), is("Shards must have the same number of dimensions as shape. Expected: 2 but was 1 !"));
+        }
+    }
+
+    @Test
+    public void shardsAreOnlySupportedForZarrFormat3() throws Exception {
+        try {
+            ZarrArray.create(store, new ArrayParams().shape(10, 10).chunks(5, 5).shards(10, 10));
+            fail("IllegalArgumentException expected");
+        } catch (IllegalArgumentException expected) {
+            assertThat(expected.getMessage(), is("Shards are only supported for zarr format 3."));
+        }
+    }
+
+    @Test
+    public void withoutShards() throws Exception {
+        final ZarrArray array = ZarrArray.create(store, new ArrayParams().shape(10).chunks(5));
+        assertThat(array.getShards(), is(nullValue()));
+        assertThat(new String(read(".zarray"), StandardCharsets.UTF_8), not(containsString("shards")));
+    }
+
+    @Test
+    public void crc32c() {
+        // the check value of the CRC-32C specification
+        final byte[] bytes = "123456789".getBytes(StandardCharsets.US_ASCII);
+        assertThat(Crc32c.compute(bytes, 0, bytes.length), is(0xE3069283));
+        assertThat(Crc32c.compute(new byte[0], 0, 0), is(0));
+    }
+
+    private static void write(ZarrArray array, int[] expected, int width, int h, int w, int y0, int x0) throws Exception {
+        final int[] data = new int[h * w];
+        for (int y = 0; y < h; y++) {
+            for (int x = 0; x < w; x++) {
+                data[y * w + x] = 1 + (y0 + y) * 100 + x0 + x;
+                expected[(y0 + y) * width + x0 + x] = data[y * w + x];
+            }
+        }
+        array.write(data, new int[]{h, w}, new int[]{y0, x0});
+    }
+
+    private static int[] createData(int n) {
+        final int[] data = new int[n];
+        for (int i = 0; i < n; i++) {
+            data[i] = i * 7 + 1;
+        }
+        return data;
+    }
+
+    private byte[] read(String key) throws IOException {
+        try (InputStream is = store.getInputStream(key)) {
+            final ByteArrayOutputStream os = new ByteArrayOutputStream();
+            final byte[] buffer = new byte[4096];
+            for (int n = is.read(buffer); n >= 0; n = is.read(buffer)) {
+                os.write(buffer, 0, n);
+            }
+            return os.toByteArray();
+        }
+    }
+}
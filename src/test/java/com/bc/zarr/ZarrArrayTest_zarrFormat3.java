@@ -0,0 +1,224 @@
+/*
+ *
+ * MIT License
+ *
+ * Copyright (c) 2021. Brockmann Consult GmbH (info@brockmann-consult.de)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package com.bc.zarr;
+
+import com.bc.zarr.storage.InMemoryStore;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.zip.GZIPOutputStream;
+
+import static org.hamcrest.MatcherAssert.*;
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.fail;
+
+public class ZarrArrayTest_zarrFormat3 {
+
+    private InMemoryStore store;
+
+    @Before
+    public void setUp() {
+        store = new InMemoryStore();
+    }
+
+    @Test
+    public void createWriteAndOpen() throws Exception {
+        final ZarrArray array = ZarrArray.create(store, new ArrayParams()
+                .zarrFormat(3)
+                .shape(20, 30)
+                .chunks(10, 10)
+                .dataType(DataType.i2)
+                .byteOrder(ByteOrder.LITTLE_ENDIAN)
+                .fillValue(-1)
+                .compressor(CompressorFactory.create("zstd", "level", 3)), TestUtils.createMap("unit", "m"));
+        final short[] data = new short[20 * 30];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (short) i;
+        }
+        array.write(data, new int[]{20, 30}, new int[]{0, 0});
+
+        final String json = new String(read("zarr.json"), StandardCharsets.UTF_8);
+        assertThat(json, containsString("\"zarr_format\" : 3"));
+        assertThat(json, containsString("\"node_type\" : \"array\""));
+        assertThat(json, containsString("\"data_type\" : \"int16\""));
+        assertThat(json, containsString("\"chunk_shape\" : [ 10, 10 ]"));
+        assertThat(json, containsString("\"separator\" : \"/\""));
+        assertThat(json, containsString("\"endian\" : \"little\""));
+        assertThat(json, containsString("\"name\" : \"zstd\""));
+        assertThat(json, containsString("\"unit\" : \"m\""));
+        assertThat(store.getInputStream(".zarray"), is(nullValue()));
+        assertThat(store.getInputStream(".zattrs"), is(nullValue()));
+        assertThat(store.getInputStream("c/1/2"), is(notNullValue()));
+
+        final ZarrArray reopened = ZarrArray.open(store);
+        assertThat(reopened.getZarrFormat(), is(3));
+        assertThat(reopened.getCompressor().toString(), is("compressor=zstd/level=3"));
+        assertThat(reopened.getFillValue().longValue(), is(-1L));
+        assertThat(reopened.getByteOrder(), is(ByteOrder.LITTLE_ENDIAN));
+        assertThat((short[]) reopened.read(), is(data));
+        assertThat(reopened.getAttributes().get("unit"), is("m"));
+
+        reopened.writeAttributes(TestUtils.createMap("unit", "km"));
+        final Map<String, Object> attributes = ZarrArray.open(store).getAttributes();
+        assertThat(attributes.get("unit"), is("km"));
+        assertThat(new String(read("zarr.json"), StandardCharsets.UTF_8), containsString("\"name\" : \"zstd\""));
+    }
+
+    @Test
+    public void shardsAreWrittenAsShardingCodec() throws Exception {
+        final ZarrArray array = ZarrArray.create(store, new ArrayParams()
+                .zarrFormat(3)
+                .shape(8, 8)
+                .chunks(2, 2)
+                .shards(4, 8)
+                .dataType(DataType.f4)
+                .fillValue(Float.NaN)
+                .compressor(CompressorFactory.create("blosc", "cname", "zstd", "shuffle", 2)));
+        final float[] data = new float[64];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = i / 2f;
+        }
+        array.write(data, new int[]{8, 8}, new int[]{0, 0});
+
+        final String json = new String(read("zarr.json"), StandardCharsets.UTF_8);
+        assertThat(json, containsString("\"name\" : \"sharding_indexed\""));
+        assertThat(json, containsString("\"chunk_shape\" : [ 4, 8 ]"));
+        assertThat(json, containsString("\"chunk_shape\" : [ 2, 2 ]"));
+        assertThat(json, containsString("\"name\" : \"crc32c\""));
+        assertThat(json, containsString("\"index_location\" : \"end\""));
+        assertThat(json, containsString("\"shuffle\" : \"bitshuffle\""));
+        assertThat(json, containsString("\"typesize\" : 4"));
+        assertThat(json, containsString("\"fill_value\" : \"NaN\""));
+        assertThat(store.getInputStream("c/1/0"), is(notNullValue()));
+        assertThat(store.getInputStream("c/0/1"), is(nullValue()));
+
+        final ZarrArray reopened = ZarrArray.open(store);
+        assertThat(reopened.getShards(), is(new int[]{4, 8}));
+        assertThat(reopened.getChunks(), is(new int[]{2, 2}));
+        assertThat(Float.isNaN(reopened.getFillValue().floatValue()), is(true));
+        assertThat((float[]) reopened.read(), is(data));
+    }
+
+    @Test
+    public void openArrayWithTransposeGzipAndV2ChunkKeys() throws Exception {
+        write("zarr.json", ("{\"zarr_format\": 3, \"node_type\": \"array\", \"shape\": [2, 5], \"data_type\": \"float32\","
+                            + "\"chunk_grid\": {\"name\": \"regular\", \"configuration\": {\"chunk_shape\": [2, 3]}},"
+                            + "\"chunk_key_encoding\": {\"name\": \"v2\", \"configuration\": {\"separator\": \".\"}},"
+                            + "\"fill_value\": \"NaN\","
+                            + "\"codecs\": [{\"name\": \"transpose\", \"configuration\": {\"order\": [1, 0]}},"
+                            + "{\"name\": \"bytes\", \"configuration\": {\"endian\": \"big\"}},"
+                            + "{\"name\": \"gzip\", \"configuration\": {\"level\": 5}}],"
+                            + "\"attributes\": {\"title\": \"test\"}, \"dimension_names\": [\"y\", \"x\"]}").getBytes(StandardCharsets.UTF_8));
+        // the chunk 0.0 in Fortran order, the chunk 0.1 is missing
+        final ByteBuffer chunk = ByteBuffer.allocate(24).order(ByteOrder.BIG_ENDIAN);
+        for (float v : new float[]{1, 4, 2, 5, 3, 6}) {
+            chunk.putFloat(v);
+        }
+        final ByteArrayOutputStream gzipped = new ByteArrayOutputStream();
+        try (GZIPOutputStream os = new GZIPOutputStream(gzipped)) {
+            os.write(chunk.array());
+        }
+        write("0.0", gzipped.toByteArray());
+
+        final ZarrArray array = ZarrArray.open(store);
+        assertThat(array.getZarrFormat(), is(3));
+        assertThat(array.getCompressor().toString(), is("compressor=gzip/level=5"));
+        assertThat(array.getFilters()[0].toString(), is("filter=transpose/order=[1, 0]"));
+        assertThat((float[]) array.read(), is(new float[]{1, 2, 3, Float.NaN, Float.NaN, 4, 5, 6, Float.NaN, Float.NaN}));
+        assertThat(array.getAttributes().get("title"), is("test"));
+
+        // writing keeps the codecs and the chunk key encoding, attributes keep the other keys
+        array.write(new float[]{7, 8}, new int[]{1, 2}, new int[]{1, 3});
+        array.writeAttributes(TestUtils.createMap("title", "changed"));
+        assertThat(store.getInputStream("0.1"), is(notNullValue()));
+        final ZarrArray reopened = ZarrArray.open(store);
+        assertThat((float[]) reopened.read(), is(new float[]{1, 2, 3, Float.NaN, Float.NaN, 4, 5, 6, 7, 8}));
+        assertThat(new String(read("zarr.json"), StandardCharsets.UTF_8), containsString("dimension_names"));
+        assertThat(reopened.getAttributes().get("title"), is("changed"));
+    }
+
+    @Test
+    public void unsupportedParameters() throws Exception {
+        try {
+            ZarrArray.create(store, new ArrayParams().zarrFormat(3).shape(10).compressor(CompressorFactory.create("zlib")));
+            fail("IllegalArgumentException expected");
+        } catch (IllegalArgumentException expected) {
+            assertThat(expected.getMessage(), is("Compressor id:'zlib' not supported by zarr format 3."));
+        }
+        try {
+            ZarrArray.create(store, new ArrayParams().zarrFormat(3).shape(10).constantChunks(true));
+            fail("IllegalArgumentException expected");
+        } catch (IllegalArgumentException expected) {
+            assertThat(expected.getMessage(), is("Constant chunks are not supported for zarr format 3."));
+        }
+        try {
+            ZarrArray.create(store, new ArrayParams().zarrFormat(4).shape(10));
+            fail("IllegalArgumentException expected");
+        } catch (IllegalArgumentException expected) {
+            assertThat(expected.getMessage(), is("Zarr format 2 or 3 expected but was: 4"));
+        }
+    }
+
+    @Test
+    public void unsupportedCodec() throws Exception {
+        write("zarr.json", ("{\"zarr_format\": 3, \"node_type\": \"array\", \"shape\": [4], \"data_type\": \"int32\","
+                            + "\"chunk_grid\": {\"name\": \"regular\", \"configuration\": {\"chunk_shape\": [4]}},"
+                            + "\"chunk_key_encoding\": {\"name\": \"default\"}, \"fill_value\": 0,"
+                            + "\"codecs\": [{\"name\": \"bytes\"}, {\"name\": \"crc32c\"}]}").getBytes(StandardCharsets.UTF_8));
+        try {
+            ZarrArray.open(store);
+            fail("IOException expected");
+        } catch (IOException expected) {
+            assertThat(expected.getMessage(), startsWith("Codec not supported at this position: 'crc32c'"));
+        }
+    }
+
+    private void write(String key, byte[] bytes) throws IOException {
+        try (OutputStream os = store.getOutputStream(key)) {
+            os.write(bytes);
+        }
+    }
+
+    private byte[] read(String key) throws IOException {
+        try (InputStream is = store.getInputStream(key)) {
+            final ByteArrayOutputStream os = new ByteArrayOutputStream();
+            final byte[] buffer = new byte[4096];
+            for (int n = is.read(buffer); n >= 0; n = is.read(buffer)) {
+                os.write(buffer, 0, n);
+            }
+            return os.toByteArray();
+        }
+    }
+}
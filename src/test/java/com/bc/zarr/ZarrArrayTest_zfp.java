@@ -0,0 +1,128 @@
+/*
+ *
+ * MIT License
+ *
+ * Copyright (c) 2021. Brockmann Consult GmbH (info@brockmann-consult.de)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package com.bc.zarr;
+
+import com.bc.zarr.storage.InMemoryStore;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+import static org.hamcrest.MatcherAssert.*;
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.fail;
+
+public class ZarrArrayTest_zfp {
+
+    private InMemoryStore store;
+
+    @Before
+    public void setUp() {
+        store = new InMemoryStore();
+    }
+
+    @Test
+    public void writeAndRead_smoothVolume() throws Exception {
+        final int[] shape = {20, 30, 40};
+        final float[] data = new float[20 * 30 * 40];
+        for (int i = 0; i < data.length; i++) {
+            final int x = i % 40, y = i / 40 % 30, z = i / 1200;
+            data[i] = (float) (280 + 20 * Math.sin(0.1 * x) * Math.cos(0.07 * y) + 0.5 * z);
+        }
+        final ZarrArray array = ZarrArray.create(store, new ArrayParams()
+                .shape(shape)
+                .chunks(8, 16, 16)
+                .dataType(DataType.f4)
+                .compressor(CompressorFactory.create("jzarr.zfp", "mode", "accuracy", "tolerance", 0.01)));
+        array.write(data, shape, new int[]{0, 0, 0});
+
+        final ZarrArray reopened = ZarrArray.open(store);
+        assertThat(reopened.getCompressor().toString(), is("compressor=jzarr.zfp/mode=accuracy/tolerance=0.01"));
+        final float[] actual = (float[]) reopened.read();
+        for (int i = 0; i < data.length; i++) {
+            assertThat(Math.abs(actual[i] - data[i]), is(lessThanOrEqualTo(0.01f)));
+        }
+
+        // a smooth field needs less than 8 bits per value
+        assertThat(size("0.0.0"), is(lessThan(8 * 16 * 16)));
+    }
+
+    @Test
+    public void create_unsupportedDataType() throws Exception {
+        try {
+            ZarrArray.create(store, new ArrayParams()
+                    .shape(10)
+                    .chunks(10)
+                    .dataType(DataType.i4)
+                    .compressor(CompressorFactory.create("jzarr.zfp", "mode", "rate", "rate", 8)));
+            fail("IllegalArgumentException expected");
+        } catch (IllegalArgumentException expected) {
+            assertThat(expected.getMessage(), is("zfp: only the data types f4 and f8 are supported but the data type of the array was: i4"));
+        }
+    }
+
+    @Test
+    public void create_nonFiniteFillValue() throws Exception {
+        for (Number fillValue : new Number[]{Float.NaN, Double.POSITIVE_INFINITY}) {
+            try {
+                ZarrArray.create(store, new ArrayParams()
+                        .shape(10)
+                        .chunks(4)
+                        .dataType(DataType.f8)
+                        .fillValue(fillValue)
+                        .compressor(CompressorFactory.create("jzarr.zfp", "tolerance", 0.1)));
+                fail("IllegalArgumentException expected");
+            } catch (IllegalArgumentException expected) {
+                assertThat(expected.getMessage(), is("zfp: only finite fill values are supported but the fill value of the array was: " + fillValue));
+            }
+            assertThat(store.getKeysEndingWith(".zarray").isEmpty(), is(true));
+        }
+    }
+
+    @Test
+    public void compress_withoutArray() {
+        final Compressor compressor = CompressorFactory.create("jzarr.zfp", "tolerance", 0.1);
+        try {
+            compressor.compress(ByteBuffer.allocate(16), ByteBuffer.allocate(100));
+            fail("IOException expected");
+        } catch (IOException expected) {
+            assertThat(expected.getMessage(), is("zfp: the data type and the chunk shape are unknown, the compressor can only compress the chunks of an array"));
+        }
+    }
+
+    private int size(String key) throws IOException {
+        try (InputStream is = store.getInputStream(key)) {
+            int size = 0;
+            while (is.read() >= 0) {
+                size++;
+            }
+            return size;
+        }
+    }
+}
@@ -0,0 +1,100 @@
+/*
+ *
+ * MIT License
+ *
+ * Copyright (c) 2021. Brockmann Consult GmbH (info@brockmann-consult.de)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package com.bc.zarr;
+
+import com.bc.zarr.storage.FileSystemStore;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashSet;
+
+import static org.hamcrest.MatcherAssert.*;
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.fail;
+
+public class ZarrGroupTest_zarrFormat3 {
+
+    private Path rootPath;
+
+    @Before
+    public void setUp() throws Exception {
+        rootPath = Files.createTempDirectory("jzarr_v3");
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        ZarrUtils.deleteDirectoryTreeRecursively(rootPath);
+    }
+
+    @Test
+    public void createAndOpenGroupsAndArrays() throws Exception {
+        final ZarrGroup root = ZarrGroup.create(new FileSystemStore(rootPath), TestUtils.createMap("title", "root"), 3);
+        final ZarrGroup sub = root.createSubGroup("sub", TestUtils.createMap("title", "sub"));
+        final ZarrArray array = sub.createArray("data", new ArrayParams().shape(4, 6).chunks(2, 3).dataType(DataType.i4).compressor(null));
+        array.write(new int[]{1, 2, 3, 4, 5, 6}, new int[]{1, 6}, new int[]{0, 0});
+        // arrays in a group in zarr format 3 use the same format, unless another format is set
+        root.createArray("legacy", new ArrayParams().shape(4).zarrFormat(2));
+
+        assertThat(array.getZarrFormat(), is(3));
+        assertThat(Files.exists(rootPath.resolve("sub/data/c/0/1")), is(true));
+        assertThat(Files.exists(rootPath.resolve(".zgroup")), is(false));
+        assertThat(Files.exists(rootPath.resolve("legacy/.zarray")), is(true));
+        final String json = new String(Files.readAllBytes(rootPath.resolve("sub/zarr.json")), StandardCharsets.UTF_8);
+        assertThat(json, containsString("\"node_type\" : \"group\""));
+        assertThat(json, containsString("\"title\" : \"sub\""));
+
+        final ZarrGroup opened = ZarrGroup.open(rootPath);
+        assertThat(opened.getZarrFormat(), is(3));
+        assertThat(opened.getAttributes().get("title"), is("root"));
+        assertThat(opened.getGroupKeys(), is(new HashSet<>(Arrays.asList("sub"))));
+        assertThat(opened.getArrayKeys(), is(new HashSet<>(Arrays.asList("sub/data"))));
+
+        final ZarrGroup openedSub = opened.openSubGroup("sub");
+        assertThat(openedSub.getZarrFormat(), is(3));
+        openedSub.writeAttributes(TestUtils.createMap("title", "changed"));
+        assertThat(opened.openSubGroup("sub").getAttributes().get("title"), is("changed"));
+        final int[] data = (int[]) openedSub.openArray("data").read(new int[]{1, 6}, new int[]{0, 0});
+        assertThat(data, is(new int[]{1, 2, 3, 4, 5, 6}));
+    }
+
+    @Test
+    public void openArrayAsGroup() throws Exception {
+        ZarrArray.create(new FileSystemStore(rootPath), new ArrayParams().shape(4).zarrFormat(3));
+        try {
+            ZarrGroup.open(rootPath);
+            fail("IOException expected");
+        } catch (IOException expected) {
+            assertThat(expected.getMessage(), is("'zarr.json' with node type 'group' expected but node type is 'array'"));
+        }
+    }
+}
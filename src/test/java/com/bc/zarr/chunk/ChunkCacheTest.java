@@ -0,0 +1,145 @@
+/*
+ *
+ * MIT License
+ *
+ * Copyright (c) 2021. Brockmann Consult GmbH (info@brockmann-consult.de)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package com.bc.zarr.chunk;
+
+import org.junit.Before;
+import org.junit.Test;
+import ucar.ma2.Array;
+import ucar.ma2.DataType;
+
+import static org.hamcrest.MatcherAssert.*;
+import static org.hamcrest.Matchers.*;
+
+public class ChunkCacheTest {
+
+    private ChunkCache cache;
+
+    @Before
+    public void setUp() {
+        // room for exactly three int chunks of 10 elements
+        cache = new ChunkCache(120);
+    }
+
+    @Test
+    public void getAndPut_countHitsAndMisses() {
+        final Array chunk = createIntChunk();
+
+        assertThat(cache.get("0.0"), is(nullValue()));
+        cache.put("0.0", chunk, cache.getGeneration());
+
+        assertThat(cache.get("0.0"), is(sameInstance(chunk)));
+        assertThat(cache.getHitCount(), is(1L));
+        assertThat(cache.getMissCount(), is(1L));
+        assertThat(cache.getSizeInBytes(), is(40L));
+    }
+
+    @Test
+    public void put_evictsLeastRecentlyUsedChunks() {
+        cache.put("0.0", createIntChunk(), cache.getGeneration());
+        cache.put("0.1", createIntChunk(), cache.getGeneration());
+        cache.put("0.2", createIntChunk(), cache.getGeneration());
+        cache.get("0.0");
+
+        cache.put("0.3", createIntChunk(), cache.getGeneration());
+
+        assertThat(cache.getEvictionCount(), is(1L));
+        assertThat(cache.getChunkCount(), is(3));
+        assertThat(cache.getSizeInBytes(), is(120L));
+        assertThat(cache.get("0.1"), is(nullValue()));
+        assertThat(cache.get("0.0"), is(notNullValue()));
+        assertThat(cache.get("0.2"), is(notNullValue()));
+        assertThat(cache.get("0.3"), is(notNullValue()));
+    }
+
+    @Test
+    public void put_chunkBiggerThanCacheIsNotCached() {
+        final Array bigChunk = Array.factory(DataType.DOUBLE, new int[]{4, 4});
+
+        cache.put("0.0", bigChunk, cache.getGeneration());
+
+        assertThat(cache.getChunkCount(), is(0));
+        assertThat(cache.getSizeInBytes(), is(0L));
+    }
+
+    @Test
+    public void put_afterInvalidationIsIgnored() {
+        final long generation = cache.getGeneration();
+        cache.invalidate("0.0");
+
+        cache.put("0.0", createIntChunk(), generation);
+
+        assertThat(cache.get("0.0"), is(nullValue()));
+    }
+
+    @Test
+    public void put_afterInvalidationOfAnotherChunkIsCached() {
+        final long generation = cache.getGeneration();
+        cache.invalidate("0.1");
+
+        cache.put("0.0", createIntChunk(), generation);
+
+        assertThat(cache.get("0.0"), is(notNullValue()));
+    }
+
+    @Test
+    public void put_afterTooManyInvalidationsIsIgnored() {
+        final long generation = cache.getGeneration();
+        for (int i = 0; i <= ChunkCache.MAX_INVALIDATED_KEYS; i++) {
+            cache.invalidate("1." + i);
+        }
+
+        cache.put("0.0", createIntChunk(), generation);
+        assertThat(cache.get("0.0"), is(nullValue()));
+
+        cache.put("0.0", createIntChunk(), cache.getGeneration());
+        assertThat(cache.get("0.0"), is(notNullValue()));
+    }
+
+    @Test
+    public void put_afterClearIsIgnored() {
+        final long generation = cache.getGeneration();
+        cache.clear();
+
+        cache.put("0.0", createIntChunk(), generation);
+
+        assertThat(cache.get("0.0"), is(nullValue()));
+    }
+
+    @Test
+    public void invalidate_removesChunk() {
+        cache.put("0.0", createIntChunk(), cache.getGeneration());
+
+        cache.invalidate("0.0");
+
+        assertThat(cache.get("0.0"), is(nullValue()));
+        assertThat(cache.getSizeInBytes(), is(0L));
+    }
+
+    private static Array createIntChunk() {
+        return Array.factory(DataType.INT, new int[]{2, 5});
+    }
+}
@@ -505,6 +505,37 @@ public class ChunkReaderWriterTest_2D {
         assertThat(floats, is(equalTo(read.get1DJavaArray(ucar.ma2.DataType.FLOAT))));
     }
 
+    @Test
+    public void read_Float_LittleEndian_NullCompressor_ChunkFileExist() throws IOException {
+        final byte[] bytes = {0, 0, -128, 63, 0, 0, 0, 64, 0, 0, 64, 64, 0, 0, -128, -65, 0, 0, 0, -64, 0, 0, 64, -64};
+        try (OutputStream outputStream = Files.newOutputStream(jimfsChunkPath)) {
+            outputStream.write(bytes);
+        }
+        final int[] shape = {2, 3};
+        final ChunkReaderWriter readerWriter = ChunkReaderWriter.create(CompressorFactory.nullCompressor, DataType.f4, ByteOrder.LITTLE_ENDIAN, shape, 3, store);
+
+        //execution
+        final Array read = readerWriter.read(chunkStoreKey);
+
+        //verification
+        assertThat(read.get1DJavaArray(ucar.ma2.DataType.FLOAT), is(equalTo(new float[]{1, 2, 3, -1, -2, -3})));
+    }
+
+    @Test
+    public void read_Float_NullCompressor_ChunkFileTooShort() throws IOException {
+        try (OutputStream outputStream = Files.newOutputStream(jimfsChunkPath)) {
+            outputStream.write(new byte[20]);
+        }
+        final ChunkReaderWriter readerWriter = ChunkReaderWriter.create(CompressorFactory.nullCompressor, DataType.f4, ByteOrder.BIG_ENDIAN, new int[]{2, 3}, 3, store);
+
+        try {
+            readerWriter.read(chunkStoreKey);
+            Assert.fail("IOException expected");
+        } catch (IOException expected) {
+            assertThat(expected.getMessage(), is("Chunk '0.0' contains 20 bytes but 24 bytes are expected."));
+        }
+    }
+
     @Test
     public void writeRead_Float_Fill_ZipCompressor() throws IOException {
         final Compressor compressor = CompressorFactory.create("zlib", "level", 1);
@@ -0,0 +1,147 @@
+/*
+ *
+ * MIT License
+ *
+ * Copyright (c) 2021. Brockmann Consult GmbH (info@brockmann-consult.de)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package com.bc.zarr.chunk;
+
+import com.bc.zarr.Compressor;
+import com.bc.zarr.CompressorFactory;
+import com.bc.zarr.DataType;
+import com.bc.zarr.storage.InMemoryStore;
+import org.junit.Before;
+import org.junit.Test;
+import ucar.ma2.Array;
+import ucar.ma2.InvalidRangeException;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import static org.hamcrest.MatcherAssert.*;
+import static org.hamcrest.Matchers.*;
+
+public class ChunkReaderWriterTest_directBuffers {
+
+    private final int[] chunkShape = {4, 5};
+    private InMemoryStore store;
+    private DirectCompressor compressor;
+
+    @Before
+    public void setUp() {
+        store = new InMemoryStore();
+        compressor = new DirectCompressor();
+    }
+
+    @Test
+    public void writeAndRead_float_throughDirectBuffers() throws IOException, InvalidRangeException {
+        final ChunkReaderWriter readerWriter = ChunkReaderWriter.create(compressor, DataType.f4, ByteOrder.LITTLE_ENDIAN, chunkShape, 0, store);
+        final float[] data = new float[20];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = i * 1.5f;
+        }
+
+        readerWriter.write("0.0", Array.factory(ucar.ma2.DataType.FLOAT, chunkShape, data));
+        final float[] target = new float[6];
+        readerWriter.read("0.0", target, new int[]{2, 3}, new int[]{1, 2});
+
+        assertThat(compressor.directSources, is(1));
+        assertThat(compressor.directResults, is(1));
+        assertThat((float[]) readerWriter.read("0.0").getStorage(), is(equalTo(data)));
+        assertThat(target, is(equalTo(new float[]{7 * 1.5f, 8 * 1.5f, 9 * 1.5f, 12 * 1.5f, 13 * 1.5f, 14 * 1.5f})));
+    }
+
+    @Test
+    public void writeAndRead_byte_throughDirectBuffers() throws IOException, InvalidRangeException {
+        final ChunkReaderWriter readerWriter = ChunkReaderWriter.create(compressor, DataType.i1, null, chunkShape, 0, store);
+        final byte[] data = new byte[20];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte) (i + 1);
+        }
+
+        readerWriter.write("0.0", Array.factory(ucar.ma2.DataType.BYTE, chunkShape, data));
+        final byte[] target = new byte[4];
+        readerWriter.read("0.0", target, new int[]{2, 2}, new int[]{2, 3});
+
+        assertThat((byte[]) readerWriter.read("0.0").getStorage(), is(equalTo(data)));
+        assertThat(target, is(equalTo(new byte[]{14, 15, 19, 20})));
+    }
+
+    /**
+     * A null compressor preferring direct buffers, which counts the direct buffers it gets.
+     */
+    private static class DirectCompressor extends Compressor {
+
+        private int directSources;
+        private int directResults;
+
+        @Override
+        public String getId() {
+            return "direct";
+        }
+
+        @Override
+        public String toString() {
+            return getId();
+        }
+
+        @Override
+        public boolean isDirectBufferPreferred() {
+            return true;
+        }
+
+        @Override
+        public void compress(InputStream is, OutputStream os) throws IOException {
+            CompressorFactory.nullCompressor.compress(is, os);
+        }
+
+        @Override
+        public int maxCompressedLength(int uncompressedLength) {
+            return uncompressedLength;
+        }
+
+        @Override
+        public int compress(ByteBuffer source, ByteBuffer target) throws IOException {
+            if (source.isDirect() && target.isDirect()) {
+                directSources++;
+            }
+            return super.compress(source, target);
+        }
+
+        @Override
+        public void uncompress(InputStream is, OutputStream os) throws IOException {
+            CompressorFactory.nullCompressor.uncompress(is, os);
+        }
+
+        @Override
+        public int uncompress(ByteBuffer source, ByteBuffer target) throws IOException {
+            if (target.isDirect()) {
+                directResults++;
+            }
+            return super.uncompress(source, target);
+        }
+    }
+}
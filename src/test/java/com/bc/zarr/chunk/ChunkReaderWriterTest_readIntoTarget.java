@@ -0,0 +1,182 @@
+/*
+ *
+ * MIT License
+ *
+ * Copyright (c) 2021. Brockmann Consult GmbH (info@brockmann-consult.de)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package com.bc.zarr.chunk;
+
+import com.bc.zarr.CompressorFactory;
+import com.bc.zarr.DataType;
+import com.bc.zarr.ZarrUtils;
+import com.bc.zarr.storage.InMemoryStore;
+import com.bc.zarr.ucar.NetCDF_Util;
+import com.bc.zarr.ucar.PartialDataCopier;
+import org.junit.Before;
+import org.junit.Test;
+import ucar.ma2.Array;
+import ucar.ma2.InvalidRangeException;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.hamcrest.MatcherAssert.*;
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.fail;
+
+public class ChunkReaderWriterTest_readIntoTarget {
+
+    private final int[] chunkShape = {3, 4, 5};
+    private final int[][] targetShapes = {{3, 4, 5}, {2, 2, 2}, {7, 9, 11}, {1, 1, 20}};
+    private final int[][] offsets = {{0, 0, 0}, {1, 2, 3}, {-2, -3, -4}, {2, -1, 0}, {1, 3, -15}, {5, 0, 0}};
+    private InMemoryStore store;
+
+    @Before
+    public void setUp() {
+        store = new InMemoryStore();
+    }
+
+    @Test
+    public void readIntoTarget_equalsPartialCopyOfChunk() throws IOException, InvalidRangeException {
+        for (DataType dataType : DataType.values()) {
+            for (ByteOrder order : new ByteOrder[]{ByteOrder.BIG_ENDIAN, ByteOrder.LITTLE_ENDIAN}) {
+                final ChunkReaderWriter readerWriter = ChunkReaderWriter.create(CompressorFactory.create("zlib"), dataType, order, chunkShape, 0, store);
+                final Object chunkData = ZarrUtils.createDataBuffer(dataType, chunkShape);
+                final Array chunk = NetCDF_Util.createArrayWithGivenStorage(chunkData, chunkShape);
+                for (int i = 0; i < chunk.getSize(); i++) {
+                    chunk.setInt(i, i + 1);
+                }
+                readerWriter.write("chunk", chunk);
+                assertReadIntoTargetEqualsPartialCopy(readerWriter, dataType, "chunk");
+            }
+        }
+    }
+
+    @Test
+    public void readIntoTarget_uncompressedChunk_readsOnlyTheOverlappingBytes() throws IOException, InvalidRangeException {
+        final List<String> ranges = new ArrayList<>();
+        store = new InMemoryStore() {
+            @Override
+            public ByteBuffer getBytes(String key, long offset, int length) {
+                ranges.add(offset + "+" + length);
+                return super.getBytes(key, offset, length);
+            }
+        };
+        for (DataType dataType : DataType.values()) {
+            for (ByteOrder order : new ByteOrder[]{ByteOrder.BIG_ENDIAN, ByteOrder.LITTLE_ENDIAN}) {
+                final ChunkReaderWriter readerWriter = ChunkReaderWriter.create(CompressorFactory.nullCompressor, dataType, order, chunkShape, 0, store);
+                final Object chunkData = ZarrUtils.createDataBuffer(dataType, chunkShape);
+                final Array chunk = NetCDF_Util.createArrayWithGivenStorage(chunkData, chunkShape);
+                for (int i = 0; i < chunk.getSize(); i++) {
+                    chunk.setInt(i, i + 1);
+                }
+                readerWriter.write("chunk", chunk);
+                assertReadIntoTargetEqualsPartialCopy(readerWriter, dataType, "chunk");
+            }
+        }
+
+        final ChunkReaderWriter readerWriter = ChunkReaderWriter.create(CompressorFactory.nullCompressor, DataType.i4, ByteOrder.BIG_ENDIAN, chunkShape, null, store);
+        readerWriter.write("chunk", Array.factory(ucar.ma2.DataType.INT, chunkShape));
+        assertThat(store.getSize("chunk"), is(240L));
+        ranges.clear();
+        // the elements from 1,2,3 up to 2,3,4 of the chunk
+        readerWriter.read("chunk", new int[8], new int[]{2, 2, 2}, new int[]{1, 2, 3});
+        assertThat(ranges, is(Collections.singletonList(33 * 4 + "+" + 27 * 4)));
+    }
+
+    @Test
+    public void readIntoTarget_missingChunk() throws IOException, InvalidRangeException {
+        for (DataType dataType : DataType.values()) {
+            final ChunkReaderWriter readerWriter = ChunkReaderWriter.create(CompressorFactory.nullCompressor, dataType, ByteOrder.BIG_ENDIAN, chunkShape, 7, store);
+            assertReadIntoTargetEqualsPartialCopy(readerWriter, dataType, "missing");
+        }
+    }
+
+    @Test
+    public void readIntoTarget_missingChunk_fillsOnlyOverlappingRegion() throws IOException, InvalidRangeException {
+        final ChunkReaderWriter readerWriter = ChunkReaderWriter.create(CompressorFactory.nullCompressor, DataType.f4, ByteOrder.BIG_ENDIAN, new int[]{2, 2}, Float.NaN, store);
+        final float[] target = {
+                1, 2, 3,
+                4, 5, 6,
+                7, 8, 9
+        };
+
+        readerWriter.read("missing", target, new int[]{3, 3}, new int[]{-1, -2});
+
+        assertThat(target, is(equalTo(new float[]{
+                1, 2, 3,
+                4, 5, Float.NaN,
+                7, 8, Float.NaN
+        })));
+    }
+
+    @Test
+    public void readIntoTarget_missingChunk_withoutFillValue() throws IOException, InvalidRangeException {
+        final ChunkReaderWriter readerWriter = ChunkReaderWriter.create(CompressorFactory.nullCompressor, DataType.i8, ByteOrder.BIG_ENDIAN, new int[]{2, 2}, null, store);
+        final long[] target = {1, 2, 3, 4};
+
+        readerWriter.read("missing", target, new int[]{2, 2}, new int[]{0, 1});
+
+        assertThat(target, is(equalTo(new long[]{0, 2, 0, 4})));
+    }
+
+    private void assertReadIntoTargetEqualsPartialCopy(ChunkReaderWriter readerWriter, DataType dataType, String storeKey) throws IOException, InvalidRangeException {
+        final Array chunk = readerWriter.read(storeKey);
+        for (int[] targetShape : targetShapes) {
+            for (int[] offset : offsets) {
+                if (!overlaps(offset, targetShape)) {
+                    final Object untouched = ZarrUtils.createDataBufferFilledWith(-1, dataType, targetShape);
+                    final Object actual = ZarrUtils.createDataBufferFilledWith(-1, dataType, targetShape);
+                    try {
+                        readerWriter.read(storeKey, actual, targetShape, offset);
+                        fail("InvalidRangeException expected");
+                    } catch (InvalidRangeException expected) {
+                        assertThat(expected.getMessage(), startsWith("Source and target do not overlap"));
+                    }
+                    assertThat(actual, is(equalTo(untouched)));
+                    continue;
+                }
+                final Object expected = ZarrUtils.createDataBufferFilledWith(-1, dataType, targetShape);
+                PartialDataCopier.copy(offset, chunk, NetCDF_Util.createArrayWithGivenStorage(expected, targetShape));
+
+                final Object actual = ZarrUtils.createDataBufferFilledWith(-1, dataType, targetShape);
+                readerWriter.read(storeKey, actual, targetShape, offset);
+
+                assertThat(actual, is(equalTo(expected)));
+            }
+        }
+    }
+
+    private boolean overlaps(int[] offset, int[] targetShape) {
+        for (int i = 0; i < offset.length; i++) {
+            if (offset[i] >= chunkShape[i] || -offset[i] >= targetShape[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,291 @@
+/*
+ *
+ * MIT License
+ *
+ * Copyright (c) 2021. Brockmann Consult GmbH (info@brockmann-consult.de)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+package com.bc.zarr.codec;
+
+import org.junit.Test;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.hamcrest.MatcherAssert.*;
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.fail;
+
+public class BloscTest {
+
+    private static final String[] CNAMES = {"blosclz", "lz4", "lz4hc", "zlib", "zstd"};
+
+    // written by c-blosc with cname=lz4, clevel=5, shuffle=1, typesize=1, input: createPattern()
+    private static final byte[] NATIVE_LZ4 = {2, 1, 33, 1, -36, 0, 0, 0, -36, 0, 0, 0, 73, 0, 0, 0, 20, 0, 0, 0, 49,
+            0, 0, 0, -5, 17, 0, 0, 0, 100, 0, 0, 0, 22, 0, 0, 0, 100, 0, 0, 0, 22, 0, 0, 0, 22, 0, 0, 0, 22, 0, 0, 0,
+            100, 0, 0, 0, 100, 32, 0, 0, 20, 0, 15, 44, 0, -111, 80, 22, 0, 0, 0, 100};
+
+    @Test
+    public void decompress_containerOfTheReferenceImplementation() throws IOException {
+        final byte[] output = new byte[300];
+        final int n = Blosc.decompress(NATIVE_LZ4, 0, NATIVE_LZ4.length, output, 3, 297);
+        assertThat(n, is(220));
+        assertThat(Arrays.equals(Arrays.copyOfRange(output, 3, 223), createPattern()), is(true));
+    }
+
+    @Test
+    public void compress_writesTheContainerOfTheReferenceImplementation() throws IOException {
+        final byte[] input = createPattern();
+        final byte[] compressed = new byte[Blosc.maxCompressedLength(input.length)];
+        final int n = Blosc.compress(input, 0, input.length, compressed, 0, compressed.length, "lz4", 5, Blosc.SHUFFLE, 1, 0);
+        assertThat(Arrays.equals(Arrays.copyOf(compressed, n), NATIVE_LZ4), is(true));
+    }
+
+    @Test
+    public void compress_decompress_allCodecsAndShuffles() throws IOException {
+        final byte[][] inputs = {createInts(4321), createInts(100000), createDoubles(30001)};
+        for (byte[] input : inputs) {
+            final byte[] source = new byte[input.length + 7];
+            System.arraycopy(input, 0, source, 7, input.length);
+            for (String cname : CNAMES) {
+                for (int clevel : new int[]{1, 5, 9}) {
+                    for (int shuffle : new int[]{Blosc.NOSHUFFLE, Blosc.SHUFFLE, Blosc.BITSHUFFLE}) {
+                        for (int typesize : new int[]{1, 3, 4, 8}) {
+                            for (int blocksize : new int[]{0, 200, 2000}) {
+                                final String testCase = cname + "/" + clevel + "/" + shuffle + "/" + typesize + "/" + blocksize + "/" + input.length;
+                                final byte[] compressed = new byte[Blosc.maxCompressedLength(input.length) + 5];
+                                final int n = Blosc.compress(source, 7, input.length, compressed, 5, compressed.length - 5,
+                                                             cname, clevel, shuffle, typesize, blocksize);
+                                assertThat(testCase, n, is(lessThanOrEqualTo(Blosc.maxCompressedLength(input.length))));
+                                assertThat(testCase, Blosc.getCompressedSize(compressed, 5), is(n));
+                                assertThat(testCase, Blosc.getUncompressedSize(compressed, 5), is(input.length));
+
+                                final byte[] output = new byte[input.length + 2];
+                                assertThat(testCase, Blosc.decompress(compressed, 5, n, output, 1, input.length), is(input.length));
+                                assertThat(testCase, Arrays.equals(Arrays.copyOfRange(output, 1, input.length + 1), input), is(true));
+                            }
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void compress_shuffleImprovesTheRatioOfNumericData() throws IOException {
+        final byte[] input = createDoubles(30000);
+        final byte[] compressed = new byte[Blosc.maxCompressedLength(input.length)];
+        for (String cname : CNAMES) {
+            final int plain = Blosc.compress(input, 0, input.length, compressed, 0, compressed.length, cname, 5, Blosc.NOSHUFFLE, 8, 0);
+            final int shuffled = Blosc.compress(input, 0, input.length, compressed, 0, compressed.length, cname, 5, Blosc.SHUFFLE, 8, 0);
+            final int bitShuffled = Blosc.compress(input, 0, input.length, compressed, 0, compressed.length, cname, 5, Blosc.BITSHUFFLE, 8, 0);
+            assertThat(cname, shuffled, is(lessThan(plain)));
+            assertThat(cname, bitShuffled, is(lessThan(plain)));
+        }
+    }
+
+    @Test
+    public void compress_plainCopies() throws IOException {
+        final Random random = new Random(5);
+        final byte[] noise = new byte[10000];
+        random.nextBytes(noise);
+        final byte[] small = Arrays.copyOf(createInts(100), 127);
+        final byte[] ints = createInts(1000);
+        // incompressible data, buffers below 128 bytes and clevel 0 are copied
+        final Object[][] cases = {{noise, 5}, {small, 5}, {ints, 0}};
+        for (Object[] c : cases) {
+            final byte[] input = (byte[]) c[0];
+            final byte[] compressed = new byte[Blosc.maxCompressedLength(input.length)];
+            for (String cname : CNAMES) {
+                final int n = Blosc.compress(input, 0, input.length, compressed, 0, compressed.length, cname, (Integer) c[1], Blosc.SHUFFLE, 4, 0);
+                assertThat(n, is(input.length + Blosc.OVERHEAD));
+                assertThat(compressed[2] & 0x2, is(0x2));
+                assertThat(Arrays.equals(Arrays.copyOfRange(compressed, Blosc.OVERHEAD, n), input), is(true));
+
+                final byte[] output = new byte[input.length];
+                assertThat(Blosc.decompress(compressed, 0, n, output, 0, output.length), is(input.length));
+                assertThat(Arrays.equals(output, input), is(true));
+            }
+        }
+    }
+
+    @Test
+    public void compress_emptyInput() throws IOException {
+        final byte[] compressed = new byte[Blosc.OVERHEAD];
+        assertThat(Blosc.compress(new byte[0], 0, 0, compressed, 0, compressed.length, "lz4", 5, Blosc.SHUFFLE, 4, 0), is(Blosc.OVERHEAD));
+        assertThat(Blosc.decompress(compressed, 0, compressed.length, new byte[0], 0, 0), is(0));
+    }
+
+    @Test
+    public void compress_invalidParameters() throws IOException {
+        final byte[] input = createInts(100);
+        final byte[] compressed = new byte[Blosc.maxCompressedLength(input.length)];
+        try {
+            Blosc.compress(input, 0, input.length, compressed, 0, compressed.length, "snappy", 5, Blosc.SHUFFLE, 4, 0);
+            fail("IllegalArgumentException expected");
+        } catch (IllegalArgumentException expected) {
+            assertThat(expected.getMessage(), is("blosc: compressor not supported: 'snappy'"));
+        }
+        try {
+            Blosc.compress(input, 0, input.length, compressed, 0, compressed.length, "lz4", 10, Blosc.SHUFFLE, 4, 0);
+            fail("IllegalArgumentException expected");
+        } catch (IllegalArgumentException expected) {
+            assertThat(expected.getMessage(), is("blosc: clevel parameter must be between 0 and 9 but was: 10"));
+        }
+    }
+
+    @Test
+    public void compress_targetTooSmall() throws IOException {
+        final byte[] input = createInts(1000);
+        final byte[] compressed = new byte[Blosc.maxCompressedLength(input.length)];
+        final int n = Blosc.compress(input, 0, input.length, compressed, 0, compressed.length, "zstd", 5, Blosc.SHUFFLE, 4, 0);
+        // the compressed container does not fit, but the plain copy does not fit either
+        try {
+            Blosc.compress(input, 0, input.length, new byte[n - 1], 0, n - 1, "zstd", 5, Blosc.SHUFFLE, 4, 0);
+            fail("IOException expected");
+        } catch (IOException expected) {
+            assertThat(expected.getMessage(), is("blosc: destination buffer too small"));
+        }
+    }
+
+    @Test
+    public void decompress_invalidContainers() throws IOException {
+        final byte[] input = createInts(1000);
+        final byte[] compressed = new byte[Blosc.maxCompressedLength(input.length)];
+        final int n = Blosc.compress(input, 0, input.length, compressed, 0, compressed.length, "blosclz", 5, Blosc.SHUFFLE, 4, 0);
+        try {
+            Blosc.decompress(compressed, 0, 10, new byte[4000], 0, 4000);
+            fail("EOFException expected");
+        } catch (EOFException expected) {
+            assertThat(expected.getMessage(), is("blosc: header of 16 bytes expected but only 10 available"));
+        }
+        try {
+            Blosc.decompress(compressed, 0, n - 1, new byte[4000], 0, 4000);
+            fail("EOFException expected");
+        } catch (EOFException expected) {
+            assertThat(expected.getMessage(), is("blosc: " + n + " compressed bytes expected but only " + (n - 1) + " available"));
+        }
+        try {
+            Blosc.decompress(compressed, 0, n, new byte[3999], 0, 3999);
+            fail("IOException expected");
+        } catch (IOException expected) {
+            assertThat(expected.getMessage(), is("blosc: destination buffer too small"));
+        }
+        final byte[] snappy = Arrays.copyOf(compressed, n);
+        snappy[2] = (byte) (snappy[2] & 0x1F | 2 << 5);
+        try {
+            Blosc.decompress(snappy, 0, n, new byte[4000], 0, 4000);
+            fail("IOException expected");
+        } catch (IOException expected) {
+            assertThat(expected.getMessage(), is("blosc: compressor code 2 not supported"));
+        }
+    }
+
+    @Test
+    public void decompress_corruptedData() {
+        final byte[] input = createInts(5000);
+        final Random random = new Random(3);
+        for (String cname : CNAMES) {
+            final byte[] compressed = new byte[Blosc.maxCompressedLength(input.length)];
+            final int n;
+            try {
+                n = Blosc.compress(input, 0, input.length, compressed, 0, compressed.length, cname, 5, Blosc.SHUFFLE, 4, 1000);
+            } catch (IOException e) {
+                throw new AssertionError(e);
+            }
+            for (int i = 0; i < 500; i++) {
+                final byte[] corrupted = Arrays.copyOf(compressed, n);
+                corrupted[Blosc.OVERHEAD + random.nextInt(n - Blosc.OVERHEAD)] ^= 1 << random.nextInt(8);
+                try {
+                    Blosc.decompress(corrupted, 0, n, new byte[input.length], 0, input.length);
+                } catch (IOException expected) {
+                    // corrupted data is either detected or decoded into wrong bytes, but never causes other exceptions
+                }
+            }
+        }
+    }
+
+    @Test
+    public void decompress_corruptedHeader() throws IOException {
+        final byte[] input = new byte[20000];
+        for (int i = 0; i < input.length; i++) {
+            input[i] = (byte) (i / 1000);
+        }
+        for (String cname : CNAMES) {
+            for (int shuffle : new int[]{Blosc.SHUFFLE, Blosc.BITSHUFFLE}) {
+                final byte[] compressed = new byte[Blosc.maxCompressedLength(input.length)];
+                final int n = Blosc.compress(input, 0, input.length, compressed, 0, compressed.length, cname, 5, shuffle, 4, 1000);
+                assertThat("not stored as plain copy", compressed[2] & 0x2, is(0));
+
+                final byte[] hugeBlocks = Arrays.copyOf(compressed, n);
+                Bytes.writeInt(hugeBlocks, 8, Integer.MAX_VALUE);
+                assertCorrupted(hugeBlocks, input.length);
+
+                final byte[] blocksLargerThanData = Arrays.copyOf(compressed, n);
+                Bytes.writeInt(blocksLargerThanData, 8, input.length + 1);
+                assertCorrupted(blocksLargerThanData, input.length);
+
+                final byte[] hugeTypesize = Arrays.copyOf(compressed, n);
+                Bytes.writeInt(hugeTypesize, 8, 100);
+                hugeTypesize[2] &= ~0x10;
+                hugeTypesize[3] = (byte) 200;
+                assertCorrupted(hugeTypesize, input.length);
+            }
+        }
+    }
+
+    private static void assertCorrupted(byte[] container, int nbytes) {
+        try {
+            Blosc.decompress(container, 0, container.length, new byte[nbytes], 0, nbytes);
+            fail("IOException expected");
+        } catch (IOException expected) {
+            assertThat(expected.getMessage(), is("blosc: corrupted data"));
+        }
+    }
+
+    private static byte[] createPattern() {
+        final int[] pattern = {100, 22, 100, 22, 22, 22, 100, 100, 100, 22, 100};
+        final ByteBuffer buffer = ByteBuffer.allocate(5 * pattern.length * 4);
+        for (int i = 0; i < 5; i++) {
+            buffer.asIntBuffer().position(i * pattern.length).put(pattern);
+        }
+        return buffer.array();
+    }
+
+    private static byte[] createInts(int count) {
+        final ByteBuffer buffer = ByteBuffer.allocate(4 * count);
+        for (int i = 0; i < count; i++) {
+            buffer.putInt(i);
+        }
+        return buffer.array();
+    }
+
+    private static byte[] createDoubles(int count) {
+        final ByteBuffer buffer = ByteBuffer.allocate(8 * count);
+        for (int i = 0; i < count; i++) {
+            buffer.putDouble(Math.sin(i * 0.001) * 100);
+        }
+        return buffer.array();
+    }
+}
@@ -0,0 +1,259 @@
+/*
+ *
+ * MIT License
+ *
+ * Copyright (c) 2021. Brockmann Consult GmbH (info@brockmann-consult.de)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package com.bc.zarr.codec;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.hamcrest.MatcherAssert.*;
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.fail;
+
+public class Lz4Test {
+
+    // written by LZ4_compress_fast of the lz4 reference library 1.9.4, acceleration 1, input: createText(1000)
+    private static final String TEXT_BLOCK =
+            "f01d2c202c2067726f7570636f6465636368756e6b207a6172722e0a6172726179626c6f73632e0a2073746f72651800" +
+            "012700013100212e0a070011202300010500212c201e00024500013200010b00011500064e00021900006e00010a0001" +
+            "1900012800026500015500011000035400035600011800026d00015100011000013d00014700010f0000a100060e0001" +
+            "1d00212c20070012209b0003b400015f00012900003200712e0a2c20202e0a6f00010500001500122c6b000125000142" +
+            "00011a00017a00063e00017500011e00010a00012300003d00212e0a2400010500011500010a00001a00014100212e0a" +
+            "5700010c00013900010f00008700012800015100010a0001180002c100012d00014c00013200010a00011f0001290003" +
+            "c401011100012000006c00112cc901000a0003dd00015900013a0002f301001b00013f00032000016400010500012a00" +
+            "001f00000400010d00011700000e0000040008c10001190006050001830001550007690032202e0a7200212e0a2a0001" +
+            "1b0001a800012a00010a00052400037a01011a00012900060500000d02010e00023200012300021f01033b0101180001" +
+            "b000018800083b02039401013f00018500033401010c00012e00081d02015b00062c00010a00015d0000ff0000040040" +
+            "2e0a2e0a080013206400028700014800013c00018500010500011400010500016b00025802033600015800010500012b" +
+            "00013a00049800008b03017300011b00012500012000014b00122c2d03048901002c00035c01016500012400009f0090" +
+            "6172726179636f6465";
+
+    // written by LZ4_compress_fast of the lz4 reference library 1.9.4, acceleration 8, input: createText(1000)
+    private static final String TEXT_BLOCK_ACCELERATED =
+            "f19a2c202c2067726f7570636f6465636368756e6b207a6172722e0a6172726179626c6f73632e0a2073746f72657a61" +
+            "7272636f64656367726f75702e0a67726f757020626c6f7363626c6f73632c20636f6465636368756e6b2073746f7265" +
+            "6368756e6b636f6465636172726179626c6f736373746f7265636f64656373746f726561727261796368756e6b207374" +
+            "6f726567726f75706368756e6b626c6f73632c202c20636f6465631800026d0001ab0001100001a400015100010f0096" +
+            "7a61727273746f72651d00212c202400212020350003b400a06368756e6b73746f72653200f70c2e0a2c20202e0a626c" +
+            "6f7363626c6f73637a6172722c20626c6f73a300067a00063e00017500016000010a0001230002520001240001050001" +
+            "1500010a00001a0003860001b300010c00013900010f00008700012800015100010a0001180002c100012d00014c0001" +
+            "3200010a00011f0001290003c401011100012000006c00202c200600000400212e0a3000015900010a0015202500013f" +
+            "00032000016400010500012a00003a00000400010d00011700000e0000040008c1000119000605000183000155000769" +
+            "00f10b202e0a2067726f75702e0a636f646563626c6f736367726f75702a00018d00052400132ce50100a40101440006" +
+            "050000ad02010e00023200013d00021f01033b0101180001b000018800083b02039401013f0001af00033401010c0001" +
+            "2e00081d02015b00062c00010a00015d0000ff00000400a22e0a2e0a7a617272202c5a02028700014800013c00018500" +
+            "010500011400010500016b0002de00039a00015800010500012b00013a00049800000001017300011b00012500012000" +
+            "014b00212c200700048901002c00035c01016500011d0000a700906172726179636f6465";
+
+    @Test
+    public void decompress_blocksOfTheReferenceImplementation() throws IOException {
+        for (String block : new String[]{TEXT_BLOCK, TEXT_BLOCK_ACCELERATED}) {
+            final byte[] compressed = hex(block);
+            final byte[] output = new byte[1010];
+
+            final int n = Lz4.decompress(compressed, 0, compressed.length, output, 5, 1000);
+
+            assertThat(n, is(1000));
+            assertThat(Arrays.equals(Arrays.copyOfRange(output, 5, 1005), createText(1000)), is(true));
+        }
+    }
+
+    @Test
+    public void compress_writesTheBlocksOfTheReferenceImplementation() throws IOException {
+        final byte[] input = createText(1000);
+        final byte[] compressed = new byte[Lz4.maxCompressedLength(input.length)];
+
+        int n = Lz4.compress(input, 0, input.length, compressed, 0, compressed.length, 1);
+        assertThat(Arrays.equals(Arrays.copyOf(compressed, n), hex(TEXT_BLOCK)), is(true));
+
+        n = Lz4.compress(input, 0, input.length, compressed, 0, compressed.length, 8);
+        assertThat(Arrays.equals(Arrays.copyOf(compressed, n), hex(TEXT_BLOCK_ACCELERATED)), is(true));
+    }
+
+    @Test
+    public void compress_decompress_allKindsOfData() throws IOException {
+        final Random random = new Random(7);
+        final byte[] noise = new byte[150000];
+        random.nextBytes(noise);
+        final byte[][] inputs = {
+                new byte[0],
+                {42},
+                Arrays.copyOf(createText(100), 12),
+                Arrays.copyOf(createText(100), 13),
+                new byte[300000],
+                createText(200000),
+                createInts(100000),
+                noise
+        };
+        for (byte[] input : inputs) {
+            // the bytes before the input must not be referenced
+            final byte[] source = new byte[input.length + 7];
+            Arrays.fill(source, 0, 7, (byte) 'z');
+            System.arraycopy(input, 0, source, 7, input.length);
+            int previousLength = -1;
+            for (int acceleration : new int[]{1, 4, 100}) {
+                final byte[] compressed = new byte[Lz4.maxCompressedLength(input.length) + 5];
+                final int n = Lz4.compress(source, 7, input.length, compressed, 5, compressed.length - 5, acceleration);
+                assertThat(n <= Lz4.maxCompressedLength(input.length), is(true));
+                assertThat(n >= previousLength, is(true));
+                previousLength = n;
+
+                final byte[] output = new byte[input.length + 2];
+                assertThat(Lz4.decompress(compressed, 5, n, output, 1, input.length), is(input.length));
+                assertThat(Arrays.equals(Arrays.copyOfRange(output, 1, input.length + 1), input), is(true));
+            }
+        }
+    }
+
+    @Test
+    public void compressHC_decompress_allKindsOfData() throws IOException {
+        final Random random = new Random(7);
+        final byte[] noise = new byte[150000];
+        random.nextBytes(noise);
+        final byte[][] inputs = {
+                new byte[0],
+                {42},
+                Arrays.copyOf(createText(100), 13),
+                new byte[300000],
+                createText(200000),
+                createInts(100000),
+                noise
+        };
+        for (byte[] input : inputs) {
+            final byte[] source = new byte[input.length + 7];
+            Arrays.fill(source, 0, 7, (byte) 'z');
+            System.arraycopy(input, 0, source, 7, input.length);
+            final byte[] compressed = new byte[Lz4.maxCompressedLength(input.length) + 5];
+            final int fastLength = Lz4.compress(source, 7, input.length, compressed, 5, compressed.length - 5, 1);
+            for (int level : new int[]{1, Lz4.DEFAULT_HC_LEVEL, Lz4.MAX_HC_LEVEL}) {
+                final int n = Lz4.compressHC(source, 7, input.length, compressed, 5, compressed.length - 5, level);
+                assertThat(n, is(lessThanOrEqualTo(fastLength)));
+
+                final byte[] output = new byte[input.length + 2];
+                assertThat(Lz4.decompress(compressed, 5, n, output, 1, input.length), is(input.length));
+                assertThat(Arrays.equals(Arrays.copyOfRange(output, 1, input.length + 1), input), is(true));
+            }
+        }
+    }
+
+    @Test
+    public void compressHC_targetTooSmall() throws IOException {
+        final byte[] input = createText(10000);
+        final byte[] compressed = new byte[Lz4.maxCompressedLength(input.length)];
+        final int n = Lz4.compressHC(input, 0, input.length, compressed, 0, compressed.length, Lz4.DEFAULT_HC_LEVEL);
+        try {
+            Lz4.compressHC(input, 0, input.length, new byte[n - 1], 0, n - 1, Lz4.DEFAULT_HC_LEVEL);
+            fail("IOException expected");
+        } catch (IOException expected) {
+            assertThat(expected.getMessage(), is("lz4: destination buffer too small"));
+        }
+    }
+
+    @Test
+    public void compress_targetTooSmall() throws IOException {
+        final byte[] input = createText(10000);
+        final byte[] compressed = new byte[Lz4.maxCompressedLength(input.length)];
+        final int n = Lz4.compress(input, 0, input.length, compressed, 0, compressed.length, 1);
+        try {
+            Lz4.compress(input, 0, input.length, new byte[n - 1], 0, n - 1, 1);
+            fail("IOException expected");
+        } catch (IOException expected) {
+            assertThat(expected.getMessage(), is("lz4: destination buffer too small"));
+        }
+    }
+
+    @Test
+    public void decompress_targetTooSmall() {
+        final byte[] compressed = hex(TEXT_BLOCK);
+        try {
+            Lz4.decompress(compressed, 0, compressed.length, new byte[999], 0, 999);
+            fail("IOException expected");
+        } catch (IOException expected) {
+            assertThat(expected.getMessage(), is("lz4: destination buffer too small"));
+        }
+    }
+
+    @Test
+    public void decompress_corruptedData() {
+        final byte[] text = createText(1000);
+        final byte[] compressed = hex(TEXT_BLOCK);
+        final Random random = new Random(3);
+        for (int i = 0; i < 2000; i++) {
+            final byte[] corrupted;
+            if (i % 2 == 0) {
+                corrupted = Arrays.copyOf(compressed, 1 + random.nextInt(compressed.length - 1));
+            } else {
+                corrupted = compressed.clone();
+                corrupted[random.nextInt(corrupted.length)] ^= 1 << random.nextInt(8);
+            }
+            try {
+                final byte[] output = new byte[1000];
+                final int n = Lz4.decompress(corrupted, 0, corrupted.length, output, 0, output.length);
+                // a flipped literal is not detectable
+                assertThat(n, is(lessThanOrEqualTo(text.length)));
+            } catch (IOException expected) {
+                assertThat(expected.getMessage(), startsWith("lz4: "));
+            }
+        }
+    }
+
+    private static byte[] createText(int length) {
+        final String[] words = {"zarr", "chunk", "array", "group", "store", "codec", "blosc", " ", ", ", ".\n"};
+        final StringBuilder text = new StringBuilder();
+        int x = 1;
+        while (text.length() < length) {
+            x = (x * 1103515245 + 12345) & 0x7fffffff;
+            text.append(words[(x >> 16) % words.length]);
+        }
+        try {
+            return text.substring(0, length).getBytes("US-ASCII");
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static byte[] createInts(int count) {
+        final byte[] bytes = new byte[4 * count];
+        int x = 1;
+        for (int i = 0; i < count; i++) {
+            x = (x * 1103515245 + 12345) & 0x7fffffff;
+            Bytes.writeInt(bytes, 4 * i, (i * 37) / 5 + ((x >> 16) & 3));
+        }
+        return bytes;
+    }
+
+    private static byte[] hex(String hex) {
+        final byte[] bytes = new byte[hex.length() / 2];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = (byte) Integer.parseInt(hex.substring(2 * i, 2 * i + 2), 16);
+        }
+        return bytes;
+    }
+}
@@ -0,0 +1,148 @@
+/*
+ *
+ * MIT License
+ *
+ * Copyright (c) 2021. Brockmann Consult GmbH (info@brockmann-consult.de)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+package com.bc.zarr.codec;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.hamcrest.MatcherAssert.*;
+import static org.hamcrest.Matchers.*;
+
+public class ShuffleTest {
+
+    @Test
+    public void shuffle_unshuffle() {
+        final byte[] input = {1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11};
+        final byte[] shuffled = new byte[input.length];
+        Shuffle.shuffle(input, 0, shuffled, 0, input.length, 4);
+        assertThat(shuffled, is(new byte[]{1, 5, 2, 6, 3, 7, 4, 8, 9, 10, 11}));
+
+        final byte[] output = new byte[input.length];
+        Shuffle.unshuffle(shuffled, 0, output, 0, input.length, 4);
+        assertThat(output, is(input));
+    }
+
+    @Test
+    public void wordKernels_matchTheByteLoops() {
+        final Random random = new Random(3);
+        for (int elementSize : new int[]{2, 4, 8}) {
+            for (int length : new int[]{8 * elementSize, 8 * elementSize * 37 + 3 * elementSize + 1, 4096 * elementSize}) {
+                final byte[] input = new byte[length + 5];
+                random.nextBytes(input);
+
+                final byte[] expected = new byte[length + 2];
+                final byte[] actual = new byte[length + 2];
+                Shuffle.shuffle(input, 5, expected, 2, length, elementSize, false);
+                Shuffle.shuffle(input, 5, actual, 2, length, elementSize, true);
+                assertThat(actual, is(expected));
+
+                final byte[] output = new byte[length + 1];
+                Shuffle.unshuffle(expected, 2, output, 1, length, elementSize, true);
+                assertThat(Arrays.equals(Arrays.copyOfRange(output, 1, output.length), Arrays.copyOfRange(input, 5, input.length)), is(true));
+            }
+        }
+    }
+
+    @Test
+    public void bitshuffle_rowsOfBits() {
+        // bit k of byte j of all elements forms row 8 * j + k
+        final byte[] input = new byte[16];
+        input[0] = 1;
+        input[4] = (byte) 0x80;
+        Arrays.fill(input, 8, 16, (byte) 0);
+        for (int i = 0; i < 8; i++) {
+            input[2 * i + 1] |= 1;
+        }
+        final byte[] shuffled = new byte[16];
+        Shuffle.bitshuffle(input, 0, shuffled, 0, 16, 2);
+        final byte[] expected = new byte[16];
+        expected[0] = 1;                 // row 0: bit 0 of byte 0, element 0
+        expected[7] = 1 << 2;            // row 7: bit 7 of byte 0, element 2
+        expected[8] = (byte) 0xFF;       // row 8: bit 0 of byte 1, all elements
+        assertThat(shuffled, is(expected));
+    }
+
+    @Test
+    public void bitshuffle_copiesIncompleteGroupsAndElements() {
+        final byte[] input = new byte[8 * 3 + 7];
+        new Random(1).nextBytes(input);
+        final byte[] shuffled = new byte[input.length];
+        Shuffle.bitshuffle(input, 0, shuffled, 0, input.length, 2);
+        // 15 elements: one group of 8 elements is shuffled, 7 elements and a trailing byte are copied
+        assertThat(Arrays.equals(Arrays.copyOfRange(shuffled, 16, input.length), Arrays.copyOfRange(input, 16, input.length)), is(true));
+        assertThat(Arrays.equals(Arrays.copyOf(shuffled, 16), Arrays.copyOf(input, 16)), is(false));
+    }
+
+    @Test
+    public void bitshuffle_matchesTheDefinition() {
+        final Random random = new Random(2);
+        for (int elementSize : new int[]{1, 2, 3, 4, 8, 16}) {
+            final int count = 8 * 13;
+            final byte[] input = new byte[count * elementSize + 5];
+            random.nextBytes(input);
+            final byte[] shuffled = new byte[input.length + 3];
+            Shuffle.bitshuffle(input, 0, shuffled, 3, input.length, elementSize);
+
+            final int rowLength = count / 8;
+            for (int i = 0; i < count; i++) {
+                for (int j = 0; j < elementSize; j++) {
+                    for (int k = 0; k < 8; k++) {
+                        final int row = 8 * j + k;
+                        final int bit = (shuffled[3 + row * rowLength + i / 8] >> (i % 8)) & 1;
+                        assertThat((input[i * elementSize + j] >> k) & 1, is(bit));
+                    }
+                }
+            }
+
+            final byte[] output = new byte[input.length + 1];
+            Shuffle.bitunshuffle(shuffled, 3, output, 1, input.length, elementSize);
+            assertThat(Arrays.equals(Arrays.copyOfRange(output, 1, output.length), input), is(true));
+        }
+    }
+
+    @Test
+    public void bitshuffle_withAReusedScratchArray() {
+        final Random random = new Random(3);
+        final byte[] scratch = new byte[8 * 40 + 16];
+        for (int elementSize : new int[]{1, 2, 4, 5}) {
+            final byte[] input = new byte[8 * 8 * elementSize + 3];
+            random.nextBytes(input);
+            random.nextBytes(scratch);
+            final byte[] expected = new byte[input.length];
+            Shuffle.bitshuffle(input, 0, expected, 0, input.length, elementSize);
+            final byte[] shuffled = new byte[input.length];
+            Shuffle.bitshuffle(input, 0, shuffled, 0, input.length, elementSize, scratch);
+            assertThat(shuffled, is(expected));
+
+            random.nextBytes(scratch);
+            final byte[] output = new byte[input.length];
+            Shuffle.bitunshuffle(shuffled, 0, output, 0, input.length, elementSize, scratch);
+            assertThat(output, is(input));
+        }
+    }
+}
@@ -0,0 +1,240 @@
+/*
+ *
+ * MIT License
+ *
+ * Copyright (c) 2021. Brockmann Consult GmbH (info@brockmann-consult.de)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+package com.bc.zarr.codec;
+
+import org.junit.Test;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+import static org.hamcrest.MatcherAssert.*;
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.fail;
+
+public class ZfpTest {
+
+    private static final int[][] SHAPES = {{7}, {5, 6}, {3, 5, 6}, {2, 3, 5, 6}, {9, 1, 8}, {2, 2, 2, 3, 5}};
+
+    @Test
+    public void blockDims() {
+        assertThat(Zfp.blockDims(new int[]{10, 20}), is(new int[]{20, 10}));
+        assertThat(Zfp.blockDims(new int[]{1, 10, 1, 20}), is(new int[]{20, 10}));
+        assertThat(Zfp.blockDims(new int[]{2, 3, 4, 5, 6, 7}), is(new int[]{7, 6, 5, 24}));
+        assertThat(Zfp.blockDims(new int[]{1, 1}), is(new int[]{1}));
+    }
+
+    @Test
+    public void fixedAccuracy_errorIsWithinTheTolerance() throws IOException {
+        for (int[] shape : SHAPES) {
+            for (double tolerance : new double[]{1e-1, 1e-3, 1e-6}) {
+                final double[] values = createSmoothField(shape, 100);
+                assertMaxError(shape, values, Zfp.TYPE_DOUBLE, Zfp.MODE_FIXED_ACCURACY, tolerance, tolerance);
+                assertMaxError(shape, values, Zfp.TYPE_FLOAT, Zfp.MODE_FIXED_ACCURACY, tolerance, Math.max(tolerance, 1e-4));
+            }
+        }
+    }
+
+    @Test
+    public void fixedPrecision_errorDecreasesWithThePrecision() throws IOException {
+        for (int[] shape : SHAPES) {
+            final double[] values = createSmoothField(shape, 1);
+            assertMaxError(shape, values, Zfp.TYPE_DOUBLE, Zfp.MODE_FIXED_PRECISION, 16, 1e-3);
+            assertMaxError(shape, values, Zfp.TYPE_DOUBLE, Zfp.MODE_FIXED_PRECISION, 40, 1e-9);
+            assertMaxError(shape, values, Zfp.TYPE_DOUBLE, Zfp.MODE_FIXED_PRECISION, 64, 1e-15);
+            assertMaxError(shape, values, Zfp.TYPE_FLOAT, Zfp.MODE_FIXED_PRECISION, 32, 1e-6);
+        }
+    }
+
+    @Test
+    public void fixedRate_writesTheSameNumberOfBitsForEachBlock() throws IOException {
+        final int[] shape = {13, 9, 11};
+        final double[] values = createSmoothField(shape, 10);
+        final int headerSize = 24 + 4 * 3;
+        final int blocks = 4 * 3 * 3;
+        for (double rate : new double[]{1, 4.5, 16}) {
+            final byte[] compressed = compress(shape, values, Zfp.TYPE_DOUBLE, ByteOrder.BIG_ENDIAN, Zfp.MODE_FIXED_RATE, rate);
+            assertThat(compressed.length, is(headerSize + (int) Math.ceil(blocks * 64 * rate / 8)));
+        }
+        assertMaxError(shape, values, Zfp.TYPE_DOUBLE, Zfp.MODE_FIXED_RATE, 32, 1e-6);
+        assertMaxError(shape, values, Zfp.TYPE_FLOAT, Zfp.MODE_FIXED_RATE, 16, 1e-3);
+    }
+
+    @Test
+    public void smoothField_compressesMuchBetterThanZstd() throws IOException {
+        final int[] shape = {64, 64, 64};
+        final double[] values = createSmoothField(shape, 1000);
+        final byte[] raw = toBytes(values, Zfp.TYPE_FLOAT, ByteOrder.LITTLE_ENDIAN);
+        final byte[] zstd = new byte[Zstd.maxCompressedLength(raw.length)];
+        final int zstdSize = Zstd.compress(raw, 0, raw.length, zstd, 0, zstd.length, 3, false);
+
+        final byte[] zfp = compress(shape, values, Zfp.TYPE_FLOAT, ByteOrder.LITTLE_ENDIAN, Zfp.MODE_FIXED_ACCURACY, 0.01);
+        assertThat(zfp.length * 4, is(lessThan(zstdSize)));
+    }
+
+    @Test
+    public void zerosAndTinyValues() throws IOException {
+        final int[] shape = {8, 8};
+        final double[] values = new double[64];
+        final byte[] zeros = compress(shape, values, Zfp.TYPE_DOUBLE, ByteOrder.LITTLE_ENDIAN, Zfp.MODE_FIXED_ACCURACY, 0);
+        assertThat(zeros.length, is(24 + 8 + 1));
+        assertMaxError(shape, values, Zfp.TYPE_DOUBLE, Zfp.MODE_FIXED_ACCURACY, 0, 0);
+
+        // a block keeps 64 bit planes relative to its largest exponent
+        values[5] = Double.MIN_VALUE;
+        values[6] = -1e-310;
+        values[7] = 1e-300;
+        assertMaxError(shape, values, Zfp.TYPE_DOUBLE, Zfp.MODE_FIXED_ACCURACY, 0, 1e-315);
+    }
+
+    @Test
+    public void byteOrderIsPreserved() throws IOException {
+        final int[] shape = {5};
+        final double[] values = {1, 2, 3, 4, 5};
+        for (ByteOrder order : new ByteOrder[]{ByteOrder.BIG_ENDIAN, ByteOrder.LITTLE_ENDIAN}) {
+            final byte[] compressed = compress(shape, values, Zfp.TYPE_FLOAT, order, Zfp.MODE_FIXED_PRECISION, 32);
+            final byte[] output = new byte[20];
+            assertThat(Zfp.decompress(compressed, 0, compressed.length, output, 0, 20), is(20));
+            assertThat(output, is(toBytes(values, Zfp.TYPE_FLOAT, order)));
+        }
+    }
+
+    @Test
+    public void compress_invalidInput() throws IOException {
+        final byte[] input = toBytes(new double[]{1, 2, 3, Double.NaN}, Zfp.TYPE_DOUBLE, ByteOrder.LITTLE_ENDIAN);
+        final byte[] output = new byte[1000];
+        try {
+            Zfp.compress(input, 0, input.length, output, 0, output.length, ByteOrder.LITTLE_ENDIAN, Zfp.TYPE_DOUBLE, new int[]{4}, Zfp.MODE_FIXED_ACCURACY, 0.1);
+            fail("IOException expected");
+        } catch (IOException expected) {
+            assertThat(expected.getMessage(), is("zfp: only finite values can be compressed but found: NaN"));
+        }
+        try {
+            Zfp.compress(input, 0, input.length, output, 0, output.length, ByteOrder.LITTLE_ENDIAN, Zfp.TYPE_DOUBLE, new int[]{5}, Zfp.MODE_FIXED_ACCURACY, 0.1);
+            fail("IOException expected");
+        } catch (IOException expected) {
+            assertThat(expected.getMessage(), is("zfp: 40 bytes expected for shape [5] but got 32"));
+        }
+        final byte[] finite = toBytes(new double[]{1, 2, 3, 4}, Zfp.TYPE_DOUBLE, ByteOrder.LITTLE_ENDIAN);
+        try {
+            Zfp.compress(finite, 0, finite.length, output, 0, 30, ByteOrder.LITTLE_ENDIAN, Zfp.TYPE_DOUBLE, new int[]{4}, Zfp.MODE_FIXED_RATE, 64);
+            fail("IOException expected");
+        } catch (IOException expected) {
+            assertThat(expected.getMessage(), is("zfp: destination buffer too small"));
+        }
+        try {
+            Zfp.compress(finite, 0, finite.length, output, 0, output.length, ByteOrder.LITTLE_ENDIAN, Zfp.TYPE_DOUBLE, new int[]{4}, Zfp.MODE_FIXED_PRECISION, 65);
+            fail("IllegalArgumentException expected");
+        } catch (IllegalArgumentException expected) {
+            assertThat(expected.getMessage(), is("zfp: precision must be between 1 and 64 but was: 65.0"));
+        }
+    }
+
+    @Test
+    public void decompress_invalidData() throws IOException {
+        final int[] shape = {4, 4};
+        final byte[] compressed = compress(shape, createSmoothField(shape, 1), Zfp.TYPE_DOUBLE, ByteOrder.LITTLE_ENDIAN, Zfp.MODE_FIXED_PRECISION, 20);
+        final byte[] output = new byte[128];
+        try {
+            Zfp.decompress(compressed, 0, 10, output, 0, 128);
+            fail("EOFException expected");
+        } catch (EOFException expected) {
+            assertThat(expected.getMessage(), is("zfp: header of 24 bytes expected but only 10 available"));
+        }
+        try {
+            Zfp.decompress(compressed, 0, compressed.length, output, 0, 127);
+            fail("IOException expected");
+        } catch (IOException expected) {
+            assertThat(expected.getMessage(), is("zfp: destination buffer too small"));
+        }
+        try {
+            Zfp.decompress(compressed, 0, 40, output, 0, 128);
+            fail("EOFException expected");
+        } catch (EOFException expected) {
+            assertThat(expected.getMessage(), is("zfp: unexpected end of data"));
+        }
+        final byte[] corrupted = compressed.clone();
+        corrupted[1] = 'Z';
+        try {
+            Zfp.decompress(corrupted, 0, corrupted.length, output, 0, 128);
+            fail("IOException expected");
+        } catch (IOException expected) {
+            assertThat(expected.getMessage(), is("zfp: unknown data format"));
+        }
+    }
+
+    private static void assertMaxError(int[] shape, double[] values, int type, int mode, double parameter, double maxError) throws IOException {
+        final String testCase = Arrays.toString(shape) + "/" + type + "/" + mode + "/" + parameter;
+        final byte[] compressed = compress(shape, values, type, ByteOrder.BIG_ENDIAN, mode, parameter);
+        final int typeSize = type == Zfp.TYPE_FLOAT ? 4 : 8;
+        final byte[] output = new byte[values.length * typeSize + 3];
+        final int n = Zfp.decompress(compressed, 0, compressed.length, output, 3, output.length - 3);
+        assertThat(testCase, n, is(values.length * typeSize));
+        final ByteBuffer decoded = ByteBuffer.wrap(output, 3, n).slice();
+        for (int i = 0; i < values.length; i++) {
+            final double expected = type == Zfp.TYPE_FLOAT ? (float) values[i] : values[i];
+            final double actual = type == Zfp.TYPE_FLOAT ? decoded.getFloat(4 * i) : decoded.getDouble(8 * i);
+            assertThat(testCase + "/" + i, Math.abs(actual - expected), is(lessThanOrEqualTo(maxError)));
+        }
+    }
+
+    private static byte[] compress(int[] shape, double[] values, int type, ByteOrder order, int mode, double parameter) throws IOException {
+        final byte[] input = toBytes(values, type, order);
+        final byte[] compressed = new byte[Zfp.maxCompressedLength(type, shape, mode, parameter) + 2];
+        final int n = Zfp.compress(input, 0, input.length, compressed, 2, compressed.length - 2, order, type, shape, mode, parameter);
+        return Arrays.copyOfRange(compressed, 2, 2 + n);
+    }
+
+    private static byte[] toBytes(double[] values, int type, ByteOrder order) {
+        final ByteBuffer buffer = ByteBuffer.allocate(values.length * (type == Zfp.TYPE_FLOAT ? 4 : 8)).order(order);
+        for (double value : values) {
+            if (type == Zfp.TYPE_FLOAT) {
+                buffer.putFloat((float) value);
+            } else {
+                buffer.putDouble(value);
+            }
+        }
+        return buffer.array();
+    }
+
+    private static double[] createSmoothField(int[] shape, double amplitude) {
+        int size = 1;
+        for (int n : shape) {
+            size *= n;
+        }
+        final double[] values = new double[size];
+        for (int i = 0; i < size; i++) {
+            double value = 0;
+            for (int d = shape.length - 1, rest = i; d >= 0; rest /= shape[d], d--) {
+                value += Math.sin(0.1 * (d + 1) * (rest % shape[d]) + d);
+            }
+            values[i] = amplitude * value;
+        }
+        return values;
+    }
+}
@@ -0,0 +1,232 @@
+/*
+ *
+ * MIT License
+ *
+ * Copyright (c) 2021. Brockmann Consult GmbH (info@brockmann-consult.de)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package com.bc.zarr.codec;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.hamcrest.MatcherAssert.*;
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.fail;
+
+public class ZstdTest {
+
+    // written by the zstd reference library 1.5.4, level 19 with content checksum, input: createText(3000)
+    private static final String TEXT_FRAME =
+            "28b52ffd64b80a451400e2071213a0291d89fe7bfa9eb76c25a1aa8e6cd4af6e50cf9ffc5ffff575becef59ff375fdd7" +
+            "5f5f9feb3ad7e7bafe9caf4225257945493200e6549db5ea3417c74220240409214baa61ce813aa851534986fd3b2108" +
+            "0144712cf7780311302483118552699342070c8d487c40820183d5c95758b77977683dc77dd256d887b6bd7744d5a0c4" +
+            "923c1e0c9f022252a98ae6c74a443ff94e3c4010907805297e332d98af3eca3346d883c671e53941fcfeb22d6666f324" +
+            "87a11bd61f8ad210f8d60d9d83f3ccf1eaca0a0db248e41c4a5e9154db929dadb727f585bb62b9c90bb137cda16fb196" +
+            "9c67f0baab6101dda40dc06216f7b68a9664211024e5926d04c917ecff4b8176ed74b914bbdd1567b57652b94f922609" +
+            "eed9a0b38401301078678200e2c92207327984e230da777841cc21b905eeb8aa4cbbe5e8a40070a6e2e3247dbfb3fb5e" +
+            "629e2018af4d3a2962330445a1c6cba3ddf5a584ab86c98246c0f540722ee00a85e7239198d380b95fd2c33710ade801" +
+            "755259d5f7a87b4e7e45b971f14cc5a60192a0bebac83e6ef0dd5dcd0b2ebc1585c9291332ee3ac10f2df14fe879c51e" +
+            "eaa7b6e23a561bc4ab84bbfc19ee133cb3e95cfb417c73c940d054b5d08f9334585b3c0645b63b83118aadf42bda4458" +
+            "435bdf958bdcb4f90c3f7d93dd1433e13d32b97cc909352f0c0e97f1f0204c6ede941d5e427d500cbcc1aa2e8c493f01" +
+            "826f3c629fc1738db3c4e21b2ff62efe81133b4503c920c5a68721c205509694933671976169588fd54cb9cb038204a2" +
+            "432d0ab4080a879c72cd60162a6e4e92772480a116d51efb5717a624bab204586188f7e0148a07d3909138adc13e60d8" +
+            "ced0b59c1bebb459ad377612eca88bc766d4cd911eb8c30c4436ea5313182e20540168b8164d";
+
+    // written by the zstd reference library 1.5.4, level 3, input: createInts(256)
+    private static final String INTS_FRAME =
+            "28b52ffd6000039d11000a40b80834b0b4a439cca4126f601a096cf82f7aa6278c09128137e215f9297cad692c08d4ba" +
+            "4e7b08268569301d7f07e53b8496c82da5dc2971007f007f005b7bb6ea6cd1d992b3c566ebcc96982d2e5b57b6a46c39" +
+            "d93ab245642bc8968fad1c5b33b65c6ca9d83ab13562abc396d356d356842d065b08b6086cbd57faa32b7aa1077a9fe3" +
+            "39d5a70ee76b6ee65faee5560ee54b7ee4431e751eaff11787fad34b1cc439fcc29b1ee10b6ee001ce02b733b730b72d" +
+            "372bb7283726372437a91b905b8fdb8d5b8c9b8b5b8a9b895b88db861b865bd34dc24dc10dc18dc0adcd28cd1acd14cd" +
+            "0acd00cdf8cceecca86673666f66696663665d66586654664e664a66466652b31f331d331a3318b31633143312b30fb3" +
+            "0c330bb3093307b3a599811980d9ad485b8bb60c6d11dafa135f4bbe907c497d457dedf8b2f125e30beaebe98bc41788" +
+            "2f0e5f4e5f4d5f0fbe96be0e7c09f86a3b493b463b44bb41bb3f3b3e3b3b3baa9d9c9d9b1d9a1d999d97dd95dd945d93" +
+            "5d925d919d90dd8fdd8e5d8d1d8c9d8a1d8a9d889d879d865d851dd3aec16e695760e7766f8e6e8a6e866e826e7e6e79" +
+            "6e55b7a91b9c1b9baf6cbc7af18ac5aba757235e8578a5e19585574caf20bc52f0aac0abf7abf49bf463f43bf423f4fb" +
+            "f3d3f3abfa4dfde2fcdafcd0fcc0fcb6fcb0fca6fc98fc94fc88fca27e3e7e387e337e50bf15bf133f11bf0e3fa71f85" +
+            "1fd3afc12fc16fc0cf7d51fa82f495e8cbd097a02f3f5f78beaabee67cbdf952f355e60bcc5796af2a5f4f0200";
+
+    @Test
+    public void decompress_framesOfTheReferenceImplementation() throws IOException {
+        final byte[] textFrame = hex(TEXT_FRAME);
+        final byte[] intsFrame = hex(INTS_FRAME);
+
+        assertThat(Zstd.getDecompressedSize(textFrame, 0, textFrame.length), is(3000L));
+        assertThat(Arrays.equals(Zstd.decompress(textFrame, 0, textFrame.length), createText(3000)), is(true));
+        assertThat(Zstd.getDecompressedSize(intsFrame, 0, intsFrame.length), is(1024L));
+        assertThat(Arrays.equals(Zstd.decompress(intsFrame, 0, intsFrame.length), createInts(256)), is(true));
+    }
+
+    @Test
+    public void decompress_concatenatedAndSkippableFrames() throws IOException {
+        final byte[] textFrame = hex(TEXT_FRAME);
+        final byte[] intsFrame = hex(INTS_FRAME);
+        final byte[] skippable = {0x5A, 0x2A, 0x4D, 0x18, 3, 0, 0, 0, 1, 2, 3};
+        final byte[] input = new byte[textFrame.length + skippable.length + intsFrame.length];
+        System.arraycopy(textFrame, 0, input, 0, textFrame.length);
+        System.arraycopy(skippable, 0, input, textFrame.length, skippable.length);
+        System.arraycopy(intsFrame, 0, input, textFrame.length + skippable.length, intsFrame.length);
+
+        final byte[] output = new byte[5000];
+        final int n = Zstd.decompress(input, 0, input.length, output, 10, 4024);
+
+        assertThat(n, is(4024));
+        assertThat(Arrays.equals(Arrays.copyOfRange(output, 10, 3010), createText(3000)), is(true));
+        assertThat(Arrays.equals(Arrays.copyOfRange(output, 3010, 4034), createInts(256)), is(true));
+        assertThat(Zstd.getDecompressedSize(input, 0, input.length), is(4024L));
+    }
+
+    @Test
+    public void compress_decompress_allKindsOfData() throws IOException {
+        final Random random = new Random(7);
+        final byte[] noise = new byte[150000];
+        random.nextBytes(noise);
+        final byte[][] inputs = {
+                new byte[0],
+                {42},
+                new byte[300000],
+                createText(200000),
+                createInts(100000),
+                noise
+        };
+        for (byte[] input : inputs) {
+            for (int level : new int[]{-5, 1, 3, 6, 9, 19}) {
+                final boolean checksum = level % 2 != 0;
+                final byte[] compressed = new byte[Zstd.maxCompressedLength(input.length) + 5];
+                final int n = Zstd.compress(input, 0, input.length, compressed, 5, compressed.length - 5, level, checksum);
+
+                assertThat(Zstd.getDecompressedSize(compressed, 5, n), is((long) input.length));
+                final byte[] uncompressed = new byte[input.length + 3];
+                assertThat(Zstd.decompress(compressed, 5, n, uncompressed, 3, input.length), is(input.length));
+                assertThat("level " + level, Arrays.equals(Arrays.copyOfRange(uncompressed, 3, uncompressed.length), input), is(true));
+            }
+        }
+    }
+
+    @Test
+    public void compress_higherLevelsCompressBetter() throws IOException {
+        final byte[] input = createText(200000);
+        final byte[] compressed = new byte[Zstd.maxCompressedLength(input.length)];
+
+        final int fast = Zstd.compress(input, 0, input.length, compressed, 0, compressed.length, 1, false);
+        final int strong = Zstd.compress(input, 0, input.length, compressed, 0, compressed.length, 19, false);
+
+        assertThat(fast, is(lessThan(input.length / 3)));
+        assertThat(strong, is(lessThan(fast)));
+    }
+
+    @Test
+    public void compress_targetTooSmall() {
+        final byte[] input = createInts(1000);
+        try {
+            Zstd.compress(input, 0, input.length, new byte[100], 0, 100, 3, false);
+            fail("IOException expected");
+        } catch (IOException expected) {
+            assertThat(expected.getMessage(), is("zstd: destination buffer too small"));
+        }
+    }
+
+    @Test
+    public void decompress_targetTooSmall() throws IOException {
+        final byte[] frame = hex(TEXT_FRAME);
+        try {
+            Zstd.decompress(frame, 0, frame.length, new byte[2999], 0, 2999);
+            fail("IOException expected");
+        } catch (IOException expected) {
+            assertThat(expected.getMessage(), is("zstd: destination buffer too small"));
+        }
+    }
+
+    @Test
+    public void decompress_checksumMismatch() {
+        final byte[] frame = hex(TEXT_FRAME);
+        frame[frame.length - 1] ^= 1;
+        try {
+            Zstd.decompress(frame, 0, frame.length);
+            fail("IOException expected");
+        } catch (IOException expected) {
+            assertThat(expected.getMessage(), is("zstd: corrupted data, content checksum mismatch"));
+        }
+    }
+
+    @Test
+    public void decompress_corruptedOrTruncatedData() throws IOException {
+        final byte[] frame = hex(TEXT_FRAME);
+        final byte[] text = createText(3000);
+        final Random random = new Random(1);
+        for (int i = 1; i < frame.length; i++) {
+            try {
+                Zstd.decompress(frame, 0, i);
+                fail("IOException expected");
+            } catch (IOException expected) {
+                assertThat(expected.getMessage(), startsWith("zstd: "));
+            }
+            // some bits, like padding, do not affect the content, everything else must be detected
+            final byte[] corrupted = frame.clone();
+            corrupted[i] ^= (byte) (1 << random.nextInt(8));
+            try {
+                assertThat(Arrays.equals(Zstd.decompress(corrupted, 0, corrupted.length), text), is(true));
+            } catch (IOException expected) {
+                assertThat(expected.getMessage(), startsWith("zstd: "));
+            }
+        }
+    }
+
+    private static byte[] createText(int length) {
+        final String[] words = {"zarr", "chunk", "array", "group", "store", "codec", "blosc", " ", ", ", ".\n"};
+        final StringBuilder text = new StringBuilder();
+        int x = 1;
+        while (text.length() < length) {
+            x = (x * 1103515245 + 12345) & 0x7fffffff;
+            text.append(words[(x >> 16) % words.length]);
+        }
+        try {
+            return text.substring(0, length).getBytes("US-ASCII");
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static byte[] createInts(int count) {
+        final byte[] bytes = new byte[4 * count];
+        int x = 1;
+        for (int i = 0; i < count; i++) {
+            x = (x * 1103515245 + 12345) & 0x7fffffff;
+            Bytes.writeInt(bytes, 4 * i, (i * 37) / 5 + ((x >> 16) & 3));
+        }
+        return bytes;
+    }
+
+    private static byte[] hex(String hex) {
+        final byte[] bytes = new byte[hex.length() / 2];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = (byte) Integer.parseInt(hex.substring(2 * i, 2 * i + 2), 16);
+        }
+        return bytes;
+    }
+}
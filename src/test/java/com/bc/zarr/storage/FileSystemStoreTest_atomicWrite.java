@@ -0,0 +1,151 @@
+/*
+ *
+ * MIT License
+ *
+ * Copyright (c) 2021. Brockmann Consult GmbH (info@brockmann-consult.de)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package com.bc.zarr.storage;
+
+import com.bc.zarr.ZarrUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.hamcrest.MatcherAssert.*;
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.fail;
+
+public class FileSystemStoreTest_atomicWrite {
+
+    private Path storeRoot;
+    private FileSystemStore store;
+
+    @Before
+    public void setUp() throws Exception {
+        storeRoot = Files.createTempDirectory("JZarr");
+        store = new FileSystemStore(storeRoot);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        final List<Path> paths = Files.walk(storeRoot)
+                .sorted(Comparator.reverseOrder())
+                .collect(Collectors.toList());
+        for (Path path : paths) {
+            Files.delete(path);
+        }
+    }
+
+    @Test
+    public void previousValueIsVisibleUntilTheStreamIsClosed() throws IOException {
+        write("array/0.0", new byte[]{1, 2, 3});
+
+        final OutputStream os = store.getOutputStream("array/0.0");
+        os.write(new byte[]{4, 5, 6, 7});
+        os.flush();
+        assertThat(read("array/0.0"), is(new byte[]{1, 2, 3}));
+
+        os.close();
+        assertThat(read("array/0.0"), is(new byte[]{4, 5, 6, 7}));
+        assertThat(listFiles(storeRoot.resolve("array")), is(new String[]{"0.0"}));
+    }
+
+    @Test
+    public void closingTwiceDoesNotFail() throws IOException {
+        final OutputStream os = store.getOutputStream("array/0.0");
+        os.write(42);
+        os.close();
+        os.close();
+
+        assertThat(read("array/0.0"), is(new byte[]{42}));
+    }
+
+    @Test
+    public void failedWriteLeavesThePreviousValue() throws IOException {
+        write("array/0.0", new byte[]{1, 2, 3});
+
+        try (OutputStream os = store.getOutputStream("array/0.0")) {
+            os.write(new byte[]{4, 5});
+            os.write(new byte[2], 1, 5);
+            fail("IndexOutOfBoundsException expected");
+        } catch (IndexOutOfBoundsException expected) {
+            // the value is incomplete
+        }
+
+        assertThat(read("array/0.0"), is(new byte[]{1, 2, 3}));
+        assertThat(listFiles(storeRoot.resolve("array")), is(new String[]{"0.0"}));
+    }
+
+    @Test
+    public void tempFilesAreNotListed() throws IOException {
+        write("array/0.0", new byte[]{1});
+        Files.write(storeRoot.resolve("array/.0.1.5f3a.tmp"), new byte[]{2});
+
+        assertThat(store.getKeysEndingWith(".tmp").size(), is(0));
+        assertThat(store.getRelativeLeafKeys("array").toArray(), is(new Object[]{"0.0"}));
+    }
+
+    @Test
+    public void writeAfterDirectoryHasBeenDeleted() throws IOException {
+        write("group/array/0.0", new byte[]{1});
+
+        store.delete("group");
+        write("group/array/0.0", new byte[]{2});
+        assertThat(read("group/array/0.0"), is(new byte[]{2}));
+
+        ZarrUtils.deleteDirectoryTreeRecursively(storeRoot.resolve("group"));
+        write("group/array/0.0", new byte[]{3});
+        assertThat(read("group/array/0.0"), is(new byte[]{3}));
+        assertThat(listFiles(storeRoot.resolve("group/array")), is(new String[]{"0.0"}));
+    }
+
+    private void write(String key, byte[] bytes) throws IOException {
+        try (OutputStream os = store.getOutputStream(key)) {
+            os.write(bytes);
+        }
+    }
+
+    private byte[] read(String key) throws IOException {
+        try (InputStream is = store.getInputStream(key)) {
+            final byte[] bytes = new byte[is.available()];
+            assertThat(is.read(bytes), is(bytes.length));
+            return bytes;
+        }
+    }
+
+    private static String[] listFiles(Path dir) throws IOException {
+        try (Stream<Path> files = Files.list(dir)) {
+            return files.map(path -> path.getFileName().toString()).sorted().toArray(String[]::new);
+        }
+    }
+}
@@ -0,0 +1,188 @@
+/*
+ *
+ * MIT License
+ *
+ * Copyright (c) 2021. Brockmann Consult GmbH (info@brockmann-consult.de)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package com.bc.zarr.storage;
+
+import com.bc.zarr.ArrayParams;
+import com.bc.zarr.ByteBufferInputStream;
+import com.bc.zarr.CompressorFactory;
+import com.bc.zarr.DataType;
+import com.bc.zarr.ZarrArray;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.hamcrest.MatcherAssert.*;
+import static org.hamcrest.Matchers.*;
+
+public class FileSystemStoreTest_memoryMapped {
+
+    private Path storeRoot;
+
+    @Before
+    public void setUp() throws Exception {
+        storeRoot = Files.createTempDirectory("JZarr");
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        final List<Path> paths = Files.walk(storeRoot)
+                .sorted(Comparator.reverseOrder())
+                .collect(Collectors.toList());
+        for (Path path : paths) {
+            Files.delete(path);
+        }
+    }
+
+    @Test
+    public void getInputStream_returnsStreamOverMappedFile() throws Exception {
+        final byte[] value = createValue(FileSystemStore.MIN_MAPPED_SIZE, 1);
+        Files.write(storeRoot.resolve("key"), value);
+        final FileSystemStore store = new FileSystemStore(storeRoot, true);
+
+        try (InputStream is = store.getInputStream("key")) {
+            assertThat(is, is(instanceOf(ByteBufferInputStream.class)));
+            assertThat(is.available(), is(value.length));
+            assertThat(((ByteBufferInputStream) is).remainingBytes().isDirect(), is(true));
+            assertThat(is.read(), is(value[0] & 0xFF));
+            assertThat(((ByteBufferInputStream) is).remainingBytes().remaining(), is(value.length - 1));
+        }
+        assertThat(store.getInputStream("missing"), is(nullValue()));
+    }
+
+    @Test
+    public void smallFilesAreNotMapped() throws Exception {
+        Files.write(storeRoot.resolve("key"), new byte[]{1, 2, 3, 4, 5});
+        final FileSystemStore store = new FileSystemStore(storeRoot, true);
+
+        try (InputStream is = store.getInputStream("key")) {
+            assertThat(is, is(not(instanceOf(ByteBufferInputStream.class))));
+            assertThat(is.read(), is(1));
+        }
+        assertThat(store.getBytes("key", 1, 3).isDirect(), is(false));
+        assertThat(store.getMappedFileCount(), is(0));
+    }
+
+    @Test
+    public void manyChunksReadRepeatedly() throws Exception {
+        final FileSystemStore store = new FileSystemStore(storeRoot, true);
+        final int count = 40;
+        for (int i = 0; i < count; i++) {
+            try (OutputStream os = store.getOutputStream("array/" + i)) {
+                os.write(createValue(FileSystemStore.MIN_MAPPED_SIZE + i, i));
+            }
+        }
+        for (int repetition = 0; repetition < 5; repetition++) {
+            for (int i = 0; i < count; i++) {
+                final byte[] value = createValue(FileSystemStore.MIN_MAPPED_SIZE + i, i);
+                final ByteBuffer range = store.getBytes("array/" + i, 1000, 3000);
+                assertThat(range.isDirect(), is(true));
+                assertThat(toArray(range), is(Arrays.copyOfRange(value, 1000, 4000)));
+                try (InputStream is = store.getInputStream("array/" + i)) {
+                    assertThat(toArray(((ByteBufferInputStream) is).remainingBytes()), is(value));
+                }
+            }
+            // the mapping of each file is reused
+            assertThat(store.getMappedFileCount(), is(count));
+        }
+
+        store.delete("array");
+        assertThat(store.getMappedFileCount(), is(0));
+    }
+
+    @Test
+    public void fileReplacedWithTheSameSizeIsMappedAgain() throws Exception {
+        final FileSystemStore reader = new FileSystemStore(storeRoot, true);
+        final FileSystemStore writer = new FileSystemStore(storeRoot);
+        final byte[] first = createValue(FileSystemStore.MIN_MAPPED_SIZE, 1);
+        final byte[] second = createValue(FileSystemStore.MIN_MAPPED_SIZE, 2);
+        try (OutputStream os = writer.getOutputStream("key")) {
+            os.write(first);
+        }
+        assertThat(toArray(reader.getBytes("key", 0, first.length)), is(first));
+
+        try (OutputStream os = writer.getOutputStream("key")) {
+            os.write(second);
+        }
+        assertThat(toArray(reader.getBytes("key", 0, second.length)), is(second));
+        assertThat(reader.getMappedFileCount(), is(1));
+    }
+
+    @Test
+    public void getInputStream_emptyFile() throws Exception {
+        Files.write(storeRoot.resolve("key"), new byte[0]);
+        final FileSystemStore store = new FileSystemStore(storeRoot, true);
+
+        try (InputStream is = store.getInputStream("key")) {
+            assertThat(is.read(), is(-1));
+        }
+    }
+
+    @Test
+    public void readArrayWrittenByNotMappedStore() throws Exception {
+        final int[] data = new int[40 * 30];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = i * 7;
+        }
+        for (String compressorId : new String[]{"null", "zlib"}) {
+            final FileSystemStore writeStore = new FileSystemStore(storeRoot.resolve(compressorId));
+            final ZarrArray written = ZarrArray.create(writeStore, new ArrayParams()
+                    .shape(40, 30).chunks(16, 16).dataType(DataType.i4)
+                    .compressor(CompressorFactory.create(compressorId)));
+            written.write(data, new int[]{40, 30}, new int[]{0, 0});
+
+            final ZarrArray mapped = ZarrArray.open(new FileSystemStore(storeRoot.resolve(compressorId), true));
+            assertThat(mapped.read(), is(data));
+            final int[] region = (int[]) mapped.read(new int[]{5, 4}, new int[]{14, 20});
+            assertThat(region[0], is(data[14 * 30 + 20]));
+            assertThat(region[4 * 4 + 3], is(data[18 * 30 + 23]));
+        }
+    }
+
+    private static byte[] toArray(ByteBuffer buffer) {
+        final byte[] bytes = new byte[buffer.remaining()];
+        buffer.get(bytes);
+        return bytes;
+    }
+
+    private static byte[] createValue(int size, int seed) {
+        final byte[] bytes = new byte[size];
+        for (int i = 0; i < size; i++) {
+            bytes[i] = (byte) (i * 31 + i / 256 + seed * 7);
+        }
+        return bytes;
+    }
+}
@@ -0,0 +1,193 @@
+/*
+ *
+ * MIT License
+ *
+ * Copyright (c) 2021. Brockmann Consult GmbH (info@brockmann-consult.de)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package com.bc.zarr.storage;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.TreeSet;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.hamcrest.MatcherAssert.*;
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.fail;
+
+public class StoreTest_getBytes {
+
+    // larger than FileSystemStore.MIN_MAPPED_SIZE, so that the memory mapped store maps it
+    private static final byte[] VALUE = createValue(100000);
+
+    private Path storeRoot;
+
+    @Before
+    public void setUp() throws Exception {
+        storeRoot = Files.createTempDirectory("JZarr");
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        final List<Path> paths = Files.walk(storeRoot)
+                .sorted(Comparator.reverseOrder())
+                .collect(Collectors.toList());
+        for (Path path : paths) {
+            Files.delete(path);
+        }
+    }
+
+    @Test
+    public void getBytes_fromFileSystemStore() throws IOException {
+        assertRangedReads(new FileSystemStore(storeRoot));
+    }
+
+    @Test
+    public void getBytes_fromMemoryMappedFileSystemStore() throws IOException {
+        final FileSystemStore store = new FileSystemStore(storeRoot, true);
+        assertThat(store.isMemoryMapped(), is(true));
+        assertRangedReads(store);
+        assertThat(store.getBytes("group/array/0.0", 0, 10000).isDirect(), is(true));
+    }
+
+    @Test
+    public void getBytes_fromInMemoryStore() throws IOException {
+        assertRangedReads(new InMemoryStore());
+    }
+
+    @Test
+    public void getBytes_fromZipStore() throws IOException {
+        try (Store store = new ZipStore(storeRoot.resolve("zipFile"))) {
+            assertRangedReads(store);
+        }
+    }
+
+    @Test
+    public void getBytes_defaultImplementation() throws IOException {
+        assertRangedReads(new StreamOnlyStore());
+    }
+
+    @Test
+    public void getBytes_negativeArguments() throws IOException {
+        try {
+            new InMemoryStore().getBytes("key", -1, 10);
+            fail("IllegalArgumentException expected");
+        } catch (IllegalArgumentException expected) {
+            assertThat(expected.getMessage(), is("offset and length must not be negative but were -1 and 10"));
+        }
+    }
+
+    private static void assertRangedReads(Store store) throws IOException {
+        try (OutputStream os = store.getOutputStream("group/array/0.0")) {
+            os.write(VALUE);
+        }
+        assertThat(store.getSize("group/array/0.0"), is(100000L));
+        assertThat(store.getSize("group/array/1.0"), is(-1L));
+
+        assertThat(toArray(store.getBytes("group/array/0.0", 0, 100000)), is(VALUE));
+        assertThat(toArray(store.getBytes("group/array/0.0", 1234, 100)), is(Arrays.copyOfRange(VALUE, 1234, 1334)));
+        assertThat(toArray(store.getBytes("group/array/0.0", 99990, 100)), is(Arrays.copyOfRange(VALUE, 99990, 100000)));
+        assertThat(toArray(store.getBytes("group/array/0.0", 200000, 100)).length, is(0));
+        assertThat(toArray(store.getBytes("group/array/0.0", 5, 0)).length, is(0));
+        assertThat(store.getBytes("group/array/1.0", 0, 100), is(nullValue()));
+    }
+
+    private static byte[] toArray(ByteBuffer buffer) {
+        final byte[] bytes = new byte[buffer.remaining()];
+        buffer.get(bytes);
+        return bytes;
+    }
+
+    private static byte[] createValue(int size) {
+        final byte[] bytes = new byte[size];
+        for (int i = 0; i < size; i++) {
+            bytes[i] = (byte) (i * 31 + i / 256);
+        }
+        return bytes;
+    }
+
+    /**
+     * A store using the default ranged reads, whose streams skip at most 100 bytes at once.
+     */
+    private static class StreamOnlyStore implements Store {
+
+        private final InMemoryStore values = new InMemoryStore();
+
+        @Override
+        public InputStream getInputStream(String key) {
+            final InputStream is = values.getInputStream(key);
+            if (is == null) {
+                return null;
+            }
+            return new FilterInputStream(is) {
+                @Override
+                public long skip(long n) throws IOException {
+                    return super.skip(Math.min(n, 100));
+                }
+            };
+        }
+
+        @Override
+        public OutputStream getOutputStream(String key) {
+            return values.getOutputStream(key);
+        }
+
+        @Override
+        public void delete(String key) {
+            values.delete(key);
+        }
+
+        @Override
+        public TreeSet<String> getArrayKeys() {
+            return values.getArrayKeys();
+        }
+
+        @Override
+        public TreeSet<String> getGroupKeys() {
+            return values.getGroupKeys();
+        }
+
+        @Override
+        public TreeSet<String> getKeysEndingWith(String suffix) {
+            return values.getKeysEndingWith(suffix);
+        }
+
+        @Override
+        public Stream<String> getRelativeLeafKeys(String key) throws IOException {
+            return values.getRelativeLeafKeys(key);
+        }
+    }
+}
@@ -0,0 +1,118 @@
+/*
+ *
+ * MIT License
+ *
+ * Copyright (c) 2021. Brockmann Consult GmbH (info@brockmann-consult.de)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package com.bc.zarr.ucar;
+
+import org.junit.Test;
+import ucar.ma2.Array;
+import ucar.ma2.DataType;
+import ucar.ma2.InvalidRangeException;
+
+import java.util.Arrays;
+
+import static org.hamcrest.MatcherAssert.*;
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.fail;
+
+public class PartialDataCopierTest_4D {
+
+    private final int[] sourceShape = {3, 4, 5, 6};
+    private final int[] targetShape = {2, 3, 4, 5};
+
+    @Test
+    public void copy_equalsElementwiseCopy_forAllOverlappingOffsets() throws InvalidRangeException {
+        final Array source = createSource(DataType.INT);
+        final int[] offset = new int[4];
+        for (offset[0] = -1; offset[0] <= 2; offset[0]++) {
+            for (offset[1] = -2; offset[1] <= 3; offset[1]++) {
+                for (offset[2] = -3; offset[2] <= 4; offset[2]++) {
+                    for (offset[3] = -4; offset[3] <= 5; offset[3]++) {
+                        final Array expected = createTarget(DataType.INT);
+                        final Array actual = createTarget(DataType.INT);
+
+                        PartialDataCopier.copyElementwise(offset, source, expected);
+                        PartialDataCopier.copy(offset, source, actual);
+
+                        assertThat(Arrays.toString(offset), actual.getStorage(), is(equalTo(expected.getStorage())));
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void copy_allPrimitiveTypes() throws InvalidRangeException {
+        final int[] offset = {1, -1, 2, -3};
+        for (DataType dataType : new DataType[]{DataType.BYTE, DataType.SHORT, DataType.INT, DataType.LONG, DataType.FLOAT, DataType.DOUBLE}) {
+            final Array source = createSource(dataType);
+            final Array expected = createTarget(dataType);
+            final Array actual = createTarget(dataType);
+
+            PartialDataCopier.copyElementwise(offset, source, expected);
+            PartialDataCopier.copy(offset, source, actual);
+
+            assertThat(dataType.toString(), actual.getStorage(), is(equalTo(expected.getStorage())));
+        }
+    }
+
+    @Test
+    public void copy_sameShapeAndZeroOffset_copiesAll() throws InvalidRangeException {
+        final Array source = createSource(DataType.DOUBLE);
+        final Array target = Array.factory(DataType.DOUBLE, sourceShape);
+
+        PartialDataCopier.copy(new int[4], source, target);
+
+        assertThat(target.getStorage(), is(equalTo(source.getStorage())));
+    }
+
+    @Test
+    public void copy_noOverlap() {
+        final Array source = createSource(DataType.INT);
+        final Array target = createTarget(DataType.INT);
+        try {
+            PartialDataCopier.copy(new int[]{0, 0, 5, 0}, source, target);
+            fail("InvalidRangeException expected");
+        } catch (InvalidRangeException expected) {
+            assertThat(expected.getMessage(), is("Source and target do not overlap in dimension 2 with offset 5."));
+        }
+    }
+
+    private Array createSource(DataType dataType) {
+        final Array source = Array.factory(dataType, sourceShape);
+        for (int i = 0; i < source.getSize(); i++) {
+            source.setInt(i, i + 1);
+        }
+        return source;
+    }
+
+    private Array createTarget(DataType dataType) {
+        final Array target = Array.factory(dataType, targetShape);
+        for (int i = 0; i < target.getSize(); i++) {
+            target.setInt(i, -1);
+        }
+        return target;
+    }
+}